@@ -25,6 +25,7 @@ import java.util.Optional;
 import java.util.Random;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 
 import javax.transaction.Transactional;
@@ -32,7 +33,9 @@ import javax.transaction.Transactional;
 import org.apache.commons.collections4.map.MultiValueMap;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.util.StopWatch;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -45,7 +48,6 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.hack17.hybo.domain.Allocation;
 import com.hack17.hybo.domain.CurrentDate;
-import com.hack17.hybo.domain.InvestorProfile;
 import com.hack17.hybo.domain.Portfolio;
 import com.hack17.hybo.domain.TLHRunPortfolioHistory;
 import com.hack17.hybo.domain.TLHRunAllocationHistory;
@@ -54,12 +56,14 @@ import com.hack17.hybo.repository.PortfolioRepository;
 import com.hack17.hybo.repository.TransactionRepository;
 import com.hack17.hybo.util.DateTimeUtil;
 import com.hackovation.hybo.CreatedBy;
+import com.hackovation.hybo.ServiceImpl.ProfileCreationServiceImpl;
 import com.hackovation.hybo.Util.HyboUtil;
 import com.hackovation.hybo.bean.Data;
 import com.hackovation.hybo.bean.DataVO;
 import com.hackovation.hybo.bean.EtfParent;
 import com.hackovation.hybo.bean.PortfolioResponse;
 import com.hackovation.hybo.bean.Price;
+import com.hackovation.hybo.bean.ProfileJobResponse;
 import com.hackovation.hybo.bean.ProfileRequest;
 import com.hackovation.hybo.bean.ProfileResponse;
 import com.hackovation.hybo.bean.RebalanceResponse;
@@ -68,6 +72,8 @@ import com.hackovation.hybo.bean.TLHResponse;
 import com.hackovation.hybo.bean.Value;
 import com.hackovation.hybo.rebalance.Rebalance;
 import com.hackovation.hybo.services.PortfolioService;
+import com.hackovation.hybo.services.PriceCacheService;
+import com.hackovation.hybo.services.ProfileCreationService;
 
 @RestController
 @RequestMapping(value="/black")
@@ -78,6 +84,10 @@ public class BlackLittermanController {
 	PortfolioRepository portfolioRepository;
 	@Autowired
 	PortfolioService portfolioService;
+	@Autowired
+	PriceCacheService priceCacheService;
+	@Autowired
+	ProfileCreationService profileCreationService;
 
 	@Autowired
     TransactionRepository tranRepo;
@@ -119,37 +129,7 @@ public class BlackLittermanController {
 			ObjectMapper mapper = new ObjectMapper();
 			ProfileRequest profileRequest;
 			profileRequest = mapper.readValue(json, ProfileRequest.class);
-			String userId = profileRequest.getUserId();
-			InvestorProfile investorProfile = portfolioService.createProfile(profileRequest);
-			Date date = new Date();
-			if(profileRequest.getDate() != null && !profileRequest.getDate().isEmpty()){
-				date = sdf.parse(profileRequest.getDate());
-			}else{
-				CurrentDate existingDate = (CurrentDate)portfolioRepository.getEntity(1, CurrentDate.class);
-				date = existingDate.getDate();
-			}
-			Map<String,Portfolio> dataMap = createPortfolio(investorProfile, profileRequest.getAmount(),date,userId);
-			
-			double totalValue = 0.0;
-			List<ProfileResponse> responseList = new ArrayList<>();
-			Set<Entry<String,Portfolio>> entrySet = dataMap.entrySet();
-			Map<String,String> etfAssetClassMap = HyboUtil.ETFToAssetClassMap();
-			for(Entry<String,Portfolio> entry:entrySet){
-				Portfolio portfolio= entry.getValue();
-				List<Allocation> allocationList = portfolio.getAllocations();
-				for(Allocation allocation:allocationList){
-					ProfileResponse response = new ProfileResponse();
-					response.setClientId(Integer.valueOf(entry.getKey()));
-					response.setLabel(etfAssetClassMap.get(allocation.getFund().getTicker()));
-					response.setValue(String.valueOf(allocation.getPercentage()));
-					totalValue += allocation.getQuantity()*allocation.getCostPrice();
-					responseList.add(response);
-				}
-			}
-
-			PortfolioResponse response = new PortfolioResponse();
-			response.setTotal(Double.valueOf(numFormat.format(totalValue)));
-			response.setData(responseList);
+			PortfolioResponse response = profileCreationService.createProfile(profileRequest);
 			ObjectMapper responseMapper = new ObjectMapper();
 			str = responseMapper.writeValueAsString(response);
 		} catch (Exception e) {
@@ -160,6 +140,35 @@ public class BlackLittermanController {
 		System.out.println(stopWatch.shortSummary());
 		return str;
 	}
+
+	/*
+	 * Same as /createProfile but returns a job id right away, poll /createProfileStatus for the portfolio.
+	 */
+	@RequestMapping(value="/createProfileAsync", method=RequestMethod.POST,produces = "application/json",consumes =  MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<String> createProfileAsync(HttpEntity<String> entity) throws IOException{
+		ObjectMapper mapper = new ObjectMapper();
+		ProfileRequest profileRequest = mapper.readValue(entity.getBody(), ProfileRequest.class);
+		ProfileJobResponse job = new ProfileJobResponse();
+		try{
+			job = profileCreationService.getJob(profileCreationService.submit(profileRequest));
+		}catch(RejectedExecutionException e){
+			job.setStatus(ProfileCreationServiceImpl.REJECTED);
+			job.setError("Too many profiles in progress, try again later");
+			return new ResponseEntity<>(mapper.writeValueAsString(job), HttpStatus.SERVICE_UNAVAILABLE);
+		}catch(IllegalStateException e){
+			job.setStatus(ProfileCreationServiceImpl.REJECTED);
+			job.setError(e.getMessage());
+			return new ResponseEntity<>(mapper.writeValueAsString(job), HttpStatus.CONFLICT);
+		}
+		return new ResponseEntity<>(mapper.writeValueAsString(job), HttpStatus.ACCEPTED);
+	}
+
+	@RequestMapping(value="/createProfileStatus", method=RequestMethod.GET,produces = "application/json")
+	public ResponseEntity<String> getCreateProfileStatus(@RequestParam(name="jobId") String jobId) throws JsonProcessingException{
+		ProfileJobResponse job = profileCreationService.getJob(jobId);
+		if(job==null) return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		return new ResponseEntity<>(new ObjectMapper().writeValueAsString(job), HttpStatus.OK);
+	}
 	
 	@RequestMapping(value="/getAllocation", method=RequestMethod.GET,produces = "application/json")
 	public @ResponseBody String getAllocation(@RequestParam(name="userId") String userId) throws JsonProcessingException{
@@ -186,11 +195,6 @@ public class BlackLittermanController {
 		str = responseMapper.writeValueAsString(response);
 		return str;
 	}
-	public Map<String,Portfolio> createPortfolio(InvestorProfile profile,int investment,Date date,String userId) throws Exception{
-		System.out.println("Started creating portfolio for client: "+userId+" For Date: "+date );
-		return portfolioService.buildPortfolio(profile,userId,false,date,investment);
-	}
-	
 	@RequestMapping(value="/getPortfolioCid", method=RequestMethod.GET,produces = "application/json")
 	public @ResponseBody String getPortfolioForClientIdAsPerAmount(@RequestParam(name="userId") String userId){
 		String str = "No Data To Display";
@@ -212,7 +216,7 @@ public class BlackLittermanController {
 			for(Allocation allocation:allocationList){
 				if(allocation.getCostPrice()==0d || allocation.getIsActive().equals("N"))continue;
 				String ticker = allocation.getFund().getTicker()+"("+(allocation.getType().substring(0,1))+")";
-				double latestPrice = portfolioRepository.getIndexPriceForGivenDate(allocation.getFund().getTicker(), cal.getTime());
+				double latestPrice = priceCacheService.getIndexPriceForGivenDate(allocation.getFund().getTicker(), cal.getTime());
 				totalValue += allocation.getQuantity()*latestPrice;
 				if(dataMap.containsKey(ticker)){
 					dataMap.put(ticker, dataMap.get(ticker)+allocation.getQuantity()*latestPrice);
@@ -369,7 +373,7 @@ public class BlackLittermanController {
 					Calendar cal = Calendar.getInstance();
 			 		cal.setTime(allocation.getTransactionDate());
 			 		cal = trimTime(cal);
-					double priceOnDate = portfolioRepository.getIndexPriceForGivenDate(allocation.getFund().getTicker(), cal.getTime());
+					double priceOnDate = priceCacheService.getIndexPriceForGivenDate(allocation.getFund().getTicker(), cal.getTime());
 					allocation.setCostPrice(priceOnDate);
 					totalValue += allocation.getQuantity()*priceOnDate;
 				}
@@ -1,29 +1,22 @@
 package com.hackovation.hybo.Controllers;
 
-import static com.hack17.hybo.util.DateTimeUtil.getDatedd_MMM_yyyy;
-
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.text.DecimalFormat;
+import java.net.URISyntaxException;
+import java.net.URL;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Calendar;
-import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.stream.Stream;
 
 import javax.transaction.Transactional;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.util.StopWatch;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.CrossOrigin;
@@ -36,7 +29,6 @@ import org.springframework.web.bind.annotation.RestController;
 import com.hack17.hybo.domain.CurrentDate;
 import com.hack17.hybo.domain.Fund;
 import com.hack17.hybo.domain.IncomeTaxSlab;
-import com.hack17.hybo.domain.IndexPrice;
 import com.hack17.hybo.domain.MarketStatus;
 import com.hack17.hybo.domain.MarketWeight;
 import com.hack17.hybo.domain.Portfolio;
@@ -44,6 +36,11 @@ import com.hack17.hybo.repository.IncomeTaxSlabRepository;
 import com.hack17.hybo.repository.PortfolioRepository;
 import com.hack17.hybo.repository.ReferenceDataRepository;
 import com.hackovation.hybo.Util.HyboUtil;
+import com.hackovation.hybo.rebalance.PricesAdvancedEvent;
+import com.hackovation.hybo.services.AllocationTableService;
+import com.hackovation.hybo.services.CovarianceService;
+import com.hackovation.hybo.services.PriceCacheService;
+import com.hackovation.hybo.services.PriceIngestionService;
 
 @RestController
 @RequestMapping(value="/process")
@@ -61,6 +58,21 @@ public class PutDataController {
 	@Autowired
 	IncomeTaxSlabRepository incomeTaxSlabRepo;
 	
+	@Autowired
+	PriceCacheService priceCacheService;
+	
+	@Autowired
+	CovarianceService covarianceService;
+	
+	@Autowired
+	AllocationTableService allocationTableService;
+	
+	@Autowired
+	PriceIngestionService priceIngestionService;
+	
+	@Autowired
+	ApplicationEventPublisher eventPublisher;
+	
 	@RequestMapping(method=RequestMethod.GET,value="/incometaxslabs")
 	public void insertIncomeTaxSlabs() {
 		System.out.println("Started processing historical data");
@@ -136,24 +148,12 @@ public class PutDataController {
 		System.out.println("Started processing historical data");
 		StopWatch stopWatch = new StopWatch("Historical Data Persistence");
 		stopWatch.start();
-		File priceDir = new File("./data/prices");
-		for(File priceFile : priceDir.listFiles()){
-			String fileName = priceFile.getName();
-			String etf = fileName.substring(0, fileName.indexOf("."));
-			System.out.println(etf);
-			try(Stream<String> fileLines = Files.lines(Paths.get(priceFile.toURI()))){
-				fileLines.forEach(line->{
-					String[] lineData = line.split(",");
-					if(lineData.length !=6)
-						return;
-					if(lineData[0].contains("Date"))
-						return;
-					refDataRepo.createPrice(etf.toUpperCase(), Double.parseDouble(lineData[4]), getDatedd_MMM_yyyy(lineData[0]));
-				});
-			} catch (IOException e) {
-				System.out.println(e.getMessage());// TODO Auto-generated catch block
-			}
-		}
+		priceIngestionService.ingestSecurityPrices(new File("./data/prices"));
+		HyboUtil.afterCommit(()->{
+			priceCacheService.invalidate();
+			covarianceService.invalidate();
+		});
+		publishPricesAdvanced();
 		stopWatch.stop();
 		System.out.println(stopWatch.shortSummary());
 	}
@@ -164,6 +164,11 @@ public class PutDataController {
 		StopWatch stopWatch = new StopWatch("Historical Data Persistence");
 		stopWatch.start();
 		processFiles();
+		HyboUtil.afterCommit(()->{
+			priceCacheService.invalidate();
+			covarianceService.invalidate();
+		});
+		publishPricesAdvanced();
 		stopWatch.stop();
 		System.out.println(stopWatch.shortSummary());
 	}
@@ -173,6 +178,7 @@ public class PutDataController {
 		StopWatch stopWatch = new StopWatch("Market Cap Persistence");
 		stopWatch.start();
 		processMarketCap();
+		HyboUtil.afterCommit(()->allocationTableService.invalidate());
 		stopWatch.stop();
 		System.out.println(stopWatch.shortSummary());
 	}
@@ -205,6 +211,12 @@ public class PutDataController {
 		cal = HyboUtil.trimTime(cal);
 		date.setDate(cal.getTime());
 		portfolioRepository.persist(date);
+		try{
+			allocationTableService.precompute(cal.getTime());
+		}catch(RuntimeException e){
+			e.printStackTrace();
+		}
+		eventPublisher.publishEvent(new PricesAdvancedEvent(this, cal.getTime()));
 		stopWatch.stop();
 		System.out.println(stopWatch.shortSummary());
 	}
@@ -229,34 +241,40 @@ public class PutDataController {
 		stopWatch.stop();
 		System.out.println(stopWatch.shortSummary());
 	}	
+	private void publishPricesAdvanced(){
+		CurrentDate existingDate = (CurrentDate)portfolioRepository.getEntity(1, CurrentDate.class);
+		if(existingDate!=null) eventPublisher.publishEvent(new PricesAdvancedEvent(this, existingDate.getDate()));
+	}
 	public void processFiles(){
-		processFileAndPushInDatabase("CRSP_US_Large_Cap_Historical_Rates.csv","CRSPTM1");
-		processFileAndPushInDatabase("CRSP_US_Mid_Cap_Historical_Rates.csv","CRSPLC1");
-		processFileAndPushInDatabase("CRSP_US_Small_Cap_Historical_Rates.csv","CRSPMI1");
-		processFileAndPushInDatabase("CRSP_US_Total_Market_Historical_Rates.csv","CRSPSC1");
-		processFileAndPushInDatabaseOverloaded("shv_Historical_Rates.csv","SHV");
-		processFileAndPushInDatabaseOverloaded("lqd_Historical_Rates.csv","LQD");
-		processFileAndPushInDatabaseOverloaded("vti.csv","VTI");
-		processFileAndPushInDatabaseOverloaded("vtv.csv","VTV");
-		processFileAndPushInDatabaseOverloaded("voe.csv","VOE");
-		processFileAndPushInDatabaseOverloaded("vbr.csv","VBR");
-		processFileAndPushInDatabaseOverloaded("iemg.csv","IEMG");
-		processFileAndPushInDatabaseOverloaded("mub.csv","MUB");
-		processFileAndPushInDatabaseOverloaded("schb.csv","SCHB");
-		processFileAndPushInDatabaseOverloaded("schd.csv","SCHD");
-		processFileAndPushInDatabaseOverloaded("schf.csv","SCHF");
-		processFileAndPushInDatabaseOverloaded("schp.csv","SCHP");
-		processFileAndPushInDatabaseOverloaded("tfi.csv","TFI");
-		processFileAndPushInDatabaseOverloaded("vde.csv","VDE");
-		processFileAndPushInDatabaseOverloaded("vea.csv","VEA");
-		processFileAndPushInDatabaseOverloaded("vig.csv","VIG");
-		processFileAndPushInDatabaseOverloaded("vtip.csv","VTIP");
-		processFileAndPushInDatabaseOverloaded("vwo.csv","VWO");
-		processFileAndPushInDatabaseOverloaded("xle.csv","XLE");
-		processFileAndPushInDatabaseOverloaded("ive.csv","IVE");
-		processFileAndPushInDatabaseOverloaded("iwn.csv","IWN");
-		processFileAndPushInDatabaseOverloaded("iws.csv","IWS");
-		processFileAndPushInDatabaseOverloaded("vcit.csv","VCIT");
+		Map<File,String> indexPerFile = new LinkedHashMap<>();
+		addResource(indexPerFile, "CRSP_US_Large_Cap_Historical_Rates.csv", "CRSPTM1");
+		addResource(indexPerFile, "CRSP_US_Mid_Cap_Historical_Rates.csv", "CRSPLC1");
+		addResource(indexPerFile, "CRSP_US_Small_Cap_Historical_Rates.csv", "CRSPMI1");
+		addResource(indexPerFile, "CRSP_US_Total_Market_Historical_Rates.csv", "CRSPSC1");
+		addResource(indexPerFile, "shv_Historical_Rates.csv", "SHV");
+		addResource(indexPerFile, "lqd_Historical_Rates.csv", "LQD");
+		addResource(indexPerFile, "vti.csv", "VTI");
+		addResource(indexPerFile, "vtv.csv", "VTV");
+		addResource(indexPerFile, "voe.csv", "VOE");
+		addResource(indexPerFile, "vbr.csv", "VBR");
+		addResource(indexPerFile, "iemg.csv", "IEMG");
+		addResource(indexPerFile, "mub.csv", "MUB");
+		addResource(indexPerFile, "schb.csv", "SCHB");
+		addResource(indexPerFile, "schd.csv", "SCHD");
+		addResource(indexPerFile, "schf.csv", "SCHF");
+		addResource(indexPerFile, "schp.csv", "SCHP");
+		addResource(indexPerFile, "tfi.csv", "TFI");
+		addResource(indexPerFile, "vde.csv", "VDE");
+		addResource(indexPerFile, "vea.csv", "VEA");
+		addResource(indexPerFile, "vig.csv", "VIG");
+		addResource(indexPerFile, "vtip.csv", "VTIP");
+		addResource(indexPerFile, "vwo.csv", "VWO");
+		addResource(indexPerFile, "xle.csv", "XLE");
+		addResource(indexPerFile, "ive.csv", "IVE");
+		addResource(indexPerFile, "iwn.csv", "IWN");
+		addResource(indexPerFile, "iws.csv", "IWS");
+		addResource(indexPerFile, "vcit.csv", "VCIT");
+		priceIngestionService.ingestIndexPrices(indexPerFile);
 	}
 	public void processMarketCap(){
 		List<Integer> yearList = Arrays.asList(2000,2001,2002,2003,2004,2005,2006,2007,2008,2009,2010,2011,2012,2013,2014,2015,2016,2017);
@@ -319,76 +337,16 @@ public class PutDataController {
 		refDataRepo.createCorrelatedFund("VBR", "IWN");
 		refDataRepo.createCorrelatedFund("LQD", "VCIT");
 	}
-	public void processFileAndPushInDatabase(String fileName,String index){
-		try{
-			SimpleDateFormat sdf = new SimpleDateFormat("MMM dd, yyyy");
-			DecimalFormat df = new DecimalFormat("##########,###################.#############");
-			ClassLoader cl = getClass().getClassLoader();
-			File file = new File(cl.getResource(fileName).getFile());
-			String l = "D:\\MATERIAL\\Hackathon\\Hackovation 2.0\\selected\\hybo\\Workspace\\hybo\\target\\classes\\";
-			BufferedReader f = new BufferedReader(new FileReader(l+fileName));
-			String ln=null;
-			f.readLine();
-			while((ln=f.readLine())!=null){
-				String[] data = ln.split("\",\"");
-				Date date = sdf.parse(removeQuote(data[0]));
-				double price = df.parse(removeQuote(data[1])).doubleValue();
-				double open = df.parse(removeQuote(data[2])).doubleValue();
-				double high = df.parse(removeQuote(data[3])).doubleValue();
-				double low = df.parse(removeQuote(data[4])).doubleValue();
-				int volumn = Integer.valueOf(removeQuote(data[5]));
-				double change = df.parse(removeQuote(data[6])).doubleValue();
-				IndexPrice indexPrice = new IndexPrice();
-				indexPrice.setDate(date);
-				indexPrice.setChange(change);
-				indexPrice.setHigh(high);
-				indexPrice.setLow(low);
-				indexPrice.setOpen(open);
-				indexPrice.setPrice(price);
-				indexPrice.setVolumn(volumn);
-				indexPrice.setIndex(index);
-				portfolioRepository.persist(indexPrice);
-			}
-		}catch(Exception e){
-			e.printStackTrace();
+	private void addResource(Map<File,String> indexPerFile,String fileName,String index){
+		URL resource = getClass().getClassLoader().getResource(fileName);
+		if(resource==null){
+			System.out.println("Missing price file "+fileName);
+			return;
 		}
-	}
-	public void processFileAndPushInDatabaseOverloaded(String fileName,String index){
 		try{
-			SimpleDateFormat sdf = new SimpleDateFormat("dd-MMM-yy");
-			DecimalFormat df = new DecimalFormat("##########,###################.#############");
-			ClassLoader cl = getClass().getClassLoader();
-			File file = new File(cl.getResource(fileName).getFile());
-			String l = "D:\\MATERIAL\\Hackathon\\Hackovation 2.0\\selected\\hybo\\Workspace\\hybo\\target\\classes\\";
-			BufferedReader f = new BufferedReader(new FileReader(l+fileName));
-			String ln=null;
-			f.readLine();
-			while((ln=f.readLine())!=null){
-				String[] data = ln.split(",");
-				Date date = sdf.parse(removeQuote(data[0]));
-				double price = df.parse(removeQuote(data[4])).doubleValue();
-				double open = df.parse(removeQuote(data[1])).doubleValue();
-				double high = df.parse(removeQuote(data[2])).doubleValue();
-				double low = df.parse(removeQuote(data[3])).doubleValue();
-				int volumn = Integer.valueOf(removeQuote(data[5]));
-			//	double change = df.parse(removeQuote(data[6])).doubleValue();
-				IndexPrice indexPrice = new IndexPrice();
-				indexPrice.setDate(date);
-				indexPrice.setChange(0);
-				indexPrice.setHigh(high);
-				indexPrice.setLow(low);
-				indexPrice.setOpen(open);
-				indexPrice.setPrice(price);
-				indexPrice.setVolumn(volumn);
-				indexPrice.setIndex(index);
-				portfolioRepository.persist(indexPrice);
-			}
-		}catch(Exception e){
+			indexPerFile.put(new File(resource.toURI()), index);
+		}catch(URISyntaxException e){
 			e.printStackTrace();
 		}
 	}
-	
-	private String removeQuote(String s){
-		return s.replaceAll("\"","");
-	}
 }
@@ -3,6 +3,7 @@ package com.hackovation.hybo.Controllers;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
@@ -26,14 +27,23 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.hack17.hybo.domain.Allocation;
 import com.hack17.hybo.domain.IndexPrice;
+import com.hack17.hybo.domain.MarketStatus;
 import com.hack17.hybo.domain.One;
 import com.hack17.hybo.domain.Portfolio;
 import com.hack17.hybo.domain.Two;
 import com.hack17.hybo.domain.UserClientMapping;
 import com.hack17.hybo.repository.PortfolioRepository;
+import com.hackovation.hybo.AllocationType;
+import com.hackovation.hybo.Util.HyboUtil;
+import com.hackovation.hybo.Util.PriceHistory;
+import com.hackovation.hybo.Util.PricePanel;
 import com.hackovation.hybo.bean.ProfileResponse;
 import com.hackovation.hybo.rebalance.Rebalance;
+import com.hackovation.hybo.rebalance.RebalanceRules;
+import com.hackovation.hybo.rebalance.RuleBacktester;
 import com.hackovation.hybo.services.PortfolioService;
+import com.hackovation.hybo.services.CovarianceService;
+import com.hackovation.hybo.services.PriceCacheService;
 
 @RestController
 @RequestMapping(value="/test")
@@ -45,9 +55,16 @@ public class TestController {
 	PortfolioRepository portfolioRepository;
 	@Autowired
 	PortfolioService portfolioService;
+	@Autowired
+	PriceCacheService priceCacheService;
+	
+	@Autowired
+	CovarianceService covarianceService;
 	
 	@Autowired
 	Rebalance rebalance;
+	@Autowired
+	RuleBacktester ruleBacktester;
 	
 	SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd");
 	NumberFormat numFormat = new DecimalFormat("#########.##");
@@ -97,7 +114,7 @@ public class TestController {
 	 			String allocationStr = "";
 				for(Allocation allocation:allocationList){
 					if(allocation.getCostPrice()==0d || allocation.getIsActive().equals("N"))continue;
-					double latestPrice = portfolioRepository.getIndexPriceForGivenDate(allocation.getFund().getTicker(), cal.getTime());
+					double latestPrice = priceCacheService.getIndexPriceForGivenDate(allocation.getFund().getTicker(), cal.getTime());
 					ProfileResponse response = new ProfileResponse();
 				//	System.out.println("Old Value "+allocation.getFund().getTicker()+","+allocation.getCostPrice());
 					response.setClientId(Integer.valueOf(clientId));
@@ -119,6 +136,50 @@ public class TestController {
 		}
 	}
 	
+	/*
+	 * Replays the rebalancing rules over all cached prices for random portfolios, once with the rule of the
+	 * scheduled rebalancer and once with the asset class tiered table, instead of stepping the cron.
+	 */
+	@RequestMapping(value="/backtest", method=RequestMethod.GET)
+	public void backtest(@RequestParam(name="portfolios",defaultValue="1000") int portfolios,
+			@RequestParam(name="seed",defaultValue="1") long seed){
+		Map<String,AllocationType> types = HyboUtil.getAllocationTypeMap();
+		List<String> tickers = new ArrayList<>();
+		List<PriceHistory> histories = new ArrayList<>();
+		for(String ticker:types.keySet()){
+			PriceHistory history = priceCacheService.getPriceHistory(ticker);
+			if(history==null) continue;
+			tickers.add(ticker);
+			histories.add(history);
+		}
+		PricePanel panel = PricePanel.align(tickers, histories);
+		if(panel.size()==0){
+			System.out.println("No common prices for "+tickers);
+			return;
+		}
+		RuleBacktester.Book book = new RuleBacktester.Book(panel, types);
+		book.addRandom(portfolios, 100000, seed);
+		MarketStatus marketStatus = (MarketStatus)portfolioRepository.getEntity(1, MarketStatus.class);
+
+		System.out.println("Backtest of "+tickers+" from "+HyboUtil.fromEpochDay(panel.getEpochDay(0))+" to "
+				+HyboUtil.fromEpochDay(panel.getEpochDay(panel.size()-1)));
+		report("Scheduled rule", ruleBacktester.run(book, marketStatus));
+		report("Tiered table", ruleBacktester.run(book, marketStatus, RebalanceRules.TIERED_TABLE, RebalanceRules.DRIFT_BAND, 1));
+	}
+
+	private void report(String name,RuleBacktester.Result result){
+		double growth = 0.0;
+		double turnover = 0.0;
+		int trades = 0;
+		for(int p=0;p<result.size();p++){
+			growth += result.getValue(p, result.getDays()-1)/result.getValue(p, 0);
+			turnover += result.getTurnover(p);
+			trades += result.getTrades(p);
+		}
+		System.out.println(name+": mean growth "+numFormat.format(growth/result.size())+", mean turnover "
+				+numFormat.format(turnover/result.size())+", mean trades "+numFormat.format((double)trades/result.size()));
+	}
+
 	@Transactional
 	private int getClientId(String userId){
 		Object object = portfolioRepository.getEntityForAny(UserClientMapping.class,userId);
@@ -158,6 +219,10 @@ public class TestController {
 				portfolioRepository.persist(index);
 			}
 		}
+		HyboUtil.afterCommit(()->{
+			priceCacheService.invalidate();
+			covarianceService.invalidate();
+		});
 	}
 	
 	@RequestMapping(value="/reduce30", method=RequestMethod.GET)
@@ -200,6 +265,10 @@ public class TestController {
 				portfolioRepository.persist(index);
 			}
 		}
+		HyboUtil.afterCommit(()->{
+			priceCacheService.invalidate();
+			covarianceService.invalidate();
+		});
 	}
 	@RequestMapping(value="/reset", method=RequestMethod.GET)
 	@Transactional
@@ -241,7 +310,10 @@ public class TestController {
 				portfolioRepository.persist(index);
 			}
 		}
-		
+		HyboUtil.afterCommit(()->{
+			priceCacheService.invalidate();
+			covarianceService.invalidate();
+		});
 	}
 	
 }
@@ -0,0 +1,161 @@
+package com.hackovation.hybo.ServiceImpl;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.algo.finance.portfolio.PrimitiveBlackLittermanModel;
+import org.algo.matrix.BasicMatrix;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.hack17.hybo.domain.MarketWeight;
+import com.hack17.hybo.domain.RiskTolerance;
+import com.hack17.hybo.repository.PortfolioRepository;
+import com.hackovation.hybo.Util.HyboUtil;
+import com.hackovation.hybo.services.AllocationTableService;
+import com.hackovation.hybo.services.CovarianceService;
+
+/*
+ * The only inputs of the Black-Litterman allocation are the date (covariance matrix and market weights of
+ * its year) and the view, which depends on the risk tolerance alone. The solved weights are therefore kept
+ * per (day, risk tolerance, view return) and every profile with the same risk tolerance on that day gets
+ * the same row. A row remembers the covariance matrix it was solved with and is solved again when the
+ * covariance cache hands out a different one, which happens when prices were reloaded.
+ */
+@Service
+public class AllocationTableServiceImpl implements AllocationTableService{
+
+	static final String[] ASSET_TICKERS = {"CRSPTM1","CRSPLC1","CRSPMI1","CRSPSC1","SHV","LQD"};
+	static final String[] MARKET_WEIGHT_ETFS = {"VTI","VTV","VOE","VBR","SHV","LQD"};
+	static final double RISK_AVERSION = 2.5d;
+
+	@Autowired
+	PortfolioRepository portfolioRepository;
+
+	@Autowired
+	CovarianceService covarianceService;
+
+	// Expected return of the view, its confidence is balanced against the covariances
+	private final double viewReturn;
+	private final Map<String,AllocationRow> rows;
+
+	static final class AllocationRow{
+		final BasicMatrix covarianceMatrix;
+		final double[] weights;
+
+		AllocationRow(BasicMatrix covarianceMatrix,double[] weights){
+			this.covarianceMatrix = covarianceMatrix;
+			this.weights = weights;
+		}
+	}
+
+	@Autowired
+	public AllocationTableServiceImpl(@Value("${hybo.allocation.viewReturn:0.26}") double viewReturn,
+			@Value("${hybo.allocation.cacheSize:256}") int cacheSize){
+		this.viewReturn = viewReturn;
+		rows = new LinkedHashMap<String,AllocationRow>(16, 0.75f, true){
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String,AllocationRow> eldest){
+				return size()>cacheSize;
+			}
+		};
+	}
+
+	@Override
+	public double[] getAssetWeights(Date date,RiskTolerance riskTolerance){
+		BasicMatrix covarianceMatrix = covarianceService.getCovarianceMatrix(ASSET_TICKERS, date);
+		String key = getKey(date, riskTolerance);
+		AllocationRow row;
+		synchronized(rows){
+			row = rows.get(key);
+		}
+		if(row==null || row.covarianceMatrix!=covarianceMatrix){
+			row = solve(date, riskTolerance, covarianceMatrix);
+			if(row.weights==null) throw new IllegalStateException("No Black-Litterman weights for "+riskTolerance+" on "+date);
+			synchronized(rows){
+				rows.put(key, row);
+			}
+		}
+		return row.weights.clone();
+	}
+
+	@Override
+	public void precompute(Date date){
+		BasicMatrix covarianceMatrix = covarianceService.getCovarianceMatrix(ASSET_TICKERS, date);
+		double[] marketWeight = getMarketWeight(date);
+		for(RiskTolerance riskTolerance:RiskTolerance.values()){
+			AllocationRow row = solve(riskTolerance, covarianceMatrix, marketWeight);
+			if(row.weights==null) continue;
+			synchronized(rows){
+				rows.put(getKey(date, riskTolerance), row);
+			}
+		}
+	}
+
+	@Override
+	public String[] getAssetTickers(){
+		return ASSET_TICKERS.clone();
+	}
+
+	@Override
+	public void invalidate(){
+		synchronized(rows){
+			rows.clear();
+		}
+	}
+
+	private String getKey(Date date,RiskTolerance riskTolerance){
+		return HyboUtil.toEpochDay(date)+"/"+riskTolerance+"/"+viewReturn;
+	}
+
+	private AllocationRow solve(Date date,RiskTolerance riskTolerance,BasicMatrix covarianceMatrix){
+		return solve(riskTolerance, covarianceMatrix, getMarketWeight(date));
+	}
+
+	/*
+	 * Solved on doubles, same weights as BlackLittermanModel/MarketEquilibrium to within 1e-12.
+	 */
+	private AllocationRow solve(RiskTolerance riskTolerance,BasicMatrix covarianceMatrix,double[] marketWeight){
+		PrimitiveBlackLittermanModel bl = new PrimitiveBlackLittermanModel(ASSET_TICKERS, covarianceMatrix, RISK_AVERSION, marketWeight);
+		double[] viewWeights = getViewWeights(riskTolerance);
+		if(viewWeights!=null) bl.addViewWithBalancedConfidence(viewWeights, viewReturn);
+		double[] weights = bl.getAssetWeights();
+		System.out.println("Black-Litterman weights for "+riskTolerance+": "+Arrays.toString(weights));
+		return new AllocationRow(covarianceMatrix, weights);
+	}
+
+	/*
+	 * Null when the risk tolerance has no view, the weights are then the market portfolio. LOW used to state
+	 * an all-zero view, which does not change the result either.
+	 */
+	private double[] getViewWeights(RiskTolerance riskTolerance){
+		if(riskTolerance.equals(RiskTolerance.HIGH) || riskTolerance.equals(RiskTolerance.MODERATE)){
+			return new double[]{0.9,0.9,0.9,0.9,0,0};
+		}
+		return null;
+	}
+
+	private double[] getMarketWeight(Date date){
+		double[] marketWeight = new double[MARKET_WEIGHT_ETFS.length];
+		double[] totalValue = new double[MARKET_WEIGHT_ETFS.length];
+		Calendar cal = Calendar.getInstance();
+		cal.setTime(date);
+		List<MarketWeight> marketCap = portfolioRepository.getMarketWeight(cal.get(Calendar.YEAR));
+		for(int i=0;i<MARKET_WEIGHT_ETFS.length;i++){
+			for(MarketWeight cap:marketCap){
+				if(cap.getEtf().equals(MARKET_WEIGHT_ETFS[i])) totalValue[i] = cap.getWeight();
+			}
+		}
+		double total = 0;
+		for(double d:totalValue) total += d;
+		for(int i=0;i<totalValue.length;i++) marketWeight[i] = totalValue[i]/total;
+		return marketWeight;
+	}
+}
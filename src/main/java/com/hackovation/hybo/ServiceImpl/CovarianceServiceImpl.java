@@ -0,0 +1,337 @@
+package com.hackovation.hybo.ServiceImpl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.algo.finance.FinanceUtils;
+import org.algo.matrix.BasicMatrix;
+import org.algo.matrix.BasicMatrix.Builder;
+import org.algo.matrix.PrimitiveMatrix;
+import org.algo.series.CalendarDateSeries;
+import org.algo.type.CalendarDate;
+import org.algo.type.CalendarDateUnit;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.hack17.hybo.domain.IndexPrice;
+import com.hack17.hybo.repository.PortfolioRepository;
+import com.hackovation.hybo.Util.HyboUtil;
+import com.hackovation.hybo.Util.PriceHistory;
+import com.hackovation.hybo.services.CovarianceService;
+import com.hackovation.hybo.services.PriceCacheService;
+
+/*
+ * Covariance matrices are kept per (tickers, day) in a bounded LRU map. They are computed from the price
+ * cache arrays with running sums, so a request for the day after a cached day only adds the new returns to a
+ * copy of that day's sums instead of going over the whole history again. Like FinanceUtils.makeCovarianceMatrix,
+ * which remains the path for tickers that are not in the price cache, the returns are taken between the
+ * subsequent days that all tickers have a price for.
+ *
+ * Each matrix is computed once. The first request for a key that is not cached computes it, concurrent
+ * requests for the same key wait for that result instead of computing it again.
+ */
+@Service
+public class CovarianceServiceImpl implements CovarianceService{
+
+	private static final double TO_YEAR_FACTOR = (double)CalendarDateUnit.YEAR.size()/(double)CalendarDateUnit.DAY.size();
+
+	@Autowired
+	PriceCacheService priceCacheService;
+
+	@Autowired
+	PortfolioRepository portfolioRepository;
+
+	private final Map<String,CovarianceEntry> entries;
+	// Keys being computed, removed once the entry is in the map
+	private final Map<String,CompletableFuture<CovarianceEntry>> computing = new ConcurrentHashMap<>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong incremental = new AtomicLong();
+
+	/*
+	 * Sums over the log returns x of every series between subsequent common days, shifted by the series' first
+	 * return to keep the sums small.
+	 */
+	static final class CovarianceEntry{
+		// Prices the entry was computed from, null when it came from the database
+		final PriceHistory[] histories;
+		// Index in every history of the last common day added
+		final int[] last;
+		final double[] shift;
+		final double[] sums;
+		// Sum of x[i]*x[j], only i<=j
+		final double[][] cross;
+		int n;
+		BasicMatrix matrix;
+
+		CovarianceEntry(PriceHistory[] histories,int[] first){
+			int size = histories.length;
+			this.histories = histories;
+			last = first.clone();
+			shift = new double[size];
+			sums = new double[size];
+			cross = new double[size][size];
+		}
+
+		CovarianceEntry(BasicMatrix matrix){
+			histories = null;
+			last = null;
+			shift = null;
+			sums = null;
+			cross = null;
+			this.matrix = matrix;
+		}
+
+		boolean isBuiltOn(PriceHistory[] current){
+			if(histories==null) return current==null;
+			if(current==null) return false;
+			for(int i=0;i<histories.length;i++) if(histories[i]!=current[i]) return false;
+			return true;
+		}
+
+		/*
+		 * Adds the returns up to the last common day on or before the day.
+		 */
+		void extend(long day){
+			int size = last.length;
+			double[] x = new double[size];
+			int[] next;
+			while((next = nextCommonDay(histories, last, day))!=null){
+				for(int i=0;i<size;i++){
+					x[i] = Math.log(histories[i].getClose(next[i])/histories[i].getClose(last[i]));
+					if(n==0) shift[i] = x[i];
+					x[i] -= shift[i];
+					sums[i] += x[i];
+				}
+				for(int i=0;i<size;i++){
+					for(int j=i;j<size;j++) cross[i][j] += x[i]*x[j];
+				}
+				System.arraycopy(next, 0, last, 0, size);
+				n++;
+			}
+		}
+
+		CovarianceEntry copy(){
+			int size = last.length;
+			CovarianceEntry copy = new CovarianceEntry(histories, last);
+			System.arraycopy(shift, 0, copy.shift, 0, size);
+			System.arraycopy(sums, 0, copy.sums, 0, size);
+			for(int i=0;i<size;i++) System.arraycopy(cross[i], 0, copy.cross[i], 0, size);
+			copy.n = n;
+			return copy;
+		}
+
+		void buildMatrix(){
+			int size = last.length;
+			Builder<PrimitiveMatrix> builder = PrimitiveMatrix.FACTORY.getBuilder(size, size);
+			for(int j=0;j<size;j++){
+				for(int i=0;i<=j;i++){
+					double covariance = TO_YEAR_FACTOR*(cross[i][j]-sums[i]*sums[j]/n)/(n-1);
+					builder.set(i, j, covariance);
+					builder.set(j, i, covariance);
+				}
+			}
+			matrix = builder.build();
+		}
+	}
+
+	@Autowired
+	public CovarianceServiceImpl(@Value("${hybo.covariance.cacheSize:64}") int cacheSize){
+		entries = new LinkedHashMap<String,CovarianceEntry>(16, 0.75f, true){
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String,CovarianceEntry> eldest){
+				return size()>cacheSize;
+			}
+		};
+	}
+
+	@Override
+	public BasicMatrix getCovarianceMatrix(String[] tickers,Date date){
+		long day = HyboUtil.toEpochDay(date);
+		PriceHistory[] histories = getPriceHistories(tickers);
+		String key = getKey(tickers, day);
+		while(true){
+			CovarianceEntry entry = getEntry(key);
+			if(entry!=null && entry.isBuiltOn(histories)){
+				hits.incrementAndGet();
+				return entry.matrix;
+			}
+			CompletableFuture<CovarianceEntry> computation = new CompletableFuture<>();
+			CompletableFuture<CovarianceEntry> running = computing.putIfAbsent(key, computation);
+			if(running!=null){
+				entry = await(running);
+				// Computed from prices that were reloaded since, look again
+				if(!entry.isBuiltOn(histories)) continue;
+				hits.incrementAndGet();
+				return entry.matrix;
+			}
+			try{
+				// Another request may have finished the key between the lookup and putIfAbsent
+				entry = getEntry(key);
+				if(entry==null || !entry.isBuiltOn(histories)){
+					misses.incrementAndGet();
+					entry = compute(tickers, date, day, histories);
+					synchronized(entries){
+						entries.put(key, entry);
+					}
+				}
+				else hits.incrementAndGet();
+				computation.complete(entry);
+				return entry.matrix;
+			}catch(RuntimeException|Error e){
+				// Waiting requests fail the same way
+				computation.completeExceptionally(e);
+				throw e;
+			}finally{
+				computing.remove(key, computation);
+			}
+		}
+	}
+
+	private CovarianceEntry await(CompletableFuture<CovarianceEntry> running){
+		try{
+			return running.join();
+		}catch(CompletionException e){
+			if(e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+			if(e.getCause() instanceof Error) throw (Error)e.getCause();
+			throw e;
+		}
+	}
+
+	private CovarianceEntry compute(String[] tickers,Date date,long day,PriceHistory[] histories){
+		CovarianceEntry entry = null;
+		if(histories!=null){
+			CovarianceEntry previous = getEntry(getKey(tickers, day-1));
+			if(previous!=null && previous.histories!=null && previous.isBuiltOn(histories)){
+				entry = forward(previous, day);
+				if(entry!=null) incremental.incrementAndGet();
+			}
+			if(entry==null) entry = build(histories, day);
+		}
+		if(entry==null) entry = new CovarianceEntry(getCovarianceMatrixFromDatabase(tickers, date));
+		return entry;
+	}
+
+	@Override
+	public long getHitCount(){
+		return hits.get();
+	}
+
+	@Override
+	public long getMissCount(){
+		return misses.get();
+	}
+
+	@Override
+	public long getIncrementalCount(){
+		return incremental.get();
+	}
+
+	@Override
+	public void invalidate(){
+		synchronized(entries){
+			entries.clear();
+		}
+	}
+
+	private CovarianceEntry getEntry(String key){
+		synchronized(entries){
+			return entries.get(key);
+		}
+	}
+
+	private String getKey(String[] tickers,long day){
+		return String.join(",", tickers)+"@"+day;
+	}
+
+	private PriceHistory[] getPriceHistories(String[] tickers){
+		PriceHistory[] histories = new PriceHistory[tickers.length];
+		for(int i=0;i<tickers.length;i++){
+			histories[i] = priceCacheService.getPriceHistory(tickers[i]);
+			if(histories[i]==null || histories[i].size()==0) return null;
+		}
+		return histories;
+	}
+
+	/*
+	 * Index in every history of the first day after the given indices that all of them have a price for,
+	 * null when there is no such day on or before the day.
+	 */
+	static int[] nextCommonDay(PriceHistory[] histories,int[] after,long day){
+		int size = histories.length;
+		int[] next = new int[size];
+		long candidate = Long.MIN_VALUE;
+		for(int i=0;i<size;i++){
+			next[i] = after[i]+1;
+			if(next[i]>=histories[i].size()) return null;
+			candidate = Math.max(candidate, histories[i].getEpochDay(next[i]));
+		}
+		boolean common = false;
+		while(!common){
+			if(candidate>day) return null;
+			common = true;
+			for(int i=0;i<size;i++){
+				while(next[i]<histories[i].size() && histories[i].getEpochDay(next[i])<candidate) next[i]++;
+				if(next[i]==histories[i].size()) return null;
+				if(histories[i].getEpochDay(next[i])>candidate){
+					candidate = histories[i].getEpochDay(next[i]);
+					common = false;
+				}
+			}
+		}
+		return next;
+	}
+
+	private CovarianceEntry build(PriceHistory[] histories,long day){
+		int[] before = new int[histories.length];
+		Arrays.fill(before, -1);
+		int[] first = nextCommonDay(histories, before, day);
+		if(first==null) return null;
+		CovarianceEntry entry = new CovarianceEntry(histories, first);
+		entry.extend(day);
+		// Less than two returns is left to FinanceUtils
+		if(entry.n<2) return null;
+		entry.buildMatrix();
+		return entry;
+	}
+
+	/*
+	 * The first common day only depends on the series, so moving to a later day only adds returns.
+	 */
+	private CovarianceEntry forward(CovarianceEntry previous,long day){
+		CovarianceEntry entry = previous.copy();
+		entry.extend(day);
+		if(entry.n<2) return null;
+		entry.buildMatrix();
+		return entry;
+	}
+
+	private BasicMatrix getCovarianceMatrixFromDatabase(String[] tickers,Date date){
+		Collection<CalendarDateSeries<Double>> col = new ArrayList<>();
+		for(String ticker:tickers){
+			CalendarDateSeries<Double> series = new CalendarDateSeries<Double>(CalendarDateUnit.DAY).name(ticker);
+			try{
+				List<IndexPrice> indexPriceList = portfolioRepository.getIndexPrice(ticker, date);
+				for(IndexPrice indexPrice:indexPriceList){
+					series.put(new CalendarDate(indexPrice.getDate()), indexPrice.getPrice());
+				}
+			}catch(Exception e){
+				e.printStackTrace();
+			}
+			col.add(series);
+		}
+		return FinanceUtils.makeCovarianceMatrix(col);
+	}
+}
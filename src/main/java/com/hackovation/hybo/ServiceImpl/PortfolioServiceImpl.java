@@ -1,10 +1,9 @@
 package com.hackovation.hybo.ServiceImpl;
 
-import java.math.BigDecimal;
 import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
-import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -12,12 +11,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 
-import org.algo.finance.FinanceUtils;
 import org.algo.finance.data.GoogleSymbol.Data;
-import org.algo.finance.portfolio.BlackLittermanModel;
-import org.algo.finance.portfolio.MarketEquilibrium;
-import org.algo.matrix.BasicMatrix;
-import org.algo.matrix.BigMatrix;
 import org.algo.series.CalendarDateSeries;
 import org.algo.type.CalendarDate;
 import org.algo.type.CalendarDateUnit;
@@ -29,7 +23,6 @@ import com.hack17.hybo.domain.Allocation;
 import com.hack17.hybo.domain.Fund;
 import com.hack17.hybo.domain.IndexPrice;
 import com.hack17.hybo.domain.InvestorProfile;
-import com.hack17.hybo.domain.MarketWeight;
 import com.hack17.hybo.domain.Portfolio;
 import com.hack17.hybo.domain.RiskTolerance;
 import com.hack17.hybo.domain.Transaction;
@@ -40,7 +33,10 @@ import com.hackovation.hybo.AllocationType;
 import com.hackovation.hybo.CreatedBy;
 import com.hackovation.hybo.Util.HyboUtil;
 import com.hackovation.hybo.bean.ProfileRequest;
+import com.hackovation.hybo.rebalance.HoldingsIndex;
+import com.hackovation.hybo.services.AllocationTableService;
 import com.hackovation.hybo.services.PortfolioService;
+import com.hackovation.hybo.services.PriceCacheService;
 
 @Service
 @Transactional
@@ -51,10 +47,20 @@ public class PortfolioServiceImpl implements PortfolioService{
 	
 	@Autowired
 	FundRepository fundRepository;
+	
+	@Autowired
+	PriceCacheService priceCacheService;
+	
+	@Autowired
+	AllocationTableService allocationTableService;
+	
+	@Autowired
+	HoldingsIndex holdingsIndex;
 
-	Map<String,String> indexToEtfMap;
-	Map<String,String> EtfToIndexMap;
-	Map<String,AllocationType> allocationTypeMap;
+	// Read only after construction, buildPortfolio runs concurrently on the profile workers
+	final Map<String,String> indexToEtfMap = HyboUtil.getIndexToEtfMapping();
+	final Map<String,String> EtfToIndexMap = HyboUtil.getEtfToIndexMapping();
+	final Map<String,AllocationType> allocationTypeMap = HyboUtil.getAllocationTypeMap();
 	String l = "D:\\MATERIAL\\Hackathon\\Hackovation 2.0\\selected\\hybo\\Workspace\\hybo\\target\\classes\\";
 //	final static Logger logger = Logger.getLogger(PortfolioServiceImpl.class);
 	
@@ -80,47 +86,18 @@ public class PortfolioServiceImpl implements PortfolioService{
 		
 		int clientId = getClientId(userId);
 	//	logger.info("Aman");
-		EtfToIndexMap = HyboUtil.getEtfToIndexMapping();
-		indexToEtfMap = HyboUtil.getIndexToEtfMapping();
-		allocationTypeMap = HyboUtil.getAllocationTypeMap();
 		
 		
-		// Step 1. Calculate Covariance Matrix
-		System.out.println("######### Fetching Covariance Matrix "+userId);
-		BasicMatrix covarianceMatrix = getCovarianceMatrix(date);
-		System.out.println(covarianceMatrix);
-		System.out.println("######### Done Fetching Covariance Matrix "+userId);
-		System.out.println("\n\n\n\n\n");
-
-		// Step 2. Calculate Lambda (Risk Aversion Factor)
-		Double lambda = 2.5d;
-		
-		
-		String[] tickers = getAssetsTickers();
-//		double[][] marketWeight = {{0.25},{3},{0.25},{0.25}};
-		double[][] marketWeight = getMarketWeight(date);
-		BasicMatrix marketWeightMatrix =  BigMatrix.FACTORY.rows(marketWeight);
-		System.out.println("###### Creating BlackLittermanObject ( -- Market Equilibrium");
-		MarketEquilibrium marketEquilibrium = new MarketEquilibrium(tickers, covarianceMatrix, lambda);
-		BlackLittermanModel bl  = new BlackLittermanModel(marketEquilibrium, marketWeightMatrix);
-		System.out.println("\n");
-		System.out.println("###### Adding User View with balanced Confidence");
-		List<BigDecimal> weights = getMarketWeight(profile);
-		bl.addViewWithBalancedConfidence(weights, 0.26);
-		System.out.println("\n");
-		
-/*		System.out.println("--------------Asset Return Matrix---------------------");
-		System.out.println(bl.getAssetReturns());
-*/	
-		System.out.println("######Asset Weights Calculation Started "+userId);
-		BasicMatrix finalAssetWeights = bl.getAssetWeights();
-		System.out.println("###### Asset Weights "+finalAssetWeights);
+		// Black-Litterman weights of the risk tolerance, solved once per day
+		System.out.println("######Asset Weights Lookup Started "+userId);
+		double[] finalAssetWeights = allocationTableService.getAssetWeights(date, profile.getRiskTolerance());
+		System.out.println("###### Asset Weights "+Arrays.toString(finalAssetWeights));
 		System.out.println("\n");
 		LinkedHashMap<String, Double> assetClassWiseWeight = new LinkedHashMap<>();
-		long i = 0;
+		int i = 0;
 		for(String assetClass:indexToEtfMap.keySet()){
-			if(finalAssetWeights.doubleValue(i)>0)
-				assetClassWiseWeight.put(assetClass, finalAssetWeights.doubleValue(i));
+			if(finalAssetWeights[i]>0)
+				assetClassWiseWeight.put(assetClass, finalAssetWeights[i]);
 			i++;
 		}
 		Map<String,Portfolio> map = buildPortfolio(profile,investment,assetClassWiseWeight,clientId,dummy,date);
@@ -130,54 +107,6 @@ public class PortfolioServiceImpl implements PortfolioService{
 	}
 
 	
-	private List<BigDecimal> getMarketWeight(InvestorProfile profile){
-		List<BigDecimal> weights = new ArrayList<>();
-		if(profile.getRiskTolerance().equals(RiskTolerance.HIGH)){
-			weights.add(new BigDecimal(0.9));
-			weights.add(new BigDecimal(0.9));
-			weights.add(new BigDecimal(0.9));
-			weights.add(new BigDecimal(0.9));
-			weights.add(new BigDecimal(0));
-			weights.add(new BigDecimal(0));
-		}
-		else if(profile.getRiskTolerance().equals(RiskTolerance.MODERATE)){
-				
-			
-				weights.add(new BigDecimal(0.9));
-				weights.add(new BigDecimal(0.9));
-				weights.add(new BigDecimal(0.9));
-				weights.add(new BigDecimal(0.9));
-				weights.add(new BigDecimal(0));
-				weights.add(new BigDecimal(0));
-		}
-		else if(profile.getRiskTolerance().equals(RiskTolerance.LOW)){
-				weights.add(new BigDecimal(0));
-				weights.add(new BigDecimal(0));
-				weights.add(new BigDecimal(0));
-				weights.add(new BigDecimal(0));
-				weights.add(new BigDecimal(0));
-				weights.add(new BigDecimal(0));
-		}
-			
-		return weights;
-	}
-	
-	private LinkedHashMap<String,String> getassetETFMap(){
-		LinkedHashMap<String,String> assetETFMap = new LinkedHashMap<>();
-		assetETFMap.put("CRSPTM1","VTI");
-		assetETFMap.put("CRSPLC1","VTV");
-		assetETFMap.put("CRSPMI1","VOE");
-		assetETFMap.put("CRSPSC1","VBR");
-		assetETFMap.put("SHV","SHV");
-		assetETFMap.put("LQD","LQD");
-		return assetETFMap;
-	}
-	private String[] getAssetsTickers(){
-		LinkedHashMap<String,String> assetETFMap = getassetETFMap();
-		String[] arr = new String[assetETFMap.keySet().size()];
-		assetETFMap.keySet().toArray(arr);
-		return arr;
-	}
 	private String[] getAssetsTickersOld(){
 		String[] tickers = new String[5];
 		tickers[0] = "AOR";
@@ -189,54 +118,6 @@ public class PortfolioServiceImpl implements PortfolioService{
 		tickers[4] = "LQD";
 		return tickers;
 	}
-	double[][] getMarketWeight(Date date){
-		double[][] marketWeight = new double[6][1];
-		double[] totalValue = new double[6]; 
-		List<MarketWeight> marketCap = portfolioRepository.getMarketWeight(date.getYear()+1900);
-		ArrayList<String> files = new ArrayList<>(6);
-		files.add("VTI");
-		files.add("VTV");
-		files.add("VOE");
-		files.add("VBR");
-		files.add("SHV");
-		files.add("LQD");
-		int i = 0;
-		for(String etf:files){
-			for(MarketWeight cap:marketCap){
-				if(cap.getEtf().equals(etf)){
-					BigDecimal bd = new BigDecimal(cap.getWeight());
-					totalValue[i] = bd.doubleValue();
-				}
-			}
-			i++;
-		}
-		double total=0;
-		System.out.println("####### Started Printing market cap #####");
-		for(double d:totalValue){
-			System.out.println(d);
-			total+=d;
-		}
-		System.out.println("####### Done Printing market cap #####");
-		System.out.println("\n");
-		marketWeight[0][0]=totalValue[0]/total;
-		marketWeight[1][0]=totalValue[1]/total;
-		marketWeight[2][0]=totalValue[2]/total;
-		marketWeight[3][0]=totalValue[3]/total;
-		marketWeight[4][0]=totalValue[4]/total;
-		marketWeight[5][0]=totalValue[5]/total;
-		return marketWeight;
-	}
-	BasicMatrix getCovarianceMatrix(Date date){
-		Collection<CalendarDateSeries<Double>> col = new ArrayList<>();
-		col.add(getCalendarDataSeriesFromDatabase("CRSPTM1",date));
-		col.add(getCalendarDataSeriesFromDatabase("CRSPLC1",date));
-		col.add(getCalendarDataSeriesFromDatabase("CRSPMI1",date));
-		col.add(getCalendarDataSeriesFromDatabase("CRSPSC1",date));
-		col.add(getCalendarDataSeriesFromDatabase("SHV",date));
-		col.add(getCalendarDataSeriesFromDatabase("LQD",date));
-		BasicMatrix covarianceMatrix = FinanceUtils.makeCovarianceMatrix(col);
-		return covarianceMatrix;
-	}
 	public CalendarDateSeries<Double> getCalendarDataSeriesFromDatabase(String symbol,Date portfolioDate){
 		CalendarDateSeries<Double> series = new CalendarDateSeries<Double>(CalendarDateUnit.DAY).name(symbol);
 		try{
@@ -271,7 +152,7 @@ public class PortfolioServiceImpl implements PortfolioService{
 	 		Calendar cal = Calendar.getInstance();
 	 		cal.setTime(date);
 	 		cal = trimTime(cal);
-			double perIndexCost = portfolioRepository.getIndexPriceForGivenDate(indexToEtfMap.get(assetClass), cal.getTime());
+			double perIndexCost = priceCacheService.getIndexPriceForGivenDate(indexToEtfMap.get(assetClass), cal.getTime());
  			NumberFormat nf = NumberFormat.getInstance();
  			int quantity = Double.valueOf((cost/perIndexCost)).intValue();
  			System.out.println("Asset Class: "+assetClass+" Weight: "+assetClassWiseWeight.get(assetClass)+" Value: "+cost +" PerIndexCost: "+perIndexCost+" Quantity:"+quantity);
@@ -332,6 +213,7 @@ public class PortfolioServiceImpl implements PortfolioService{
 		for(UserClientMapping obj:listUsers)portfolioRepository.delete(obj);
 		List<Transaction> listOfTransactions =  portfolioRepository.getAllTransactions();
 		for(Transaction obj:listOfTransactions)portfolioRepository.delete(obj);
+		holdingsIndex.invalidate();
 	}
 
 	@Override
@@ -0,0 +1,155 @@
+package com.hackovation.hybo.ServiceImpl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StopWatch;
+
+import com.hack17.hybo.domain.IndexPrice;
+import com.hack17.hybo.repository.PortfolioRepository;
+import com.hackovation.hybo.Util.HyboUtil;
+import com.hackovation.hybo.Util.PriceColumnFile;
+import com.hackovation.hybo.Util.PriceHistory;
+import com.hackovation.hybo.services.PriceCacheService;
+
+/*
+ * All index/ETF closes are loaded once from the IndexPrice table and kept per ticker as two parallel
+ * arrays sorted by day. A lookup is then a binary search instead of a database round trip.
+ *
+ * With hybo.prices.columnFile set, and the file written by an index price ingestion, the closes are read
+ * from the newest version of that file (PriceColumnFile.current) instead of the table. Tickers that are not in the file fall back to the table per lookup.
+ */
+@Service
+public class PriceCacheServiceImpl implements PriceCacheService{
+
+	@Autowired
+	PortfolioRepository portfolioRepository;
+
+	private final File columnFile;
+	private volatile Map<String,PriceHistory> pricesPerTicker;
+
+	@Autowired
+	public PriceCacheServiceImpl(@Value("${hybo.prices.columnFile:}") String columnFile){
+		this.columnFile = columnFile.isEmpty()?null:new File(columnFile);
+	}
+
+	@Override
+	public double getIndexPriceForGivenDate(String ticker,Date date){
+		PriceHistory prices = getPricesPerTicker().get(ticker);
+		if(prices!=null){
+			int index = prices.indexOnOrBefore(HyboUtil.toEpochDay(date));
+			if(index>=0) return prices.getClose(index);
+		}
+		return portfolioRepository.getIndexPriceForGivenDate(ticker, date);
+	}
+
+	@Override
+	public PriceHistory getPriceHistory(String ticker){
+		return getPricesPerTicker().get(ticker);
+	}
+
+	@Override
+	public void invalidate(){
+		pricesPerTicker = null;
+	}
+
+	private Map<String,PriceHistory> getPricesPerTicker(){
+		Map<String,PriceHistory> prices = pricesPerTicker;
+		if(prices==null){
+			synchronized(this){
+				prices = pricesPerTicker;
+				if(prices==null){
+					prices = load();
+					pricesPerTicker = prices;
+				}
+			}
+		}
+		return prices;
+	}
+
+	private Map<String,PriceHistory> load(){
+		File current = columnFile!=null?PriceColumnFile.current(columnFile):null;
+		if(current!=null){
+			try{
+				return loadColumnFile(current);
+			}catch(IOException e){
+				System.out.println("Could not read "+current+", loading the IndexPrice table: "+e.getMessage());
+			}
+		}
+		return loadIndexPriceTable();
+	}
+
+	private Map<String,PriceHistory> loadColumnFile(File current) throws IOException{
+		StopWatch stopWatch = new StopWatch("Price Cache Load");
+		stopWatch.start();
+		PriceColumnFile file = PriceColumnFile.open(current);
+		Map<String,PriceHistory> prices = new HashMap<>();
+		int rows = 0;
+		for(String ticker:file.getTickers()){
+			PriceHistory history = file.getPriceHistory(ticker);
+			prices.put(ticker, history);
+			rows += history.size();
+		}
+		stopWatch.stop();
+		System.out.println("Loaded "+rows+" prices for "+prices.size()+" tickers from "+current+". "+stopWatch.shortSummary());
+		return prices;
+	}
+
+	private Map<String,PriceHistory> loadIndexPriceTable(){
+		StopWatch stopWatch = new StopWatch("Price Cache Load");
+		stopWatch.start();
+		List<IndexPrice> indexPriceList = portfolioRepository.getAllIndexPrice();
+
+		Map<String,int[]> countPerTicker = new HashMap<>();
+		for(IndexPrice indexPrice:indexPriceList){
+			int[] count = countPerTicker.get(indexPrice.getIndex());
+			if(count==null){
+				count = new int[1];
+				countPerTicker.put(indexPrice.getIndex(), count);
+			}
+			count[0]++;
+		}
+
+		// Day in the high bits and row number in the low bits, so one primitive sort orders each ticker by day
+		Map<String,long[]> keysPerTicker = new HashMap<>();
+		for(Map.Entry<String,int[]> entry:countPerTicker.entrySet()){
+			keysPerTicker.put(entry.getKey(), new long[entry.getValue()[0]]);
+			entry.getValue()[0] = 0;
+		}
+		for(int row=0;row<indexPriceList.size();row++){
+			IndexPrice indexPrice = indexPriceList.get(row);
+			int[] count = countPerTicker.get(indexPrice.getIndex());
+			keysPerTicker.get(indexPrice.getIndex())[count[0]++] = (HyboUtil.toEpochDay(indexPrice.getDate())<<32) | row;
+		}
+
+		Map<String,PriceHistory> prices = new HashMap<>();
+		for(Map.Entry<String,long[]> entry:keysPerTicker.entrySet()){
+			long[] keys = entry.getValue();
+			Arrays.sort(keys);
+			long[] epochDays = new long[keys.length];
+			double[] closes = new double[keys.length];
+			int size = 0;
+			for(long key:keys){
+				long epochDay = key>>32;
+				double close = indexPriceList.get((int)key).getPrice();
+				// Same day loaded twice, the later row wins
+				if(size>0 && epochDays[size-1]==epochDay) size--;
+				epochDays[size] = epochDay;
+				closes[size] = close;
+				size++;
+			}
+			prices.put(entry.getKey(), new PriceHistory(Arrays.copyOf(epochDays, size), Arrays.copyOf(closes, size)));
+		}
+		stopWatch.stop();
+		System.out.println("Loaded "+indexPriceList.size()+" prices for "+prices.size()+" tickers. "+stopWatch.shortSummary());
+		return prices;
+	}
+}
@@ -0,0 +1,181 @@
+package com.hackovation.hybo.ServiceImpl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.hack17.hybo.domain.IndexPrice;
+import com.hack17.hybo.repository.ReferenceDataRepository;
+import com.hackovation.hybo.Util.HyboUtil;
+import com.hackovation.hybo.Util.PriceColumnFile;
+import com.hackovation.hybo.Util.PriceCsvParser;
+import com.hackovation.hybo.Util.PriceCsvParser.PriceColumns;
+import com.hackovation.hybo.services.PriceIngestionService;
+
+/*
+ * Files are parsed in parallel into primitive columns and every file is then written in batches of
+ * hybo.ingest.batchSize rows. Each batch is one transaction that is flushed and cleared at the end, with
+ * hibernate.jdbc.batch_size set to the same value the inserts of a batch go out as one JDBC batch.
+ *
+ * With hybo.prices.columnFile set, the parsed index prices are also written to that PriceColumnFile for
+ * PriceCacheServiceImpl, as a new numbered file next to it (PriceColumnFile.replace). Indices of the previous
+ * file that were not ingested again are kept.
+ */
+@Service
+public class PriceIngestionServiceImpl implements PriceIngestionService{
+
+	interface RowWriter{
+		void write(PriceColumns columns,int row);
+	}
+
+	@PersistenceContext
+	EntityManager entityManager;
+
+	@Autowired
+	ReferenceDataRepository refDataRepo;
+
+	private final TransactionTemplate batchTransaction;
+	private final int batchSize;
+	private final int threads;
+	private final File columnFile;
+
+	@Autowired
+	public PriceIngestionServiceImpl(PlatformTransactionManager transactionManager,
+			@Value("${hybo.ingest.batchSize:1000}") int batchSize,
+			@Value("${hybo.ingest.threads:0}") int threads,
+			@Value("${hybo.prices.columnFile:}") String columnFile){
+		batchTransaction = new TransactionTemplate(transactionManager);
+		batchTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		this.batchSize = Math.max(1, batchSize);
+		this.threads = threads>0?threads:Runtime.getRuntime().availableProcessors();
+		this.columnFile = columnFile.isEmpty()?null:new File(columnFile);
+	}
+
+	@Override
+	public long ingestSecurityPrices(File directory){
+		Map<File,String> tickerPerFile = new LinkedHashMap<>();
+		File[] files = directory.listFiles();
+		if(files==null){
+			System.out.println("No price files in "+directory);
+			return 0;
+		}
+		for(File priceFile:files){
+			String fileName = priceFile.getName();
+			if(fileName.indexOf(".")<0) continue;
+			tickerPerFile.put(priceFile, fileName.substring(0, fileName.indexOf(".")).toUpperCase());
+		}
+		return ingest(tickerPerFile, (columns,row)->
+			refDataRepo.createPrice(columns.index, columns.close[row], HyboUtil.fromEpochDay(columns.epochDays[row])), null);
+	}
+
+	@Override
+	public long ingestIndexPrices(Map<File,String> indexPerFile){
+		List<PriceColumns> ingested = columnFile!=null?new ArrayList<>(indexPerFile.size()):null;
+		long rows = ingest(indexPerFile, (columns,row)->{
+			IndexPrice indexPrice = new IndexPrice();
+			indexPrice.setDate(HyboUtil.fromEpochDay(columns.epochDays[row]));
+			indexPrice.setChange(columns.change[row]);
+			indexPrice.setHigh(columns.high[row]);
+			indexPrice.setLow(columns.low[row]);
+			indexPrice.setOpen(columns.open[row]);
+			indexPrice.setPrice(columns.close[row]);
+			indexPrice.setVolumn((int)columns.volume[row]);
+			indexPrice.setIndex(columns.index);
+			entityManager.persist(indexPrice);
+		}, ingested);
+		if(ingested!=null) writeColumnFile(ingested);
+		return rows;
+	}
+
+	/*
+	 * The kept indices are copied to the heap and the file with them is then replaced by a new one, the
+	 * previous file stays mapped (here and in the price cache) until it is garbage collected and is never
+	 * written over. When writing fails the previous file is left as it is.
+	 */
+	private void writeColumnFile(List<PriceColumns> ingested){
+		try{
+			List<PriceColumns> prices = new ArrayList<>(ingested);
+			File previousFile = PriceColumnFile.current(columnFile);
+			if(previousFile!=null){
+				Set<String> replaced = new HashSet<>();
+				for(PriceColumns columns:ingested) replaced.add(columns.index);
+				PriceColumnFile previous = PriceColumnFile.open(previousFile);
+				for(String ticker:previous.getTickers())
+					if(!replaced.contains(ticker)) prices.add(previous.getPriceColumns(ticker));
+			}
+			File written = PriceColumnFile.replace(columnFile, prices);
+			System.out.println("Wrote "+prices.size()+" indices to "+written);
+		}catch(IOException|RuntimeException e){
+			System.out.println("Could not write "+columnFile+", the price cache keeps the previous file");
+			e.printStackTrace();
+		}
+	}
+
+	/*
+	 * The parsed columns of every file that was stored are added to ingested, unless it is null.
+	 */
+	private long ingest(Map<File,String> indexPerFile,RowWriter writer,List<PriceColumns> ingested){
+		long start = System.nanoTime();
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, indexPerFile.size())));
+		List<Future<PriceColumns>> results = new ArrayList<>(indexPerFile.size());
+		try{
+			for(Entry<File,String> entry:indexPerFile.entrySet())
+				results.add(pool.submit(()->ingestFile(entry.getKey(), entry.getValue(), writer)));
+			long rows = 0;
+			for(Future<PriceColumns> result:results){
+				try{
+					PriceColumns columns = result.get();
+					rows += columns.size;
+					if(ingested!=null) ingested.add(columns);
+				}catch(ExecutionException e){
+					e.printStackTrace();
+				}
+			}
+			double seconds = (System.nanoTime()-start)/1e9;
+			System.out.println("Stored "+rows+" prices from "+indexPerFile.size()+" files in "+String.format("%.3f", seconds)+" s, "
+					+String.format("%.1f", rows/Math.max(seconds, 1e-9))+" rows/s");
+			return rows;
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while storing prices", e);
+		}finally{
+			pool.shutdownNow();
+		}
+	}
+
+	private PriceColumns ingestFile(File file,String index,RowWriter writer) throws IOException{
+		PriceColumns columns = PriceCsvParser.parse(file, index);
+		for(int from=0;from<columns.size;from+=batchSize){
+			int batchStart = from;
+			int batchEnd = Math.min(columns.size, from+batchSize);
+			batchTransaction.execute(status->{
+				for(int row=batchStart;row<batchEnd;row++) writer.write(columns, row);
+				entityManager.flush();
+				entityManager.clear();
+				return null;
+			});
+		}
+		System.out.println(index+": "+columns.size+" prices");
+		return columns;
+	}
+}
@@ -0,0 +1,201 @@
+package com.hackovation.hybo.ServiceImpl;
+
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.hack17.hybo.domain.Allocation;
+import com.hack17.hybo.domain.CurrentDate;
+import com.hack17.hybo.domain.InvestorProfile;
+import com.hack17.hybo.domain.Portfolio;
+import com.hack17.hybo.repository.PortfolioRepository;
+import com.hackovation.hybo.Util.HyboUtil;
+import com.hackovation.hybo.bean.PortfolioResponse;
+import com.hackovation.hybo.bean.ProfileJobResponse;
+import com.hackovation.hybo.bean.ProfileRequest;
+import com.hackovation.hybo.bean.ProfileResponse;
+import com.hackovation.hybo.services.PortfolioService;
+import com.hackovation.hybo.services.ProfileCreationService;
+
+/*
+ * Profile creation off the servlet threads. Jobs run on a fixed pool sized to the cores with a bounded
+ * queue; when the queue is full the submission is rejected instead of piling up. Finished jobs are kept for
+ * polling until they are older than hybo.profile.jobRetentionMinutes.
+ *
+ * A user has at most one job queued or running. Creating the profile looks up the user's client id and
+ * inserts a new mapping when there is none, two jobs of the same user running at once would both insert one.
+ */
+@Service
+public class ProfileCreationServiceImpl implements ProfileCreationService{
+
+	public static final String QUEUED = "QUEUED";
+	public static final String RUNNING = "RUNNING";
+	public static final String DONE = "DONE";
+	public static final String FAILED = "FAILED";
+	// Not a state of a job, the status of the response to a submission that was refused
+	public static final String REJECTED = "REJECTED";
+
+	@Autowired
+	PortfolioRepository portfolioRepository;
+	@Autowired
+	PortfolioService portfolioService;
+
+	private final ThreadPoolExecutor workers;
+	private final long retentionMillis;
+	private final Map<String,ProfileJob> jobs = new ConcurrentHashMap<>();
+	// User id to its queued or running job
+	private final Map<String,ProfileJob> pendingJobs = new ConcurrentHashMap<>();
+
+	static final class ProfileJob{
+		final String jobId;
+		volatile String status = QUEUED;
+		volatile PortfolioResponse portfolio;
+		volatile String error;
+		volatile long finished;
+
+		ProfileJob(String jobId){
+			this.jobId = jobId;
+		}
+	}
+
+	@Autowired
+	public ProfileCreationServiceImpl(@Value("${hybo.profile.workers:0}") int workerCount,
+			@Value("${hybo.profile.queueCapacity:200}") int queueCapacity,
+			@Value("${hybo.profile.jobRetentionMinutes:30}") int retentionMinutes){
+		if(workerCount<=0) workerCount = Runtime.getRuntime().availableProcessors();
+		retentionMillis = TimeUnit.MINUTES.toMillis(retentionMinutes);
+		AtomicInteger threadNumber = new AtomicInteger(1);
+		workers = new ThreadPoolExecutor(workerCount, workerCount, 60L, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<>(queueCapacity), runnable->{
+					Thread thread = new Thread(runnable, "profile-worker-"+threadNumber.getAndIncrement());
+					thread.setDaemon(true);
+					return thread;
+				}, new ThreadPoolExecutor.AbortPolicy());
+	}
+
+	@Override
+	public PortfolioResponse createProfile(ProfileRequest profileRequest) throws Exception{
+		String userId = profileRequest.getUserId();
+		InvestorProfile investorProfile = portfolioService.createProfile(profileRequest);
+		Date date;
+		if(profileRequest.getDate() != null && !profileRequest.getDate().isEmpty()){
+			date = new SimpleDateFormat("yyyyMMdd").parse(profileRequest.getDate());
+		}else{
+			CurrentDate existingDate = (CurrentDate)portfolioRepository.getEntity(1, CurrentDate.class);
+			date = existingDate.getDate();
+		}
+		System.out.println("Started creating portfolio for client: "+userId+" For Date: "+date );
+		Map<String,Portfolio> dataMap = portfolioService.buildPortfolio(investorProfile,userId,false,date,profileRequest.getAmount());
+
+		double totalValue = 0.0;
+		List<ProfileResponse> responseList = new ArrayList<>();
+		Map<String,String> etfAssetClassMap = HyboUtil.ETFToAssetClassMap();
+		for(Entry<String,Portfolio> entry:dataMap.entrySet()){
+			Portfolio portfolio= entry.getValue();
+			for(Allocation allocation:portfolio.getAllocations()){
+				ProfileResponse response = new ProfileResponse();
+				response.setClientId(Integer.valueOf(entry.getKey()));
+				response.setLabel(etfAssetClassMap.get(allocation.getFund().getTicker()));
+				response.setValue(String.valueOf(allocation.getPercentage()));
+				totalValue += allocation.getQuantity()*allocation.getCostPrice();
+				responseList.add(response);
+			}
+		}
+		NumberFormat numFormat = new DecimalFormat("#########.##");
+		PortfolioResponse response = new PortfolioResponse();
+		response.setTotal(Double.valueOf(numFormat.format(totalValue)));
+		response.setData(responseList);
+		return response;
+	}
+
+	@Override
+	public String submit(ProfileRequest profileRequest){
+		String userId = profileRequest.getUserId();
+		if(userId==null) throw new IllegalArgumentException("No userId in the profile request");
+		ProfileJob job = new ProfileJob(UUID.randomUUID().toString());
+		ProfileJob pending = pendingJobs.putIfAbsent(userId, job);
+		if(pending!=null) throw new IllegalStateException("A profile for "+userId+" is already in progress, job "+pending.jobId);
+		jobs.put(job.jobId, job);
+		try{
+			workers.execute(()->run(job, userId, profileRequest));
+		}catch(RuntimeException e){
+			jobs.remove(job.jobId);
+			pendingJobs.remove(userId, job);
+			throw e;
+		}
+		return job.jobId;
+	}
+
+	@Override
+	public ProfileJobResponse getJob(String jobId){
+		ProfileJob job = jobs.get(jobId);
+		if(job==null) return null;
+		if(isExpired(job, System.currentTimeMillis()-retentionMillis)){
+			jobs.remove(jobId, job);
+			return null;
+		}
+		ProfileJobResponse response = new ProfileJobResponse();
+		response.setJobId(job.jobId);
+		response.setStatus(job.status);
+		response.setPortfolio(job.portfolio);
+		response.setError(job.error);
+		return response;
+	}
+
+	private void run(ProfileJob job,String userId,ProfileRequest profileRequest){
+		job.status = RUNNING;
+		String status = FAILED;
+		try{
+			job.portfolio = createProfile(profileRequest);
+			status = DONE;
+		}catch(Exception e){
+			System.out.println("Profile job "+job.jobId+" for "+userId+" failed");
+			e.printStackTrace();
+			job.error = e.getClass().getSimpleName()+(e.getMessage()!=null?": "+e.getMessage():"");
+		}finally{
+			job.finished = System.currentTimeMillis();
+			pendingJobs.remove(userId, job);
+			// Set last, once a poll sees the job finished the user can submit the next one
+			job.status = status;
+		}
+	}
+
+	private static boolean isExpired(ProfileJob job,long expiredBefore){
+		return job.finished!=0 && job.finished<expiredBefore;
+	}
+
+	/*
+	 * Jobs nobody polls any more are dropped here, polled ones as soon as they are looked up after expiring.
+	 */
+	@Scheduled(initialDelay=60000,fixedDelay=60000)
+	public void removeExpiredJobs(){
+		long expiredBefore = System.currentTimeMillis()-retentionMillis;
+		for(Iterator<ProfileJob> iterator = jobs.values().iterator();iterator.hasNext();){
+			if(isExpired(iterator.next(), expiredBefore)) iterator.remove();
+		}
+	}
+
+	@PreDestroy
+	public void shutdown(){
+		workers.shutdown();
+	}
+}
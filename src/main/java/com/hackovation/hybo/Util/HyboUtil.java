@@ -1,11 +1,18 @@
 package com.hackovation.hybo.Util;
 
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
 import com.hack17.hybo.domain.UserClientMapping;
 import com.hackovation.hybo.AllocationType;
 
@@ -67,6 +74,34 @@ public class HyboUtil {
 		return cal;
 	}
 	
+	/*
+	 * Days since 1970-01-01 of the date in the system time zone, the same day trimTime would give.
+	 */
+	public static long toEpochDay(Date date){
+		return Instant.ofEpochMilli(date.getTime()).atZone(ZoneId.systemDefault()).toLocalDate().toEpochDay();
+	}
+	
+	public static Date fromEpochDay(long epochDay){
+		return Date.from(LocalDate.ofEpochDay(epochDay).atStartOfDay(ZoneId.systemDefault()).toInstant());
+	}
+	
+	/*
+	 * Runs the action once the current transaction has committed, right away outside of a transaction. A
+	 * cache cleared before the commit could be reloaded from the old rows by a concurrent reader.
+	 */
+	public static void afterCommit(Runnable action){
+		if(!TransactionSynchronizationManager.isSynchronizationActive()){
+			action.run();
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter(){
+			@Override
+			public void afterCommit(){
+				action.run();
+			}
+		});
+	}
+	
 	public static boolean getBoolean(String str){
 		str = str.toUpperCase();
 		if(str.equals("Y")) return true;
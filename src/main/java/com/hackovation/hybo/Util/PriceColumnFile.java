@@ -0,0 +1,319 @@
+package com.hackovation.hybo.Util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.algo.array.BufferArray;
+
+import com.hackovation.hybo.Util.PriceCsvParser.PriceColumns;
+
+/*
+ * Binary columnar price history, one or many tickers per file, read through a memory mapping so that the
+ * prices stay off-heap and opening a file does not parse or copy anything.
+ *
+ * Layout, little endian:
+ *   header   int magic "HPCF", int version, int tickers, int index bytes
+ *   index    per ticker: short name length, UTF-8 name, int rows, long block offset; padded to 8 bytes
+ *   blocks   per ticker: long[rows] epoch days ascending, then double[rows] each of open, high, low, close, volume
+ *
+ * One mapping covers the whole file, so a file is limited to 2 GB (about 40 million rows). Split larger
+ * histories over several files.
+ *
+ * A mapping is only released when the buffer is garbage collected, and a mapped file can't be replaced or
+ * deleted on Windows. Files that are read while they are rewritten are therefore not written over but
+ * replaced by a new, numbered, file next to them, see replace and current.
+ */
+public final class PriceColumnFile {
+
+	public enum Column{
+		OPEN,HIGH,LOW,CLOSE,VOLUME;
+	}
+
+	private static final int MAGIC = ('H'<<24)|('P'<<16)|('C'<<8)|'F';
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 16;
+	private static final int ROW_BYTES = 8*(1+Column.values().length);
+	// Row numbers are packed into the low bits of the sort keys
+	private static final int ROW_BITS = 24;
+
+	private final MappedByteBuffer buffer;
+	private final Map<String,Integer> ordinals;
+	private final List<String> tickers;
+	private final int[] rows;
+	private final long[] offsets;
+
+	private PriceColumnFile(MappedByteBuffer buffer,List<String> tickers,int[] rows,long[] offsets){
+		this.buffer = buffer;
+		this.tickers = Collections.unmodifiableList(tickers);
+		this.rows = rows;
+		this.offsets = offsets;
+		ordinals = new HashMap<>(2*tickers.size());
+		for(int i=0;i<tickers.size();i++) ordinals.put(tickers.get(i), i);
+	}
+
+	/**
+	 * Converts every file in the directory, the ticker is the upper case file name up to the first dot as
+	 * in PriceIngestionService. Returns the number of tickers written.
+	 */
+	public static int convert(File csvDirectory,File target) throws IOException{
+		File[] files = csvDirectory.listFiles();
+		if(files==null) throw new IOException("Not a directory: "+csvDirectory);
+		Arrays.sort(files);
+		List<PriceColumns> prices = new ArrayList<>(files.length);
+		for(File file:files){
+			String fileName = file.getName();
+			if(!file.isFile() || fileName.indexOf(".")<0) continue;
+			prices.add(PriceCsvParser.parse(file, fileName.substring(0, fileName.indexOf(".")).toUpperCase()));
+		}
+		write(target, prices);
+		return prices.size();
+	}
+
+	/**
+	 * Writes the prices, rows are sorted by day and a day that occurs twice keeps the last row of the two.
+	 * A ticker can have at most 2^24 - 1 rows and the file (counting duplicate days) at most 2 GB, more is
+	 * an IllegalArgumentException and nothing is written.
+	 */
+	public static void write(File target,List<PriceColumns> prices) throws IOException{
+		byte[][] names = new byte[prices.size()][];
+		long indexBytes = 0;
+		long rowBytes = 0;
+		for(int i=0;i<prices.size();i++){
+			names[i] = prices.get(i).index.getBytes(StandardCharsets.UTF_8);
+			indexBytes += 2+names[i].length+4+8;
+			rowBytes += (long)prices.get(i).size*ROW_BYTES;
+		}
+		indexBytes = (indexBytes+7)&~7;
+		if(HEADER_BYTES+indexBytes+rowBytes>Integer.MAX_VALUE)
+			throw new IllegalArgumentException((HEADER_BYTES+indexBytes+rowBytes)+" bytes do not fit in one mapping, split the prices over several files");
+
+		int[][] orders = new int[prices.size()][];
+		ByteBuffer head = ByteBuffer.allocate(HEADER_BYTES+(int)indexBytes).order(ByteOrder.LITTLE_ENDIAN);
+		head.putInt(MAGIC).putInt(VERSION).putInt(prices.size()).putInt((int)indexBytes);
+		long offset = HEADER_BYTES+indexBytes;
+		for(int i=0;i<prices.size();i++){
+			orders[i] = ascendingDays(prices.get(i));
+			head.putShort((short)names[i].length).put(names[i]).putInt(orders[i].length).putLong(offset);
+			offset += (long)orders[i].length*ROW_BYTES;
+		}
+		head.position(head.capacity()).flip();
+
+		try(RandomAccessFile file = new RandomAccessFile(target, "rw");FileChannel channel = file.getChannel()){
+			file.setLength(0);
+			while(head.hasRemaining()) channel.write(head);
+			for(int i=0;i<prices.size();i++){
+				PriceColumns columns = prices.get(i);
+				int[] order = orders[i];
+				ByteBuffer block = ByteBuffer.allocate(order.length*ROW_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+				for(int row:order) block.putLong(columns.epochDays[row]);
+				for(int row:order) block.putDouble(columns.open[row]);
+				for(int row:order) block.putDouble(columns.high[row]);
+				for(int row:order) block.putDouble(columns.low[row]);
+				for(int row:order) block.putDouble(columns.close[row]);
+				for(int row:order) block.putDouble(columns.volume[row]);
+				block.flip();
+				while(block.hasRemaining()) channel.write(block);
+			}
+		}
+	}
+
+	/*
+	 * Row numbers in day order without duplicate days. The CSV files are usually newest first.
+	 */
+	private static int[] ascendingDays(PriceColumns columns){
+		if(columns.size>=1<<ROW_BITS) throw new IllegalArgumentException(columns.index+" has "+columns.size+" rows, at most "+((1<<ROW_BITS)-1)+" are supported");
+		long[] keys = new long[columns.size];
+		for(int row=0;row<columns.size;row++) keys[row] = (columns.epochDays[row]<<ROW_BITS)|row;
+		Arrays.sort(keys);
+		int[] order = new int[columns.size];
+		int size = 0;
+		for(long key:keys){
+			int row = (int)(key&((1<<ROW_BITS)-1));
+			if(size>0 && columns.epochDays[order[size-1]]==columns.epochDays[row]) size--;
+			order[size++] = row;
+		}
+		return Arrays.copyOf(order, size);
+	}
+
+	/**
+	 * The newest of base and the numbered files that replace writes next to it, null if there is none.
+	 */
+	public static File current(File base){
+		File newest = base.isFile()?base:null;
+		long newestGeneration = 0;
+		for(File file:siblings(base)){
+			long generation = generation(base, file);
+			if(generation>newestGeneration && file.isFile()){
+				newest = file;
+				newestGeneration = generation;
+			}
+		}
+		return newest;
+	}
+
+	/**
+	 * Writes the prices to a temporary file and moves that to base.N, one more than the number of
+	 * current(base), so neither the current file nor a reader that maps it is affected until the new file is
+	 * complete. Then deletes base and its older numbered files, those that are still mapped are left for a
+	 * later replace. Returns the new file.
+	 */
+	public static File replace(File base,List<PriceColumns> prices) throws IOException{
+		File previous = current(base);
+		long generation = previous==null?1:generation(base, previous)+1;
+		File target = new File(base.getPath()+"."+generation);
+		File temporary = new File(base.getPath()+".tmp");
+		try{
+			write(temporary, prices);
+			Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		}finally{
+			temporary.delete();
+		}
+		base.delete();
+		for(File file:siblings(base))
+			if(generation(base, file)<generation) file.delete();
+		return target;
+	}
+
+	/*
+	 * 0 for base, N for base.N and -1 for any other file.
+	 */
+	private static long generation(File base,File file){
+		if(file.getName().equals(base.getName())) return 0;
+		String suffix = file.getName().substring(base.getName().length()+1);
+		if(suffix.isEmpty() || suffix.length()>18) return -1;
+		for(int i=0;i<suffix.length();i++)
+			if(suffix.charAt(i)<'0' || suffix.charAt(i)>'9') return -1;
+		return Long.parseLong(suffix);
+	}
+
+	/*
+	 * The files named base.something in the directory of base.
+	 */
+	private static File[] siblings(File base){
+		String prefix = base.getName()+".";
+		File[] files = base.getAbsoluteFile().getParentFile().listFiles((directory,name)->name.startsWith(prefix));
+		return files!=null?files:new File[0];
+	}
+
+	public static PriceColumnFile open(File source) throws IOException{
+		MappedByteBuffer buffer;
+		try(RandomAccessFile file = new RandomAccessFile(source, "r");FileChannel channel = file.getChannel()){
+			buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+		}
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		if(buffer.capacity()<HEADER_BYTES || buffer.getInt(0)!=MAGIC) throw new IOException("Not a price column file: "+source);
+		if(buffer.getInt(4)!=VERSION) throw new IOException("Unsupported price column file version "+buffer.getInt(4)+": "+source);
+
+		int count = buffer.getInt(8);
+		List<String> tickers = new ArrayList<>(count);
+		int[] rows = new int[count];
+		long[] offsets = new long[count];
+		int position = HEADER_BYTES;
+		for(int i=0;i<count;i++){
+			int length = buffer.getShort(position);
+			byte[] name = new byte[length];
+			for(int b=0;b<length;b++) name[b] = buffer.get(position+2+b);
+			tickers.add(new String(name, StandardCharsets.UTF_8));
+			position += 2+length;
+			rows[i] = buffer.getInt(position);
+			offsets[i] = buffer.getLong(position+4);
+			position += 12;
+		}
+		return new PriceColumnFile(buffer, tickers, rows, offsets);
+	}
+
+	public List<String> getTickers(){
+		return tickers;
+	}
+
+	public boolean contains(String ticker){
+		return ordinals.containsKey(ticker);
+	}
+
+	/**
+	 * Number of days of the ticker, 0 if it is not in the file.
+	 */
+	public int size(String ticker){
+		Integer ordinal = ordinals.get(ticker);
+		return ordinal==null?0:rows[ordinal];
+	}
+
+	/**
+	 * The days (since 1970-01-01) of the ticker, ascending, as a view of the mapped file. Null if the ticker
+	 * is not in the file.
+	 */
+	public LongBuffer getEpochDays(String ticker){
+		Integer ordinal = ordinals.get(ticker);
+		if(ordinal==null) return null;
+		return slice(offsets[ordinal], rows[ordinal]).asLongBuffer();
+	}
+
+	/**
+	 * One column of the ticker as a read only view of the mapped file, in the order of getEpochDays. Null
+	 * if the ticker is not in the file.
+	 */
+	public BufferArray getColumn(String ticker,Column column){
+		Integer ordinal = ordinals.get(ticker);
+		if(ordinal==null) return null;
+		long offset = offsets[ordinal]+8L*rows[ordinal]*(1+column.ordinal());
+		return BufferArray.wrap(slice(offset, rows[ordinal]).asDoubleBuffer());
+	}
+
+	/**
+	 * The closes of the ticker copied to the heap, for PriceCacheService. Null if the ticker is not in the
+	 * file.
+	 */
+	public PriceHistory getPriceHistory(String ticker){
+		Integer ordinal = ordinals.get(ticker);
+		if(ordinal==null) return null;
+		int size = rows[ordinal];
+		long[] epochDays = new long[size];
+		double[] closes = new double[size];
+		slice(offsets[ordinal], size).asLongBuffer().get(epochDays);
+		slice(offsets[ordinal]+8L*size*(1+Column.CLOSE.ordinal()), size).asDoubleBuffer().get(closes);
+		return new PriceHistory(epochDays, closes);
+	}
+
+	/**
+	 * All columns of the ticker copied to the heap, to write it to another file. The change is not kept in
+	 * the file and is 0. Null if the ticker is not in the file.
+	 */
+	public PriceColumns getPriceColumns(String ticker){
+		Integer ordinal = ordinals.get(ticker);
+		if(ordinal==null) return null;
+		int size = rows[ordinal];
+		PriceColumns columns = new PriceColumns(ticker, size);
+		columns.size = size;
+		slice(offsets[ordinal], size).asLongBuffer().get(columns.epochDays);
+		slice(offsets[ordinal]+8L*size*(1+Column.OPEN.ordinal()), size).asDoubleBuffer().get(columns.open);
+		slice(offsets[ordinal]+8L*size*(1+Column.HIGH.ordinal()), size).asDoubleBuffer().get(columns.high);
+		slice(offsets[ordinal]+8L*size*(1+Column.LOW.ordinal()), size).asDoubleBuffer().get(columns.low);
+		slice(offsets[ordinal]+8L*size*(1+Column.CLOSE.ordinal()), size).asDoubleBuffer().get(columns.close);
+		DoubleBuffer volume = slice(offsets[ordinal]+8L*size*(1+Column.VOLUME.ordinal()), size).asDoubleBuffer();
+		for(int row=0;row<size;row++) columns.volume[row] = (long)volume.get(row);
+		return columns;
+	}
+
+	private ByteBuffer slice(long offset,int size){
+		ByteBuffer view = buffer.duplicate();
+		view.limit((int)(offset+8L*size)).position((int)offset);
+		return view.slice().order(ByteOrder.LITTLE_ENDIAN);
+	}
+}
@@ -0,0 +1,290 @@
+package com.hackovation.hybo.Util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/*
+ * Parses the historical price files into primitive columns. Works directly on the file bytes: no String
+ * per line or field, no split, no SimpleDateFormat/DecimalFormat.
+ *
+ * ETF files (data/prices, src/main/*.csv):  Date,Open,High,Low,Close,Volume             7-Aug-17,110.33,...
+ * INDEX files (CRSP *_Historical_Rates):     "Date","Price","Open","High","Low","Vol.","Change %"
+ *                                            "Aug 01, 2017","1,854.41",...
+ * Rows with an unexpected number of fields, and the header, are skipped.
+ */
+public class PriceCsvParser {
+
+	public enum Format{
+		ETF(6,4,1,2,3,5,-1),INDEX(7,1,2,3,4,5,6);
+
+		final int fields;
+		final int close;
+		final int open;
+		final int high;
+		final int low;
+		final int volume;
+		final int change;
+
+		private Format(int fields,int close,int open,int high,int low,int volume,int change){
+			this.fields = fields;
+			this.close = close;
+			this.open = open;
+			this.high = high;
+			this.low = low;
+			this.volume = volume;
+			this.change = change;
+		}
+	}
+
+	public static final class PriceColumns{
+		public final String index;
+		public int size;
+		public long[] epochDays;
+		public double[] close;
+		public double[] open;
+		public double[] high;
+		public double[] low;
+		public long[] volume;
+		public double[] change;
+
+		PriceColumns(String index,int capacity){
+			this.index = index;
+			epochDays = new long[capacity];
+			close = new double[capacity];
+			open = new double[capacity];
+			high = new double[capacity];
+			low = new double[capacity];
+			volume = new long[capacity];
+			change = new double[capacity];
+		}
+
+		void trim(){
+			epochDays = Arrays.copyOf(epochDays, size);
+			close = Arrays.copyOf(close, size);
+			open = Arrays.copyOf(open, size);
+			high = Arrays.copyOf(high, size);
+			low = Arrays.copyOf(low, size);
+			volume = Arrays.copyOf(volume, size);
+			change = Arrays.copyOf(change, size);
+		}
+	}
+
+	private static final int MAX_FIELDS = 8;
+	private static final double[] POWERS_OF_TEN = {1e0,1e1,1e2,1e3,1e4,1e5,1e6,1e7,1e8,1e9,1e10,1e11,1e12,1e13,1e14,1e15,1e16,1e17,1e18,1e19,1e20,1e21,1e22};
+	private static final int TWO_DIGIT_YEAR_LIMIT = LocalDate.now().getYear()+20;
+
+	/**
+	 * Parses the file in the format given by its header, quoted headers are INDEX files.
+	 */
+	public static PriceColumns parse(File file,String index) throws IOException{
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		int first = hasByteOrderMark(bytes)?3:0;
+		return parse(bytes, index, first<bytes.length && bytes[first]=='"'?Format.INDEX:Format.ETF);
+	}
+
+	public static PriceColumns parse(File file,String index,Format format) throws IOException{
+		return parse(Files.readAllBytes(file.toPath()), index, format);
+	}
+
+	static PriceColumns parse(byte[] bytes,String index,Format format){
+		int lines = 0;
+		for(byte b:bytes) if(b=='\n') lines++;
+		PriceColumns columns = new PriceColumns(index, lines+1);
+
+		int[] fieldStart = new int[MAX_FIELDS];
+		int[] fieldEnd = new int[MAX_FIELDS];
+		int position = hasByteOrderMark(bytes)?3:0;
+
+		while(position<bytes.length){
+			int lineEnd = position;
+			while(lineEnd<bytes.length && bytes[lineEnd]!='\n') lineEnd++;
+			int end = lineEnd>position && bytes[lineEnd-1]=='\r'?lineEnd-1:lineEnd;
+
+			int fields = split(bytes, position, end, fieldStart, fieldEnd);
+			if(fields==format.fields && isDataRow(bytes, fieldStart[0], fieldEnd[0])){
+				long epochDay = format==Format.ETF?parseDayMonthYear(bytes, fieldStart[0], fieldEnd[0]):parseMonthDayYear(bytes, fieldStart[0], fieldEnd[0]);
+				double close = parseDouble(bytes, fieldStart[format.close], fieldEnd[format.close]);
+				// Days without a close ("-" or empty) are left out
+				if(epochDay!=Long.MIN_VALUE && !Double.isNaN(close)){
+					int row = columns.size++;
+					columns.epochDays[row] = epochDay;
+					columns.close[row] = close;
+					columns.open[row] = orZero(parseDouble(bytes, fieldStart[format.open], fieldEnd[format.open]));
+					columns.high[row] = orZero(parseDouble(bytes, fieldStart[format.high], fieldEnd[format.high]));
+					columns.low[row] = orZero(parseDouble(bytes, fieldStart[format.low], fieldEnd[format.low]));
+					columns.volume[row] = (long)orZero(parseDouble(bytes, fieldStart[format.volume], fieldEnd[format.volume]));
+					columns.change[row] = format.change<0?0:orZero(parseDouble(bytes, fieldStart[format.change], fieldEnd[format.change]));
+				}
+			}
+			position = lineEnd+1;
+		}
+		columns.trim();
+		return columns;
+	}
+
+	private static boolean hasByteOrderMark(byte[] bytes){
+		return bytes.length>=3 && (bytes[0]&0xFF)==0xEF && (bytes[1]&0xFF)==0xBB && (bytes[2]&0xFF)==0xBF;
+	}
+
+	/*
+	 * Field boundaries without the surrounding quotes. Commas inside quotes belong to the field.
+	 */
+	private static int split(byte[] bytes,int from,int to,int[] fieldStart,int[] fieldEnd){
+		int fields = 0;
+		int position = from;
+		while(position<=to && fields<MAX_FIELDS){
+			if(position<to && bytes[position]=='"'){
+				int close = position+1;
+				while(close<to && bytes[close]!='"') close++;
+				fieldStart[fields] = position+1;
+				fieldEnd[fields] = close;
+				fields++;
+				position = close+1;
+				while(position<to && bytes[position]!=',') position++;
+			}else{
+				int comma = position;
+				while(comma<to && bytes[comma]!=',') comma++;
+				fieldStart[fields] = position;
+				fieldEnd[fields] = comma;
+				fields++;
+				position = comma;
+			}
+			if(position>=to) break;
+			position++;
+		}
+		return position<to?MAX_FIELDS+1:fields;
+	}
+
+	private static boolean isDataRow(byte[] bytes,int from,int to){
+		if(from>=to) return false;
+		// The header starts with "Date", data rows with a day number or a month name
+		return !(to-from==4 && bytes[from]=='D' && bytes[from+1]=='a' && bytes[from+2]=='t' && bytes[from+3]=='e');
+	}
+
+	/*
+	 * Decimal number with optional sign and thousands separators, e.g. -1,854.41
+	 * Up to 15 significant digits the result is exact: an integer mantissa divided by a power of ten.
+	 * NaN when the field has no digits.
+	 */
+	static double parseDouble(byte[] bytes,int from,int to){
+		boolean negative = false;
+		int position = from;
+		while(position<to && bytes[position]==' ') position++;
+		if(position<to && (bytes[position]=='-' || bytes[position]=='+')){
+			negative = bytes[position]=='-';
+			position++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int scale = 0;
+		boolean fraction = false;
+		for(;position<to;position++){
+			byte b = bytes[position];
+			if(b>='0' && b<='9'){
+				mantissa = mantissa*10+(b-'0');
+				digits++;
+				if(fraction) scale++;
+			}else if(b=='.' && !fraction){
+				fraction = true;
+			}else if(b!=','){
+				break;
+			}
+		}
+		if(digits==0) return Double.NaN;
+		if(digits>15 || scale>=POWERS_OF_TEN.length){
+			StringBuilder builder = new StringBuilder(to-from);
+			for(int i=from;i<to;i++) if(bytes[i]!=',') builder.append((char)bytes[i]);
+			return Double.parseDouble(builder.toString().trim());
+		}
+		double value = mantissa/POWERS_OF_TEN[scale];
+		return negative?-value:value;
+	}
+
+	private static double orZero(double value){
+		return Double.isNaN(value)?0.0:value;
+	}
+
+	/*
+	 * 7-Aug-17 or 21-Jul-2017. Two digit years are placed like SimpleDateFormat does, at most 20 years ahead.
+	 */
+	static long parseDayMonthYear(byte[] bytes,int from,int to){
+		int position = from;
+		int day = 0;
+		while(position<to && bytes[position]>='0' && bytes[position]<='9') day = day*10+(bytes[position++]-'0');
+		if(position+5>to || bytes[position]!='-') return Long.MIN_VALUE;
+		int month = parseMonth(bytes, position+1);
+		position += 4;
+		if(month<0 || bytes[position]!='-') return Long.MIN_VALUE;
+		position++;
+		int year = 0;
+		int yearDigits = 0;
+		while(position<to && bytes[position]>='0' && bytes[position]<='9'){
+			year = year*10+(bytes[position++]-'0');
+			yearDigits++;
+		}
+		if(yearDigits==2){
+			year += 2000;
+			if(year>TWO_DIGIT_YEAR_LIMIT) year -= 100;
+		}
+		return toEpochDay(year, month, day);
+	}
+
+	/*
+	 * Aug 01, 2017
+	 */
+	static long parseMonthDayYear(byte[] bytes,int from,int to){
+		if(to-from<8) return Long.MIN_VALUE;
+		int month = parseMonth(bytes, from);
+		if(month<0) return Long.MIN_VALUE;
+		int position = from+3;
+		while(position<to && bytes[position]==' ') position++;
+		int day = 0;
+		while(position<to && bytes[position]>='0' && bytes[position]<='9') day = day*10+(bytes[position++]-'0');
+		while(position<to && (bytes[position]==',' || bytes[position]==' ')) position++;
+		int year = 0;
+		while(position<to && bytes[position]>='0' && bytes[position]<='9') year = year*10+(bytes[position++]-'0');
+		return toEpochDay(year, month, day);
+	}
+
+	private static int parseMonth(byte[] bytes,int position){
+		int key = ((bytes[position]|0x20)<<16) | ((bytes[position+1]|0x20)<<8) | (bytes[position+2]|0x20);
+		switch(key){
+		case ('j'<<16)|('a'<<8)|'n': return 1;
+		case ('f'<<16)|('e'<<8)|'b': return 2;
+		case ('m'<<16)|('a'<<8)|'r': return 3;
+		case ('a'<<16)|('p'<<8)|'r': return 4;
+		case ('m'<<16)|('a'<<8)|'y': return 5;
+		case ('j'<<16)|('u'<<8)|'n': return 6;
+		case ('j'<<16)|('u'<<8)|'l': return 7;
+		case ('a'<<16)|('u'<<8)|'g': return 8;
+		case ('s'<<16)|('e'<<8)|'p': return 9;
+		case ('o'<<16)|('c'<<8)|'t': return 10;
+		case ('n'<<16)|('o'<<8)|'v': return 11;
+		case ('d'<<16)|('e'<<8)|'c': return 12;
+		default: return -1;
+		}
+	}
+
+	/*
+	 * Proleptic Gregorian days since 1970-01-01, same as LocalDate.of(year, month, day).toEpochDay()
+	 * without creating the LocalDate.
+	 */
+	static long toEpochDay(int year,int month,int day){
+		if(day<1 || day>31) return Long.MIN_VALUE;
+		long y = year;
+		long total = 365*y;
+		if(y>=0) total += (y+3)/4-(y+99)/100+(y+399)/400;
+		else total -= y/-4-y/-100+y/-400;
+		total += (367*month-362)/12;
+		total += day-1;
+		if(month>2){
+			total--;
+			boolean leap = (year%4==0) && (year%100!=0 || year%400==0);
+			if(!leap) total--;
+		}
+		return total-719528;
+	}
+}
@@ -0,0 +1,46 @@
+package com.hackovation.hybo.Util;
+
+import java.util.Arrays;
+
+/*
+ * Closing prices of one ticker as two parallel arrays sorted by day, one price per day. Not modified once
+ * built, so it can be shared between threads.
+ */
+public final class PriceHistory {
+
+	private final long[] epochDays;
+	private final double[] closes;
+
+	public PriceHistory(long[] epochDays,double[] closes){
+		this.epochDays = epochDays;
+		this.closes = closes;
+	}
+
+	public int size(){
+		return epochDays.length;
+	}
+
+	public long getEpochDay(int index){
+		return epochDays[index];
+	}
+
+	public double getClose(int index){
+		return closes[index];
+	}
+
+	/**
+	 * Index of the last day that is on or before the given day, -1 if the series starts after it.
+	 */
+	public int indexOnOrBefore(long epochDay){
+		int index = Arrays.binarySearch(epochDays, epochDay);
+		return index>=0?index:-index-2;
+	}
+
+	/**
+	 * Index of the first day that is on or after the given day, size() if the series ends before it.
+	 */
+	public int indexOnOrAfter(long epochDay){
+		int index = Arrays.binarySearch(epochDays, epochDay);
+		return index>=0?index:-index-1;
+	}
+}
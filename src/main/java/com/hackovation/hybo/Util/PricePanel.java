@@ -0,0 +1,114 @@
+package com.hackovation.hybo.Util;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * Closing prices of several tickers on a common daily calendar, one row of prices per day in a single
+ * primitive array. The calendar is every day on which at least one ticker has a close, from the first day
+ * on which all of them have one to the last day of the shortest series. A ticker without a close on a day
+ * keeps its previous close, as getIndexPriceForGivenDate does.
+ *
+ * Not modified once built, so it can be shared between threads.
+ */
+public final class PricePanel {
+
+	private final List<String> tickers;
+	private final long[] epochDays;
+	private final double[] closes;
+
+	private PricePanel(List<String> tickers,long[] epochDays,double[] closes){
+		this.tickers = Collections.unmodifiableList(new ArrayList<>(tickers));
+		this.epochDays = epochDays;
+		this.closes = closes;
+	}
+
+	/**
+	 * Aligns the histories, in the order of the tickers, with one merge over all of them. Empty if a
+	 * history is missing or the histories do not overlap.
+	 */
+	public static PricePanel align(List<String> tickers,List<PriceHistory> histories){
+		int width = tickers.size();
+		if(histories.size()!=width) throw new IllegalArgumentException(width+" tickers but "+histories.size()+" histories");
+		if(width==0) return new PricePanel(tickers, new long[0], new double[0]);
+
+		long first = Long.MIN_VALUE;
+		long last = Long.MAX_VALUE;
+		for(PriceHistory history:histories){
+			if(history==null || history.size()==0) return new PricePanel(tickers, new long[0], new double[0]);
+			first = Math.max(first, history.getEpochDay(0));
+			last = Math.min(last, history.getEpochDay(history.size()-1));
+		}
+		if(first>last) return new PricePanel(tickers, new long[0], new double[0]);
+
+		// The day of every history that is on or before the current one
+		int[] positions = new int[width];
+		for(int a=0;a<width;a++) positions[a] = histories.get(a).indexOnOrBefore(first);
+
+		int rows = 0;
+		long[] epochDays = new long[16];
+		double[] closes = new double[16*width];
+		long day = first;
+		while(day<=last){
+			if(rows==epochDays.length){
+				epochDays = Arrays.copyOf(epochDays, 2*rows);
+				closes = Arrays.copyOf(closes, 2*rows*width);
+			}
+			epochDays[rows] = day;
+			long next = Long.MAX_VALUE;
+			for(int a=0;a<width;a++){
+				PriceHistory history = histories.get(a);
+				closes[rows*width+a] = history.getClose(positions[a]);
+				if(positions[a]+1<history.size()) next = Math.min(next, history.getEpochDay(positions[a]+1));
+			}
+			rows++;
+			if(next==Long.MAX_VALUE) break;
+			for(int a=0;a<width;a++){
+				PriceHistory history = histories.get(a);
+				if(positions[a]+1<history.size() && history.getEpochDay(positions[a]+1)==next) positions[a]++;
+			}
+			day = next;
+		}
+		return new PricePanel(tickers, Arrays.copyOf(epochDays, rows), Arrays.copyOf(closes, rows*width));
+	}
+
+	public List<String> getTickers(){
+		return tickers;
+	}
+
+	public int getWidth(){
+		return tickers.size();
+	}
+
+	/**
+	 * Number of days.
+	 */
+	public int size(){
+		return epochDays.length;
+	}
+
+	public long getEpochDay(int day){
+		return epochDays[day];
+	}
+
+	/**
+	 * Calendar.MONTH of the day, 0 for January.
+	 */
+	public int getMonth(int day){
+		return LocalDate.ofEpochDay(epochDays[day]).getMonthValue()-1;
+	}
+
+	public double getClose(int day,int ticker){
+		return closes[day*tickers.size()+ticker];
+	}
+
+	/**
+	 * All closes, day by day, the close of ticker a on day t at t*getWidth()+a. Not a copy, do not modify.
+	 */
+	public double[] getCloses(){
+		return closes;
+	}
+}
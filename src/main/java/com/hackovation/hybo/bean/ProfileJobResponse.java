@@ -0,0 +1,13 @@
+package com.hackovation.hybo.bean;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@NoArgsConstructor
+@Data
+public class ProfileJobResponse {
+	String jobId;
+	String status;
+	PortfolioResponse portfolio;
+	String error;
+}
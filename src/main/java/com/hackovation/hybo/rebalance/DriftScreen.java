@@ -0,0 +1,129 @@
+package com.hackovation.hybo.rebalance;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.hack17.hybo.domain.Allocation;
+import com.hack17.hybo.domain.Portfolio;
+import com.hackovation.hybo.Util.HyboUtil;
+import com.hackovation.hybo.services.PriceCacheService;
+
+/*
+ * Cheap first pass of the threshold trigger. The active holdings of a page of portfolios are packed into
+ * flat primitive arrays (ticker ordinal, quantity, cost) and the drift of every ticker's weight against
+ * that day's price vector is computed in one loop. Only portfolios where some ticker's weight left the
+ * +/- P band, relative to its weight at cost, are selected for the full object-based check.
+ *
+ * Prices are looked up for the run date with its time part trimmed, like the full check does, so both
+ * passes read the same cache entry. The screen only reads the price cache and the already loaded page,
+ * it needs no transaction of its own.
+ *
+ * One instance per rebalancing run and date, not thread safe.
+ */
+public class DriftScreen implements PartitionedRebalancingEngine.PortfolioScreen{
+
+	private final Date date;
+	private final double band;
+	private final PriceCacheService priceCacheService;
+	private final boolean skipMonth;
+
+	private final Map<String,Integer> tickerOrdinals = new HashMap<>();
+	private double[] prices = new double[16];
+
+	// Packed holdings of the current page, portfolio i owns [offsets[i], offsets[i+1])
+	private int[] offsets = new int[0];
+	private int[] tickers = new int[0];
+	private double[] quantities = new double[0];
+	private double[] costs = new double[0];
+
+	// Per ticker scratch for the portfolio being screened
+	private double[] costPerTicker = new double[16];
+	private double[] valuePerTicker = new double[16];
+
+	public DriftScreen(Date date,double band,PriceCacheService priceCacheService){
+		this.band = band;
+		this.priceCacheService = priceCacheService;
+		Calendar cal = Calendar.getInstance();
+		cal.setTime(date);
+		this.date = HyboUtil.trimTime(cal).getTime();
+		skipMonth = RebalanceRules.isBlackoutMonth(cal.get(Calendar.MONTH));
+	}
+
+	@Override
+	public boolean[] select(List<Portfolio> page){
+		boolean[] selected = new boolean[page.size()];
+		if(skipMonth) return selected;
+		pack(page);
+
+		for(int p=0;p<page.size();p++){
+			int from = offsets[p];
+			int to = offsets[p+1];
+			double totalCost = 0.0;
+			double totalValue = 0.0;
+			for(int k=from;k<to;k++){
+				int ticker = tickers[k];
+				double cost = quantities[k]*costs[k];
+				double value = quantities[k]*prices[ticker];
+				costPerTicker[ticker] += cost;
+				valuePerTicker[ticker] += value;
+				totalCost += cost;
+				totalValue += value;
+			}
+			boolean breach = false;
+			for(int k=from;k<to;k++){
+				int ticker = tickers[k];
+				double existing = costPerTicker[ticker]/totalCost;
+				double latest = valuePerTicker[ticker]/totalValue;
+				if(RebalanceRules.isOutsideBand(existing, latest, band)) breach = true;
+			}
+			for(int k=from;k<to;k++){
+				costPerTicker[tickers[k]] = 0.0;
+				valuePerTicker[tickers[k]] = 0.0;
+			}
+			selected[p] = breach;
+		}
+		return selected;
+	}
+
+	private void pack(List<Portfolio> page){
+		int holdings = 0;
+		for(Portfolio portfolio:page) holdings += portfolio.getAllocations().size();
+		if(offsets.length<page.size()+1) offsets = new int[page.size()+1];
+		if(tickers.length<holdings){
+			tickers = new int[holdings];
+			quantities = new double[holdings];
+			costs = new double[holdings];
+		}
+		int k = 0;
+		for(int p=0;p<page.size();p++){
+			offsets[p] = k;
+			for(Allocation allocation:page.get(p).getAllocations()){
+				if(!allocation.getIsActive().equals("Y")) continue;
+				tickers[k] = getTickerOrdinal(allocation.getFund().getTicker());
+				quantities[k] = allocation.getQuantity();
+				costs[k] = allocation.getCostPrice();
+				k++;
+			}
+		}
+		offsets[page.size()] = k;
+	}
+
+	private int getTickerOrdinal(String ticker){
+		Integer ordinal = tickerOrdinals.get(ticker);
+		if(ordinal==null){
+			ordinal = tickerOrdinals.size();
+			tickerOrdinals.put(ticker, ordinal);
+			if(ordinal>=prices.length){
+				prices = Arrays.copyOf(prices, 2*prices.length);
+				costPerTicker = new double[prices.length];
+				valuePerTicker = new double[prices.length];
+			}
+			prices[ordinal] = priceCacheService.getIndexPriceForGivenDate(ticker, date);
+		}
+		return ordinal;
+	}
+}
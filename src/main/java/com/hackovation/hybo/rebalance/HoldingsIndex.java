@@ -0,0 +1,107 @@
+package com.hackovation.hybo.rebalance;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.hack17.hybo.domain.Allocation;
+import com.hack17.hybo.domain.Portfolio;
+
+/*
+ * Which portfolios hold which ticker, so that a price move can be mapped to the portfolios it affects
+ * without reading any of the others. Built with one scan over all portfolios; later refreshes only read
+ * portfolios with an id above the last indexed one. Portfolios whose holdings change in place (rebalancing)
+ * must be handed to update(), and deletes must invalidate() the index. Allocations are also changed outside
+ * this application (tax-loss harvesting), so the rebalancer rebuilds the index whenever the date advances.
+ */
+@Component
+public class HoldingsIndex {
+
+	@Autowired
+	PortfolioPageScanner portfolioPageScanner;
+
+	private final Map<String,Set<Integer>> portfolioIdsPerTicker = new HashMap<>();
+	private final Map<Integer,Set<String>> tickersPerPortfolio = new HashMap<>();
+	private final Map<Integer,Integer> clientIdPerPortfolio = new HashMap<>();
+	private int lastIndexedId = Integer.MIN_VALUE;
+
+	/**
+	 * Adds the portfolios created since the last refresh and returns them, portfolio id to client id.
+	 */
+	public synchronized Map<Integer,Integer> refresh(){
+		Map<Integer,Integer> added = new LinkedHashMap<>();
+		portfolioPageScanner.scanAfter(lastIndexedId, page->{
+			for(Portfolio portfolio:page){
+				update(portfolio);
+				added.put(portfolio.getId(), portfolio.getClientId());
+				lastIndexedId = Math.max(lastIndexedId, portfolio.getId());
+			}
+		});
+		if(!added.isEmpty())
+			System.out.println("Holdings index: "+added.size()+" portfolios added, "+tickersPerPortfolio.size()+" indexed");
+		return added;
+	}
+
+	/**
+	 * Re-indexes the active holdings of the portfolio.
+	 */
+	public synchronized void update(Portfolio portfolio){
+		Integer portfolioId = portfolio.getId();
+		Set<String> previous = tickersPerPortfolio.remove(portfolioId);
+		if(previous!=null){
+			for(String ticker:previous) portfolioIdsPerTicker.get(ticker).remove(portfolioId);
+		}
+		Set<String> tickers = new HashSet<>();
+		for(Allocation allocation:portfolio.getAllocations()){
+			if(allocation.getIsActive().equals("Y")) tickers.add(allocation.getFund().getTicker());
+		}
+		for(String ticker:tickers){
+			Set<Integer> portfolioIds = portfolioIdsPerTicker.get(ticker);
+			if(portfolioIds==null){
+				portfolioIds = new HashSet<>();
+				portfolioIdsPerTicker.put(ticker, portfolioIds);
+			}
+			portfolioIds.add(portfolioId);
+		}
+		tickersPerPortfolio.put(portfolioId, tickers);
+		clientIdPerPortfolio.put(portfolioId, portfolio.getClientId());
+	}
+
+	public synchronized Set<String> getTickers(){
+		Set<String> tickers = new HashSet<>();
+		for(Entry<String,Set<Integer>> entry:portfolioIdsPerTicker.entrySet()){
+			if(!entry.getValue().isEmpty()) tickers.add(entry.getKey());
+		}
+		return tickers;
+	}
+
+	/**
+	 * Portfolios holding any of the tickers, mapped to their client id.
+	 */
+	public synchronized Map<Integer,Integer> getClientIdPerPortfolio(Collection<String> tickers){
+		Map<Integer,Integer> selected = new LinkedHashMap<>();
+		for(String ticker:tickers){
+			Set<Integer> portfolioIds = portfolioIdsPerTicker.get(ticker);
+			if(portfolioIds==null) continue;
+			for(Integer portfolioId:portfolioIds) selected.put(portfolioId, clientIdPerPortfolio.get(portfolioId));
+		}
+		return selected;
+	}
+
+	/**
+	 * Drops the index, it is rebuilt with a full scan on the next refresh.
+	 */
+	public synchronized void invalidate(){
+		portfolioIdsPerTicker.clear();
+		tickersPerPortfolio.clear();
+		clientIdPerPortfolio.clear();
+		lastIndexedId = Integer.MIN_VALUE;
+	}
+}
@@ -0,0 +1,189 @@
+package com.hackovation.hybo.rebalance;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.hack17.hybo.domain.Portfolio;
+import com.hack17.hybo.repository.PortfolioRepository;
+
+/*
+ * Runs a rebalancing pass over all portfolios on a bounded worker pool.
+ * Portfolios are read page by page and each page is split into shards by client id so that all portfolios
+ * of one client are handled by the same worker. Every shard reloads its portfolios and commits in its own
+ * transaction, a failing shard is rolled back without affecting the others. The next page is read while
+ * the current one is processed, at most one page is in flight. An optional screen drops portfolios from a
+ * page before they are dispatched.
+ */
+@Component
+public class PartitionedRebalancingEngine {
+
+	public interface PortfolioTask{
+		/**
+		 * @return true when the portfolio was rebalanced
+		 */
+		boolean process(Portfolio portfolio);
+	}
+
+	public interface PortfolioScreen{
+		/**
+		 * @return for every portfolio of the page whether it goes on to the task
+		 */
+		boolean[] select(List<Portfolio> page);
+	}
+
+	@Autowired
+	PortfolioRepository portfolioRepository;
+	@Autowired
+	PortfolioPageScanner portfolioPageScanner;
+
+	private final TransactionTemplate shardTransaction;
+	private final ThreadPoolExecutor workers;
+	private final int shardCount;
+
+	@Autowired
+	public PartitionedRebalancingEngine(PlatformTransactionManager transactionManager,
+			@Value("${hybo.rebalance.workers:0}") int workerCount,
+			@Value("${hybo.rebalance.shards:64}") int shardCount){
+		shardTransaction = new TransactionTemplate(transactionManager);
+		shardTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		if(workerCount<=0) workerCount = Runtime.getRuntime().availableProcessors();
+		this.shardCount = shardCount;
+		AtomicInteger threadNumber = new AtomicInteger(1);
+		// Bounded queue, when it is full the submitting thread works on the shard itself
+		workers = new ThreadPoolExecutor(workerCount, workerCount, 60L, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<>(2*workerCount), runnable->{
+					Thread thread = new Thread(runnable, "rebalance-worker-"+threadNumber.getAndIncrement());
+					thread.setDaemon(true);
+					return thread;
+				}, new ThreadPoolExecutor.CallerRunsPolicy());
+	}
+
+	public void run(Date date,PortfolioTask task){
+		run(date, page->{
+			boolean[] selected = new boolean[page.size()];
+			Arrays.fill(selected, true);
+			return selected;
+		}, task);
+	}
+
+	public void run(Date date,PortfolioScreen screen,PortfolioTask task){
+		long start = System.nanoTime();
+		AtomicInteger scanned = new AtomicInteger();
+		AtomicInteger processed = new AtomicInteger();
+		AtomicInteger rebalanced = new AtomicInteger();
+		AtomicInteger shardsRun = new AtomicInteger();
+		List<Future<?>> inFlight = new ArrayList<>(shardCount);
+
+		portfolioPageScanner.scan(date, page->{
+			scanned.addAndGet(page.size());
+			Map<Integer,List<Integer>> portfolioIdsPerShard = getPortfolioIdsPerShard(page, screen.select(page));
+			awaitAll(inFlight);
+			for(List<Integer> shard:portfolioIdsPerShard.values())
+				inFlight.add(workers.submit(()->processShard(shard, task, processed, rebalanced)));
+			shardsRun.addAndGet(portfolioIdsPerShard.size());
+		});
+		awaitAll(inFlight);
+
+		double seconds = (System.nanoTime()-start)/1e9;
+		System.out.println("Scanned "+scanned.get()+" portfolios, rebalanced "+rebalanced.get()+" of "+processed.get()+" selected in "
+				+shardsRun.get()+" shards, "+String.format("%.3f", seconds)+" s, "
+				+String.format("%.1f", scanned.get()/Math.max(seconds, 1e-9))+" portfolios/s");
+	}
+
+	/**
+	 * Runs the task over the given portfolios only (portfolio id to client id), sharded like a full run.
+	 */
+	public void run(Map<Integer,Integer> clientIdPerPortfolio,PortfolioTask task){
+		long start = System.nanoTime();
+		AtomicInteger processed = new AtomicInteger();
+		AtomicInteger rebalanced = new AtomicInteger();
+		Map<Integer,List<Integer>> portfolioIdsPerShard = new LinkedHashMap<>();
+		for(Entry<Integer,Integer> entry:clientIdPerPortfolio.entrySet())
+			addToShard(portfolioIdsPerShard, entry.getKey(), entry.getValue());
+		List<Future<?>> inFlight = new ArrayList<>(portfolioIdsPerShard.size());
+		for(List<Integer> shard:portfolioIdsPerShard.values())
+			inFlight.add(workers.submit(()->processShard(shard, task, processed, rebalanced)));
+		awaitAll(inFlight);
+
+		double seconds = (System.nanoTime()-start)/1e9;
+		System.out.println("Rebalanced "+rebalanced.get()+" of "+processed.get()+" portfolios in "
+				+portfolioIdsPerShard.size()+" shards, "+String.format("%.3f", seconds)+" s");
+	}
+
+	private void awaitAll(List<Future<?>> futures){
+		for(Future<?> future:futures){
+			try{
+				future.get();
+			}catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while rebalancing", e);
+			}catch(ExecutionException e){
+				e.printStackTrace();
+			}
+		}
+		futures.clear();
+	}
+
+	private void processShard(List<Integer> portfolioIds,PortfolioTask task,AtomicInteger processed,AtomicInteger rebalanced){
+		try{
+			shardTransaction.execute(status->{
+				for(Integer portfolioId:portfolioIds){
+					Portfolio portfolio = (Portfolio)portfolioRepository.getEntity(portfolioId, Portfolio.class);
+					// Deleted since it was selected
+					if(portfolio==null) continue;
+					if(task.process(portfolio)) rebalanced.incrementAndGet();
+					processed.incrementAndGet();
+				}
+				return null;
+			});
+		}catch(RuntimeException e){
+			System.out.println("Shard of "+portfolioIds.size()+" portfolios rolled back");
+			e.printStackTrace();
+		}
+	}
+
+	private Map<Integer,List<Integer>> getPortfolioIdsPerShard(List<Portfolio> page,boolean[] selected){
+		Map<Integer,List<Integer>> portfolioIdsPerShard = new LinkedHashMap<>();
+		for(int i=0;i<page.size();i++){
+			if(!selected[i]) continue;
+			Portfolio portfolio = page.get(i);
+			addToShard(portfolioIdsPerShard, portfolio.getId(), portfolio.getClientId());
+		}
+		return portfolioIdsPerShard;
+	}
+
+	private void addToShard(Map<Integer,List<Integer>> portfolioIdsPerShard,int portfolioId,int clientId){
+		int shard = Math.floorMod(clientId, shardCount);
+		List<Integer> portfolioIds = portfolioIdsPerShard.get(shard);
+		if(portfolioIds==null){
+			portfolioIds = new ArrayList<>();
+			portfolioIdsPerShard.put(shard, portfolioIds);
+		}
+		portfolioIds.add(portfolioId);
+	}
+
+	@PreDestroy
+	public void shutdown(){
+		workers.shutdown();
+	}
+}
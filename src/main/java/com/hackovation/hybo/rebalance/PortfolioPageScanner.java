@@ -0,0 +1,78 @@
+package com.hackovation.hybo.rebalance;
+
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.hack17.hybo.domain.Portfolio;
+
+/*
+ * Walks the portfolios that exist on a date in pages ordered by id. Each page starts after the last id of
+ * the previous one (keyset pagination, no OFFSET) and the persistence context is cleared after every page,
+ * so memory is bounded by the page size and not by the number of portfolios.
+ */
+@Component
+public class PortfolioPageScanner {
+
+	private static final String PAGE_QUERY = "select p from Portfolio p where p.transactionDate <= :date and p.id > :lastId "
+			+ "and p.allocations is not empty order by p.id";
+	private static final String ALL_PAGE_QUERY = "select p from Portfolio p where p.id > :lastId "
+			+ "and p.allocations is not empty order by p.id";
+
+	@PersistenceContext
+	EntityManager entityManager;
+
+	private final TransactionTemplate readTransaction;
+	private final int pageSize;
+
+	@Autowired
+	public PortfolioPageScanner(PlatformTransactionManager transactionManager,@Value("${hybo.rebalance.pageSize:500}") int pageSize){
+		readTransaction = new TransactionTemplate(transactionManager);
+		readTransaction.setReadOnly(true);
+		this.pageSize = pageSize;
+	}
+
+	/**
+	 * Hands every page to the consumer. The portfolios are detached once the consumer returns, so keep
+	 * ids rather than entities across pages.
+	 */
+	public void scan(Date date,Consumer<List<Portfolio>> pageConsumer){
+		scan(date, Integer.MIN_VALUE, pageConsumer);
+	}
+
+	/**
+	 * Same as scan, for all portfolios with an id above afterId whatever their date.
+	 */
+	public void scanAfter(int afterId,Consumer<List<Portfolio>> pageConsumer){
+		scan(null, afterId, pageConsumer);
+	}
+
+	private void scan(Date date,int afterId,Consumer<List<Portfolio>> pageConsumer){
+		readTransaction.execute(status->{
+			int lastId = afterId;
+			while(true){
+				TypedQuery<Portfolio> query = entityManager.createQuery(date==null?ALL_PAGE_QUERY:PAGE_QUERY, Portfolio.class);
+				if(date!=null) query.setParameter("date", date);
+				List<Portfolio> page = query.setParameter("lastId", lastId)
+						.setMaxResults(pageSize)
+						.getResultList();
+				if(page.isEmpty()) break;
+				lastId = page.get(page.size()-1).getId();
+				pageConsumer.accept(page);
+				entityManager.clear();
+				if(page.size()<pageSize) break;
+			}
+			return null;
+		});
+	}
+}
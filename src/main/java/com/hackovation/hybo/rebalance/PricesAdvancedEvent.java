@@ -0,0 +1,25 @@
+package com.hackovation.hybo.rebalance;
+
+import java.util.Date;
+
+import org.springframework.context.ApplicationEvent;
+
+/*
+ * Published when the system date moves forward or new prices are loaded. Listeners read the prices of the
+ * date themselves, the event only says which day is now current.
+ */
+public class PricesAdvancedEvent extends ApplicationEvent{
+
+	private static final long serialVersionUID = 1L;
+
+	private final Date date;
+
+	public PricesAdvancedEvent(Object source,Date date){
+		super(source);
+		this.date = date;
+	}
+
+	public Date getDate(){
+		return date;
+	}
+}
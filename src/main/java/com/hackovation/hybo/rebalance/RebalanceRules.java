@@ -0,0 +1,113 @@
+package com.hackovation.hybo.rebalance;
+
+import java.util.Calendar;
+
+import com.hack17.hybo.domain.MarketStatus;
+import com.hack17.hybo.domain.RiskTolerance;
+
+/*
+ * The arithmetic of the threshold rebalancing rules, without any entities or prices, so that the scheduled
+ * rebalancer and the RuleBacktester apply exactly the same rules.
+ */
+public final class RebalanceRules {
+
+	public enum Strategy{
+		NONE,TIERED,FORMULA;
+	}
+
+	/**
+	 * Decides how much an asset class is moved towards its new percentage, 0 to leave it as it is.
+	 */
+	public interface AssetClassRule{
+		double adjustment(double existingPerc,double newPerc);
+	}
+
+	/**
+	 * Relative band around the weight at cost, outside it a portfolio has drifted.
+	 */
+	public static final double DRIFT_BAND = 0.1;
+	/**
+	 * Multiplier m of the formula based rule, equity = m*(value-floor).
+	 */
+	public static final int FORMULA_MULTIPLIER = 3;
+
+	// Upper bound of the existing percentage and the tolerated move for that tier, ascending
+	private static final double[] TIER_LIMITS = {2.0,5.0,10.0,20.0,40.0,60.0,80.0};
+	private static final double[] TIER_RANGES = {1.0,1.5,2.5,5.0,6.0,7.0,7.0};
+
+	/**
+	 * The rule the scheduled rebalancer applies: any move that is not larger than the new percentage itself.
+	 */
+	public static final AssetClassRule ELIGIBLE = (existingPerc,newPerc)->{
+		double diff = newPerc-existingPerc;
+		return Math.abs(diff)<=newPerc?diff:0;
+	};
+
+	/**
+	 * Moves only when the percentage left the range of its tier in the asset class tiered table.
+	 */
+	public static final AssetClassRule TIERED_TABLE = (existingPerc,newPerc)->{
+		double diff = newPerc-existingPerc;
+		return Math.abs(diff)>getTierRange(existingPerc)?diff:0;
+	};
+
+	private RebalanceRules(){
+	}
+
+	/**
+	 * Tolerated move of a percentage in the asset class tiered table, the last tier above 80%.
+	 */
+	public static double getTierRange(double existingPerc){
+		for(int i=0;i<TIER_LIMITS.length;i++)
+			if(existingPerc<=TIER_LIMITS[i]) return TIER_RANGES[i];
+		return TIER_RANGES[TIER_RANGES.length-1];
+	}
+
+	/**
+	 * No rebalancing in December and March, month as in Calendar.MONTH.
+	 */
+	public static boolean isBlackoutMonth(int month){
+		return month==Calendar.DECEMBER || month==Calendar.MARCH;
+	}
+
+	/**
+	 * Whether the active allocation is old enough to be rebalanced, 30 days for long horizons and 180
+	 * days otherwise.
+	 */
+	public static boolean isOldEnough(int days,int horizonInMonths){
+		if(days<30) return false;
+		return horizonInMonths>=60 || days>=180;
+	}
+
+	/**
+	 * Whether the latest weight left the band around the existing one.
+	 */
+	public static boolean isOutsideBand(double existing,double latest,double band){
+		double min = existing-(band*existing);
+		double max = existing+(band*existing);
+		return !(latest>=min && latest<=max);
+	}
+
+	/**
+	 * Which rule rebalances the equity of a portfolio.
+	 */
+	public static Strategy getStrategy(RiskTolerance riskTolerance,int horizonInMonths,MarketStatus marketStatus){
+		if(horizonInMonths<=36) return Strategy.NONE;
+		if(riskTolerance.equals(RiskTolerance.VERY_HIGH) && marketStatus.isGoingUp) return Strategy.NONE;
+		if(riskTolerance.equals(RiskTolerance.MODERATE) && marketStatus.isFluctuating) return Strategy.TIERED;
+		if(riskTolerance.equals(RiskTolerance.HIGH) && (marketStatus.isGoingDown || marketStatus.isGoingUp)) return Strategy.FORMULA;
+		if(riskTolerance.equals(RiskTolerance.LOW) && (marketStatus.isGoingDown || marketStatus.isGoingUp)) return Strategy.FORMULA;
+		return Strategy.NONE;
+	}
+
+	/**
+	 * Floor of the formula based rule, a share of the portfolio value that depends on the risk tolerance.
+	 */
+	public static int getFloorValue(RiskTolerance riskTolerance,double totalInvestment){
+		int perc = 0;
+		if(riskTolerance.equals(RiskTolerance.HIGH) || riskTolerance.equals(RiskTolerance.VERY_HIGH)) perc = 75;
+		if(riskTolerance.equals(RiskTolerance.LOW) || riskTolerance.equals(RiskTolerance.VERY_LOW)) perc = 75;
+		if(riskTolerance.equals(RiskTolerance.MODERATE)) perc = 50;
+		return Double.valueOf((totalInvestment*perc)/100).intValue();
+	}
+}
@@ -0,0 +1,442 @@
+package com.hackovation.hybo.rebalance;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.hack17.hybo.domain.Allocation;
+import com.hack17.hybo.domain.MarketStatus;
+import com.hack17.hybo.domain.Portfolio;
+import com.hack17.hybo.domain.RiskTolerance;
+import com.hackovation.hybo.AllocationType;
+import com.hackovation.hybo.Util.HyboUtil;
+import com.hackovation.hybo.Util.PricePanel;
+import com.hackovation.hybo.rebalance.RebalanceRules.AssetClassRule;
+import com.hackovation.hybo.rebalance.RebalanceRules.Strategy;
+
+/*
+ * Replays the threshold rebalancing rules offline, on the daily closes of a PricePanel and a book of
+ * portfolios held in primitive arrays, without touching the database. The book is split into chunks of
+ * portfolios that run on a bounded worker pool. Every chunk walks its portfolios day by day over the
+ * panel, values them, applies the trigger (blackout months, age of the active allocation, drift band) and
+ * rebalances with the tiered or formula based rule the portfolio's risk tolerance and the market status
+ * select, as BasedOnThresholdRebalcing does.
+ *
+ * Holdings are aggregated per ticker, trades are whole units and what is left from rounding stays as cash
+ * in the portfolio value. Every amount is valued at the day's close, so that a rebalance neither creates
+ * nor loses money.
+ */
+@Component
+public class RuleBacktester {
+
+	private static final int CHUNK = 64;
+
+	/*
+	 * Portfolios over the tickers of one panel. Quantity, cost and percentage of ticker a of portfolio p
+	 * are at p*width+a. Not thread safe while portfolios are added, not modified by a backtest.
+	 */
+	public static final class Book{
+		private final PricePanel panel;
+		private final boolean[] bond;
+		private final Map<String,Integer> ordinals = new HashMap<>();
+		private int size;
+		private double[] quantities = new double[0];
+		private double[] costs = new double[0];
+		private double[] percentages = new double[0];
+		private RiskTolerance[] riskTolerances = new RiskTolerance[0];
+		private int[] horizons = new int[0];
+		private long[] activeDays = new long[0];
+
+		/**
+		 * Tickers missing from the type map are treated as equity.
+		 */
+		public Book(PricePanel panel,Map<String,AllocationType> types){
+			this.panel = panel;
+			bond = new boolean[panel.getWidth()];
+			for(int a=0;a<bond.length;a++){
+				String ticker = panel.getTickers().get(a);
+				bond[a] = types.get(ticker)==AllocationType.BOND;
+				ordinals.put(ticker, a);
+			}
+		}
+
+		public PricePanel getPanel(){
+			return panel;
+		}
+
+		public int size(){
+			return size;
+		}
+
+		/**
+		 * Adds a portfolio with the given holdings per panel ticker, activeDay is the day (since 1970-01-01)
+		 * of its last allocation. The percentages are the weights at cost, as after a rebalance.
+		 */
+		public int add(RiskTolerance riskTolerance,int horizonInMonths,double[] quantities,double[] costs,long activeDay){
+			int width = bond.length;
+			if(quantities.length!=width || costs.length!=width) throw new IllegalArgumentException("Expected "+width+" quantities and costs");
+			int p = grow();
+			System.arraycopy(quantities, 0, this.quantities, p*width, width);
+			System.arraycopy(costs, 0, this.costs, p*width, width);
+			updatePercentages(this.quantities, this.costs, percentages, p*width, width);
+			riskTolerances[p] = riskTolerance;
+			horizons[p] = horizonInMonths;
+			activeDays[p] = activeDay;
+			return p;
+		}
+
+		/**
+		 * Adds the active allocations of the portfolio, lots of the same ticker are summed.
+		 */
+		public int add(Portfolio portfolio){
+			int width = bond.length;
+			double[] quantities = new double[width];
+			double[] costs = new double[width];
+			double[] percentages = new double[width];
+			long activeDay = Long.MIN_VALUE;
+			for(Allocation allocation:portfolio.getAllocations()){
+				if(!allocation.getIsActive().equals("Y")) continue;
+				Integer a = ordinals.get(allocation.getFund().getTicker());
+				if(a==null) throw new IllegalArgumentException(allocation.getFund().getTicker()+" is not in the price panel");
+				quantities[a] += allocation.getQuantity();
+				costs[a] += allocation.getQuantity()*allocation.getCostPrice();
+				percentages[a] += allocation.getPercentage();
+				activeDay = Math.max(activeDay, HyboUtil.toEpochDay(allocation.getTransactionDate()));
+			}
+			for(int a=0;a<width;a++) if(quantities[a]>0) costs[a] /= quantities[a];
+			int p = add(portfolio.getInvestorProfile().getRiskTolerance(), portfolio.getInvestorProfile().getInvestmentHorizonInMonths(),
+					quantities, costs, activeDay);
+			System.arraycopy(percentages, 0, this.percentages, p*width, width);
+			return p;
+		}
+
+		/**
+		 * Adds count random portfolios bought on the first day of the panel: random weights over all
+		 * tickers, risk tolerance and a horizon of 1 to 15 years. The same seed gives the same portfolios.
+		 */
+		public void addRandom(int count,double investment,long seed){
+			if(panel.size()==0) throw new IllegalArgumentException("The price panel is empty");
+			int width = bond.length;
+			SplittableRandom random = new SplittableRandom(seed);
+			RiskTolerance[] tolerances = RiskTolerance.values();
+			double[] quantities = new double[width];
+			double[] costs = new double[width];
+			double[] weights = new double[width];
+			for(int i=0;i<count;i++){
+				double total = 0.0;
+				for(int a=0;a<width;a++){
+					weights[a] = -Math.log(1.0-random.nextDouble());
+					total += weights[a];
+				}
+				for(int a=0;a<width;a++){
+					costs[a] = panel.getClose(0, a);
+					quantities[a] = (int)(investment*weights[a]/total/costs[a]);
+				}
+				add(tolerances[random.nextInt(tolerances.length)], 12*(1+random.nextInt(15)), quantities, costs, panel.getEpochDay(0));
+			}
+		}
+
+		private int grow(){
+			if(size==horizons.length){
+				int capacity = Math.max(16, 2*size);
+				int width = bond.length;
+				quantities = Arrays.copyOf(quantities, capacity*width);
+				costs = Arrays.copyOf(costs, capacity*width);
+				percentages = Arrays.copyOf(percentages, capacity*width);
+				riskTolerances = Arrays.copyOf(riskTolerances, capacity);
+				horizons = Arrays.copyOf(horizons, capacity);
+				activeDays = Arrays.copyOf(activeDays, capacity);
+			}
+			return size++;
+		}
+	}
+
+	/*
+	 * Value of every portfolio on every day of the panel, and per portfolio the traded value, number of
+	 * trades and number of rebalances.
+	 */
+	public static final class Result{
+		private final int days;
+		private final double[] values;
+		private final double[] traded;
+		private final int[] trades;
+		private final int[] rebalances;
+
+		Result(int portfolios,int days){
+			this.days = days;
+			values = new double[portfolios*days];
+			traded = new double[portfolios];
+			trades = new int[portfolios];
+			rebalances = new int[portfolios];
+		}
+
+		public int size(){
+			return trades.length;
+		}
+
+		public int getDays(){
+			return days;
+		}
+
+		public double getValue(int portfolio,int day){
+			return values[portfolio*days+day];
+		}
+
+		public double[] getValuePath(int portfolio){
+			return Arrays.copyOfRange(values, portfolio*days, (portfolio+1)*days);
+		}
+
+		/**
+		 * Value bought and sold over the backtest relative to the value on the first day.
+		 */
+		public double getTurnover(int portfolio){
+			double initial = days==0?0.0:values[portfolio*days];
+			return initial==0.0?0.0:traded[portfolio]/initial;
+		}
+
+		/**
+		 * Number of times a ticker's quantity changed.
+		 */
+		public int getTrades(int portfolio){
+			return trades[portfolio];
+		}
+
+		public int getRebalances(int portfolio){
+			return rebalances[portfolio];
+		}
+	}
+
+	private final ThreadPoolExecutor workers;
+
+	@Autowired
+	public RuleBacktester(@Value("${hybo.backtest.workers:0}") int workerCount){
+		if(workerCount<=0) workerCount = Runtime.getRuntime().availableProcessors();
+		AtomicInteger threadNumber = new AtomicInteger(1);
+		workers = new ThreadPoolExecutor(workerCount, workerCount, 60L, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<>(2*workerCount), runnable->{
+					Thread thread = new Thread(runnable, "backtest-worker-"+threadNumber.getAndIncrement());
+					thread.setDaemon(true);
+					return thread;
+				}, new ThreadPoolExecutor.CallerRunsPolicy());
+	}
+
+	/**
+	 * Backtests the rules of the scheduled rebalancer, checked every day.
+	 */
+	public Result run(Book book,MarketStatus marketStatus){
+		return run(book, marketStatus, RebalanceRules.ELIGIBLE, RebalanceRules.DRIFT_BAND, 1);
+	}
+
+	/**
+	 * @param rule decides the asset class moves of the tiered rule
+	 * @param checkEvery the rules are checked every that many days of the panel
+	 */
+	public Result run(Book book,MarketStatus marketStatus,AssetClassRule rule,double band,int checkEvery){
+		if(checkEvery<1) throw new IllegalArgumentException("checkEvery must be at least 1");
+		long start = System.nanoTime();
+		PricePanel panel = book.getPanel();
+		int[] months = new int[panel.size()];
+		for(int t=0;t<months.length;t++) months[t] = panel.getMonth(t);
+		Result result = new Result(book.size(), panel.size());
+
+		List<Future<?>> chunks = new ArrayList<>((book.size()+CHUNK-1)/CHUNK);
+		for(int from=0;from<book.size();from+=CHUNK){
+			int first = from;
+			int limit = Math.min(book.size(), from+CHUNK);
+			chunks.add(workers.submit(()->replay(book, first, limit, months, marketStatus, rule, band, checkEvery, result)));
+		}
+		for(Future<?> chunk:chunks){
+			try{
+				chunk.get();
+			}catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while backtesting", e);
+			}catch(ExecutionException e){
+				throw new IllegalStateException("Backtest failed", e.getCause());
+			}
+		}
+
+		int rebalances = 0;
+		int trades = 0;
+		for(int p=0;p<result.size();p++){
+			rebalances += result.rebalances[p];
+			trades += result.trades[p];
+		}
+		double seconds = (System.nanoTime()-start)/1e9;
+		System.out.println("Backtested "+book.size()+" portfolios over "+panel.size()+" days, "+rebalances+" rebalances and "
+				+trades+" trades, "+String.format("%.3f", seconds)+" s");
+		return result;
+	}
+
+	private void replay(Book book,int first,int limit,int[] months,MarketStatus marketStatus,AssetClassRule rule,double band,
+			int checkEvery,Result result){
+		PricePanel panel = book.getPanel();
+		int width = panel.getWidth();
+		int days = panel.size();
+		double[] closes = panel.getCloses();
+		boolean[] bond = book.bond;
+
+		double[] quantity = new double[width];
+		double[] cost = new double[width];
+		double[] perc = new double[width];
+		double[] target = new double[width];
+
+		for(int p=first;p<limit;p++){
+			int offset = p*width;
+			System.arraycopy(book.quantities, offset, quantity, 0, width);
+			System.arraycopy(book.costs, offset, cost, 0, width);
+			System.arraycopy(book.percentages, offset, perc, 0, width);
+			RiskTolerance riskTolerance = book.riskTolerances[p];
+			int horizon = book.horizons[p];
+			long activeDay = book.activeDays[p];
+			// The market status is fixed for a run, so is the rule of every portfolio
+			Strategy strategy = RebalanceRules.getStrategy(riskTolerance, horizon, marketStatus);
+			double cash = 0.0;
+
+			for(int t=0;t<days;t++){
+				int row = t*width;
+				double value = 0.0;
+				double totalCost = 0.0;
+				for(int a=0;a<width;a++){
+					value += quantity[a]*closes[row+a];
+					totalCost += quantity[a]*cost[a];
+				}
+
+				if(strategy!=Strategy.NONE && t%checkEvery==0 && !RebalanceRules.isBlackoutMonth(months[t])
+						&& RebalanceRules.isOldEnough((int)(panel.getEpochDay(t)-activeDay), horizon)
+						&& hasDrifted(quantity, cost, closes, row, width, totalCost, value, band)){
+					double total = value+cash;
+					if(strategy==Strategy.TIERED) tiered(quantity, cost, perc, closes, row, bond, rule, cash, target);
+					else formula(quantity, cost, closes, row, bond, riskTolerance, total, target);
+
+					value = 0.0;
+					for(int a=0;a<width;a++){
+						double price = closes[row+a];
+						if(target[a]!=quantity[a]){
+							result.trades[p]++;
+							result.traded[p] += Math.abs(target[a]-quantity[a])*price;
+						}
+						quantity[a] = target[a];
+						value += quantity[a]*price;
+					}
+					updatePercentages(quantity, cost, perc, 0, width);
+					cash = total-value;
+					activeDay = panel.getEpochDay(t);
+					result.rebalances[p]++;
+				}
+				result.values[p*days+t] = value+cash;
+			}
+		}
+	}
+
+	/*
+	 * Drift check of shouldTriggerRebalance: some ticker's weight at the day's closes left the band around
+	 * its weight at cost.
+	 */
+	private static boolean hasDrifted(double[] quantity,double[] cost,double[] closes,int row,int width,double totalCost,double value,double band){
+		if(totalCost<=0 || value<=0) return false;
+		for(int a=0;a<width;a++){
+			if(quantity[a]==0) continue;
+			if(RebalanceRules.isOutsideBand(quantity[a]*cost[a]/totalCost, quantity[a]*closes[row+a]/value, band)) return true;
+		}
+		return false;
+	}
+
+	/*
+	 * tieredBasedRebalancing: each equity moves half way to the adjustment of the asset class rule, the
+	 * bonds take what the equities release or absorb.
+	 */
+	private static void tiered(double[] quantity,double[] cost,double[] perc,double[] closes,int row,boolean[] bond,AssetClassRule rule,
+			double cash,double[] target){
+		int width = quantity.length;
+		double equityValue = 0.0;
+		double remainingForBonds = cash;
+		for(int a=0;a<width;a++){
+			if(bond[a]) remainingForBonds += quantity[a]*closes[row+a];
+			else equityValue += quantity[a]*closes[row+a];
+		}
+		for(int a=0;a<width;a++){
+			if(bond[a]) continue;
+			target[a] = quantity[a];
+			if(quantity[a]==0) continue;
+			double price = closes[row+a];
+			double newPerc = quantity[a]*price/equityValue*100;
+			double adjustment = rule.adjustment(perc[a], newPerc);
+			if(adjustment==0) continue;
+			double averagePerc = perc[a]+adjustment/2;
+			target[a] = (int)(equityValue*averagePerc/100/price);
+			cost[a] = price;
+			remainingForBonds += (quantity[a]-target[a])*price;
+		}
+		bonds(quantity, cost, closes, row, bond, remainingForBonds, target);
+	}
+
+	/*
+	 * formulaBasedRebalancing: equity = m*(value-floor), split over the equities by their weight at cost,
+	 * the rest goes to the bonds.
+	 */
+	private static void formula(double[] quantity,double[] cost,double[] closes,int row,boolean[] bond,RiskTolerance riskTolerance,
+			double total,double[] target){
+		int width = quantity.length;
+		double floor = RebalanceRules.getFloorValue(riskTolerance, total);
+		double equityPortion = Math.abs(RebalanceRules.FORMULA_MULTIPLIER*(total-floor));
+		double equityCost = 0.0;
+		for(int a=0;a<width;a++) if(!bond[a]) equityCost += quantity[a]*cost[a];
+		for(int a=0;a<width;a++){
+			if(bond[a]) continue;
+			target[a] = 0;
+			if(quantity[a]==0) continue;
+			double price = closes[row+a];
+			double perc = quantity[a]*cost[a]/equityCost*100;
+			target[a] = (int)(equityPortion*perc/100/price);
+			cost[a] = price;
+		}
+		bonds(quantity, cost, closes, row, bond, total-equityPortion, target);
+	}
+
+	/*
+	 * rebalanceBond: the amount is split over the bonds held by their weight at cost.
+	 */
+	private static void bonds(double[] quantity,double[] cost,double[] closes,int row,boolean[] bond,double amount,double[] target){
+		int width = quantity.length;
+		double bondCost = 0.0;
+		for(int a=0;a<width;a++) if(bond[a]) bondCost += quantity[a]*cost[a];
+		for(int a=0;a<width;a++){
+			if(!bond[a]) continue;
+			target[a] = 0;
+			if(quantity[a]==0 || bondCost<=0) continue;
+			double price = closes[row+a];
+			target[a] = (int)(Math.max(amount, 0)*(quantity[a]*cost[a]/bondCost)/price);
+			cost[a] = price;
+		}
+	}
+
+	/*
+	 * updatePercLatest: percentage of every ticker in the portfolio at cost.
+	 */
+	private static void updatePercentages(double[] quantity,double[] cost,double[] perc,int offset,int width){
+		double total = 0.0;
+		for(int a=offset;a<offset+width;a++) total += quantity[a]*cost[a];
+		for(int a=offset;a<offset+width;a++) perc[a] = total>0?quantity[a]*cost[a]*100/total:0;
+	}
+
+	@PreDestroy
+	public void shutdown(){
+		workers.shutdown();
+	}
+}
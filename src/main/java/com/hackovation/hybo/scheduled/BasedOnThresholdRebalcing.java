@@ -11,16 +11,23 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.stream.Collectors;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.PreDestroy;
 
 import org.apache.commons.collections4.map.MultiValueMap;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
 
 import com.hack17.hybo.domain.Action;
 import com.hack17.hybo.domain.Allocation;
@@ -34,9 +41,15 @@ import com.hack17.hybo.service.DBLoggerService;
 import com.hack17.hybo.util.DateTimeUtil;
 import com.hackovation.hybo.AllocationType;
 import com.hackovation.hybo.CreatedBy;
-import com.hackovation.hybo.Util.HyboUtil;
 import com.hackovation.hybo.Util.PathsAsPerAssetClass;
+import com.hackovation.hybo.rebalance.DriftScreen;
+import com.hackovation.hybo.rebalance.HoldingsIndex;
+import com.hackovation.hybo.rebalance.PartitionedRebalancingEngine;
+import com.hackovation.hybo.rebalance.PortfolioPageScanner;
+import com.hackovation.hybo.rebalance.PricesAdvancedEvent;
 import com.hackovation.hybo.rebalance.Rebalance;
+import com.hackovation.hybo.rebalance.RebalanceRules;
+import com.hackovation.hybo.services.PriceCacheService;
 
 @Component
 @Service
@@ -46,33 +59,72 @@ public class BasedOnThresholdRebalcing implements Rebalance{
 	PortfolioRepository portfolioRepository;
 	@Autowired
 	DBLoggerService dbLoggerService;
+	@Autowired
+	PriceCacheService priceCacheService;
+	@Autowired
+	PartitionedRebalancingEngine rebalancingEngine;
+	@Autowired
+	PortfolioPageScanner portfolioPageScanner;
+	@Autowired
+	HoldingsIndex holdingsIndex;
 	final int threshold = 15;
-	Map<String,String> indexToEtfMap;
-	Map<String,String> EtfToIndexMap;
-	final Map<Double,Double> assetClassTieredTable;
-	Calendar testCalendar = null;
-	double remainingAmountForBonds = 0.0;
-	boolean runRebalancing = false;
-	
-	{
-		assetClassTieredTable = new HashMap<>();
-		assetClassTieredTable.put(2.0, 1.0);
-		assetClassTieredTable.put(5.0, 1.5);
-		assetClassTieredTable.put(10.0, 2.5);
-		assetClassTieredTable.put(20.0, 5.0);
-		assetClassTieredTable.put(40.0, 6.0);
-		assetClassTieredTable.put(60.0, 7.0);
-		assetClassTieredTable.put(80.0, 7.0);
+	volatile boolean runRebalancing = false;
+	
+	/*
+	 * Polling is the default. In event mode (hybo.rebalance.mode=event) the cron is idle and a
+	 * PricesAdvancedEvent starts the pass instead. When the date has
+	 * advanced the pass is a full rebalance(date) sweep, since the calendar rules (blackout months, age of the
+	 * allocation) and the drift of every portfolio change with the date, and the holdings index is rebuilt.
+	 * Further events for the same date (new prices loaded) only consider the tickers whose price moved more
+	 * than priceBand since the sweep or their last evaluation, and read the portfolios holding them plus the
+	 * ones created since. Moves below the band accumulate against the reference price until they cross it.
+	 *
+	 * Passes run one at a time on the event worker. Events that arrive during a pass are coalesced: only the
+	 * latest date is kept and one more pass runs for it afterwards. While rebalancing is toggled off the
+	 * latest date stays pending and is picked up when it is toggled on again.
+	 *
+	 * Events published in a transaction arrive once it has committed, so that the pass reads the new date and
+	 * prices, and not at all when it rolls back.
+	 */
+	private final boolean eventDriven;
+	private final double priceBand;
+	private final ExecutorService eventWorker;
+	private final AtomicReference<Date> pendingDate = new AtomicReference<>();
+	// Whether a pass is queued on the event worker and has not taken the pending date yet
+	private final AtomicBoolean passQueued = new AtomicBoolean();
+	// Only used on the event worker thread
+	private final Map<String,Double> referencePrices = new HashMap<>();
+	private Date sweptDate;
+	
+	/*
+	 * State of one portfolio's rebalancing. Portfolios are rebalanced concurrently so this must not live in
+	 * fields of the (singleton) rebalancer.
+	 */
+	static final class RebalanceContext{
+		double remainingAmountForBonds = 0.0;
+	}
+	
+	@Autowired
+	public BasedOnThresholdRebalcing(@Value("${hybo.rebalance.mode:poll}") String mode,
+			@Value("${hybo.rebalance.priceBand:0.02}") double priceBand){
+		eventDriven = "event".equalsIgnoreCase(mode);
+		this.priceBand = priceBand;
+		eventWorker = Executors.newSingleThreadExecutor(runnable->{
+			Thread thread = new Thread(runnable, "rebalance-events");
+			thread.setDaemon(true);
+			return thread;
+		});
 	}
 	
 	public void toggleRebalancing(){
 		runRebalancing = runRebalancing?false:true;
 		System.out.println("Rebalancing "+runRebalancing);
+		if(eventDriven && runRebalancing) schedulePass();
 	}
 	
 	@Scheduled(initialDelay=0,fixedDelay=10000)
-	@Transactional
 	public void cron(){
+		if(eventDriven) return;
 		CurrentDate existingDate = (CurrentDate)portfolioRepository.getEntity(1, CurrentDate.class);
 		if(runRebalancing){
 			System.out.println("Rebalancing Job : "+Calendar.getInstance().getTime());
@@ -82,7 +134,7 @@ public class BasedOnThresholdRebalcing implements Rebalance{
 	
 	public void test(){
 		CurrentDate existingDate = (CurrentDate)portfolioRepository.getEntity(1, CurrentDate.class);
-		testCalendar  = Calendar.getInstance();
+		Calendar testCalendar  = Calendar.getInstance();
 		testCalendar.setTime(existingDate.getDate());
 		Date systemDate = new Date();
 		Date date = new Date();
@@ -91,61 +143,123 @@ public class BasedOnThresholdRebalcing implements Rebalance{
 			date = testCalendar.getTime();
 			System.out.println("-------------------------------------------------------------------");
 			System.out.println("Rebalancing Started ... "+date);
-			EtfToIndexMap = HyboUtil.getEtfToIndexMapping();
-			indexToEtfMap = HyboUtil.getIndexToEtfMapping();
 
-			List<Portfolio> listOfPortfolios =  portfolioRepository.getAllPortfoliosBeforeDate(date);
-			Map<Portfolio,List<Allocation>> groupWisePortfolio = groupByUserId(listOfPortfolios);
-			
-			Set<Entry<Portfolio,List<Allocation>>> entrySet = groupWisePortfolio.entrySet();
-			for(Entry<Portfolio,List<Allocation>> entry:entrySet){
-				Portfolio portfolio = entry.getKey();
-				if(!shouldTriggerRebalance(portfolio,date))continue;
-				else System.out.println(" Will do rebalancing");
-			}
+			Date pageDate = date;
+			portfolioPageScanner.scan(date, page->{
+				for(Portfolio portfolio:page){
+					if(!shouldTriggerRebalance(portfolio,pageDate))continue;
+					else System.out.println(" Will do rebalancing");
+				}
+			});
 			System.out.println("\n\n\n\n\n");
 			if(date.after(systemDate))break;
 		}
 	}
 	
+	/*
+	 * Portfolios are evaluated and rebalanced on the engine's worker pool, one transaction per shard.
+	 * The drift screen rejects portfolios that are inside the band before any of them is reloaded.
+	 * This method is deliberately not @Transactional: the page scan runs in its own read transaction and
+	 * every shard in its own REQUIRES_NEW transaction on a worker thread, which a transaction bound to the
+	 * calling thread would not reach. It would only hold a connection open for the whole pass.
+	 */
 	@Override
-	@Transactional
 	public void rebalance(Date date) {
 		
 		System.out.println("-----------------------------------------------------");
 		System.out.println("Rebalancing Started Date:  "+date);
-		EtfToIndexMap = HyboUtil.getEtfToIndexMapping();
-		indexToEtfMap = HyboUtil.getIndexToEtfMapping();
 
-		List<Portfolio> listOfPortfolios =  portfolioRepository.getAllPortfoliosBeforeDate(date);
+		DriftScreen driftScreen = new DriftScreen(date, RebalanceRules.DRIFT_BAND, priceCacheService);
+		rebalancingEngine.run(date, driftScreen, portfolio->rebalanceIfTriggered(portfolio, date));
 		
-		System.out.println("Fetched all portfolios. Size is : "+listOfPortfolios.size());
-		Map<Portfolio,List<Allocation>> groupWisePortfolio = groupByUserId(listOfPortfolios);
+		System.out.println("Rebalancing Done !!! ");
+		System.out.println("--------------------------------------------------------");
 		
-		Set<Entry<Portfolio,List<Allocation>>> entrySet = groupWisePortfolio.entrySet();
-		for(Entry<Portfolio,List<Allocation>> entry:entrySet){
-			Portfolio portfolio = entry.getKey();
-			System.out.println("Processing Portfolio for "+portfolio.getClientId());
-			
-			if(!shouldTriggerRebalance(portfolio,date))continue;
-			
-			List<Allocation> portfolioList = entry.getValue();
-			System.out.println("	Rebalancing  Portfolio"+portfolio);
-			rebalancePortfolio(portfolio,portfolioList,date);
-			System.out.println("Completed Processing Portfolio for "+portfolio.getClientId());
-			System.out.println("                 --------                     ");
+	}
+	
+	@TransactionalEventListener(phase=TransactionPhase.AFTER_COMMIT,fallbackExecution=true)
+	public void onPricesAdvanced(PricesAdvancedEvent event){
+		if(!eventDriven) return;
+		pendingDate.set(event.getDate());
+		schedulePass();
+	}
+	
+	/*
+	 * Queues a pass unless one is queued already, that one will take the latest pending date.
+	 */
+	private void schedulePass(){
+		if(pendingDate.get()!=null && passQueued.compareAndSet(false, true))
+			eventWorker.execute(this::rebalanceMovedPortfolios);
+	}
+	
+	private void rebalanceMovedPortfolios(){
+		passQueued.set(false);
+		// Left pending while rebalancing is off, toggling it on schedules the pass again
+		if(!runRebalancing) return;
+		Date date = pendingDate.getAndSet(null);
+		if(date==null) return;
+		if(!date.equals(sweptDate)){
+			rebalance(date);
+			holdingsIndex.invalidate();
+			holdingsIndex.refresh();
+			referencePrices.clear();
+			for(String ticker:holdingsIndex.getTickers())
+				referencePrices.put(ticker, priceCacheService.getIndexPriceForGivenDate(ticker, date));
+			sweptDate = date;
+			return;
+		}
+		System.out.println("-----------------------------------------------------");
+		System.out.println("Rebalancing Started on price update, Date:  "+date);
+		
+		Map<Integer,Integer> clientIdPerPortfolio = holdingsIndex.refresh();
+		List<String> movedTickers = new ArrayList<>();
+		for(String ticker:holdingsIndex.getTickers()){
+			double price = priceCacheService.getIndexPriceForGivenDate(ticker, date);
+			Double reference = referencePrices.get(ticker);
+			if(reference==null || Math.abs(price-reference)>priceBand*Math.abs(reference)){
+				movedTickers.add(ticker);
+				referencePrices.put(ticker, price);
+			}
 		}
+		if(movedTickers.isEmpty() && clientIdPerPortfolio.isEmpty()){
+			System.out.println("No price moved more than "+priceBand+" and no new portfolio, nothing to rebalance");
+			return;
+		}
+		System.out.println("Prices moved: "+movedTickers+", new portfolios: "+clientIdPerPortfolio.size());
+		clientIdPerPortfolio.putAll(holdingsIndex.getClientIdPerPortfolio(movedTickers));
+		rebalancingEngine.run(clientIdPerPortfolio, portfolio->{
+			if(!rebalanceIfTriggered(portfolio, date)) return false;
+			holdingsIndex.update(portfolio);
+			return true;
+		});
 		
 		System.out.println("Rebalancing Done !!! ");
 		System.out.println("--------------------------------------------------------");
+	}
+	
+	private boolean rebalanceIfTriggered(Portfolio portfolio,Date date){
+		System.out.println("Processing Portfolio for "+portfolio.getClientId());
 		
+		if(!shouldTriggerRebalance(portfolio,date))return false;
+		
+		List<Allocation> portfolioList = portfolio.getAllocations();
+		System.out.println("	Rebalancing  Portfolio"+portfolio);
+		rebalancePortfolio(portfolio,portfolioList,date);
+		System.out.println("Completed Processing Portfolio for "+portfolio.getClientId());
+		System.out.println("                 --------                     ");
+		return true;
+	}
+	
+	@PreDestroy
+	public void shutdown(){
+		eventWorker.shutdown();
 	}
 	
 	private boolean shouldTriggerRebalance(Portfolio portfolio,Date currentDate){
 		boolean trigger = false;
 		Calendar cal = Calendar.getInstance();
 		cal.setTime(currentDate);
-		if(cal.get(Calendar.MONTH)==Calendar.DECEMBER || cal.get(Calendar.MONTH)==Calendar.MARCH) return false;
+		if(RebalanceRules.isBlackoutMonth(cal.get(Calendar.MONTH))) return false;
 		System.out.println("	Level 1 Trigger Check.");
 		int horizonInMonths = portfolio.getInvestorProfile().getInvestmentHorizonInMonths();
 		Date activeAllocationDate = null;
@@ -157,35 +271,25 @@ public class BasedOnThresholdRebalcing implements Rebalance{
 			}
 		}
 		int days = DateTimeUtil.getDateDifferenceInDays(currentDate, activeAllocationDate);
-		if(days<30){
-			System.out.println("	Checkpoint one failed. Days difference: "+days);
-			System.out.println("	Portfolio should be atleast 30 days old");
-		}else if(days>=30 && horizonInMonths>=60){
+		trigger = RebalanceRules.isOldEnough(days, horizonInMonths);
+		if(trigger)
 			System.out.println("	Checkpoint one passed. Days difference: "+days+" And Horizon is "+horizonInMonths+" months");
-			trigger = true;
-		}else if(days>=180){
-			System.out.println("	Checkpoint one passed. Days difference: "+days);
-			trigger = true;
-		}else{
-			trigger = false;
-			System.out.println("	Checkpoint one failed because no condition match. Days difference: "+days+" And Horizon is "+horizonInMonths+" months");
-		}
+		else
+			System.out.println("	Checkpoint one failed. Days difference: "+days+" And Horizon is "+horizonInMonths+" months");
 		
 		if(trigger){
 			System.out.println("	Checkpoint 2 limit started here.");
 			Map<String,Double> existingPercentageMap = getTypeAllocationPercentage(allocationList);
-			double P = 0.1;//getValueOfP(portfolio, allocationList);
+			double P = RebalanceRules.DRIFT_BAND;//getValueOfP(portfolio, allocationList);
 
 			List<Allocation> currentValueOfAllocations = listOfLatestValue(allocationList,currentDate);
 			Map<String,Double> currentPercentageMap = getTypeAllocationPercentage(currentValueOfAllocations);
 			
 			for(String key:existingPercentageMap.keySet()){
 				double existingPerc = existingPercentageMap.get(key);
-				double min = existingPerc-(P*existingPerc);
-				double max = existingPerc + (P*existingPerc);
 				double latestPer = currentPercentageMap.get(key);
 				//System.out.println(key+","+existingPerc+","+latestPer);
-				if(latestPer>=min && latestPer<=max){
+				if(!RebalanceRules.isOutsideBand(existingPerc, latestPer, P)){
 					trigger = false;
 				}else{
 					System.out.println("	Checkpoint 2 passed :"+key +" , "+currentDate);
@@ -239,7 +343,7 @@ public class BasedOnThresholdRebalcing implements Rebalance{
  		cal.setTime(date);
  		cal = trimTime(cal);
 		for(Allocation object:allocation){
-			double latestPrice = portfolioRepository.getIndexPriceForGivenDate(object.getFund().getTicker(), cal.getTime());
+			double latestPrice = priceCacheService.getIndexPriceForGivenDate(object.getFund().getTicker(), cal.getTime());
 			Allocation tempAllocation = copyAllocationInNewObject(object, cal.getTime());
 			tempAllocation.setCostPrice(latestPrice);
 			tempList.add(tempAllocation);
@@ -256,10 +360,10 @@ public class BasedOnThresholdRebalcing implements Rebalance{
 		
 		List<Allocation> eqAllocationList = typeWiseAllocation.get(AllocationType.EQ);
 		List<Allocation> bondAllocationList = typeWiseAllocation.get(AllocationType.BOND);
-		remainingAmountForBonds = 0;
-		List<Allocation> newAllocationList = rebalanceEquity(portfolio,eqAllocationList,bondAllocationList,date);
+		RebalanceContext context = new RebalanceContext();
+		List<Allocation> newAllocationList = rebalanceEquity(context,portfolio,eqAllocationList,bondAllocationList,date);
 		if(newAllocationList != null && newAllocationList.size()>0){
-			newAllocationList = rebalanceBond(portfolio, bondAllocationList,newAllocationList,date);
+			newAllocationList = rebalanceBond(context,portfolio, bondAllocationList,newAllocationList,date);
 			persistAllocationInDatabase(portfolio,portfolioList,newAllocationList,date);
 		}
 	}
@@ -297,7 +401,7 @@ public class BasedOnThresholdRebalcing implements Rebalance{
 			Calendar cal = Calendar.getInstance();
 	 		cal.setTime(date);
 	 		cal = trimTime(cal);
-			double latestPrice = portfolioRepository.getIndexPriceForGivenDate(allocation.getFund().getTicker(), cal.getTime());
+			double latestPrice = priceCacheService.getIndexPriceForGivenDate(allocation.getFund().getTicker(), cal.getTime());
 			double value = latestPrice*allocation.getQuantity();
 			if(tickerWiseValue.containsKey(ticker))value+=tickerWiseValue.get(ticker);
 			tickerWiseValue.put(ticker, value);
@@ -399,7 +503,7 @@ public class BasedOnThresholdRebalcing implements Rebalance{
 		return dataMap;
 	}
 	
-	public List<Allocation> rebalanceBond(Portfolio portfolio,List<Allocation> bondAllocationList,List<Allocation>updatedAllocationList,Date date){
+	public List<Allocation> rebalanceBond(RebalanceContext context,Portfolio portfolio,List<Allocation> bondAllocationList,List<Allocation>updatedAllocationList,Date date){
 		List<Allocation> updatedBondAllocationList = updatedAllocationList;
 		Calendar cal = Calendar.getInstance();
  		cal.setTime(date);
@@ -426,9 +530,9 @@ public class BasedOnThresholdRebalcing implements Rebalance{
 			double perc = tickerWiseTotal.get(ticker)/totalOfBondAllocation*100;
 			
 			
-			double latestPrice = portfolioRepository.getIndexPriceForGivenDate(newAllocation.getFund().getTicker(), cal.getTime());
+			double latestPrice = priceCacheService.getIndexPriceForGivenDate(newAllocation.getFund().getTicker(), cal.getTime());
 
-			double amountToAssign = remainingAmountForBonds*perc/100;
+			double amountToAssign = context.remainingAmountForBonds*perc/100;
 			int count = new Double(amountToAssign/latestPrice).intValue();
 			newAllocation.setQuantity(count);
 			newAllocation.setCostPrice(latestPrice);
@@ -479,34 +583,24 @@ public class BasedOnThresholdRebalcing implements Rebalance{
 		return sum;
 	}
 	
-	public List<Allocation> rebalanceEquity(Portfolio portfolio, List<Allocation> equityAllocationList,List<Allocation> bondAllocationList,Date date){
+	public List<Allocation> rebalanceEquity(RebalanceContext context,Portfolio portfolio, List<Allocation> equityAllocationList,List<Allocation> bondAllocationList,Date date){
 		List<Allocation> newAllocationList = new ArrayList<>();
 		try{
 			MarketStatus marketStatus = (MarketStatus)portfolioRepository.getEntity(1, MarketStatus.class);
 			InvestorProfile profile = portfolio.getInvestorProfile();
 			RiskTolerance riskTolerance = profile.getRiskTolerance();
 			
-			if(profile.getInvestmentHorizonInMonths()<=36)
-			{
-				System.out.println("	Investment Horizon is very less. Therefore no need of rebalancing. "+profile.getInvestmentHorizonInMonths());
-			}
-			else if(riskTolerance.equals(RiskTolerance.VERY_HIGH) && marketStatus.isGoingUp){
-				System.out.println("	Not rebalancing because RiskToleranc is High and Market is going up.");
-			}
-			else if(riskTolerance.equals(RiskTolerance.MODERATE) && marketStatus.isFluctuating){
+			switch(RebalanceRules.getStrategy(riskTolerance, profile.getInvestmentHorizonInMonths(), marketStatus)){
+			case TIERED:
 				System.out.println("	Tiered Rebalncing because RiskToleranc is Moderate/Medium and Market is fluctuating.");
-				newAllocationList = tieredBasedRebalancing(portfolio, equityAllocationList,bondAllocationList,date);
-			}
-			else if(riskTolerance.equals(RiskTolerance.HIGH) && (marketStatus.isGoingDown || marketStatus.isGoingUp)){
-				System.out.println("	Formula Based Rebalncing because RiskToleranc is High and Market is not fluctuating.");
-				newAllocationList = formulaBasedRebalancing(portfolio, equityAllocationList,bondAllocationList,date);
-			}
-			else if(riskTolerance.equals(RiskTolerance.LOW) && (marketStatus.isGoingDown || marketStatus.isGoingUp)){
-				System.out.println("	Formula Based Rebalncing RiskTolerance is Low.");
-				newAllocationList = formulaBasedRebalancing(portfolio, equityAllocationList,bondAllocationList,date);
-			}			
-			else{
-				System.out.println("	Not rebalancing no condition match related to Risktolerance and Market Condition.");
+				newAllocationList = tieredBasedRebalancing(context,portfolio, equityAllocationList,bondAllocationList,date);
+				break;
+			case FORMULA:
+				System.out.println("	Formula Based Rebalncing because RiskToleranc is "+riskTolerance+" and Market is not fluctuating.");
+				newAllocationList = formulaBasedRebalancing(context,portfolio, equityAllocationList,bondAllocationList,date);
+				break;
+			default:
+				System.out.println("	Not rebalancing, no rule for horizon "+profile.getInvestmentHorizonInMonths()+" months, RiskTolerance "+riskTolerance+" and this Market Condition.");
 			}
 		}catch(Exception e){
 			e.printStackTrace();
@@ -514,7 +608,7 @@ public class BasedOnThresholdRebalcing implements Rebalance{
 		return newAllocationList;
 	}
 	
-	private List<Allocation> tieredBasedRebalancing(Portfolio portfolio, List<Allocation> equityAllocationList,List<Allocation> bondAllocationList,Date date){
+	private List<Allocation> tieredBasedRebalancing(RebalanceContext context,Portfolio portfolio, List<Allocation> equityAllocationList,List<Allocation> bondAllocationList,Date date){
 		HashMap<String,Double> existPercMap = new HashMap<>();
 		HashMap<String, Double> newPercMap = new HashMap<>();
 		HashMap<String, Double> newPricesPerETF = new HashMap<>();
@@ -526,12 +620,12 @@ public class BasedOnThresholdRebalcing implements Rebalance{
 		for(Allocation existingAllocation:bondAllocationList){
 			int noOfETF = existingAllocation.getQuantity();
 			double cost = existingAllocation.getCostPrice();
-			remainingAmountForBonds +=cost*existingAllocation.getQuantity();
+			context.remainingAmountForBonds +=cost*existingAllocation.getQuantity();
 		}
 		for(Allocation existingAllocation:equityAllocationList){
 			int noOfETF = existingAllocation.getQuantity();
 			Map<String,String> paths = PathsAsPerAssetClass.getETFPaths();
-			double latestPrice = portfolioRepository.getIndexPriceForGivenDate(existingAllocation.getFund().getTicker(), cal.getTime());
+			double latestPrice = priceCacheService.getIndexPriceForGivenDate(existingAllocation.getFund().getTicker(), cal.getTime());
 			double cost = latestPrice;
 			totalValue +=cost*existingAllocation.getQuantity();
 			newPercMap.put(existingAllocation.getFund().getTicker(), cost);
@@ -573,7 +667,7 @@ public class BasedOnThresholdRebalcing implements Rebalance{
 				newAllocation.setRebalanceDayPrice(allocation.getCostPrice());
 				double oldPrice = allocation.getCostPrice()*allocation.getQuantity();
 				double newPrice = newAllocation.getCostPrice()*newAllocation.getQuantity();
-				remainingAmountForBonds += (oldPrice-newPrice);
+				context.remainingAmountForBonds += (oldPrice-newPrice);
 			}
 			else if (adjustment > 0 ){
 				double newPer =existingPerc+Math.abs(adjustment);
@@ -592,7 +686,7 @@ public class BasedOnThresholdRebalcing implements Rebalance{
 				log(allocation, newAllocation, currentDate);
 				double oldPrice = allocation.getCostPrice()*allocation.getQuantity();
 				double newPrice = newAllocation.getCostPrice()*newAllocation.getQuantity();
-				remainingAmountForBonds += (newPrice-oldPrice);
+				context.remainingAmountForBonds += (newPrice-oldPrice);
 			}
 			
 		}
@@ -604,7 +698,7 @@ public class BasedOnThresholdRebalcing implements Rebalance{
 		return newAllocationList;
 	}
 	
-	public List<Allocation> formulaBasedRebalancing(Portfolio portfolio, List<Allocation> equityAllocationList,List<Allocation> bondAllocationList,Date date){
+	public List<Allocation> formulaBasedRebalancing(RebalanceContext context,Portfolio portfolio, List<Allocation> equityAllocationList,List<Allocation> bondAllocationList,Date date){
 		double totalInvestment = 0.0;
 		RiskTolerance riskTolerance = portfolio.getInvestorProfile().getRiskTolerance();
 		List<Allocation> newAllocationList = new ArrayList<>();
@@ -622,7 +716,7 @@ public class BasedOnThresholdRebalcing implements Rebalance{
 		System.out.println("	Total Equity value old: "+equityValueOld+"\n");
 		System.out.println("	Total Bond value old: "+bondValueOld+"\n");
 	
-		final int m = 3;
+		final int m = RebalanceRules.FORMULA_MULTIPLIER;
 		Calendar cal = Calendar.getInstance();
  		cal.setTime(date);
  		cal = trimTime(cal);
@@ -640,7 +734,7 @@ public class BasedOnThresholdRebalcing implements Rebalance{
 			existPercMap.put(ticker,value);
 			currentEquityValueOfPortfolio += existingAllocation.getCostPrice()*existingAllocation.getQuantity();
 		
-			double latestPrice = portfolioRepository.getIndexPriceForGivenDate(existingAllocation.getFund().getTicker(), cal.getTime());
+			double latestPrice = priceCacheService.getIndexPriceForGivenDate(existingAllocation.getFund().getTicker(), cal.getTime());
 			double cost = latestPrice;
 			currentValueOfPortfolio +=cost*existingAllocation.getQuantity();
 			newPricesPerETF.put(existingAllocation.getFund().getTicker(), latestPrice);
@@ -650,7 +744,7 @@ public class BasedOnThresholdRebalcing implements Rebalance{
 		for(Allocation existingAllocation:bondAllocationList){
 			
 		
-			double latestPrice = portfolioRepository.getIndexPriceForGivenDate(existingAllocation.getFund().getTicker(), cal.getTime());
+			double latestPrice = priceCacheService.getIndexPriceForGivenDate(existingAllocation.getFund().getTicker(), cal.getTime());
 			double cost = latestPrice;
 			currentValueOfPortfolio +=cost*existingAllocation.getQuantity();
 			newPricesPerETF.put(existingAllocation.getFund().getTicker(), latestPrice);
@@ -670,10 +764,10 @@ public class BasedOnThresholdRebalcing implements Rebalance{
 		System.out.println("	m = "+m+", current value of portfolio: "+currentValueOfPortfolio+", floor value: "+floor +"\n");
 		
 		equityPortion = Math.abs(equityPortion);
-		remainingAmountForBonds = currentValueOfPortfolio-equityPortion;
+		context.remainingAmountForBonds = currentValueOfPortfolio-equityPortion;
 		
 		System.out.println("	equity portion :"+equityPortion+"\n");
-		System.out.println("	bond portion :"+remainingAmountForBonds+"\n");
+		System.out.println("	bond portion :"+context.remainingAmountForBonds+"\n");
 		Date currentDate = cal.getTime();
 		double investment = 0;
 		List<String> processedTickers = new ArrayList<>();
@@ -719,13 +813,7 @@ public class BasedOnThresholdRebalcing implements Rebalance{
 	}
 	
 	private int getFloorValue(RiskTolerance riskTolerance,double totalInvestment){
-		int floorValue = 0;
-		int perc = 0;
-		if(riskTolerance.equals(RiskTolerance.HIGH) || riskTolerance.equals(RiskTolerance.VERY_HIGH)) perc = 75;
-		if(riskTolerance.equals(RiskTolerance.LOW) || riskTolerance.equals(RiskTolerance.VERY_LOW)) perc = 75;
-		if(riskTolerance.equals(RiskTolerance.MODERATE)) perc = 50;
-		floorValue = Double.valueOf((totalInvestment*perc)/100).intValue();
-		return floorValue;
+		return RebalanceRules.getFloorValue(riskTolerance, totalInvestment);
 	}
 	private Allocation copyAllocationInNewObject(Allocation allocation,Date currentDate){
 		Allocation newAllocation  = new Allocation();
@@ -756,19 +844,7 @@ public class BasedOnThresholdRebalcing implements Rebalance{
 	}
 	
 	public double checkEligibilityForAssetClassRebalanncing(double existingPerc,double newPerc){
-		boolean rebalanceAssetClass = true;
-		double diff = 0;
-		double range = 0;
-		for(Double key:assetClassTieredTable.keySet()){
-			if(existingPerc>key)continue;
-			if(existingPerc<=key)
-				range = assetClassTieredTable.get(key);
-		}
-		diff = newPerc-existingPerc;
-		if(Math.abs(diff)<=newPerc)rebalanceAssetClass = true;
-		else rebalanceAssetClass = false;
-		if(!rebalanceAssetClass)diff = 0;
-		return diff;
+		return RebalanceRules.ELIGIBLE.adjustment(existingPerc, newPerc);
 	}
 	
 	public void log(Allocation existingAllocation,Allocation newAllocation,Date sellDate){
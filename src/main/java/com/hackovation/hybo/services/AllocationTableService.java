@@ -0,0 +1,24 @@
+package com.hackovation.hybo.services;
+
+import java.util.Date;
+
+import com.hack17.hybo.domain.RiskTolerance;
+
+public interface AllocationTableService {
+
+	/**
+	 * Black-Litterman asset weights for the risk tolerance on the date, in the order of getAssetTickers().
+	 * The model is solved once per date, risk tolerance and view return, later calls are a lookup.
+	 */
+	public double[] getAssetWeights(Date date,RiskTolerance riskTolerance);
+	/**
+	 * Solves the model for every risk tolerance, so that the first profiles of the day do not have to.
+	 */
+	public void precompute(Date date);
+	public String[] getAssetTickers();
+	/**
+	 * Drops all solved weights, to be called when market weights change. Price changes are picked up
+	 * through the covariance matrix.
+	 */
+	public void invalidate();
+}
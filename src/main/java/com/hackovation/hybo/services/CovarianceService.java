@@ -0,0 +1,27 @@
+package com.hackovation.hybo.services;
+
+import java.util.Date;
+
+import org.algo.matrix.BasicMatrix;
+
+public interface CovarianceService {
+
+	/**
+	 * Annualised covariance matrix of the daily log returns of the tickers, using the prices up to the
+	 * given date. Same result as FinanceUtils.makeCovarianceMatrix on the price series from the database.
+	 */
+	public BasicMatrix getCovarianceMatrix(String[] tickers,Date date);
+	/**
+	 * Requests answered from the cache, including those that waited for a concurrent request to compute it.
+	 */
+	public long getHitCount();
+	/**
+	 * Requests that had to compute a matrix, incremental ones included.
+	 */
+	public long getMissCount();
+	/**
+	 * Misses computed by extending the previous day's matrix instead of from the full history.
+	 */
+	public long getIncrementalCount();
+	public void invalidate();
+}
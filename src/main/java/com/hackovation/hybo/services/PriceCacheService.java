@@ -0,0 +1,23 @@
+package com.hackovation.hybo.services;
+
+import java.util.Date;
+
+import com.hackovation.hybo.Util.PriceHistory;
+
+public interface PriceCacheService {
+
+	/**
+	 * Closing price of the ticker on the given date, or on the closest earlier date when there is no
+	 * price for that exact day.
+	 */
+	public double getIndexPriceForGivenDate(String ticker,Date date);
+	/**
+	 * All loaded closing prices of the ticker, null when there are none.
+	 */
+	public PriceHistory getPriceHistory(String ticker);
+	/**
+	 * Drops the loaded prices. They are loaded again from the IndexPrice table (or the price column file)
+	 * on next lookup.
+	 */
+	public void invalidate();
+}
@@ -0,0 +1,18 @@
+package com.hackovation.hybo.services;
+
+import java.io.File;
+import java.util.Map;
+
+public interface PriceIngestionService {
+
+	/**
+	 * Loads every csv of the directory as security prices, the ticker is the file name without extension.
+	 * @return number of rows stored
+	 */
+	public long ingestSecurityPrices(File directory);
+	/**
+	 * Loads the files into the IndexPrice table under the given index names.
+	 * @return number of rows stored
+	 */
+	public long ingestIndexPrices(Map<File,String> indexPerFile);
+}
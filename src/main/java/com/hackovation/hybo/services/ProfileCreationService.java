@@ -0,0 +1,25 @@
+package com.hackovation.hybo.services;
+
+import java.util.concurrent.RejectedExecutionException;
+
+import com.hackovation.hybo.bean.PortfolioResponse;
+import com.hackovation.hybo.bean.ProfileJobResponse;
+import com.hackovation.hybo.bean.ProfileRequest;
+
+public interface ProfileCreationService {
+
+	/**
+	 * Creates the investor profile and its first portfolio on the calling thread.
+	 */
+	public PortfolioResponse createProfile(ProfileRequest profileRequest) throws Exception;
+	/**
+	 * Queues the profile creation and returns the job id right away.
+	 * @throws RejectedExecutionException when the queue is full
+	 * @throws IllegalStateException when the user already has a job queued or running
+	 */
+	public String submit(ProfileRequest profileRequest);
+	/**
+	 * Current state of the job, null when the id is unknown or the job expired.
+	 */
+	public ProfileJobResponse getJob(String jobId);
+}
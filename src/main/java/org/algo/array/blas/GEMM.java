@@ -0,0 +1,499 @@
+/*
+ * Copyright 1997-2017 Optimatika (www.optimatika.se)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.algo.array.blas;
+
+import java.util.Arrays;
+
+import org.algo.access.Access1D;
+import org.algo.concurrent.DivideAndConquer;
+
+/**
+ * The ?gemm routines compute a matrix-matrix product, here <code>product = left * right</code> with all three
+ * stored column-major in one array each (leading dimension equal to the number of rows).
+ * <p>
+ * The product is computed in blocks: a KC deep slice of NC right columns is packed into panels of NR
+ * columns, and for each MC rows of the left matrix the matching slice is packed into panels of MR rows.
+ * The micro-kernel keeps an MR x NR block of the product in local variables while it runs through one
+ * pair of panels. The packed left block is sized for the L2 cache and one right panel for L1. Packing is
+ * also where left/right operands that are not primitive arrays are read, once per element and block, so
+ * the inner loops only ever see double[].
+ * <p>
+ * Large products are split in ranges of columns that are computed in parallel.
+ * <p>
+ * There is also a single precision variant, for float[] operands, with the same blocking. It accumulates
+ * in float.
+ */
+public abstract class GEMM implements BLAS3 {
+
+    /**
+     * Products with fewer columns, or a smaller common dimension, are cheaper to compute without packing.
+     */
+    public static int THRESHOLD = 32;
+
+    static final int KC = 256;
+    static final int MC = 128;
+    static final int MR = 4;
+    private static final int NC = 1024;
+    static final int NR = 4;
+
+    public static void invoke(final double[] product, final Access1D<?> left, final int complexity, final Access1D<?> right) {
+        GEMM.invoke(product, null, left, complexity, null, right);
+    }
+
+    public static void invoke(final double[] product, final Access1D<?> left, final int complexity, final double[] right) {
+        GEMM.invoke(product, null, left, complexity, right, null);
+    }
+
+    public static void invoke(final double[] product, final double[] left, final int complexity, final Access1D<?> right) {
+        GEMM.invoke(product, left, null, complexity, null, right);
+    }
+
+    public static void invoke(final double[] product, final double[] left, final int complexity, final double[] right) {
+        GEMM.invoke(product, left, null, complexity, right, null);
+    }
+
+    public static void invoke(final float[] product, final float[] left, final int complexity, final float[] right) {
+
+        final int tmpRowDim = left.length / complexity;
+        final int tmpColDim = right.length / complexity;
+
+        if (tmpColDim > THRESHOLD) {
+
+            final DivideAndConquer tmpConquerer = new DivideAndConquer() {
+
+                @Override
+                public void conquer(final int first, final int limit) {
+                    GEMM.invoke(product, tmpRowDim, first, limit, left, complexity, right);
+                }
+            };
+
+            tmpConquerer.invoke(0, tmpColDim, THRESHOLD);
+
+        } else {
+
+            GEMM.invoke(product, tmpRowDim, 0, tmpColDim, left, complexity, right);
+        }
+    }
+
+    /**
+     * Computes the product columns [firstColumn, columnLimit) in the calling thread. Exactly one of leftArray
+     * and leftAccess, and of rightArray and rightAccess, is not null.
+     */
+    static void invoke(final double[] product, final int rowDim, final int firstColumn, final int columnLimit, final double[] leftArray,
+            final Access1D<?> leftAccess, final int complexity, final double[] rightArray, final Access1D<?> rightAccess) {
+
+        Arrays.fill(product, firstColumn * rowDim, columnLimit * rowDim, 0.0);
+
+        if ((rowDim == 0) || (complexity == 0)) {
+            return;
+        }
+
+        final int tmpDepth = Math.min(KC, complexity);
+        final double[] tmpPackedLeft = new double[GEMM.roundUp(Math.min(MC, rowDim), MR) * tmpDepth];
+        final double[] tmpPackedRight = new double[GEMM.roundUp(Math.min(NC, columnLimit - firstColumn), NR) * tmpDepth];
+
+        for (int jc = firstColumn; jc < columnLimit; jc += NC) {
+            final int nc = Math.min(NC, columnLimit - jc);
+
+            for (int pc = 0; pc < complexity; pc += KC) {
+                final int kc = Math.min(KC, complexity - pc);
+
+                if (rightArray != null) {
+                    GEMM.packRight(tmpPackedRight, rightArray, complexity, pc, kc, jc, nc);
+                } else {
+                    GEMM.packRight(tmpPackedRight, rightAccess, complexity, pc, kc, jc, nc);
+                }
+
+                for (int ic = 0; ic < rowDim; ic += MC) {
+                    final int mc = Math.min(MC, rowDim - ic);
+
+                    if (leftArray != null) {
+                        GEMM.packLeft(tmpPackedLeft, leftArray, rowDim, ic, mc, pc, kc);
+                    } else {
+                        GEMM.packLeft(tmpPackedLeft, leftAccess, rowDim, ic, mc, pc, kc);
+                    }
+
+                    for (int jr = 0; jr < nc; jr += NR) {
+                        for (int ir = 0; ir < mc; ir += MR) {
+                            GEMM.kernel(product, (ic + ir) + ((jc + jr) * rowDim), rowDim, Math.min(MR, mc - ir), Math.min(NR, nc - jr), kc,
+                                    tmpPackedLeft, ir * kc, tmpPackedRight, jr * kc);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The single precision variant of the above, columns [firstColumn, columnLimit) in the calling thread.
+     */
+    static void invoke(final float[] product, final int rowDim, final int firstColumn, final int columnLimit, final float[] left, final int complexity,
+            final float[] right) {
+
+        Arrays.fill(product, firstColumn * rowDim, columnLimit * rowDim, 0.0F);
+
+        if ((rowDim == 0) || (complexity == 0)) {
+            return;
+        }
+
+        final int tmpDepth = Math.min(KC, complexity);
+        final float[] tmpPackedLeft = new float[GEMM.roundUp(Math.min(MC, rowDim), MR) * tmpDepth];
+        final float[] tmpPackedRight = new float[GEMM.roundUp(Math.min(NC, columnLimit - firstColumn), NR) * tmpDepth];
+
+        for (int jc = firstColumn; jc < columnLimit; jc += NC) {
+            final int nc = Math.min(NC, columnLimit - jc);
+
+            for (int pc = 0; pc < complexity; pc += KC) {
+                final int kc = Math.min(KC, complexity - pc);
+
+                GEMM.packRight(tmpPackedRight, right, complexity, pc, kc, jc, nc);
+
+                for (int ic = 0; ic < rowDim; ic += MC) {
+                    final int mc = Math.min(MC, rowDim - ic);
+
+                    GEMM.packLeft(tmpPackedLeft, left, rowDim, ic, mc, pc, kc);
+
+                    for (int jr = 0; jr < nc; jr += NR) {
+                        for (int ir = 0; ir < mc; ir += MR) {
+                            GEMM.kernel(product, (ic + ir) + ((jc + jr) * rowDim), rowDim, Math.min(MR, mc - ir), Math.min(NR, nc - jr), kc,
+                                    tmpPackedLeft, ir * kc, tmpPackedRight, jr * kc);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static void invoke(final double[] product, final double[] leftArray, final Access1D<?> leftAccess, final int complexity,
+            final double[] rightArray, final Access1D<?> rightAccess) {
+
+        final int tmpRowDim = (leftArray != null ? leftArray.length : (int) leftAccess.count()) / complexity;
+        final int tmpColDim = (rightArray != null ? rightArray.length : (int) rightAccess.count()) / complexity;
+
+        if (tmpColDim > THRESHOLD) {
+
+            final DivideAndConquer tmpConquerer = new DivideAndConquer() {
+
+                @Override
+                public void conquer(final int first, final int limit) {
+                    GEMM.invoke(product, tmpRowDim, first, limit, leftArray, leftAccess, complexity, rightArray, rightAccess);
+                }
+            };
+
+            tmpConquerer.invoke(0, tmpColDim, THRESHOLD);
+
+        } else {
+
+            GEMM.invoke(product, tmpRowDim, 0, tmpColDim, leftArray, leftAccess, complexity, rightArray, rightAccess);
+        }
+    }
+
+    /**
+     * product[offset ...] += packed left panel * packed right panel, an MR x NR block of which only rows x
+     * columns are within the product.
+     */
+    static void kernel(final double[] product, final int offset, final int rowDim, final int rows, final int columns, final int depth,
+            final double[] left, final int leftOffset, final double[] right, final int rightOffset) {
+
+        double tmp00 = 0.0, tmp10 = 0.0, tmp20 = 0.0, tmp30 = 0.0;
+        double tmp01 = 0.0, tmp11 = 0.0, tmp21 = 0.0, tmp31 = 0.0;
+        double tmp02 = 0.0, tmp12 = 0.0, tmp22 = 0.0, tmp32 = 0.0;
+        double tmp03 = 0.0, tmp13 = 0.0, tmp23 = 0.0, tmp33 = 0.0;
+
+        int a = leftOffset;
+        int b = rightOffset;
+        for (int p = 0; p < depth; p++, a += MR, b += NR) {
+
+            final double tmpA0 = left[a];
+            final double tmpA1 = left[a + 1];
+            final double tmpA2 = left[a + 2];
+            final double tmpA3 = left[a + 3];
+
+            double tmpB = right[b];
+            tmp00 += tmpA0 * tmpB;
+            tmp10 += tmpA1 * tmpB;
+            tmp20 += tmpA2 * tmpB;
+            tmp30 += tmpA3 * tmpB;
+
+            tmpB = right[b + 1];
+            tmp01 += tmpA0 * tmpB;
+            tmp11 += tmpA1 * tmpB;
+            tmp21 += tmpA2 * tmpB;
+            tmp31 += tmpA3 * tmpB;
+
+            tmpB = right[b + 2];
+            tmp02 += tmpA0 * tmpB;
+            tmp12 += tmpA1 * tmpB;
+            tmp22 += tmpA2 * tmpB;
+            tmp32 += tmpA3 * tmpB;
+
+            tmpB = right[b + 3];
+            tmp03 += tmpA0 * tmpB;
+            tmp13 += tmpA1 * tmpB;
+            tmp23 += tmpA2 * tmpB;
+            tmp33 += tmpA3 * tmpB;
+        }
+
+        if ((rows == MR) && (columns == NR)) {
+
+            int c = offset;
+            product[c] += tmp00;
+            product[c + 1] += tmp10;
+            product[c + 2] += tmp20;
+            product[c + 3] += tmp30;
+            c += rowDim;
+            product[c] += tmp01;
+            product[c + 1] += tmp11;
+            product[c + 2] += tmp21;
+            product[c + 3] += tmp31;
+            c += rowDim;
+            product[c] += tmp02;
+            product[c + 1] += tmp12;
+            product[c + 2] += tmp22;
+            product[c + 3] += tmp32;
+            c += rowDim;
+            product[c] += tmp03;
+            product[c + 1] += tmp13;
+            product[c + 2] += tmp23;
+            product[c + 3] += tmp33;
+
+        } else {
+
+            final double[] tmpBlock = { tmp00, tmp10, tmp20, tmp30, tmp01, tmp11, tmp21, tmp31, tmp02, tmp12, tmp22, tmp32, tmp03, tmp13, tmp23, tmp33 };
+            for (int j = 0; j < columns; j++) {
+                for (int i = 0; i < rows; i++) {
+                    product[offset + i + (j * rowDim)] += tmpBlock[i + (j * MR)];
+                }
+            }
+        }
+    }
+
+    private static void kernel(final float[] product, final int offset, final int rowDim, final int rows, final int columns, final int depth,
+            final float[] left, final int leftOffset, final float[] right, final int rightOffset) {
+
+        float tmp00 = 0.0F, tmp10 = 0.0F, tmp20 = 0.0F, tmp30 = 0.0F;
+        float tmp01 = 0.0F, tmp11 = 0.0F, tmp21 = 0.0F, tmp31 = 0.0F;
+        float tmp02 = 0.0F, tmp12 = 0.0F, tmp22 = 0.0F, tmp32 = 0.0F;
+        float tmp03 = 0.0F, tmp13 = 0.0F, tmp23 = 0.0F, tmp33 = 0.0F;
+
+        int a = leftOffset;
+        int b = rightOffset;
+        for (int p = 0; p < depth; p++, a += MR, b += NR) {
+
+            final float tmpA0 = left[a];
+            final float tmpA1 = left[a + 1];
+            final float tmpA2 = left[a + 2];
+            final float tmpA3 = left[a + 3];
+
+            float tmpB = right[b];
+            tmp00 += tmpA0 * tmpB;
+            tmp10 += tmpA1 * tmpB;
+            tmp20 += tmpA2 * tmpB;
+            tmp30 += tmpA3 * tmpB;
+
+            tmpB = right[b + 1];
+            tmp01 += tmpA0 * tmpB;
+            tmp11 += tmpA1 * tmpB;
+            tmp21 += tmpA2 * tmpB;
+            tmp31 += tmpA3 * tmpB;
+
+            tmpB = right[b + 2];
+            tmp02 += tmpA0 * tmpB;
+            tmp12 += tmpA1 * tmpB;
+            tmp22 += tmpA2 * tmpB;
+            tmp32 += tmpA3 * tmpB;
+
+            tmpB = right[b + 3];
+            tmp03 += tmpA0 * tmpB;
+            tmp13 += tmpA1 * tmpB;
+            tmp23 += tmpA2 * tmpB;
+            tmp33 += tmpA3 * tmpB;
+        }
+
+        if ((rows == MR) && (columns == NR)) {
+
+            int c = offset;
+            product[c] += tmp00;
+            product[c + 1] += tmp10;
+            product[c + 2] += tmp20;
+            product[c + 3] += tmp30;
+            c += rowDim;
+            product[c] += tmp01;
+            product[c + 1] += tmp11;
+            product[c + 2] += tmp21;
+            product[c + 3] += tmp31;
+            c += rowDim;
+            product[c] += tmp02;
+            product[c + 1] += tmp12;
+            product[c + 2] += tmp22;
+            product[c + 3] += tmp32;
+            c += rowDim;
+            product[c] += tmp03;
+            product[c + 1] += tmp13;
+            product[c + 2] += tmp23;
+            product[c + 3] += tmp33;
+
+        } else {
+
+            final float[] tmpBlock = { tmp00, tmp10, tmp20, tmp30, tmp01, tmp11, tmp21, tmp31, tmp02, tmp12, tmp22, tmp32, tmp03, tmp13, tmp23, tmp33 };
+            for (int j = 0; j < columns; j++) {
+                for (int i = 0; i < rows; i++) {
+                    product[offset + i + (j * rowDim)] += tmpBlock[i + (j * MR)];
+                }
+            }
+        }
+    }
+
+    /**
+     * Rows [first, first+rows) and columns [depthOffset, depthOffset+depth) of left in panels of MR rows, each
+     * panel column by column. Rows beyond the last are zero.
+     */
+    private static void packLeft(final double[] packed, final Access1D<?> left, final int rowDim, final int first, final int rows, final int depthOffset,
+            final int depth) {
+        int tmpIndex = 0;
+        for (int ir = 0; ir < rows; ir += MR) {
+            final int tmpRows = Math.min(MR, rows - ir);
+            for (int p = 0; p < depth; p++) {
+                final long tmpBase = (first + ir) + ((long) (depthOffset + p) * rowDim);
+                for (int i = 0; i < MR; i++) {
+                    packed[tmpIndex++] = i < tmpRows ? left.doubleValue(tmpBase + i) : 0.0;
+                }
+            }
+        }
+    }
+
+    private static void packLeft(final double[] packed, final double[] left, final int rowDim, final int first, final int rows, final int depthOffset,
+            final int depth) {
+        int tmpIndex = 0;
+        for (int ir = 0; ir < rows; ir += MR) {
+            final int tmpRows = Math.min(MR, rows - ir);
+            for (int p = 0; p < depth; p++) {
+                final int tmpBase = (first + ir) + ((depthOffset + p) * rowDim);
+                if (tmpRows == MR) {
+                    packed[tmpIndex++] = left[tmpBase];
+                    packed[tmpIndex++] = left[tmpBase + 1];
+                    packed[tmpIndex++] = left[tmpBase + 2];
+                    packed[tmpIndex++] = left[tmpBase + 3];
+                } else {
+                    for (int i = 0; i < MR; i++) {
+                        packed[tmpIndex++] = i < tmpRows ? left[tmpBase + i] : 0.0;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Rows [depthOffset, depthOffset+depth) and columns [first, first+columns) of right in panels of NR
+     * columns, each panel row by row. Columns beyond the last are zero.
+     */
+    private static void packRight(final double[] packed, final Access1D<?> right, final int complexity, final int depthOffset, final int depth,
+            final int first, final int columns) {
+        int tmpIndex = 0;
+        for (int jr = 0; jr < columns; jr += NR) {
+            final int tmpColumns = Math.min(NR, columns - jr);
+            for (int p = 0; p < depth; p++) {
+                for (int j = 0; j < NR; j++) {
+                    packed[tmpIndex++] = j < tmpColumns ? right.doubleValue((depthOffset + p) + ((long) (first + jr + j) * complexity)) : 0.0;
+                }
+            }
+        }
+    }
+
+    private static void packRight(final double[] packed, final double[] right, final int complexity, final int depthOffset, final int depth,
+            final int first, final int columns) {
+        int tmpIndex = 0;
+        for (int jr = 0; jr < columns; jr += NR) {
+            final int tmpColumns = Math.min(NR, columns - jr);
+            if (tmpColumns == NR) {
+                final int tmpBase0 = depthOffset + ((first + jr) * complexity);
+                final int tmpBase1 = tmpBase0 + complexity;
+                final int tmpBase2 = tmpBase1 + complexity;
+                final int tmpBase3 = tmpBase2 + complexity;
+                for (int p = 0; p < depth; p++) {
+                    packed[tmpIndex++] = right[tmpBase0 + p];
+                    packed[tmpIndex++] = right[tmpBase1 + p];
+                    packed[tmpIndex++] = right[tmpBase2 + p];
+                    packed[tmpIndex++] = right[tmpBase3 + p];
+                }
+            } else {
+                for (int p = 0; p < depth; p++) {
+                    for (int j = 0; j < NR; j++) {
+                        packed[tmpIndex++] = j < tmpColumns ? right[(depthOffset + p) + ((first + jr + j) * complexity)] : 0.0;
+                    }
+                }
+            }
+        }
+    }
+
+    private static void packLeft(final float[] packed, final float[] left, final int rowDim, final int first, final int rows, final int depthOffset,
+            final int depth) {
+        int tmpIndex = 0;
+        for (int ir = 0; ir < rows; ir += MR) {
+            final int tmpRows = Math.min(MR, rows - ir);
+            for (int p = 0; p < depth; p++) {
+                final int tmpBase = (first + ir) + ((depthOffset + p) * rowDim);
+                if (tmpRows == MR) {
+                    packed[tmpIndex++] = left[tmpBase];
+                    packed[tmpIndex++] = left[tmpBase + 1];
+                    packed[tmpIndex++] = left[tmpBase + 2];
+                    packed[tmpIndex++] = left[tmpBase + 3];
+                } else {
+                    for (int i = 0; i < MR; i++) {
+                        packed[tmpIndex++] = i < tmpRows ? left[tmpBase + i] : 0.0F;
+                    }
+                }
+            }
+        }
+    }
+
+    private static void packRight(final float[] packed, final float[] right, final int complexity, final int depthOffset, final int depth,
+            final int first, final int columns) {
+        int tmpIndex = 0;
+        for (int jr = 0; jr < columns; jr += NR) {
+            final int tmpColumns = Math.min(NR, columns - jr);
+            if (tmpColumns == NR) {
+                final int tmpBase0 = depthOffset + ((first + jr) * complexity);
+                final int tmpBase1 = tmpBase0 + complexity;
+                final int tmpBase2 = tmpBase1 + complexity;
+                final int tmpBase3 = tmpBase2 + complexity;
+                for (int p = 0; p < depth; p++) {
+                    packed[tmpIndex++] = right[tmpBase0 + p];
+                    packed[tmpIndex++] = right[tmpBase1 + p];
+                    packed[tmpIndex++] = right[tmpBase2 + p];
+                    packed[tmpIndex++] = right[tmpBase3 + p];
+                }
+            } else {
+                for (int p = 0; p < depth; p++) {
+                    for (int j = 0; j < NR; j++) {
+                        packed[tmpIndex++] = j < tmpColumns ? right[(depthOffset + p) + ((first + jr + j) * complexity)] : 0.0F;
+                    }
+                }
+            }
+        }
+    }
+
+    static int roundUp(final int count, final int multiple) {
+        return ((count + multiple) - 1) / multiple * multiple;
+    }
+
+}
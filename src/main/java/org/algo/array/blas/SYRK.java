@@ -0,0 +1,135 @@
+/*
+ * Copyright 1997-2017 Optimatika (www.optimatika.se)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.algo.array.blas;
+
+/**
+ * The ?syrk routines perform a rank-k update of a symmetric matrix. Here it is the update of the trailing
+ * matrix in a blocked Cholesky factorisation: <code>[A22] -= [L21][L21]<sup>T</sup></code> where [L21] is a
+ * panel of columns of the same square, column-major, array and only the lower triangle of [A22] is updated.
+ * <p>
+ * Below the diagonal blocks the update is a product, computed with the packed blocks and micro-kernel of
+ * {@linkplain GEMM}. The left panels are packed negated so that the kernel's accumulation subtracts. The
+ * triangular blocks on the diagonal are updated column by column.
+ */
+public abstract class SYRK implements BLAS3 {
+
+    /**
+     * Updates the lower triangle of columns [firstColumn, columnLimit) with the panelWidth columns starting
+     * at panelColumn, in the calling thread. The update columns must all be to the right of the panel.
+     *
+     * @param data Square, column-major, array
+     * @param structure The number of rows (and columns)
+     */
+    public static void invoke(final double[] data, final int structure, final int panelColumn, final int panelWidth, final int firstColumn,
+            final int columnLimit) {
+
+        if ((panelWidth == 0) || (firstColumn >= columnLimit)) {
+            return;
+        }
+
+        final int tmpDepth = Math.min(GEMM.KC, panelWidth);
+        final double[] tmpPackedLeft = new double[GEMM.roundUp(GEMM.MC, GEMM.MR) * tmpDepth];
+        final double[] tmpPackedRight = new double[GEMM.roundUp(Math.min(GEMM.MC, columnLimit - firstColumn), GEMM.NR) * tmpDepth];
+
+        for (int jc = firstColumn; jc < columnLimit; jc += GEMM.MC) {
+            final int nc = Math.min(GEMM.MC, columnLimit - jc);
+
+            SYRK.diagonal(data, structure, panelColumn, panelWidth, jc, nc);
+
+            for (int pc = 0; pc < panelWidth; pc += GEMM.KC) {
+                final int kc = Math.min(GEMM.KC, panelWidth - pc);
+
+                SYRK.packRight(tmpPackedRight, data, structure, panelColumn + pc, kc, jc, nc);
+
+                for (int ic = jc + nc; ic < structure; ic += GEMM.MC) {
+                    final int mc = Math.min(GEMM.MC, structure - ic);
+
+                    SYRK.packLeft(tmpPackedLeft, data, structure, ic, mc, panelColumn + pc, kc);
+
+                    for (int jr = 0; jr < nc; jr += GEMM.NR) {
+                        for (int ir = 0; ir < mc; ir += GEMM.MR) {
+                            GEMM.kernel(data, (ic + ir) + ((jc + jr) * structure), structure, Math.min(GEMM.MR, mc - ir), Math.min(GEMM.NR, nc - jr), kc,
+                                    tmpPackedLeft, ir * kc, tmpPackedRight, jr * kc);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The lower triangle of the square block of columns (and rows) [first, first + count).
+     */
+    private static void diagonal(final double[] data, final int structure, final int panelColumn, final int panelWidth, final int first, final int count) {
+
+        final int tmpLimit = first + count;
+
+        for (int j = first; j < tmpLimit; j++) {
+            final int tmpColumn = j * structure;
+            for (int c = panelColumn; c < (panelColumn + panelWidth); c++) {
+                final int tmpPanel = c * structure;
+                final double tmpValue = data[j + tmpPanel];
+                if (tmpValue != 0.0) {
+                    for (int i = j; i < tmpLimit; i++) {
+                        data[i + tmpColumn] -= data[i + tmpPanel] * tmpValue;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Rows [first, first + rows) of the panel, negated, in panels of MR rows as the GEMM kernel reads them.
+     */
+    private static void packLeft(final double[] packed, final double[] data, final int structure, final int first, final int rows, final int depthOffset,
+            final int depth) {
+        for (int ir = 0; ir < rows; ir += GEMM.MR) {
+            final int tmpRows = Math.min(GEMM.MR, rows - ir);
+            int tmpIndex = ir * depth;
+            for (int p = 0; p < depth; p++) {
+                final int tmpColumn = (depthOffset + p) * structure;
+                for (int ii = 0; ii < GEMM.MR; ii++) {
+                    packed[tmpIndex++] = ii < tmpRows ? -data[first + ir + ii + tmpColumn] : 0.0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Rows [first, first + columns) of the panel, transposed, in panels of NR columns as the GEMM kernel
+     * reads them.
+     */
+    private static void packRight(final double[] packed, final double[] data, final int structure, final int depthOffset, final int depth, final int first,
+            final int columns) {
+        for (int jr = 0; jr < columns; jr += GEMM.NR) {
+            final int tmpColumns = Math.min(GEMM.NR, columns - jr);
+            int tmpIndex = jr * depth;
+            for (int p = 0; p < depth; p++) {
+                final int tmpColumn = (depthOffset + p) * structure;
+                for (int jj = 0; jj < GEMM.NR; jj++) {
+                    packed[tmpIndex++] = jj < tmpColumns ? data[first + jr + jj + tmpColumn] : 0.0;
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright 1997-2017 Optimatika (www.optimatika.se)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.algo.finance;
+
+import static org.algo.constant.PrimitiveMath.*;
+
+import org.algo.access.Access1D;
+import org.algo.access.Access2D;
+import org.algo.array.blas.DOT;
+import org.algo.matrix.PrimitiveMatrix;
+import org.algo.matrix.decomposition.Cholesky;
+import org.algo.matrix.decomposition.SingularValue;
+import org.algo.matrix.store.MatrixStore;
+import org.algo.matrix.store.PrimitiveDenseStore;
+
+/**
+ * A k-factor covariance model, &Sigma; = BFB<sup>T</sup> + D, with B the n x k factor loadings, F the (diagonal)
+ * factor variances and D the (diagonal) specific variances. Only O(n&middot;k) numbers are stored, and
+ * {@link #multiply(double[])}, {@link #solve(double[])} and {@link #getVariance(double[])} work on the factors
+ * without forming the n x n matrix. As an {@link Access2D} each element is computed on demand, in O(k).
+ * {@link #toCovariances()} builds the dense matrix for code that needs one.
+ * <p>
+ * {@link #estimate(Access2D, int)} fits the model by principal components: the loadings are the k leading
+ * eigenvectors of the sample covariance, found with a {@link SingularValue} decomposition of the de-meaned
+ * samples, and D keeps the residual variance of each variable so that the diagonal equals the sample variances.
+ */
+public final class FactorCovariance implements Access2D<Double> {
+
+    /**
+     * @param samples One row per observation, one column per variable (T x N)
+     * @param factors The number of principal components kept, k
+     */
+    public static FactorCovariance estimate(final Access2D<?> samples, final int factors) {
+
+        final int tmpRowDim = (int) samples.countRows();
+        final int tmpColDim = (int) samples.countColumns();
+
+        if ((factors < 1) || (factors > Math.min(tmpRowDim - 1, tmpColDim))) {
+            throw new IllegalArgumentException("The number of factors must be in [1, min(T-1, N)]: " + factors);
+        }
+
+        final PrimitiveDenseStore tmpSamples = PrimitiveDenseStore.FACTORY.copy(samples);
+        final double[] tmpData = tmpSamples.data;
+        final double tmpScale = ONE / (tmpRowDim - 1);
+
+        final double[] tmpVariances = new double[tmpColDim];
+        for (int j = 0; j < tmpColDim; j++) {
+            final int tmpOffset = j * tmpRowDim;
+            double tmpMean = ZERO;
+            for (int i = 0; i < tmpRowDim; i++) {
+                tmpMean += tmpData[tmpOffset + i];
+            }
+            tmpMean /= tmpRowDim;
+            for (int i = 0; i < tmpRowDim; i++) {
+                tmpData[tmpOffset + i] -= tmpMean;
+            }
+            tmpVariances[j] = tmpScale * DOT.invoke(tmpData, tmpOffset, tmpData, tmpOffset, 0, tmpRowDim);
+        }
+
+        // Decompose a tall matrix, the eigenvectors of the covariances are then either Q2 of X or Q1 of X^T
+        final SingularValue<Double> tmpSVD = SingularValue.PRIMITIVE.make(tmpSamples);
+        final MatrixStore<Double> tmpEigenvectors;
+        if (tmpRowDim >= tmpColDim) {
+            tmpSVD.decompose(tmpSamples);
+            tmpEigenvectors = tmpSVD.getQ2();
+        } else {
+            tmpSVD.decompose(tmpSamples.transpose());
+            tmpEigenvectors = tmpSVD.getQ1();
+        }
+        final double[] tmpSingularValues = new double[Math.min(tmpRowDim, tmpColDim)];
+        tmpSVD.getSingularValues(tmpSingularValues);
+
+        final double[] tmpLoadings = new double[tmpColDim * factors];
+        final double[] tmpFactorVariances = new double[factors];
+        final double[] tmpSpecificVariances = tmpVariances;
+
+        for (int f = 0; f < factors; f++) {
+            tmpFactorVariances[f] = tmpScale * tmpSingularValues[f] * tmpSingularValues[f];
+            for (int i = 0; i < tmpColDim; i++) {
+                final double tmpLoading = tmpEigenvectors.doubleValue(i, f);
+                tmpLoadings[i + (f * tmpColDim)] = tmpLoading;
+                tmpSpecificVariances[i] -= tmpFactorVariances[f] * tmpLoading * tmpLoading;
+            }
+        }
+
+        // What the factors explain can exceed a variable's variance by rounding, keep D positive
+        double tmpLargest = ZERO;
+        for (int i = 0; i < tmpColDim; i++) {
+            tmpLargest = Math.max(tmpLargest, tmpVariances[i]);
+        }
+        final double tmpFloor = tmpLargest * tmpColDim * MACHINE_EPSILON;
+        for (int i = 0; i < tmpColDim; i++) {
+            tmpSpecificVariances[i] = Math.max(tmpSpecificVariances[i], tmpFloor);
+        }
+
+        return new FactorCovariance(tmpColDim, factors, tmpLoadings, tmpFactorVariances, tmpSpecificVariances);
+    }
+
+    private final int myFactors;
+    private final double[] myFactorVariances;
+    /**
+     * B, column-major n x k
+     */
+    private final double[] myLoadings;
+    private final int mySize;
+    private volatile Cholesky<Double> mySmallSystem = null;
+    private final double[] mySpecificVariances;
+
+    /**
+     * @param loadings B, n x k
+     * @param factorVariances The diagonal of F, k
+     * @param specificVariances The diagonal of D, n, all positive
+     */
+    public FactorCovariance(final Access2D<?> loadings, final Access1D<?> factorVariances, final Access1D<?> specificVariances) {
+        this((int) loadings.countRows(), (int) loadings.countColumns(), PrimitiveDenseStore.FACTORY.copy(loadings).data, factorVariances.toRawCopy1D(),
+                specificVariances.toRawCopy1D());
+    }
+
+    private FactorCovariance(final int size, final int factors, final double[] loadings, final double[] factorVariances, final double[] specificVariances) {
+
+        super();
+
+        if ((factorVariances.length != factors) || (specificVariances.length != size)) {
+            throw new IllegalArgumentException("Expected " + factors + " factor variances and " + size + " specific variances");
+        }
+
+        mySize = size;
+        myFactors = factors;
+        myLoadings = loadings;
+        myFactorVariances = factorVariances;
+        mySpecificVariances = specificVariances;
+    }
+
+    public long count() {
+        return (long) mySize * mySize;
+    }
+
+    public long countColumns() {
+        return mySize;
+    }
+
+    public int countFactors() {
+        return myFactors;
+    }
+
+    public long countRows() {
+        return mySize;
+    }
+
+    public double doubleValue(final long index) {
+        return this.doubleValue(index % mySize, index / mySize);
+    }
+
+    public double doubleValue(final long row, final long col) {
+        final int tmpRow = (int) row;
+        final int tmpCol = (int) col;
+        double retVal = tmpRow == tmpCol ? mySpecificVariances[tmpRow] : ZERO;
+        for (int f = 0; f < myFactors; f++) {
+            retVal += myLoadings[tmpRow + (f * mySize)] * myFactorVariances[f] * myLoadings[tmpCol + (f * mySize)];
+        }
+        return retVal;
+    }
+
+    public Double get(final long index) {
+        return this.doubleValue(index);
+    }
+
+    public Double get(final long row, final long col) {
+        return this.doubleValue(row, col);
+    }
+
+    public double getFactorVariance(final int factor) {
+        return myFactorVariances[factor];
+    }
+
+    public double getLoading(final int row, final int factor) {
+        return myLoadings[row + (factor * mySize)];
+    }
+
+    public double getSpecificVariance(final int row) {
+        return mySpecificVariances[row];
+    }
+
+    /**
+     * w<sup>T</sup>&Sigma;w in O(n&middot;k)
+     */
+    public double getVariance(final double[] weights) {
+        double retVal = ZERO;
+        for (int i = 0; i < mySize; i++) {
+            retVal += weights[i] * mySpecificVariances[i] * weights[i];
+        }
+        for (int f = 0; f < myFactors; f++) {
+            final double tmpExposure = DOT.invoke(myLoadings, f * mySize, weights, 0, 0, mySize);
+            retVal += tmpExposure * myFactorVariances[f] * tmpExposure;
+        }
+        return retVal;
+    }
+
+    /**
+     * &Sigma;x in O(n&middot;k)
+     */
+    public double[] multiply(final double[] vector) {
+
+        final double[] retVal = new double[mySize];
+        for (int i = 0; i < mySize; i++) {
+            retVal[i] = mySpecificVariances[i] * vector[i];
+        }
+
+        for (int f = 0; f < myFactors; f++) {
+            final int tmpOffset = f * mySize;
+            final double tmpExposure = myFactorVariances[f] * DOT.invoke(myLoadings, tmpOffset, vector, 0, 0, mySize);
+            for (int i = 0; i < mySize; i++) {
+                retVal[i] += tmpExposure * myLoadings[tmpOffset + i];
+            }
+        }
+
+        return retVal;
+    }
+
+    /**
+     * &Sigma;<sup>-1</sup>b with the Woodbury identity, &Sigma;<sup>-1</sup> = D<sup>-1</sup> -
+     * D<sup>-1</sup>B(F<sup>-1</sup> + B<sup>T</sup>D<sup>-1</sup>B)<sup>-1</sup>B<sup>T</sup>D<sup>-1</sup>. Only a
+     * k x k system is factorised, O(n&middot;k<sup>2</sup>) the first time and O(n&middot;k) after that.
+     */
+    public double[] solve(final double[] rhs) {
+
+        final double[] retVal = new double[mySize];
+        for (int i = 0; i < mySize; i++) {
+            retVal[i] = rhs[i] / mySpecificVariances[i];
+        }
+
+        final PrimitiveDenseStore tmpExposures = PrimitiveDenseStore.FACTORY.makeZero(myFactors, 1);
+        for (int f = 0; f < myFactors; f++) {
+            tmpExposures.set(f, DOT.invoke(myLoadings, f * mySize, retVal, 0, 0, mySize));
+        }
+
+        final MatrixStore<Double> tmpCorrection = this.getSmallSystem().getSolution(tmpExposures);
+
+        for (int f = 0; f < myFactors; f++) {
+            final int tmpOffset = f * mySize;
+            final double tmpFactor = tmpCorrection.doubleValue(f);
+            for (int i = 0; i < mySize; i++) {
+                retVal[i] -= (tmpFactor * myLoadings[tmpOffset + i]) / mySpecificVariances[i];
+            }
+        }
+
+        return retVal;
+    }
+
+    /**
+     * The dense n x n covariance matrix, O(n<sup>2</sup>&middot;k)
+     */
+    public PrimitiveMatrix toCovariances() {
+
+        final PrimitiveDenseStore tmpCovariances = PrimitiveDenseStore.FACTORY.makeZero(mySize, mySize);
+        final double[] tmpData = tmpCovariances.data;
+
+        for (int j = 0; j < mySize; j++) {
+            for (int i = 0; i <= j; i++) {
+                final double tmpValue = this.doubleValue(i, j);
+                tmpData[i + (j * mySize)] = tmpValue;
+                tmpData[j + (i * mySize)] = tmpValue;
+            }
+        }
+
+        return PrimitiveMatrix.FACTORY.copy(tmpCovariances);
+    }
+
+    /**
+     * F<sup>-1</sup> + B<sup>T</sup>D<sup>-1</sup>B, factorised on first use
+     */
+    private Cholesky<Double> getSmallSystem() {
+
+        Cholesky<Double> retVal = mySmallSystem;
+
+        if (retVal == null) {
+
+            final PrimitiveDenseStore tmpSystem = PrimitiveDenseStore.FACTORY.makeZero(myFactors, myFactors);
+            final double[] tmpScaled = new double[mySize];
+
+            for (int q = 0; q < myFactors; q++) {
+                final int tmpOffset = q * mySize;
+                for (int i = 0; i < mySize; i++) {
+                    tmpScaled[i] = myLoadings[tmpOffset + i] / mySpecificVariances[i];
+                }
+                for (int p = 0; p < myFactors; p++) {
+                    tmpSystem.set(p, q, DOT.invoke(myLoadings, p * mySize, tmpScaled, 0, 0, mySize));
+                }
+                tmpSystem.add(q, q, ONE / myFactorVariances[q]);
+            }
+
+            final Cholesky<Double> tmpCholesky = Cholesky.PRIMITIVE.make(tmpSystem);
+            tmpCholesky.decompose(tmpSystem);
+            retVal = tmpCholesky;
+            mySmallSystem = retVal;
+        }
+
+        return retVal;
+    }
+
+}
@@ -31,9 +31,11 @@ import java.util.Date;
 import java.util.List;
 import java.util.Map.Entry;
 
+import org.algo.OjAlgoUtils;
 import org.algo.access.Access1D;
 import org.algo.access.Access2D;
 import org.algo.array.Array1D;
+import org.algo.array.blas.DOT;
 import org.algo.constant.PrimitiveMath;
 import org.algo.function.PrimitiveFunction;
 import org.algo.function.aggregator.AggregatorFunction;
@@ -44,14 +46,16 @@ import org.algo.matrix.BasicMatrix.Builder;
 import org.algo.matrix.decomposition.Eigenvalue;
 import org.algo.matrix.store.MatrixStore;
 import org.algo.matrix.store.PhysicalStore;
+import org.algo.matrix.store.PrimitiveDenseStore;
+import org.algo.matrix.store.operation.MultiplyLeft;
 import org.algo.random.Deterministic;
 import org.algo.random.RandomNumber;
 import org.algo.random.RandomUtils;
 import org.algo.random.SampleSet;
 import org.algo.random.process.GeometricBrownianMotion;
 import org.algo.series.CalendarDateSeries;
+import org.algo.series.CoordinatedPanel;
 import org.algo.series.CoordinationSet;
-import org.algo.series.primitive.PrimitiveSeries;
 import org.algo.type.CalendarDate;
 import org.algo.type.CalendarDateUnit;
 
@@ -123,95 +127,203 @@ public abstract class FinanceUtils {
     }
 
     /**
+     * The series are aligned on the keys they all have (at the coarsest of their resolutions) with a single
+     * merge-join, see {@link CoordinatedPanel}.
+     *
      * @param timeSeriesCollection
      * @return Annualised covariances
      */
     public static <V extends Number> BasicMatrix makeCovarianceMatrix(final Collection<CalendarDateSeries<V>> timeSeriesCollection) {
 
-        final CoordinationSet<V> tmpCoordinator = new CoordinationSet<>(timeSeriesCollection).prune();
-
-        final ArrayList<SampleSet> tmpSampleSets = new ArrayList<>();
+        CalendarDateUnit tmpResolution = null;
         for (final CalendarDateSeries<V> tmpTimeSeries : timeSeriesCollection) {
-            final double[] values = tmpCoordinator.get(tmpTimeSeries.getName()).asPrimitive().toRawCopy1D();
-            final int tmpSize1 = values.length - 1;
-
-            final double[] retVal = new double[tmpSize1];
-
-            for (int i = 0; i < tmpSize1; i++) {
-                retVal[i] = PrimitiveFunction.LOG.invoke(values[i + 1] / values[i]);
+            if ((tmpResolution == null) || (tmpTimeSeries.getResolution().compareTo(tmpResolution) > 0)) {
+                tmpResolution = tmpTimeSeries.getResolution();
             }
-            final SampleSet tmpMakeUsingLogarithmicChanges = SampleSet.wrap(Access1D.wrapAccess1D(retVal));
-            tmpSampleSets.add(tmpMakeUsingLogarithmicChanges);
         }
 
-        final int tmpSize = timeSeriesCollection.size();
-
-        final Builder<PrimitiveMatrix> retValStore = PrimitiveMatrix.FACTORY.getBuilder(tmpSize, tmpSize);
-
-        final double tmpToYearFactor = (double) CalendarDateUnit.YEAR.size() / (double) tmpCoordinator.getResolution().size();
-
-        SampleSet tmpRowSet;
-        SampleSet tmpColSet;
+        return FinanceUtils.makeCovarianceMatrix(CoordinatedPanel.align(new ArrayList<>(timeSeriesCollection), tmpResolution, CoordinatedPanel.Mode.INTERSECTION));
+    }
 
-        for (int j = 0; j < tmpSize; j++) {
+    /**
+     * @param prices Aligned prices, one column per asset
+     * @return Annualised covariances of the log changes between subsequent rows
+     * @throws IllegalArgumentException When there are less than two rows, e.g. the series do not overlap, or
+     *         the panel was aligned without a resolution
+     */
+    public static PrimitiveMatrix makeCovarianceMatrix(final CoordinatedPanel prices) {
 
-            tmpColSet = tmpSampleSets.get(j);
+        if (prices.getResolution() == null) {
+            throw new IllegalArgumentException("The resolution of the prices is needed to annualise the covariances.");
+        }
+        if (prices.countRows() < 2L) {
+            throw new IllegalArgumentException("At least two aligned prices are needed, the series have " + prices.countRows() + " keys in common.");
+        }
 
-            for (int i = 0; i < tmpSize; i++) {
+        final int tmpRowDim = (int) prices.countRows() - 1;
+        final int tmpColDim = (int) prices.countColumns();
 
-                tmpRowSet = tmpSampleSets.get(i);
+        final PrimitiveDenseStore tmpLogChanges = PrimitiveDenseStore.FACTORY.makeZero(tmpRowDim, tmpColDim);
+        final double[] tmpData = tmpLogChanges.data;
 
-                retValStore.set(i, j, tmpToYearFactor * tmpRowSet.getCovariance(tmpColSet));
+        for (int j = 0; j < tmpColDim; j++) {
+            double tmpPrevious = prices.doubleValue(0, j);
+            for (int i = 0; i < tmpRowDim; i++) {
+                final double tmpNext = prices.doubleValue(i + 1, j);
+                tmpData[i + (j * tmpRowDim)] = PrimitiveFunction.LOG.invoke(tmpNext / tmpPrevious);
+                tmpPrevious = tmpNext;
             }
         }
 
-        return retValStore.build();
+        final double tmpToYearFactor = (double) CalendarDateUnit.YEAR.size() / (double) prices.getResolution().size();
+
+        return PrimitiveMatrix.FACTORY.copy(FinanceUtils.makeCovariances(tmpLogChanges, tmpToYearFactor, true));
     }
 
     /**
      * @param listOfTimeSeries An ordered collection of time series
-     * @param mayBeMissingValues Individual series may be missing some values - try to fix this or not
+     * @param mayBeMissingValues Individual series may be missing some values - try to fix this or not. When
+     *        fixing, the series are aligned on every step of their resolution from the latest first key to the
+     *        earliest last key (the range of {@link CoordinationSet#prune()}), repeating previous values. When
+     *        not, the series are aligned on the keys they all have. The series are not modified either way.
+     *        See {@link CoordinatedPanel}.
      * @return Annualised covariances
      */
     public static <N extends Number> PrimitiveMatrix makeCovarianceMatrix(final List<CalendarDateSeries<N>> listOfTimeSeries,
             final boolean mayBeMissingValues) {
 
-        final int tmpSize = listOfTimeSeries.size();
+        final CalendarDateUnit tmpDataResolution = new CoordinationSet<>(listOfTimeSeries).getResolution();
+        final CoordinatedPanel.Mode tmpMode = mayBeMissingValues ? CoordinatedPanel.Mode.FORWARD_FILL : CoordinatedPanel.Mode.INTERSECTION;
 
-        final CoordinationSet<N> tmpUncoordinated = new CoordinationSet<>(listOfTimeSeries);
-        final CalendarDateUnit tmpDataResolution = tmpUncoordinated.getResolution();
-        if (mayBeMissingValues) {
-            tmpUncoordinated.complete();
-        }
+        return FinanceUtils.makeCovarianceMatrix(CoordinatedPanel.align(listOfTimeSeries, tmpDataResolution, tmpMode));
+    }
+
+    /**
+     * Sample covariances of the columns, the same values as {@link SampleSet#getCovariance(SampleSet)} for every pair
+     * of columns. The samples are copied and de-meaned once, then the covariances are formed as X<sup>T</sup>X/(T-1)
+     * in a single matrix multiplication.
+     *
+     * @param samples One row per observation, one column per variable (T x N)
+     * @param parallel true to use the multithreaded multiplication kernels (when there are more columns than
+     *        {@link MultiplyLeft#THRESHOLD} and more than one thread), false for a single threaded loop that only
+     *        computes one triangle
+     * @return Covariances (N x N), not annualised
+     */
+    public static PrimitiveMatrix makeCovarianceMatrix(final Access2D<?> samples, final boolean parallel) {
+        return PrimitiveMatrix.FACTORY.copy(FinanceUtils.makeCovariances(PrimitiveDenseStore.FACTORY.copy(samples), ONE, parallel));
+    }
+
+    /**
+     * Sample covariances shrunk towards a multiple of the identity, &Sigma; = &delta;&mu;I + (1-&delta;)S, with
+     * &mu; the average variance and the intensity &delta; from Ledoit and Wolf, "A well-conditioned estimator
+     * for large-dimensional covariance matrices" (2004). Unlike S, the result is well-conditioned (and
+     * invertible) also when the number of variables approaches or exceeds the number of observations.
+     *
+     * @param samples One row per observation, one column per variable (T x N)
+     * @param parallel As for {@link #makeCovarianceMatrix(Access2D, boolean)}
+     * @return Covariances (N x N), not annualised
+     */
+    public static PrimitiveMatrix makeShrunkCovarianceMatrix(final Access2D<?> samples, final boolean parallel) {
 
-        final CoordinationSet<N> tmpCoordinated = tmpUncoordinated.prune(tmpDataResolution);
+        final PrimitiveDenseStore tmpSamples = PrimitiveDenseStore.FACTORY.copy(samples);
+        final PrimitiveDenseStore tmpCovariances = FinanceUtils.makeCovariances(tmpSamples, ONE, parallel);
 
-        final Builder<PrimitiveMatrix> tmpMatrixBuilder = PrimitiveMatrix.FACTORY.getBuilder(tmpSize, tmpSize);
+        final int tmpRowDim = (int) tmpSamples.countRows();
+        final int tmpColDim = (int) tmpSamples.countColumns();
+        final double[] tmpData = tmpSamples.data;
+        final double[] tmpProduct = tmpCovariances.data;
 
-        final double tmpToYearFactor = (double) CalendarDateUnit.YEAR.size() / (double) tmpDataResolution.size();
+        // The paper's estimates use S with divisor T
+        final double tmpToPaper = (tmpRowDim - ONE) / tmpRowDim;
 
-        SampleSet tmpSampleSet;
-        final SampleSet[] tmpSampleSets = new SampleSet[tmpSize];
+        double tmpMean = ZERO;
+        for (int ij = 0; ij < tmpColDim; ij++) {
+            tmpMean += tmpProduct[ij + (ij * tmpColDim)];
+        }
+        tmpMean /= tmpColDim;
+
+        double tmpSumOfSquares = ZERO;
+        double tmpDispersion = ZERO;
+        for (int j = 0; j < tmpColDim; j++) {
+            for (int i = 0; i < tmpColDim; i++) {
+                final double tmpValue = tmpToPaper * tmpProduct[i + (j * tmpColDim)];
+                tmpSumOfSquares += tmpValue * tmpValue;
+                final double tmpDeviation = i == j ? tmpValue - (tmpToPaper * tmpMean) : tmpValue;
+                tmpDispersion += tmpDeviation * tmpDeviation;
+            }
+        }
+        tmpDispersion /= tmpColDim;
+
+        // sum over t of |x_t x_t^T - S|^2 = sum over t of |x_t|^4 - T |S|^2
+        final double[] tmpRowNorms = new double[tmpRowDim];
+        for (int j = 0; j < tmpColDim; j++) {
+            final int tmpOffset = j * tmpRowDim;
+            for (int i = 0; i < tmpRowDim; i++) {
+                tmpRowNorms[i] += tmpData[tmpOffset + i] * tmpData[tmpOffset + i];
+            }
+        }
+        double tmpFourthPowers = ZERO;
+        for (int i = 0; i < tmpRowDim; i++) {
+            tmpFourthPowers += tmpRowNorms[i] * tmpRowNorms[i];
+        }
+        final double tmpSamplingError = Math.min(((tmpFourthPowers / tmpRowDim) - tmpSumOfSquares) / (tmpRowDim * (double) tmpColDim), tmpDispersion);
 
-        for (int j = 0; j < tmpSize; j++) {
+        final double tmpIntensity = tmpDispersion > ZERO ? Math.max(tmpSamplingError, ZERO) / tmpDispersion : ONE;
 
-            final PrimitiveSeries tmpPrimitiveSeries = tmpCoordinated.get(listOfTimeSeries.get(j).getName()).asPrimitive();
+        for (int ij = 0; ij < tmpProduct.length; ij++) {
+            tmpProduct[ij] *= ONE - tmpIntensity;
+        }
+        for (int ij = 0; ij < tmpColDim; ij++) {
+            tmpProduct[ij + (ij * tmpColDim)] += tmpIntensity * tmpMean;
+        }
 
-            tmpSampleSet = SampleSet.wrap(tmpPrimitiveSeries.quotients().log().toDataSeries());
+        return PrimitiveMatrix.FACTORY.copy(tmpCovariances);
+    }
 
-            tmpMatrixBuilder.set(j, j, tmpToYearFactor * tmpSampleSet.getVariance());
+    /**
+     * @param samples T x N, de-meaned in place
+     * @param scale Multiplies the covariances, e.g. to annualise them
+     */
+    static PrimitiveDenseStore makeCovariances(final PrimitiveDenseStore samples, final double scale, final boolean parallel) {
 
-            for (int i = 0; i < j; i++) {
+        final int tmpRowDim = (int) samples.countRows();
+        final int tmpColDim = (int) samples.countColumns();
+        final double[] tmpData = samples.data;
 
-                final double tmpCovariance = tmpToYearFactor * tmpSampleSets[i].getCovariance(tmpSampleSet);
-                tmpMatrixBuilder.set(i, j, tmpCovariance);
-                tmpMatrixBuilder.set(j, i, tmpCovariance);
+        for (int j = 0; j < tmpColDim; j++) {
+            final int tmpOffset = j * tmpRowDim;
+            double tmpMean = ZERO;
+            for (int i = 0; i < tmpRowDim; i++) {
+                tmpMean += tmpData[tmpOffset + i];
+            }
+            tmpMean /= tmpRowDim;
+            for (int i = 0; i < tmpRowDim; i++) {
+                tmpData[tmpOffset + i] -= tmpMean;
             }
+        }
+
+        final PrimitiveDenseStore retVal = PrimitiveDenseStore.FACTORY.makeZero(tmpColDim, tmpColDim);
+        final double[] tmpProduct = retVal.data;
 
-            tmpSampleSets[j] = tmpSampleSet;
+        // The kernel computes both triangles, on a single thread that is twice the work of the loop
+        if (parallel && (tmpColDim > MultiplyLeft.THRESHOLD) && (OjAlgoUtils.ENVIRONMENT.threads > 1)) {
+            retVal.fillByMultiplying(samples.transpose(), samples);
+        } else {
+            for (int j = 0; j < tmpColDim; j++) {
+                for (int i = 0; i <= j; i++) {
+                    final double tmpValue = DOT.invoke(tmpData, i * tmpRowDim, tmpData, j * tmpRowDim, 0, tmpRowDim);
+                    tmpProduct[i + (j * tmpColDim)] = tmpValue;
+                    tmpProduct[j + (i * tmpColDim)] = tmpValue;
+                }
+            }
         }
 
-        return tmpMatrixBuilder.get();
+        final double tmpFactor = scale / (tmpRowDim - 1);
+        for (int ij = 0; ij < tmpProduct.length; ij++) {
+            tmpProduct[ij] *= tmpFactor;
+        }
+
+        return retVal;
     }
 
     public static CalendarDateSeries<BigDecimal> makeDatePriceSeries(final double[] prices, final Date startDate, final CalendarDateUnit resolution) {
@@ -0,0 +1,290 @@
+/*
+ * Copyright 1997-2017 Optimatika (www.optimatika.se)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.algo.finance;
+
+import static org.algo.constant.PrimitiveMath.*;
+
+import org.algo.access.Access1D;
+import org.algo.matrix.PrimitiveMatrix;
+import org.algo.matrix.store.PrimitiveDenseStore;
+
+/**
+ * Covariances of a stream of observations (e.g. one vector of aligned asset returns per day), updated one
+ * observation at a time in O(n<sup>2</sup>) instead of recomputing them from the whole history.
+ * <ul>
+ * <li>{@link #make(int)} - all observations, running means and co-moments with Welford's rank-1 update. The
+ * covariances equal those of {@link FinanceUtils#makeCovarianceMatrix(org.algo.access.Access2D, boolean)} on the
+ * same observations, up to rounding.</li>
+ * <li>{@link #makeWindowed(int, int)} - the last <code>window</code> observations. The oldest observation is
+ * removed with the reverse update when a new one arrives.</li>
+ * <li>{@link #makeExponential(int, double)} - RiskMetrics exponentially weighted covariances,
+ * &Sigma;<sub>t</sub> = &lambda;&Sigma;<sub>t-1</sub> + (1-&lambda;)r<sub>t</sub>r<sub>t</sub><sup>T</sup>, with
+ * the mean assumed to be zero.</li>
+ * </ul>
+ * Not thread safe.
+ */
+public final class RollingCovariance {
+
+    /**
+     * All observations
+     */
+    public static RollingCovariance make(final int dimension) {
+        return new RollingCovariance(dimension, 0, NaN);
+    }
+
+    /**
+     * RiskMetrics exponential decay
+     *
+     * @param lambda The decay factor, 0 &lt; &lambda; &lt; 1, RiskMetrics uses 0.94 for daily returns
+     */
+    public static RollingCovariance makeExponential(final int dimension, final double lambda) {
+        if ((lambda <= ZERO) || (lambda >= ONE)) {
+            throw new IllegalArgumentException("Lambda must be in (0, 1): " + lambda);
+        }
+        return new RollingCovariance(dimension, 0, lambda);
+    }
+
+    /**
+     * A moving window of the most recent observations
+     *
+     * @param window The number of observations kept, at least 1. A window of 1 keeps the latest observation as the
+     *        mean and has NaN covariances, like a single sample.
+     */
+    public static RollingCovariance makeWindowed(final int dimension, final int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("The window must hold at least 1 observation: " + window);
+        }
+        return new RollingCovariance(dimension, window, NaN);
+    }
+
+    private long myCount = 0L;
+    private final int myDimension;
+    private final double[] myDelta;
+    private final double myLambda;
+    private final double[] myMeans;
+    /**
+     * Upper triangle of the co-moments (sums of products of deviations), or of the covariances in the
+     * exponential case, column-major n x n.
+     */
+    private final double[] myMoments;
+    private final double[] myObservation;
+    private final double[] myWindow;
+    private int myWindowNext = 0;
+    private final int myWindowSize;
+
+    private RollingCovariance(final int dimension, final int window, final double lambda) {
+
+        super();
+
+        if (dimension < 1) {
+            throw new IllegalArgumentException("The dimension must be positive: " + dimension);
+        }
+
+        myDimension = dimension;
+        myWindowSize = window;
+        myLambda = lambda;
+
+        myMeans = new double[dimension];
+        myDelta = new double[dimension];
+        myMoments = new double[dimension * dimension];
+        myObservation = window > 0 ? null : new double[dimension];
+        myWindow = window > 0 ? new double[window * dimension] : null;
+    }
+
+    /**
+     * Adds the next observation, in a windowed estimator the oldest one drops out once the window is full.
+     */
+    public void add(final Access1D<?> observation) {
+
+        final int tmpDim = myDimension;
+        if (observation.count() != tmpDim) {
+            throw new IllegalArgumentException("Expected " + tmpDim + " values, got " + observation.count());
+        }
+
+        if (myWindow != null) {
+            final int tmpOffset = myWindowNext * tmpDim;
+            if (myCount == myWindowSize) {
+                this.remove(tmpOffset);
+            }
+            for (int i = 0; i < tmpDim; i++) {
+                myWindow[tmpOffset + i] = observation.doubleValue(i);
+            }
+            myWindowNext = (myWindowNext + 1) % myWindowSize;
+            this.include(myWindow, tmpOffset);
+        } else {
+            for (int i = 0; i < tmpDim; i++) {
+                myObservation[i] = observation.doubleValue(i);
+            }
+            if (!Double.isNaN(myLambda)) {
+                this.decay();
+            } else {
+                this.include(myObservation, 0);
+            }
+        }
+    }
+
+    public void add(final double[] observation) {
+        this.add(Access1D.wrapAccess1D(observation));
+    }
+
+    /**
+     * @return The number of observations in the estimate, at most the window size of a windowed estimator
+     */
+    public long count() {
+        return myCount;
+    }
+
+    /**
+     * A snapshot of the current covariances, later observations do not change it. Sample covariances (divided
+     * by count-1) for the cumulative and windowed estimators; NaN until there are 2 observations.
+     */
+    public PrimitiveMatrix getCovariances() {
+
+        final int tmpDim = myDimension;
+        final PrimitiveDenseStore tmpCovariances = PrimitiveDenseStore.FACTORY.makeZero(tmpDim, tmpDim);
+        final double[] tmpData = tmpCovariances.data;
+
+        final double tmpFactor;
+        if (!Double.isNaN(myLambda)) {
+            tmpFactor = myCount > 0L ? ONE : NaN;
+        } else {
+            tmpFactor = myCount > 1L ? ONE / (myCount - 1L) : NaN;
+        }
+
+        for (int j = 0; j < tmpDim; j++) {
+            for (int i = 0; i <= j; i++) {
+                final double tmpValue = tmpFactor * myMoments[i + (j * tmpDim)];
+                tmpData[i + (j * tmpDim)] = tmpValue;
+                tmpData[j + (i * tmpDim)] = tmpValue;
+            }
+        }
+
+        return PrimitiveMatrix.FACTORY.copy(tmpCovariances);
+    }
+
+    /**
+     * @return The mean of the observations in the estimate, always 0.0 for the exponential estimator
+     */
+    public double getMean(final int index) {
+        return myMeans[index];
+    }
+
+    public void reset() {
+        myCount = 0L;
+        myWindowNext = 0;
+        for (int i = 0; i < myDimension; i++) {
+            myMeans[i] = ZERO;
+        }
+        for (int ij = 0; ij < myMoments.length; ij++) {
+            myMoments[ij] = ZERO;
+        }
+    }
+
+    private void decay() {
+
+        final int tmpDim = myDimension;
+        final double tmpLambda = myLambda;
+        final double tmpWeight = ONE - tmpLambda;
+        final double[] tmpMoments = myMoments;
+
+        final double[] tmpValues = myObservation;
+
+        for (int j = 0; j < tmpDim; j++) {
+            final double tmpWeightedJ = tmpWeight * tmpValues[j];
+            final int tmpColumn = j * tmpDim;
+            for (int i = 0; i <= j; i++) {
+                tmpMoments[tmpColumn + i] = (tmpLambda * tmpMoments[tmpColumn + i]) + (tmpWeightedJ * tmpValues[i]);
+            }
+        }
+
+        myCount++;
+    }
+
+    /**
+     * Welford: mean += delta/n, moments += delta (x - mean)<sup>T</sup> with delta taken before the mean update
+     */
+    private void include(final double[] values, final int offset) {
+
+        final int tmpDim = myDimension;
+        final double[] tmpMeans = myMeans;
+        final double[] tmpDelta = myDelta;
+        final double[] tmpMoments = myMoments;
+
+        myCount++;
+        final double tmpCount = myCount;
+
+        for (int i = 0; i < tmpDim; i++) {
+            final double tmpValue = values[offset + i];
+            tmpDelta[i] = tmpValue - tmpMeans[i];
+            tmpMeans[i] += tmpDelta[i] / tmpCount;
+        }
+
+        for (int j = 0; j < tmpDim; j++) {
+            final double tmpResidualJ = values[offset + j] - tmpMeans[j];
+            final int tmpColumn = j * tmpDim;
+            for (int i = 0; i <= j; i++) {
+                tmpMoments[tmpColumn + i] += tmpDelta[i] * tmpResidualJ;
+            }
+        }
+    }
+
+    /**
+     * The reverse of {@link #include(double[], int)}: mean -= delta/(n-1), moments -= delta (x - mean)<sup>T</sup>
+     */
+    private void remove(final int offset) {
+
+        final int tmpDim = myDimension;
+        final double[] tmpValues = myWindow;
+        final double[] tmpMeans = myMeans;
+        final double[] tmpDelta = myDelta;
+        final double[] tmpMoments = myMoments;
+
+        myCount--;
+        final double tmpCount = myCount;
+
+        if (myCount == 0L) {
+            // Only happens with a window of 1, nothing is left and delta/0 would poison the sums
+            for (int i = 0; i < tmpDim; i++) {
+                tmpMeans[i] = ZERO;
+            }
+            for (int ij = 0; ij < tmpMoments.length; ij++) {
+                tmpMoments[ij] = ZERO;
+            }
+            return;
+        }
+
+        for (int i = 0; i < tmpDim; i++) {
+            final double tmpValue = tmpValues[offset + i];
+            tmpDelta[i] = tmpValue - tmpMeans[i];
+            tmpMeans[i] -= tmpDelta[i] / tmpCount;
+        }
+
+        for (int j = 0; j < tmpDim; j++) {
+            final double tmpResidualJ = tmpValues[offset + j] - tmpMeans[j];
+            final int tmpColumn = j * tmpDim;
+            for (int i = 0; i <= j; i++) {
+                tmpMoments[tmpColumn + i] -= tmpDelta[i] * tmpResidualJ;
+            }
+        }
+    }
+
+}
@@ -30,6 +30,7 @@ import org.algo.ProgrammingError;
 import org.algo.netio.BasicParser;
 import org.algo.netio.ResourceLocator;
 import org.algo.series.CalendarDateSeries;
+import org.algo.type.CalendarDate;
 import org.algo.type.CalendarDateUnit;
 import org.algo.type.TypeCache;
 
@@ -104,6 +105,19 @@ public abstract class DataSource<DP extends DatePrice> implements BasicParser<DP
         return this.getPriceSeries(myResourceLocator.getStreamReader());
     }
 
+    /**
+     * The bars from the given key onwards (inclusive). Sources that can query from a start date (see
+     * {@link #setStartDate(ResourceLocator, CalendarDate)}) only fetch those bars, others fetch the full history
+     * and it is cut here.
+     */
+    public CalendarDateSeries<Double> getPriceSeries(final CalendarDate firstKey) {
+
+        final ResourceLocator tmpResourceLocator = myResourceLocator.copy();
+        this.setStartDate(tmpResourceLocator, firstKey);
+
+        return this.getPriceSeries(tmpResourceLocator.getStreamReader()).tailMap(firstKey, true);
+    }
+
     public CalendarDateSeries<Double> getPriceSeries(final Reader reader) {
 
         final CalendarDateSeries<Double> retVal = new CalendarDateSeries<Double>(myResolution).name(mySymbol);
@@ -154,4 +168,12 @@ public abstract class DataSource<DP extends DatePrice> implements BasicParser<DP
         myResourceLocator.setPath(path);
     }
 
+    /**
+     * Limit the history to start at (or before) the given key, by setting query parameters on a copy of this
+     * source's locator. Does nothing by default.
+     */
+    protected void setStartDate(final ResourceLocator resourceLocator, final CalendarDate firstKey) {
+        // No start date query
+    }
+
 }
@@ -29,6 +29,8 @@ import java.util.Locale;
 
 import org.algo.RecoverableCondition;
 import org.algo.netio.ASCII;
+import org.algo.netio.ResourceLocator;
+import org.algo.type.CalendarDate;
 import org.algo.type.CalendarDateUnit;
 import org.algo.type.context.GenericContext;
 
@@ -75,6 +77,7 @@ public class GoogleSymbol extends DataSource<GoogleSymbol.Data> {
     private static final String OUTPUT = "output";
     private static final String Q = "q";
     private static final String STARTDATE = "startdate";
+    private static final GenericContext<Date> STARTDATE_FORMAT = new GenericContext<>(new SimpleDateFormat("MMM+d,+yyyy", Locale.US));
     private static final String WEEKLY = "weekly";
 
     public GoogleSymbol(final String symbol) {
@@ -167,4 +170,9 @@ public class GoogleSymbol extends DataSource<GoogleSymbol.Data> {
         return retVal;
     }
 
+    @Override
+    protected void setStartDate(final ResourceLocator resourceLocator, final CalendarDate firstKey) {
+        resourceLocator.addQueryParameter(STARTDATE, STARTDATE_FORMAT.format(firstKey.toDate()));
+    }
+
 }
@@ -21,35 +21,67 @@
  */
 package org.algo.finance.data;
 
+import java.lang.ref.WeakReference;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.SortedMap;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.algo.series.CalendarDateSeries;
 import org.algo.type.CalendarDate;
 import org.algo.type.CalendarDateUnit;
 
+/**
+ * Caches the price series of data sources. Each source is loaded at most once at a time: concurrent requests
+ * for the same source wait for that load, requests for other sources do not (there is no cache wide lock).
+ * A series is refreshed when it is more than one resolution period old, and only the bars from the last
+ * cached date onwards are fetched and merged in. Sources not used for more than one period are evicted, as are
+ * the least recently used ones when there are more than the maximum number of sources. Eviction runs on a
+ * daemon timer, once per period and whenever a load takes the cache over its maximum size, never on the
+ * thread of a request.
+ * <p>
+ * The returned series are snapshots: a refresh publishes a new series rather than modifying the one that was
+ * handed out. Do not modify them.
+ */
 public final class SourceCache {
 
-    private static final class Value {
+    /**
+     * Only weakly references the cache, so a cache that is no longer used can be collected (and its task is
+     * then cancelled).
+     */
+    private static final class CleanUp extends TimerTask {
 
-        final CalendarDateSeries<Double> series;
-        CalendarDate updated = new CalendarDate();
-        CalendarDate used = new CalendarDate();
+        private final WeakReference<SourceCache> myCache;
 
-        @SuppressWarnings("unused")
-        private Value() {
-            this(null, null);
+        CleanUp(final SourceCache cache) {
+            super();
+            myCache = new WeakReference<>(cache);
         }
 
-        Value(final String name, final CalendarDateUnit resolution) {
+        @Override
+        public void run() {
+            final SourceCache tmpCache = myCache.get();
+            if (tmpCache == null) {
+                this.cancel();
+            } else {
+                tmpCache.cleanUp(System.currentTimeMillis());
+            }
+        }
 
-            super();
+    }
 
-            series = new CalendarDateSeries<>(resolution);
-            series.name(name);
+    private static final class Value {
+
+        volatile CalendarDateSeries<Double> series = null;
+        volatile long updated = 0L;
+        volatile long used = 0L;
+
+        Value() {
+            super();
         }
 
     }
@@ -57,66 +89,192 @@ public final class SourceCache {
     private static final Timer TIMER = new Timer("SourceCache-Daemon", true);
 
     private final Map<DataSource<?>, SourceCache.Value> myCache = new ConcurrentHashMap<>();
+    private final AtomicBoolean myCleanUpScheduled = new AtomicBoolean(false);
+    private final LongAdder myEvictions = new LongAdder();
+    private final LongAdder myHits = new LongAdder();
+    private final LongAdder myLoadNanos = new LongAdder();
+    private final LongAdder myLoads = new LongAdder();
+    private final int myMaxSize;
+    private final LongAdder myMisses = new LongAdder();
     private final CalendarDateUnit myResolution;
 
     public SourceCache(final CalendarDateUnit aResolution) {
+        this(aResolution, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param maxSize The maximum number of cached sources
+     */
+    public SourceCache(final CalendarDateUnit aResolution, final int maxSize) {
 
         super();
 
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("The maximum size must be at least 1!");
+        }
+
         myResolution = aResolution;
+        myMaxSize = maxSize;
 
-        TIMER.schedule(new TimerTask() {
+        // At least a second apart, whatever the resolution
+        final long tmpPeriod = Math.max(aResolution.size(), 1000L);
+        TIMER.schedule(new SourceCache.CleanUp(this), tmpPeriod, tmpPeriod);
+    }
 
-            @Override
-            public void run() {
-                SourceCache.this.cleanUp();
-            }
+    public long countEvictions() {
+        return myEvictions.sum();
+    }
 
-        }, 0L, aResolution.size());
+    public long countHits() {
+        return myHits.sum();
+    }
 
+    /**
+     * The number of initial loads and refreshes.
+     */
+    public long countLoads() {
+        return myLoads.sum();
     }
 
-    public synchronized CalendarDateSeries<Double> get(final DataSource<?> key) {
+    /**
+     * The number of requests that had to wait for a load or refresh.
+     */
+    public long countMisses() {
+        return myMisses.sum();
+    }
 
-        final CalendarDate tmpNow = new CalendarDate();
+    public CalendarDateSeries<Double> get(final DataSource<?> key) {
 
-        Value tmpValue = myCache.get(key);
+        final long tmpNow = System.currentTimeMillis();
 
-        if (tmpValue != null) {
+        final SourceCache.Value tmpValue = myCache.computeIfAbsent(key, k -> new SourceCache.Value());
+        tmpValue.used = tmpNow;
 
-            if (myResolution.count(tmpValue.updated.millis, tmpNow.millis) > 0L) {
-                this.update(tmpValue, key, tmpNow);
+        CalendarDateSeries<Double> retVal = tmpValue.series;
+
+        if ((retVal != null) && !this.isStale(tmpValue, tmpNow)) {
+            myHits.increment();
+            return retVal;
+        }
+
+        myMisses.increment();
+
+        synchronized (tmpValue) {
+            // Another thread may have loaded it while this one waited
+            retVal = tmpValue.series;
+            if ((retVal == null) || this.isStale(tmpValue, tmpNow)) {
+                try {
+                    retVal = this.load(tmpValue, key);
+                } catch (final RuntimeException exception) {
+                    if (tmpValue.series == null) {
+                        myCache.remove(key, tmpValue);
+                    }
+                    throw exception;
+                }
             }
+        }
 
-        } else {
+        return retVal;
+    }
 
-            tmpValue = new SourceCache.Value(key.getSymbol(), myResolution);
+    /**
+     * The total time spent loading and refreshing.
+     */
+    public long getLoadNanos() {
+        return myLoadNanos.sum();
+    }
+
+    public int size() {
+        return myCache.size();
+    }
+
+    /**
+     * Runs on the timer thread.
+     */
+    void cleanUp(final long now) {
 
-            myCache.put(key, tmpValue);
+        myCleanUpScheduled.set(false);
 
-            this.update(tmpValue, key, tmpNow);
+        for (final Entry<DataSource<?>, SourceCache.Value> tmpEntry : myCache.entrySet()) {
+            if (myResolution.count(tmpEntry.getValue().used, now) > 1L) {
+                if (myCache.remove(tmpEntry.getKey(), tmpEntry.getValue())) {
+                    myEvictions.increment();
+                }
+            }
         }
 
-        tmpValue.used = tmpNow;
+        while (myCache.size() > myMaxSize) {
 
-        return tmpValue.series;
+            Entry<DataSource<?>, SourceCache.Value> tmpLeastRecentlyUsed = null;
+            for (final Entry<DataSource<?>, SourceCache.Value> tmpEntry : myCache.entrySet()) {
+                // Sources that are still loading are left alone
+                if ((tmpEntry.getValue().series != null)
+                        && ((tmpLeastRecentlyUsed == null) || (tmpEntry.getValue().used < tmpLeastRecentlyUsed.getValue().used))) {
+                    tmpLeastRecentlyUsed = tmpEntry;
+                }
+            }
+
+            if (tmpLeastRecentlyUsed == null) {
+                break;
+            } else if (myCache.remove(tmpLeastRecentlyUsed.getKey(), tmpLeastRecentlyUsed.getValue())) {
+                myEvictions.increment();
+            }
+        }
     }
 
-    private void cleanUp() {
+    private boolean isStale(final SourceCache.Value value, final long now) {
+        return myResolution.count(value.updated, now) > 0L;
+    }
 
-        final CalendarDate tmpNow = new CalendarDate();
+    /**
+     * The first load takes the whole series, a refresh only merges the bars from the last cached key onwards
+     * (the last bar may have been revised). When there is nothing new the same series is kept.
+     * <p>
+     * Only the bars from the last cached key onwards are fetched, see {@link DataSource#getPriceSeries(CalendarDate)}.
+     * The merge can not append to
+     * the cached series in place - it is a {@link java.util.TreeMap} that other threads may be iterating - so
+     * the older bars are copied with {@link CalendarDateSeries#headMap(CalendarDate)}, which builds the tree
+     * from sorted input in linear time, and only the new bars are put one by one.
+     */
+    private CalendarDateSeries<Double> load(final SourceCache.Value value, final DataSource<?> key) {
 
-        for (final Entry<DataSource<?>, SourceCache.Value> tmpEntry : myCache.entrySet()) {
+        final long tmpStart = System.nanoTime();
+
+        final CalendarDateSeries<Double> tmpCached = value.series;
 
-            if (myResolution.count(tmpEntry.getValue().used.millis, tmpNow.millis) > 1L) {
-                tmpEntry.getValue().series.clear();
-                myCache.remove(tmpEntry.getKey());
+        CalendarDateSeries<Double> retVal;
+
+        if ((tmpCached == null) || tmpCached.isEmpty()) {
+
+            retVal = new CalendarDateSeries<Double>(myResolution).name(key.getSymbol());
+            retVal.putAll(key.getPriceSeries());
+
+        } else {
+
+            final CalendarDate tmpLastKey = tmpCached.lastKey();
+            final SortedMap<CalendarDate, Double> tmpNew = key.getPriceSeries(tmpLastKey);
+
+            final Double tmpLastValue = tmpNew.get(tmpLastKey);
+
+            if (tmpNew.isEmpty() || ((tmpNew.size() == 1) && tmpCached.lastValue().equals(tmpLastValue))) {
+                retVal = tmpCached;
+            } else {
+                retVal = tmpCached.headMap(tmpLastKey);
+                retVal.putAll(tmpNew);
             }
         }
-    }
 
-    private void update(final Value aCacheValue, final DataSource<?> key, final CalendarDate now) {
-        aCacheValue.series.putAll(key.getPriceSeries());
-        aCacheValue.updated = now;
+        value.series = retVal;
+        value.updated = System.currentTimeMillis();
+
+        myLoads.increment();
+        myLoadNanos.add(System.nanoTime() - tmpStart);
+
+        if ((myCache.size() > myMaxSize) && myCleanUpScheduled.compareAndSet(false, true)) {
+            TIMER.schedule(new SourceCache.CleanUp(this), 0L);
+        }
+
+        return retVal;
     }
+
 }
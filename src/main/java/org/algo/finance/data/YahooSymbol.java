@@ -30,6 +30,7 @@ import org.algo.RecoverableCondition;
 import org.algo.netio.ASCII;
 import org.algo.netio.BasicLogger;
 import org.algo.netio.ResourceLocator;
+import org.algo.type.CalendarDate;
 import org.algo.type.CalendarDateUnit;
 
 /**
@@ -201,4 +202,13 @@ public class YahooSymbol extends DataSource<YahooSymbol.Data> {
         return retVal;
     }
 
+    /**
+     * period1 and period2 are in epoch seconds, and go together.
+     */
+    @Override
+    protected void setStartDate(final ResourceLocator resourceLocator, final CalendarDate firstKey) {
+        resourceLocator.addQueryParameter("period1", Long.toString(firstKey.millis / 1000L));
+        resourceLocator.addQueryParameter("period2", Long.toString(System.currentTimeMillis() / 1000L));
+    }
+
 }
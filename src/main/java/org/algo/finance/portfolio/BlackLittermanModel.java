@@ -231,13 +231,14 @@ public final class BlackLittermanModel extends EquilibriumModel {
         final BasicMatrix tmpViewReturns = this.getViewReturns();
         final BasicMatrix tmpViewVariances = this.getViewVariances();
 
-        final BasicMatrix tmpCovariances = this.getCovariances();
+        final BasicMatrix tmpViewsTransposed = tmpViewPortfolios.transpose();
 
-        final BasicMatrix tmpRightParenthesis = tmpViewReturns.subtract(tmpViewPortfolios.multiply(tmpCovariances).multiply(myOriginalWeights));
+        // Sigma is symmetric, P*Sigma = (Sigma*P^T)^T, and Sigma*P^T stays on the factors if there are any
+        final BasicMatrix tmpCovariancesTimesViews = this.multiplyCovariances(tmpViewsTransposed);
 
-        final BasicMatrix tmpViewsTransposed = tmpViewPortfolios.transpose();
+        final BasicMatrix tmpRightParenthesis = tmpViewReturns.subtract(tmpCovariancesTimesViews.transpose().multiply(myOriginalWeights));
 
-        final BasicMatrix tmpLeftParenthesis = tmpViewVariances.add(tmpViewPortfolios.multiply(tmpCovariances).multiply(tmpViewsTransposed));
+        final BasicMatrix tmpLeftParenthesis = tmpViewVariances.add(tmpViewPortfolios.multiply(tmpCovariancesTimesViews));
 
         return myOriginalWeights.add(tmpViewsTransposed.multiply(tmpLeftParenthesis.solve(tmpRightParenthesis)));
     }
@@ -337,10 +338,6 @@ public final class BlackLittermanModel extends EquilibriumModel {
 
     BigDecimal calculateVariance(final BasicMatrix weights) {
 
-        BasicMatrix tmpVal = this.getCovariances();
-
-        tmpVal = tmpVal.multiply(weights);
-
-        return TypeUtils.toBigDecimal(weights.transpose().multiply(tmpVal).get(0, 0));
+        return TypeUtils.toBigDecimal(this.calculatePortfolioVariance(weights).getNumber());
     }
 }
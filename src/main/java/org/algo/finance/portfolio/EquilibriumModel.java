@@ -201,6 +201,10 @@ abstract class EquilibriumModel extends FinancePortfolio implements FinancePortf
         return myMarketEquilibrium.calculatePortfolioVariance(aWeightsVctr);
     }
 
+    final BasicMatrix multiplyCovariances(final BasicMatrix columns) {
+        return myMarketEquilibrium.multiplyCovariances(columns);
+    }
+
     protected final void calibrate(final BasicMatrix aWeightsVctr, final BasicMatrix aReturnsVctr) {
 
         final Scalar<?> tmpRiskAvesrion = myMarketEquilibrium.calculateImpliedRiskAversion(aWeightsVctr, aReturnsVctr);
@@ -26,6 +26,7 @@ import java.math.BigDecimal;
 import org.algo.array.Raw1D;
 import org.algo.constant.BigMath;
 import org.algo.constant.PrimitiveMath;
+import org.algo.finance.FactorCovariance;
 import org.algo.finance.FinanceUtils;
 import org.algo.matrix.BasicMatrix;
 import org.algo.matrix.PrimitiveMatrix;
@@ -50,6 +51,12 @@ import org.algo.type.TypeUtils;
  * can/will describe the weights/returns equilibrium for any investor.
  * </p>
  *
+ * <p>
+ * The covariances may be given as a {@link FactorCovariance}. Then returns, weights and portfolio variances are
+ * calculated on the factors in O(n&middot;k), and the dense covariance matrix is only built if someone asks
+ * for it with {@link #getCovariances()}.
+ * </p>
+ *
  * @see #calculateAssetReturns(BasicMatrix)
  * @see #calculateAssetWeights(BasicMatrix)
  * @author apete
@@ -86,7 +93,8 @@ public class MarketEquilibrium {
     }
 
     private final String[] myAssetKeys;
-    private final BasicMatrix myCovariances;
+    private volatile BasicMatrix myCovariances;
+    private final FactorCovariance myFactorCovariances;
     private BigDecimal myRiskAversion;
 
     public MarketEquilibrium(final BasicMatrix covarianceMatrix) {
@@ -97,12 +105,17 @@ public class MarketEquilibrium {
         this(MarketEquilibrium.makeSymbols((int) covarianceMatrix.countRows()), covarianceMatrix, riskAversionFactor);
     }
 
+    public MarketEquilibrium(final FactorCovariance covariances, final Number riskAversionFactor) {
+        this(MarketEquilibrium.makeSymbols((int) covariances.countRows()), covariances, riskAversionFactor);
+    }
+
     public MarketEquilibrium(final String[] assetNamesOrKeys, final BasicMatrix covarianceMatrix) {
 
         super();
 
         myAssetKeys = Raw1D.copyOf(assetNamesOrKeys);
         myCovariances = covarianceMatrix;
+        myFactorCovariances = null;
         myRiskAversion = DEFAULT_RISK_AVERSION;
     }
 
@@ -112,11 +125,28 @@ public class MarketEquilibrium {
 
         myAssetKeys = Raw1D.copyOf(assetNamesOrKeys);
         myCovariances = covarianceMatrix;
+        myFactorCovariances = null;
+        myRiskAversion = TypeUtils.toBigDecimal(riskAversionFactor);
+    }
+
+    public MarketEquilibrium(final String[] assetNamesOrKeys, final FactorCovariance covariances, final Number riskAversionFactor) {
+
+        super();
+
+        myAssetKeys = Raw1D.copyOf(assetNamesOrKeys);
+        myCovariances = null;
+        myFactorCovariances = covariances;
         myRiskAversion = TypeUtils.toBigDecimal(riskAversionFactor);
     }
 
     MarketEquilibrium(final MarketEquilibrium marketEquilibrium) {
-        this(marketEquilibrium.getAssetKeys(), marketEquilibrium.getCovariances(), marketEquilibrium.getRiskAversion().getNumber());
+
+        super();
+
+        myAssetKeys = marketEquilibrium.getAssetKeys();
+        myCovariances = marketEquilibrium.myCovariances;
+        myFactorCovariances = marketEquilibrium.myFactorCovariances;
+        myRiskAversion = marketEquilibrium.myRiskAversion;
     }
 
     /**
@@ -124,6 +154,16 @@ public class MarketEquilibrium {
      * equilibrium excess returns.
      */
     public BasicMatrix calculateAssetReturns(final BasicMatrix assetWeights) {
+        if (myFactorCovariances != null) {
+            final double[] tmpAssetReturns = myFactorCovariances.multiply(assetWeights.toRawCopy1D());
+            if (!this.isDefaultRiskAversion()) {
+                final double tmpRiskAversion = myRiskAversion.doubleValue();
+                for (int i = 0; i < tmpAssetReturns.length; i++) {
+                    tmpAssetReturns[i] *= tmpRiskAversion;
+                }
+            }
+            return PrimitiveMatrix.FACTORY.columns(tmpAssetReturns);
+        }
         final BasicMatrix tmpAssetWeights = myRiskAversion.compareTo(DEFAULT_RISK_AVERSION) == 0 ? assetWeights : assetWeights.multiply(myRiskAversion);
         return myCovariances.multiply(tmpAssetWeights);
     }
@@ -134,7 +174,8 @@ public class MarketEquilibrium {
      * instrument weights.
      */
     public BasicMatrix calculateAssetWeights(final BasicMatrix assetReturns) {
-        final BasicMatrix tmpAssetWeights = myCovariances.solve(assetReturns);
+        final BasicMatrix tmpAssetWeights = myFactorCovariances != null ? PrimitiveMatrix.FACTORY.columns(myFactorCovariances.solve(assetReturns.toRawCopy1D()))
+                : myCovariances.solve(assetReturns);
         if (myRiskAversion.compareTo(DEFAULT_RISK_AVERSION) == 0) {
             return tmpAssetWeights;
         } else {
@@ -147,6 +188,10 @@ public class MarketEquilibrium {
      */
     public Scalar<?> calculatePortfolioVariance(final BasicMatrix assetWeights) {
 
+        if (myFactorCovariances != null) {
+            return PrimitiveScalar.of(myFactorCovariances.getVariance(assetWeights.toRawCopy1D()));
+        }
+
         BasicMatrix tmpLeft;
         BasicMatrix tmpRight;
 
@@ -178,6 +223,11 @@ public class MarketEquilibrium {
      */
     public MarketEquilibrium clean() {
 
+        if (myFactorCovariances != null) {
+            // Already positive definite, the specific variances are all positive
+            return new MarketEquilibrium(myAssetKeys, myFactorCovariances, myRiskAversion);
+        }
+
         final PrimitiveMatrix tmpAssetVolatilities = FinanceUtils.toVolatilities(myCovariances, true);
         final PrimitiveMatrix tmpCleanedCorrelations = FinanceUtils.toCorrelations(myCovariances, true);
 
@@ -198,8 +248,24 @@ public class MarketEquilibrium {
         return Raw1D.copyOf(myAssetKeys);
     }
 
+    /**
+     * With a {@link FactorCovariance} the dense matrix is built on first use. Concurrent first calls may each
+     * build it, they all get equal (immutable) matrices.
+     */
     public BasicMatrix getCovariances() {
-        return myCovariances;
+        BasicMatrix retVal = myCovariances;
+        if (retVal == null) {
+            retVal = myFactorCovariances.toCovariances();
+            myCovariances = retVal;
+        }
+        return retVal;
+    }
+
+    /**
+     * @return The factor model given to the constructor, or null if the covariances were given as a matrix
+     */
+    public FactorCovariance getFactorCovariances() {
+        return myFactorCovariances;
     }
 
     public Scalar<?> getRiskAversion() {
@@ -220,11 +286,14 @@ public class MarketEquilibrium {
     }
 
     public int size() {
+        if (myFactorCovariances != null) {
+            return (int) myFactorCovariances.countRows();
+        }
         return (int) Math.min(myCovariances.countRows(), myCovariances.countColumns());
     }
 
     public BasicMatrix toCorrelations() {
-        return FinanceUtils.toCorrelations(myCovariances, false);
+        return FinanceUtils.toCorrelations(this.getCovariances(), false);
     }
 
     /**
@@ -233,7 +302,9 @@ public class MarketEquilibrium {
      */
     Scalar<?> calculateImpliedRiskAversion(final BasicMatrix assetWeights, final BasicMatrix assetReturns) {
 
-        Scalar<?> retVal = myCovariances.multiply(assetWeights).solve(assetReturns).toScalar(0, 0);
+        final BasicMatrix tmpCovariancesTimesWeights = this.multiplyCovariances(assetWeights);
+
+        Scalar<?> retVal = tmpCovariancesTimesWeights.solve(assetReturns).toScalar(0, 0);
 
         if (retVal.isSmall(PrimitiveMath.ONE)) {
             retVal = BigScalar.ONE;
@@ -248,4 +319,26 @@ public class MarketEquilibrium {
         return myRiskAversion.compareTo(DEFAULT_RISK_AVERSION) == 0;
     }
 
+    /**
+     * &Sigma;X, column by column on the factors when there are any - the dense matrix is not built.
+     */
+    BasicMatrix multiplyCovariances(final BasicMatrix columns) {
+
+        if (myFactorCovariances == null) {
+            return myCovariances.multiply(columns);
+        }
+
+        final int tmpColDim = (int) columns.countColumns();
+        final double[][] tmpProducts = new double[tmpColDim][];
+        for (int j = 0; j < tmpColDim; j++) {
+            final double[] tmpColumn = new double[(int) columns.countRows()];
+            for (int i = 0; i < tmpColumn.length; i++) {
+                tmpColumn[i] = columns.doubleValue(i, j);
+            }
+            tmpProducts[j] = myFactorCovariances.multiply(tmpColumn);
+        }
+
+        return PrimitiveMatrix.FACTORY.columns(tmpProducts);
+    }
+
 }
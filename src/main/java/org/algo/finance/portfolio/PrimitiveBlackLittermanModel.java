@@ -0,0 +1,304 @@
+/*
+ * Copyright 1997-2017 Optimatika (www.optimatika.se)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.algo.finance.portfolio;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.algo.RecoverableCondition;
+import org.algo.access.Access2D;
+import org.algo.constant.PrimitiveMath;
+import org.algo.matrix.store.MatrixStore;
+import org.algo.matrix.store.PrimitiveDenseStore;
+import org.algo.matrix.task.SolverTask;
+
+/**
+ * The same model as {@link BlackLittermanModel}, on double[] and {@link PrimitiveDenseStore} only. Views are
+ * given as double[] weights, there is no BigDecimal or {@link org.algo.matrix.BasicMatrix} in the calculation.
+ * Asset weights and returns equal those of {@link BlackLittermanModel} (with a {@link MarketEquilibrium} of
+ * the same covariances and risk aversion) to within 1E-12 relative to the largest weight/return, only the
+ * order of the floating point operations differs.
+ */
+public final class PrimitiveBlackLittermanModel {
+
+    private static final class View {
+
+        final double meanReturn;
+        final double returnVariance;
+        final double scale;
+        final double[] weights;
+
+        View(final double[] weights, final double meanReturn, final double returnVariance, final double scale) {
+            this.weights = weights;
+            this.meanReturn = meanReturn;
+            this.returnVariance = returnVariance;
+            this.scale = scale;
+        }
+
+    }
+
+    private static final String NOT_COMBINABLE = "The views can't be combined with the market portfolio!";
+
+    private final String[] myAssetKeys;
+    private double[] myAssetWeights;
+    private double myConfidence = PrimitiveMath.ONE;
+    private final PrimitiveDenseStore myCovariances;
+    private final double[] myOriginalWeights;
+    private double myRiskAversion;
+    private final List<View> myViews = new ArrayList<>();
+
+    /**
+     * @param assetKeys Asset names, one per row/column of the covariance matrix
+     * @param covariances The covariance matrix
+     * @param riskAversion The market risk aversion factor
+     * @param originalWeights The market portfolio
+     */
+    public PrimitiveBlackLittermanModel(final String[] assetKeys, final Access2D<?> covariances, final double riskAversion,
+            final double[] originalWeights) {
+
+        super();
+
+        if ((covariances.countRows() != originalWeights.length) || (covariances.countColumns() != originalWeights.length)) {
+            throw new IllegalArgumentException("Covariances and weights must have the same dimension!");
+        }
+
+        myAssetKeys = assetKeys.clone();
+        myCovariances = PrimitiveDenseStore.FACTORY.copy(covariances);
+        myOriginalWeights = originalWeights.clone();
+        this.setRiskAversion(riskAversion);
+    }
+
+    public void addViewWithBalancedConfidence(final double[] weights, final double meanReturn) {
+        this.addView(new View(this.checkWeights(weights), meanReturn, Double.NaN, Double.NaN));
+    }
+
+    public void addViewWithScaledConfidence(final double[] weights, final double meanReturn, final double scale) {
+        this.addView(new View(this.checkWeights(weights), meanReturn, Double.NaN, scale));
+    }
+
+    public void addViewWithStandardDeviation(final double[] weights, final double meanReturn, final double standardDeviation) {
+        this.addView(new View(this.checkWeights(weights), meanReturn, standardDeviation * standardDeviation, Double.NaN));
+    }
+
+    /**
+     * The implied equilibrium returns of the weights, risk aversion * covariances * weights
+     */
+    public double[] calculateAssetReturns(final double[] assetWeights) {
+
+        final int tmpSize = myOriginalWeights.length;
+        final double[] tmpCovariances = myCovariances.data;
+
+        final double[] retVal = new double[tmpSize];
+        for (int j = 0; j < tmpSize; j++) {
+            final double tmpWeight = assetWeights[j];
+            for (int i = 0; i < tmpSize; i++) {
+                retVal[i] += tmpCovariances[i + (j * tmpSize)] * tmpWeight;
+            }
+        }
+        if (myRiskAversion != PrimitiveMath.ONE) {
+            for (int i = 0; i < tmpSize; i++) {
+                retVal[i] *= myRiskAversion;
+            }
+        }
+        return retVal;
+    }
+
+    public String[] getAssetKeys() {
+        return myAssetKeys.clone();
+    }
+
+    /**
+     * @throws IllegalStateException As {@link #getAssetWeights()}
+     */
+    public double[] getAssetReturns() {
+        return this.calculateAssetReturns(this.getWeights());
+    }
+
+    /**
+     * @throws IllegalStateException If the views can't be combined with the market portfolio (singular system),
+     *         e.g. linearly dependent views stated with zero variance
+     */
+    public double[] getAssetWeights() {
+        return this.getWeights().clone();
+    }
+
+    /**
+     * @see BlackLittermanModel#getConfidence()
+     */
+    public double getConfidence() {
+        return myConfidence;
+    }
+
+    public double[] getOriginalReturns() {
+        return this.calculateAssetReturns(myOriginalWeights);
+    }
+
+    public double[] getOriginalWeights() {
+        return myOriginalWeights.clone();
+    }
+
+    public double getRiskAversion() {
+        return myRiskAversion;
+    }
+
+    /**
+     * @see BlackLittermanModel#setConfidence(Number)
+     */
+    public void setConfidence(final double confidence) {
+        myConfidence = confidence;
+        myAssetWeights = null;
+    }
+
+    /**
+     * @see MarketEquilibrium#setRiskAversion(Number)
+     */
+    public void setRiskAversion(final double factor) {
+        if (factor == PrimitiveMath.ZERO) {
+            myRiskAversion = PrimitiveMath.ONE;
+        } else {
+            myRiskAversion = Math.abs(factor);
+        }
+        myAssetWeights = null;
+    }
+
+    public int size() {
+        return myOriginalWeights.length;
+    }
+
+    private void addView(final View view) {
+        myViews.add(view);
+        myAssetWeights = null;
+    }
+
+    /**
+     * w = w0 + P<sup>T</sup> [&Omega; + P&Sigma;P<sup>T</sup>]<sup>-1</sup> [q/&lambda; - P&Sigma;w0]
+     */
+    private double[] calculateAssetWeights() {
+
+        final int tmpSize = myOriginalWeights.length;
+        final double[] tmpCovariances = myCovariances.data;
+
+        // A view without weights adds nothing to P<sup>T</sup>x, but would make the system singular
+        final List<View> tmpViews = new ArrayList<>(myViews.size());
+        for (final View tmpView : myViews) {
+            if (this.dot(tmpView.weights, tmpView.weights) != PrimitiveMath.ZERO) {
+                tmpViews.add(tmpView);
+            }
+        }
+        final int tmpViewCount = tmpViews.size();
+
+        if (tmpViewCount == 0) {
+            return myOriginalWeights.clone();
+        }
+
+        // P*Sigma, one row per view
+        final double[][] tmpViewCovariances = new double[tmpViewCount][tmpSize];
+        for (int v = 0; v < tmpViewCount; v++) {
+            final double[] tmpWeights = tmpViews.get(v).weights;
+            final double[] tmpRow = tmpViewCovariances[v];
+            for (int j = 0; j < tmpSize; j++) {
+                double tmpSum = PrimitiveMath.ZERO;
+                for (int i = 0; i < tmpSize; i++) {
+                    tmpSum += tmpWeights[i] * tmpCovariances[i + (j * tmpSize)];
+                }
+                tmpRow[j] = tmpSum;
+            }
+        }
+
+        final PrimitiveDenseStore tmpLeft = PrimitiveDenseStore.FACTORY.makeZero(tmpViewCount, tmpViewCount);
+        final PrimitiveDenseStore tmpRight = PrimitiveDenseStore.FACTORY.makeZero(tmpViewCount, 1L);
+
+        for (int v = 0; v < tmpViewCount; v++) {
+
+            final View tmpView = tmpViews.get(v);
+            final double[] tmpRow = tmpViewCovariances[v];
+
+            for (int u = 0; u < tmpViewCount; u++) {
+                tmpLeft.set(v, u, this.dot(tmpRow, tmpViews.get(u).weights));
+            }
+            tmpLeft.add(v, v, this.getViewVariance(tmpView, tmpRow));
+
+            tmpRight.set(v, 0, (tmpView.meanReturn / myRiskAversion) - this.dot(tmpRow, myOriginalWeights));
+        }
+
+        final MatrixStore<Double> tmpSolution;
+        try {
+            tmpSolution = SolverTask.PRIMITIVE.make(tmpLeft, tmpRight, true, false).solve(tmpLeft, tmpRight);
+        } catch (final RecoverableCondition xcptn) {
+            throw new IllegalStateException(NOT_COMBINABLE, xcptn);
+        }
+
+        final double[] retVal = myOriginalWeights.clone();
+        for (int v = 0; v < tmpViewCount; v++) {
+            final double tmpFactor = tmpSolution.doubleValue(v);
+            // The small fixed size solvers don't detect singular systems
+            if (!Double.isFinite(tmpFactor)) {
+                throw new IllegalStateException(NOT_COMBINABLE);
+            }
+            final double[] tmpWeights = tmpViews.get(v).weights;
+            for (int i = 0; i < tmpSize; i++) {
+                retVal[i] += tmpWeights[i] * tmpFactor;
+            }
+        }
+        return retVal;
+    }
+
+    private double[] checkWeights(final double[] weights) {
+        if (weights.length != myOriginalWeights.length) {
+            throw new IllegalArgumentException("View weights must have one weight per asset!");
+        }
+        return weights.clone();
+    }
+
+    private double dot(final double[] left, final double[] right) {
+        double retVal = PrimitiveMath.ZERO;
+        for (int i = 0; i < left.length; i++) {
+            retVal += left[i] * right[i];
+        }
+        return retVal;
+    }
+
+    /**
+     * The diagonal element of Omega, scaled by tau / weight on views like
+     * {@link BlackLittermanModel#getViewVariances()}
+     */
+    private double getViewVariance(final View view, final double[] viewCovariances) {
+
+        double retVal;
+        if (!Double.isNaN(view.returnVariance)) {
+            retVal = view.returnVariance;
+        } else {
+            retVal = this.dot(viewCovariances, view.weights);
+            retVal *= Double.isNaN(view.scale) ? myConfidence : view.scale;
+        }
+
+        return myConfidence == PrimitiveMath.ONE ? retVal : retVal / myConfidence;
+    }
+
+    private double[] getWeights() {
+        if (myAssetWeights == null) {
+            myAssetWeights = this.calculateAssetWeights();
+        }
+        return myAssetWeights;
+    }
+
+}
@@ -23,22 +23,72 @@ package org.algo.finance.portfolio.simulator;
 
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.SplittableRandom;
 
+import org.algo.ProgrammingError;
 import org.algo.access.Access2D;
-import org.algo.array.Array1D;
 import org.algo.array.Array2D;
-import org.algo.array.Primitive64Array;
+import org.algo.concurrent.DivideAndConquer;
 import org.algo.finance.portfolio.SimplePortfolio;
-import org.algo.function.aggregator.Aggregator;
-import org.algo.function.aggregator.AggregatorFunction;
-import org.algo.function.aggregator.PrimitiveAggregator;
-import org.algo.random.process.GeometricBrownian1D;
+import org.algo.matrix.decomposition.Cholesky;
+import org.algo.matrix.store.MatrixStore;
 import org.algo.random.process.GeometricBrownianMotion;
 import org.algo.random.process.RandomProcess;
 
+/**
+ * Monte Carlo simulation of a portfolio of correlated geometric Brownian motions. The realisations are
+ * partitioned in fixed size blocks that are simulated in parallel. Every block draws from its own
+ * {@link SplittableRandom}, split from one seeded master stream in block order, so a given seed gives the
+ * same results regardless of the number of threads.
+ */
 public class PortfolioSimulator {
 
-    private GeometricBrownian1D myProcess;
+    private static final int BLOCK = 64;
+
+    /**
+     * Standard normal random numbers, polar method, from one stream. Not thread safe - one per block.
+     */
+    static final class Gaussian {
+
+        private boolean myHasSpare = false;
+        private final SplittableRandom myRandom;
+        private double mySpare;
+
+        Gaussian(final SplittableRandom random) {
+            super();
+            myRandom = random;
+        }
+
+        double next() {
+
+            if (myHasSpare) {
+                myHasSpare = false;
+                return mySpare;
+            }
+
+            double tmpU, tmpV, tmpS;
+            do {
+                tmpU = (2.0 * myRandom.nextDouble()) - 1.0;
+                tmpV = (2.0 * myRandom.nextDouble()) - 1.0;
+                tmpS = (tmpU * tmpU) + (tmpV * tmpV);
+            } while ((tmpS >= 1.0) || (tmpS == 0.0));
+
+            final double tmpScale = Math.sqrt((-2.0 * Math.log(tmpS)) / tmpS);
+            mySpare = tmpV * tmpScale;
+            myHasSpare = true;
+            return tmpU * tmpScale;
+        }
+
+    }
+
+    /**
+     * Lower triangular Cholesky factor of the correlations, row major, null if uncorrelated
+     */
+    private final double[] myCholesky;
+    private final double[] myDiffusion;
+    private final double[] myDrift;
+    private final double[] myInitialValues;
+    private final int mySize;
 
     public PortfolioSimulator(final Access2D<?> correlations, final List<GeometricBrownianMotion> assetProcesses) {
 
@@ -48,16 +98,49 @@ public class PortfolioSimulator {
             throw new IllegalArgumentException();
         }
 
+        mySize = assetProcesses.size();
+
+        myInitialValues = new double[mySize];
+        myDrift = new double[mySize];
+        myDiffusion = new double[mySize];
+        for (int p = 0; p < mySize; p++) {
+            final GeometricBrownianMotion tmpProcess = assetProcesses.get(p);
+            myInitialValues[p] = tmpProcess.getValue();
+            myDrift[p] = tmpProcess.getLocalDrift();
+            myDiffusion[p] = tmpProcess.getDiffusionFunction();
+        }
+
         if (correlations != null) {
-            myProcess = new GeometricBrownian1D(correlations, assetProcesses);
+
+            final Cholesky<Double> tmpCholesky = Cholesky.PRIMITIVE.make();
+            tmpCholesky.decompose(MatrixStore.PRIMITIVE.makeWrapper(correlations));
+            final MatrixStore<Double> tmpL = tmpCholesky.getL();
+
+            myCholesky = new double[mySize * mySize];
+            for (int i = 0; i < mySize; i++) {
+                for (int j = 0; j <= i; j++) {
+                    myCholesky[(i * mySize) + j] = tmpL.doubleValue(i, j);
+                }
+            }
+
         } else {
-            myProcess = new GeometricBrownian1D(assetProcesses);
+
+            myCholesky = null;
         }
     }
 
     @SuppressWarnings("unused")
     private PortfolioSimulator() {
+
         super();
+
+        myCholesky = null;
+        myDiffusion = null;
+        myDrift = null;
+        myInitialValues = null;
+        mySize = 0;
+
+        ProgrammingError.throwForIllegalInvocation();
     }
 
     public RandomProcess.SimulationResults simulate(final int aNumberOfRealisations, final int aNumberOfSteps, final double aStepSize) {
@@ -69,48 +152,126 @@ public class PortfolioSimulator {
         return this.simulate(aNumberOfRealisations, aNumberOfSteps, aStepSize, Integer.valueOf(rebalancingInterval));
     }
 
+    /**
+     * Same as the other simulate methods but reproducible - the same seed gives the same results.
+     *
+     * @param rebalancingInterval Number of steps between rebalancing to the initial weights, null for no
+     *        rebalancing
+     */
+    public RandomProcess.SimulationResults simulate(final int aNumberOfRealisations, final int aNumberOfSteps, final double aStepSize,
+            final Integer rebalancingInterval, final long seed) {
+        return this.simulate(aNumberOfRealisations, aNumberOfSteps, aStepSize, rebalancingInterval, new SplittableRandom(seed));
+    }
+
     RandomProcess.SimulationResults simulate(final int aNumberOfRealisations, final int aNumberOfSteps, final double aStepSize,
             final Integer rebalancingInterval) {
+        return this.simulate(aNumberOfRealisations, aNumberOfSteps, aStepSize, rebalancingInterval, new SplittableRandom());
+    }
 
-        final int tmpProcDim = myProcess.size();
+    private RandomProcess.SimulationResults simulate(final int aNumberOfRealisations, final int aNumberOfSteps, final double aStepSize,
+            final Integer rebalancingInterval, final SplittableRandom master) {
+
+        final int tmpProcDim = mySize;
 
-        final Primitive64Array tmpInitialValues = myProcess.getValues();
         final Number[] tmpValues = new Number[tmpProcDim];
+        double tmpInitialValue = 0.0;
+        for (int p = 0; p < tmpProcDim; p++) {
+            tmpValues[p] = myInitialValues[p];
+            tmpInitialValue += myInitialValues[p];
+        }
+        final List<BigDecimal> tmpWeightList = new SimplePortfolio(tmpValues).normalise().getWeights();
+        final double[] tmpWeights = new double[tmpProcDim];
+        for (int p = 0; p < tmpProcDim; p++) {
+            tmpWeights[p] = tmpWeightList.get(p).doubleValue();
+        }
+
+        // The exponent of one step is tmpLocation[p] + tmpScale[p] * z
+        final double[] tmpLocation = new double[tmpProcDim];
+        final double[] tmpScale = new double[tmpProcDim];
         for (int p = 0; p < tmpProcDim; p++) {
-            tmpValues[p] = tmpInitialValues.get(p);
+            tmpLocation[p] = (myDrift[p] - (0.5 * myDiffusion[p] * myDiffusion[p])) * aStepSize;
+            tmpScale[p] = myDiffusion[p] * Math.sqrt(aStepSize);
         }
-        final List<BigDecimal> tmpWeights = new SimplePortfolio(tmpValues).normalise().getWeights();
 
-        final Array2D<Double> tmpRealisationValues = Array2D.PRIMITIVE.makeZero(aNumberOfRealisations, aNumberOfSteps);
+        final int tmpInterval = rebalancingInterval != null ? rebalancingInterval.intValue() : 0;
+
+        final int tmpBlocks = (aNumberOfRealisations + BLOCK - 1) / BLOCK;
+        final SplittableRandom[] tmpStreams = new SplittableRandom[tmpBlocks];
+        for (int b = 0; b < tmpBlocks; b++) {
+            tmpStreams[b] = master.split();
+        }
 
-        for (int r = 0; r < aNumberOfRealisations; r++) {
+        // One dense column per step, blocks write to disjoint rows
+        final double[][] tmpRealisationValues = new double[aNumberOfSteps][aNumberOfRealisations];
 
-            for (int s = 0; s < aNumberOfSteps; s++) {
+        final DivideAndConquer tmpConquerer = new DivideAndConquer() {
 
-                if ((rebalancingInterval != null) && (s != 0) && ((s % rebalancingInterval) == 0)) {
+            @Override
+            protected void conquer(final int first, final int limit) {
 
-                    final double tmpPortfolioValue = tmpRealisationValues.doubleValue(r, s - 1);
+                final double[] tmpAssetValues = new double[tmpProcDim];
+                final double[] tmpRandom = new double[tmpProcDim];
 
-                    for (int p = 0; p < tmpProcDim; p++) {
-                        myProcess.setValue(p, tmpPortfolioValue * tmpWeights.get(p).doubleValue());
+                for (int b = first; b < limit; b++) {
+
+                    final Gaussian tmpGaussian = new Gaussian(tmpStreams[b]);
+                    final int tmpLimit = Math.min(aNumberOfRealisations, (b + 1) * BLOCK);
+
+                    for (int r = b * BLOCK; r < tmpLimit; r++) {
+                        PortfolioSimulator.this.realise(tmpRealisationValues, r, aNumberOfSteps, tmpInterval, tmpWeights, tmpLocation, tmpScale,
+                                tmpGaussian, tmpAssetValues, tmpRandom);
                     }
                 }
+            }
+
+        };
+
+        tmpConquerer.invoke(0, tmpBlocks, 1);
+
+        return new RandomProcess.SimulationResults(tmpInitialValue, Array2D.PRIMITIVE.columns(tmpRealisationValues));
+    }
 
-                final Array1D<Double> tmpRealisation = myProcess.step(aStepSize);
+    private void realise(final double[][] results, final int realisation, final int numberOfSteps, final int interval, final double[] weights,
+            final double[] location, final double[] scale, final Gaussian gaussian, final double[] assetValues, final double[] random) {
 
-                final AggregatorFunction<Double> tmpAggregator = Aggregator.SUM.getFunction(PrimitiveAggregator.getSet());
-                tmpRealisation.visitAll(tmpAggregator);
-                tmpRealisationValues.set(r, s, tmpAggregator.doubleValue());
+        final int tmpProcDim = mySize;
+        final double[] tmpCholesky = myCholesky;
+
+        System.arraycopy(myInitialValues, 0, assetValues, 0, tmpProcDim);
+
+        double tmpPortfolioValue = 0.0;
+
+        for (int s = 0; s < numberOfSteps; s++) {
+
+            if ((interval > 0) && (s != 0) && ((s % interval) == 0)) {
+                for (int p = 0; p < tmpProcDim; p++) {
+                    assetValues[p] = tmpPortfolioValue * weights[p];
+                }
             }
 
-            myProcess.setValues(tmpInitialValues);
-        }
+            for (int p = 0; p < tmpProcDim; p++) {
+                random[p] = gaussian.next();
+            }
 
-        final AggregatorFunction<Double> tmpAggregator = Aggregator.SUM.getFunction(PrimitiveAggregator.getSet());
-        for (int i = 0; i < tmpInitialValues.count(); i++) {
-            tmpAggregator.invoke(tmpInitialValues.doubleValue(i));
-        }
+            if (tmpCholesky != null) {
+                // random = L * random in place, bottom up since row i only uses the first i+1 elements
+                for (int i = tmpProcDim - 1; i >= 0; i--) {
+                    final int tmpRow = i * tmpProcDim;
+                    double tmpSum = 0.0;
+                    for (int j = 0; j <= i; j++) {
+                        tmpSum += tmpCholesky[tmpRow + j] * random[j];
+                    }
+                    random[i] = tmpSum;
+                }
+            }
 
-        return new RandomProcess.SimulationResults(tmpAggregator.doubleValue(), tmpRealisationValues);
+            tmpPortfolioValue = 0.0;
+            for (int p = 0; p < tmpProcDim; p++) {
+                assetValues[p] *= Math.exp(location[p] + (scale[p] * random[p]));
+                tmpPortfolioValue += assetValues[p];
+            }
+
+            results[s][realisation] = tmpPortfolioValue;
+        }
     }
 }
@@ -65,6 +65,14 @@ public interface Cholesky<N extends Number> extends LDU<N>, MatrixDecomposition.
         }
     };
 
+    /**
+     * Single precision factors, in half the memory of those of {@link #PRIMITIVE}, with solutions refined to
+     * double precision accuracy. The refinement needs a double precision copy of the decomposed matrix, that
+     * is kept until the next decomposition. The same goes for {@link LU#PRIMITIVE_32} and
+     * {@link QR#PRIMITIVE_32}.
+     */
+    public static final Factory<Double> PRIMITIVE_32 = typical -> new Primitive32Cholesky();
+
     @SuppressWarnings("unchecked")
     public static <N extends Number> Cholesky<N> make(final Access2D<N> typical) {
 
@@ -27,6 +27,7 @@ import static org.algo.function.PrimitiveFunction.*;
 import java.math.BigDecimal;
 
 import org.algo.RecoverableCondition;
+import org.algo.access.Access1D;
 import org.algo.access.Access2D;
 import org.algo.access.Structure2D;
 import org.algo.access.Access2D.Collectable;
@@ -40,6 +41,7 @@ import org.algo.matrix.store.ComplexDenseStore;
 import org.algo.matrix.store.MatrixStore;
 import org.algo.matrix.store.PhysicalStore;
 import org.algo.matrix.store.PrimitiveDenseStore;
+import org.algo.matrix.store.operation.BlockCholesky;
 import org.algo.scalar.ComplexNumber;
 
 abstract class CholeskyDecomposition<N extends Number> extends InPlaceDecomposition<N> implements Cholesky<N> {
@@ -60,12 +62,46 @@ abstract class CholeskyDecomposition<N extends Number> extends InPlaceDecomposit
 
     }
 
-    static final class Primitive extends CholeskyDecomposition<Double> {
+    static final class Primitive extends CholeskyDecomposition<Double> implements MatrixDecomposition.Updatable<Double> {
 
         Primitive() {
             super(PrimitiveDenseStore.FACTORY);
         }
 
+        public boolean append(final Access1D<?> column) {
+
+            final DecompositionStore<Double> tmpFactor = this.modifiable();
+            final int tmpDim = this.getRowDim() + 1;
+
+            final DecompositionStore<Double> tmpAppended = this.allocate(tmpDim, tmpDim);
+            final boolean retVal = HermitianUpdate.appendCholesky(tmpFactor, column, tmpAppended);
+            if (retVal) {
+                this.setInPlace(tmpAppended);
+            }
+
+            return this.modified(retVal);
+        }
+
+        public boolean delete(final int index) {
+
+            final DecompositionStore<Double> tmpFactor = this.modifiable();
+            final int tmpDim = this.getRowDim() - 1;
+
+            final DecompositionStore<Double> tmpDeleted = this.allocate(tmpDim, tmpDim);
+            HermitianUpdate.deleteCholesky(tmpFactor, index, tmpDeleted);
+            this.setInPlace(tmpDeleted);
+
+            return this.modified(true);
+        }
+
+        public boolean downdate(final Access2D<?> vectors) {
+            return this.modified(HermitianUpdate.updateCholesky(this.modifiable(), vectors, true));
+        }
+
+        public boolean update(final Access2D<?> vectors) {
+            return this.modified(HermitianUpdate.updateCholesky(this.modifiable(), vectors, false));
+        }
+
     }
 
     private boolean mySPD = false;
@@ -245,6 +281,10 @@ abstract class CholeskyDecomposition<N extends Number> extends InPlaceDecomposit
             tmpPositiveDefinite &= MatrixUtils.isHermitian(tmpInPlace);
         }
 
+        if (tmpPositiveDefinite && (tmpInPlace instanceof PrimitiveDenseStore) && (tmpMinDim > (2 * BlockCholesky.THRESHOLD))) {
+            return this.computed(mySPD = this.compute(((PrimitiveDenseStore) tmpInPlace).data, tmpMinDim));
+        }
+
         final UnaryFunction<N> tmpSqrtFunc = this.function().sqrt();
 
         // Main loop - along the diagonal
@@ -274,6 +314,30 @@ abstract class CholeskyDecomposition<N extends Number> extends InPlaceDecomposit
         return this.computed(mySPD = tmpPositiveDefinite);
     }
 
+    /**
+     * The blocked factorisation of large primitive matrices, with the same record of the pivots as the
+     * column by column main loop.
+     */
+    private boolean compute(final double[] data, final int dim) {
+
+        final int tmpFactorised = BlockCholesky.invoke(data, dim);
+
+        for (int ij = 0; ij < tmpFactorised; ij++) {
+            final double tmpVal = data[ij + (ij * dim)];
+            myMaxDiag = MAX.invoke(myMaxDiag, tmpVal * tmpVal);
+            myMinDiag = MIN.invoke(myMinDiag, tmpVal * tmpVal);
+        }
+
+        if (tmpFactorised < dim) {
+            final double tmpVal = data[tmpFactorised + (tmpFactorised * dim)];
+            myMaxDiag = MAX.invoke(myMaxDiag, tmpVal);
+            myMinDiag = MIN.invoke(myMinDiag, tmpVal);
+            return false;
+        } else {
+            return true;
+        }
+    }
+
     public int getRank() {
 
         final double tolerance = SQRT.invoke(this.getAlgorithmEpsilon());
@@ -297,4 +361,25 @@ abstract class CholeskyDecomposition<N extends Number> extends InPlaceDecomposit
         return myMaxDiag * TEN * this.getDimensionalEpsilon();
     }
 
+    /**
+     * After the factor has been modified, or replaced, the same record of the pivots as when it's computed.
+     */
+    final boolean modified(final boolean positiveDefinite) {
+
+        myMaxDiag = ZERO;
+        myMinDiag = POSITIVE_INFINITY;
+
+        if (positiveDefinite) {
+            final DecompositionStore<N> tmpInPlace = this.getInPlace();
+            final int tmpMinDim = this.getMinDim();
+            for (int ij = 0; ij < tmpMinDim; ij++) {
+                final double tmpVal = tmpInPlace.doubleValue(ij, ij);
+                myMaxDiag = MAX.invoke(myMaxDiag, tmpVal * tmpVal);
+                myMinDiag = MIN.invoke(myMinDiag, tmpVal * tmpVal);
+            }
+        }
+
+        return this.computed(mySPD = positiveDefinite);
+    }
+
 }
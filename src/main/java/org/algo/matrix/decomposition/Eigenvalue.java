@@ -32,6 +32,7 @@ import org.algo.array.Array1D;
 import org.algo.array.DenseArray;
 import org.algo.matrix.MatrixUtils;
 import org.algo.matrix.store.ComplexDenseStore;
+import org.algo.matrix.store.ComplexSplitStore;
 import org.algo.matrix.store.MatrixStore;
 import org.algo.scalar.ComplexNumber;
 import org.algo.type.context.NumberContext;
@@ -318,16 +319,33 @@ public interface Eigenvalue<N extends Number>
     }
 
     /**
+     * The columns are those of {@link #copyEigenvector(int, Array1D)}, written as real and imaginary parts
+     * to a {@link ComplexSplitStore} without creating {@link ComplexNumber} instances.
+     *
      * @return A complex valued alternative to {@link #getV()}.
      */
     default MatrixStore<ComplexNumber> getEigenvectors() {
 
-        final long tmpDimension = this.getV().countColumns();
+        final MatrixStore<N> tmpV = this.getV();
+        final MatrixStore<N> tmpD = this.getD();
+        final int tmpDimension = (int) tmpD.countColumns();
 
-        final ComplexDenseStore retVal = ComplexDenseStore.FACTORY.makeZero(tmpDimension, tmpDimension);
+        final ComplexSplitStore retVal = ComplexSplitStore.FACTORY.makeZero(tmpDimension, tmpDimension);
 
         for (int j = 0; j < tmpDimension; j++) {
-            this.copyEigenvector(j, retVal.sliceColumn(0, j));
+            if ((j < (tmpDimension - 1)) && (tmpD.doubleValue(j + 1, j) != 0.0)) {
+                for (int i = 0; i < tmpDimension; i++) {
+                    retVal.set(i, j, tmpV.doubleValue(i, j), tmpV.doubleValue(i, j + 1));
+                }
+            } else if ((j > 0) && (tmpD.doubleValue(j - 1, j) != 0.0)) {
+                for (int i = 0; i < tmpDimension; i++) {
+                    retVal.set(i, j, tmpV.doubleValue(i, j - 1), -tmpV.doubleValue(i, j));
+                }
+            } else {
+                for (int i = 0; i < tmpDimension; i++) {
+                    retVal.set(i, j, tmpV.doubleValue(i, j), 0.0);
+                }
+            }
         }
 
         return retVal;
@@ -3,8 +3,6 @@ package org.algo.matrix.decomposition;
 import static org.algo.constant.PrimitiveMath.*;
 import static org.algo.function.PrimitiveFunction.*;
 
-import org.algo.scalar.ComplexNumber;
-
 public abstract class EvD1D {
 
     /**
@@ -274,6 +272,7 @@ public abstract class EvD1D {
         if (allTheWay && (Double.compare(tmpNorm1, ZERO) != 0)) {
             final int tmpDiagDim1 = (int) SQRT.invoke(mtrxH.length);
             final int tmpDiagDimMinusOne1 = tmpDiagDim1 - 1;
+            final double[] tmpCdiv = new double[2];
 
             // BasicLogger.debug("r={}, s={}, z={}", r, s, z);
 
@@ -346,14 +345,10 @@ public abstract class EvD1D {
                         mtrxH[(ij - 1) + (tmpDiagDim1 * ij)] = -(mtrxH[ij + (tmpDiagDim1 * ij)] - p1) / mtrxH[ij + (tmpDiagDim1 * (ij - 1))];
                     } else {
 
-                        final ComplexNumber tmpX = ComplexNumber.of(ZERO, (-mtrxH[(ij - 1) + (tmpDiagDim1 * ij)]));
-                        final double imaginary = q1;
-                        final ComplexNumber tmpY = ComplexNumber.of((mtrxH[(ij - 1) + (tmpDiagDim1 * (ij - 1))] - p1), imaginary);
-
-                        final ComplexNumber tmpZ = tmpX.divide(tmpY);
+                        EvD2D.cdiv(ZERO, -mtrxH[(ij - 1) + (tmpDiagDim1 * ij)], mtrxH[(ij - 1) + (tmpDiagDim1 * (ij - 1))] - p1, q1, tmpCdiv);
 
-                        mtrxH[(ij - 1) + (tmpDiagDim1 * (ij - 1))] = tmpZ.doubleValue();
-                        mtrxH[(ij - 1) + (tmpDiagDim1 * ij)] = tmpZ.i;
+                        mtrxH[(ij - 1) + (tmpDiagDim1 * (ij - 1))] = tmpCdiv[0];
+                        mtrxH[(ij - 1) + (tmpDiagDim1 * ij)] = tmpCdiv[1];
                     }
                     mtrxH[ij + (tmpDiagDim1 * (ij - 1))] = ZERO;
                     mtrxH[ij + (tmpDiagDim1 * ij)] = 1.0;
@@ -374,15 +369,10 @@ public abstract class EvD1D {
                         } else {
                             l = i;
                             if (e[i] == 0) {
-                                final ComplexNumber tmpX = ComplexNumber.of((-ra), (-sa));
-                                final double real = w1;
-                                final double imaginary = q1;
-                                final ComplexNumber tmpY = ComplexNumber.of(real, imaginary);
-
-                                final ComplexNumber tmpZ = tmpX.divide(tmpY);
+                                EvD2D.cdiv(-ra, -sa, w1, q1, tmpCdiv);
 
-                                mtrxH[i + (tmpDiagDim1 * (ij - 1))] = tmpZ.doubleValue();
-                                mtrxH[i + (tmpDiagDim1 * ij)] = tmpZ.i;
+                                mtrxH[i + (tmpDiagDim1 * (ij - 1))] = tmpCdiv[0];
+                                mtrxH[i + (tmpDiagDim1 * ij)] = tmpCdiv[1];
                             } else {
 
                                 // Solve complex equations
@@ -395,15 +385,10 @@ public abstract class EvD1D {
                                     vr = MACHINE_EPSILON * tmpNorm1 * (ABS.invoke(w1) + ABS.invoke(q1) + ABS.invoke(x1) + ABS.invoke(y1) + ABS.invoke(z));
                                 }
 
-                                final ComplexNumber tmpX = ComplexNumber.of((((x1 * r) - (z * ra)) + (q1 * sa)), ((x1 * s) - (z * sa) - (q1 * ra)));
-                                final double real = vr;
-                                final double imaginary = vi;
-                                final ComplexNumber tmpY = ComplexNumber.of(real, imaginary);
+                                EvD2D.cdiv(((x1 * r) - (z * ra)) + (q1 * sa), (x1 * s) - (z * sa) - (q1 * ra), vr, vi, tmpCdiv);
 
-                                final ComplexNumber tmpZ = tmpX.divide(tmpY);
-
-                                mtrxH[i + (tmpDiagDim1 * (ij - 1))] = tmpZ.doubleValue();
-                                mtrxH[i + (tmpDiagDim1 * ij)] = tmpZ.i;
+                                mtrxH[i + (tmpDiagDim1 * (ij - 1))] = tmpCdiv[0];
+                                mtrxH[i + (tmpDiagDim1 * ij)] = tmpCdiv[1];
 
                                 if (ABS.invoke(x1) > (ABS.invoke(z) + ABS.invoke(q1))) {
                                     mtrxH[(i + 1) + (tmpDiagDim1 * (ij - 1))] = ((-ra - (w1 * mtrxH[i + (tmpDiagDim1 * (ij - 1))]))
@@ -412,16 +397,10 @@ public abstract class EvD1D {
                                             + (tmpDiagDim1 * ij)] = (-sa - (w1 * mtrxH[i + (tmpDiagDim1 * ij)]) - (q1 * mtrxH[i + (tmpDiagDim1 * (ij - 1))]))
                                                     / x1;
                                 } else {
-                                    final ComplexNumber tmpX1 = ComplexNumber.of((-r - (y1 * mtrxH[i + (tmpDiagDim1 * (ij - 1))])),
-                                            (-s - (y1 * mtrxH[i + (tmpDiagDim1 * ij)])));
-                                    final double real1 = z;
-                                    final double imaginary1 = q1;
-                                    final ComplexNumber tmpY1 = ComplexNumber.of(real1, imaginary1);
-
-                                    final ComplexNumber tmpZ1 = tmpX1.divide(tmpY1);
+                                    EvD2D.cdiv(-r - (y1 * mtrxH[i + (tmpDiagDim1 * (ij - 1))]), -s - (y1 * mtrxH[i + (tmpDiagDim1 * ij)]), z, q1, tmpCdiv);
 
-                                    mtrxH[(i + 1) + (tmpDiagDim1 * (ij - 1))] = tmpZ1.doubleValue();
-                                    mtrxH[(i + 1) + (tmpDiagDim1 * ij)] = tmpZ1.i;
+                                    mtrxH[(i + 1) + (tmpDiagDim1 * (ij - 1))] = tmpCdiv[0];
+                                    mtrxH[(i + 1) + (tmpDiagDim1 * ij)] = tmpCdiv[1];
                                 }
                             }
 
@@ -567,9 +567,9 @@ public abstract class EvD2D {
     }
 
     /**
-     * Complex scalar division.
+     * Complex scalar division, (xr + i*xi) / (yr + i*yi) written to cdiv[0] and cdiv[1].
      */
-    private static void cdiv(final double xr, final double xi, final double yr, final double yi, final double[] cdiv) {
+    static void cdiv(final double xr, final double xi, final double yr, final double yi, final double[] cdiv) {
         double r, d;
         if (ABS.invoke(yr) > ABS.invoke(yi)) {
             r = yi / yr;
@@ -0,0 +1,292 @@
+/*
+ * Copyright 1997-2017 Optimatika (www.optimatika.se)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.algo.matrix.decomposition;
+
+import static org.algo.constant.PrimitiveMath.*;
+
+import org.algo.access.Access1D;
+import org.algo.access.Access2D;
+import org.algo.matrix.store.PhysicalStore;
+
+/**
+ * Modifications of the factors of [L][L]<sup>T</sup> (Cholesky) and [L][D][L]<sup>T</sup> (LDL), in
+ * O(n<sup>2</sup>) operations, to be the factors of a modified matrix. The factors are the lower triangles of
+ * square stores, with [D] on the diagonal of the LDL factor. Upper triangles are not referenced, and are
+ * zero in the resized factors.
+ * <p>
+ * The rank-one updates are the classic ones: a sequence of (hyperbolic, for a downdate) rotations for
+ * Cholesky and method C1 of Gill, Golub, Murray &amp; Saunders for LDL.
+ */
+abstract class HermitianUpdate {
+
+    /**
+     * @param factor The n x n Cholesky factor
+     * @param column n+1 elements, the new diagonal element last
+     * @param destination (n+1) x (n+1)
+     * @return false if the extended matrix is not positive definite
+     */
+    static boolean appendCholesky(final Access2D<?> factor, final Access1D<?> column, final PhysicalStore<Double> destination) {
+
+        final int tmpDim = (int) factor.countRows();
+
+        final double[] tmpRow = new double[tmpDim];
+        for (int i = 0; i < tmpDim; i++) {
+            tmpRow[i] = column.doubleValue(i);
+        }
+        HermitianUpdate.substitute(factor, tmpRow, false);
+
+        double tmpPivot = column.doubleValue(tmpDim);
+        for (int j = 0; j < tmpDim; j++) {
+            tmpPivot -= tmpRow[j] * tmpRow[j];
+        }
+
+        if (tmpPivot > ZERO) {
+            HermitianUpdate.copy(factor, -1, destination);
+            HermitianUpdate.append(tmpRow, Math.sqrt(tmpPivot), destination);
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * @param factor The n x n LDL factor
+     * @param column n+1 elements, the new diagonal element last
+     * @param order The row of [A] for each row of the factor, the first n elements of column are read in
+     *        this order
+     * @param destination (n+1) x (n+1)
+     * @return false if the new element of [D] is zero
+     */
+    static boolean appendLDL(final Access2D<?> factor, final Access1D<?> column, final int[] order, final PhysicalStore<Double> destination) {
+
+        final int tmpDim = (int) factor.countRows();
+
+        final double[] tmpRow = new double[tmpDim];
+        for (int i = 0; i < tmpDim; i++) {
+            tmpRow[i] = column.doubleValue(order != null ? order[i] : i);
+        }
+        HermitianUpdate.substitute(factor, tmpRow, true);
+
+        double tmpPivot = column.doubleValue(tmpDim);
+        for (int j = 0; j < tmpDim; j++) {
+            final double tmpScaled = tmpRow[j] / factor.doubleValue(j, j);
+            tmpPivot -= tmpRow[j] * tmpScaled;
+            tmpRow[j] = tmpScaled;
+        }
+
+        if (tmpPivot != ZERO) {
+            HermitianUpdate.copy(factor, -1, destination);
+            HermitianUpdate.append(tmpRow, tmpPivot, destination);
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * The trailing factor absorbs the deleted column, with a rank-one update, before it's copied.
+     *
+     * @param factor The n x n Cholesky factor, modified
+     * @param index The row/column to delete
+     * @param destination (n-1) x (n-1)
+     */
+    static void deleteCholesky(final PhysicalStore<Double> factor, final int index, final PhysicalStore<Double> destination) {
+        HermitianUpdate.cholesky(factor, index + 1, HermitianUpdate.column(factor, index), false);
+        HermitianUpdate.copy(factor, index, destination);
+    }
+
+    /**
+     * @param factor The n x n LDL factor, modified
+     * @param index The row/column, of the factor, to delete
+     * @param destination (n-1) x (n-1)
+     * @return false if an element of [D] became zero
+     */
+    static boolean deleteLDL(final PhysicalStore<Double> factor, final int index, final PhysicalStore<Double> destination) {
+        final boolean retVal = HermitianUpdate.ldl(factor, index + 1, HermitianUpdate.column(factor, index), factor.doubleValue(index, index));
+        HermitianUpdate.copy(factor, index, destination);
+        return retVal;
+    }
+
+    /**
+     * [L][L]<sup>T</sup> &plusmn; [X][X]<sup>T</sup>, one rank-one update/downdate per column of [X].
+     *
+     * @return false if a downdate made the matrix not positive definite
+     */
+    static boolean updateCholesky(final PhysicalStore<Double> factor, final Access2D<?> vectors, final boolean downdate) {
+
+        final int tmpDim = (int) factor.countRows();
+        final double[] tmpVector = new double[tmpDim];
+
+        boolean retVal = true;
+        for (int c = 0; retVal && (c < vectors.countColumns()); c++) {
+            for (int i = 0; i < tmpDim; i++) {
+                tmpVector[i] = vectors.doubleValue(i, c);
+            }
+            retVal = HermitianUpdate.cholesky(factor, 0, tmpVector, downdate);
+        }
+        return retVal;
+    }
+
+    /**
+     * [L][D][L]<sup>T</sup> + weight [X][X]<sup>T</sup>, one rank-one modification per column of [X].
+     *
+     * @param order The row of [A] for each row of the factor, the rows of [X] are read in this order
+     * @return false if an element of [D] became zero
+     */
+    static boolean updateLDL(final PhysicalStore<Double> factor, final Access2D<?> vectors, final int[] order, final double weight) {
+
+        final int tmpDim = (int) factor.countRows();
+        final double[] tmpVector = new double[tmpDim];
+
+        boolean retVal = true;
+        for (int c = 0; retVal && (c < vectors.countColumns()); c++) {
+            for (int i = 0; i < tmpDim; i++) {
+                tmpVector[i] = vectors.doubleValue(order != null ? order[i] : i, c);
+            }
+            retVal = HermitianUpdate.ldl(factor, 0, tmpVector, weight);
+        }
+        return retVal;
+    }
+
+    /**
+     * Writes the new last row, and diagonal element, of a copied factor.
+     */
+    private static void append(final double[] row, final double diagonal, final PhysicalStore<Double> destination) {
+        final int tmpLast = row.length;
+        for (int j = 0; j < tmpLast; j++) {
+            destination.set(tmpLast, j, row[j]);
+        }
+        destination.set(tmpLast, tmpLast, diagonal);
+    }
+
+    /**
+     * Rank-one update, or downdate, of the Cholesky factor from row/column first. Only the elements from
+     * first of the vector are used, and they are overwritten.
+     */
+    private static boolean cholesky(final PhysicalStore<Double> factor, final int first, final double[] vector, final boolean downdate) {
+
+        final int tmpDim = vector.length;
+
+        for (int k = first; k < tmpDim; k++) {
+
+            final double tmpDiagonal = factor.doubleValue(k, k);
+            final double tmpValue = vector[k];
+
+            final double tmpSquare = downdate ? (tmpDiagonal * tmpDiagonal) - (tmpValue * tmpValue) : (tmpDiagonal * tmpDiagonal) + (tmpValue * tmpValue);
+            if (!(tmpSquare > ZERO)) {
+                return false;
+            }
+
+            final double tmpNew = Math.sqrt(tmpSquare);
+            final double tmpCos = tmpNew / tmpDiagonal;
+            final double tmpSin = tmpValue / tmpDiagonal;
+            factor.set(k, k, tmpNew);
+
+            for (int i = k + 1; i < tmpDim; i++) {
+                final double tmpElement = downdate ? (factor.doubleValue(i, k) - (tmpSin * vector[i])) / tmpCos
+                        : (factor.doubleValue(i, k) + (tmpSin * vector[i])) / tmpCos;
+                vector[i] = (tmpCos * vector[i]) - (tmpSin * tmpElement);
+                factor.set(i, k, tmpElement);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * The column of the factor below the diagonal, as a full length vector.
+     */
+    private static double[] column(final Access2D<?> factor, final int index) {
+        final int tmpDim = (int) factor.countRows();
+        final double[] retVal = new double[tmpDim];
+        for (int i = index + 1; i < tmpDim; i++) {
+            retVal[i] = factor.doubleValue(i, index);
+        }
+        return retVal;
+    }
+
+    /**
+     * Copies the lower triangle, without the row and column skip (-1 to skip nothing), to the top left
+     * corner of destination.
+     */
+    private static void copy(final Access2D<?> factor, final int skip, final PhysicalStore<Double> destination) {
+        final int tmpDim = (int) factor.countRows();
+        for (int j = 0; j < tmpDim; j++) {
+            if (j != skip) {
+                final int tmpColumn = (skip >= 0) && (j > skip) ? j - 1 : j;
+                for (int i = j; i < tmpDim; i++) {
+                    if (i != skip) {
+                        destination.set((skip >= 0) && (i > skip) ? i - 1 : i, tmpColumn, factor.doubleValue(i, j));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * [L][D][L]<sup>T</sup> + weight [x][x]<sup>T</sup> from row/column first. Only the elements from first of
+     * the vector are used, and they are overwritten.
+     */
+    private static boolean ldl(final PhysicalStore<Double> factor, final int first, final double[] vector, final double weight) {
+
+        final int tmpDim = vector.length;
+
+        double tmpWeight = weight;
+
+        for (int j = first; j < tmpDim; j++) {
+
+            final double tmpValue = vector[j];
+            final double tmpDiagonal = factor.doubleValue(j, j);
+
+            final double tmpNew = tmpDiagonal + (tmpWeight * tmpValue * tmpValue);
+            if (tmpNew == ZERO) {
+                return false;
+            }
+
+            final double tmpBeta = (tmpValue * tmpWeight) / tmpNew;
+            tmpWeight = (tmpDiagonal * tmpWeight) / tmpNew;
+            factor.set(j, j, tmpNew);
+
+            for (int i = j + 1; i < tmpDim; i++) {
+                vector[i] -= tmpValue * factor.doubleValue(i, j);
+                factor.set(i, j, factor.doubleValue(i, j) + (tmpBeta * vector[i]));
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Solves [L][x] = [b] in place, b being the first n elements of vector.
+     */
+    private static void substitute(final Access2D<?> factor, final double[] vector, final boolean unitDiagonal) {
+        final int tmpDim = vector.length;
+        for (int i = 0; i < tmpDim; i++) {
+            double tmpValue = vector[i];
+            for (int j = 0; j < i; j++) {
+                tmpValue -= factor.doubleValue(i, j) * vector[j];
+            }
+            vector[i] = unitDiagonal ? tmpValue : tmpValue / factor.doubleValue(i, i);
+        }
+    }
+
+}
@@ -71,6 +71,21 @@ abstract class InPlaceDecomposition<N extends Number> extends GenericDecompositi
         return myRowDim;
     }
 
+    /**
+     * For the {@linkplain MatrixDecomposition.Updatable} implementations: Resets the state, except for the
+     * in-place store that is returned to be modified (or replaced using {@link #setInPlace(Access2D.Collectable)}).
+     */
+    final DecompositionStore<N> modifiable() {
+
+        if (!this.isComputed()) {
+            ProgrammingError.throwForIllegalInvocation();
+        }
+
+        this.reset();
+
+        return myInPlace;
+    }
+
     final DecompositionStore<N> setInPlace(final Access2D.Collectable<N, ? super DecompositionStore<N>> matrix) {
 
         final int tmpRowDim = (int) matrix.countRows();
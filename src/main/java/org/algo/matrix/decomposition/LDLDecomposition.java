@@ -26,6 +26,7 @@ import static org.algo.constant.PrimitiveMath.*;
 import java.math.BigDecimal;
 
 import org.algo.RecoverableCondition;
+import org.algo.access.Access1D;
 import org.algo.access.Access2D;
 import org.algo.access.Structure2D;
 import org.algo.access.Access2D.Collectable;
@@ -60,12 +61,50 @@ abstract class LDLDecomposition<N extends Number> extends InPlaceDecomposition<N
 
     }
 
-    static final class Primitive extends LDLDecomposition<Double> {
+    static final class Primitive extends LDLDecomposition<Double> implements MatrixDecomposition.Updatable<Double> {
 
         Primitive() {
             super(PrimitiveDenseStore.FACTORY);
         }
 
+        public boolean append(final Access1D<?> column) {
+
+            final DecompositionStore<Double> tmpFactor = this.modifiable();
+            final Pivot tmpPivot = this.getPivot();
+            final int tmpDim = this.getRowDim() + 1;
+
+            final DecompositionStore<Double> tmpAppended = this.allocate(tmpDim, tmpDim);
+            final boolean retVal = HermitianUpdate.appendLDL(tmpFactor, column, tmpPivot.getOrder(), tmpAppended);
+            if (retVal) {
+                this.setInPlace(tmpAppended);
+            }
+
+            return this.modified(retVal, retVal ? tmpPivot.append() : tmpPivot);
+        }
+
+        public boolean delete(final int index) {
+
+            final DecompositionStore<Double> tmpFactor = this.modifiable();
+            final Pivot tmpPivot = this.getPivot();
+            final int tmpDim = this.getRowDim() - 1;
+
+            final DecompositionStore<Double> tmpDeleted = this.allocate(tmpDim, tmpDim);
+            final boolean retVal = HermitianUpdate.deleteLDL(tmpFactor, tmpPivot.indexOf(index), tmpDeleted);
+            this.setInPlace(tmpDeleted);
+
+            return this.modified(retVal, tmpPivot.delete(index));
+        }
+
+        public boolean downdate(final Access2D<?> vectors) {
+            final Pivot tmpPivot = this.getPivot();
+            return this.modified(HermitianUpdate.updateLDL(this.modifiable(), vectors, tmpPivot.getOrder(), NEG), tmpPivot);
+        }
+
+        public boolean update(final Access2D<?> vectors) {
+            final Pivot tmpPivot = this.getPivot();
+            return this.modified(HermitianUpdate.updateLDL(this.modifiable(), vectors, tmpPivot.getOrder(), ONE), tmpPivot);
+        }
+
     }
 
     private Pivot myPivot;
@@ -171,7 +210,7 @@ abstract class LDLDecomposition<N extends Number> extends InPlaceDecomposition<N
 
         preallocated.substituteBackwards(tmpBody, true, true, false);
 
-        return preallocated.logical().row(tmpOrder).get();
+        return preallocated.logical().row(myPivot.getInverseOrder()).get();
     }
 
     public MatrixStore<N> getL() {
@@ -226,7 +265,7 @@ abstract class LDLDecomposition<N extends Number> extends InPlaceDecomposition<N
 
         preallocated.substituteBackwards(tmpBody, true, true, false);
 
-        return preallocated.logical().row(tmpOrder).get();
+        return preallocated.logical().row(myPivot.getInverseOrder()).get();
     }
 
     public final MatrixStore<N> invert(final Access2D<?> original) throws RecoverableCondition {
@@ -255,6 +294,18 @@ abstract class LDLDecomposition<N extends Number> extends InPlaceDecomposition<N
         return true;
     }
 
+    final Pivot getPivot() {
+        return myPivot;
+    }
+
+    /**
+     * After the factor has been modified, or replaced.
+     */
+    final boolean modified(final boolean computed, final Pivot pivot) {
+        myPivot = pivot;
+        return this.computed(computed);
+    }
+
     @Override
     protected boolean checkSolvability() {
 
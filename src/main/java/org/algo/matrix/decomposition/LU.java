@@ -70,6 +70,13 @@ public interface LU<N extends Number> extends LDU<N> {
         }
     };
 
+    /**
+     * Single precision factors, with solutions refined to double precision accuracy.
+     *
+     * @see Cholesky#PRIMITIVE_32
+     */
+    public static final Factory<Double> PRIMITIVE_32 = typical -> new Primitive32LU();
+
     @SuppressWarnings("unchecked")
     public static <N extends Number> LU<N> make(final Access2D<N> typical) {
 
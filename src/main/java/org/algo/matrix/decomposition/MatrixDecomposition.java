@@ -21,6 +21,7 @@
  */
 package org.algo.matrix.decomposition;
 
+import org.algo.access.Access1D;
 import org.algo.access.Access2D;
 import org.algo.access.Structure2D;
 import org.algo.access.Access2D.Collectable;
@@ -255,6 +256,51 @@ public interface MatrixDecomposition<N extends Number> {
 
     }
 
+    /**
+     * Hermitian decompositions that can be modified, in place and in O(n<sup>2</sup>) operations, to be the
+     * decomposition of a slightly modified matrix - rather than recomputed from scratch in O(n<sup>3</sup>).
+     * The decomposition must have been computed before it can be modified.
+     * <p>
+     * If a modification fails, typically because a Cholesky decomposition would no longer be positive
+     * definite, the decomposition is not usable and has to be recomputed from the modified matrix.
+     */
+    interface Updatable<N extends Number> extends Hermitian<N> {
+
+        /**
+         * Appends a row, and the column with the same index, to the decomposed matrix.
+         *
+         * @param column The new last column of [A], the new diagonal element last. The new last row is its
+         *        (conjugate) transpose.
+         * @return true if the modification succeeded; false if not
+         */
+        boolean append(Access1D<?> column);
+
+        /**
+         * Removes a row, and the column with the same index, from the decomposed matrix.
+         *
+         * @param index The row/column to delete
+         * @return true if the modification succeeded; false if not
+         */
+        boolean delete(int index);
+
+        /**
+         * [A] - [X][X]<sup>H</sup>, a rank-k downdate where k is the number of columns of [X].
+         *
+         * @param vectors [X] with as many rows as [A]
+         * @return true if the modification succeeded; false if not
+         */
+        boolean downdate(Access2D<?> vectors);
+
+        /**
+         * [A] + [X][X]<sup>H</sup>, a rank-k update where k is the number of columns of [X].
+         *
+         * @param vectors [X] with as many rows as [A]
+         * @return true if the modification succeeded; false if not
+         */
+        boolean update(Access2D<?> vectors);
+
+    }
+
     /**
      * Eigenvalue and Singular Value decompositions can calculate the "values" only, and the resulting
      * matrices and arrays can have their elements sorted (descending) or not.
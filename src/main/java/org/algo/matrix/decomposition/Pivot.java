@@ -21,6 +21,8 @@
  */
 package org.algo.matrix.decomposition;
 
+import java.util.Arrays;
+
 import org.algo.array.BasicArray;
 
 final class Pivot {
@@ -37,6 +39,42 @@ final class Pivot {
         mySign = 1;
     }
 
+    /**
+     * The order of the rows may come from modifying a previous pivot, and the sign is then derived from the
+     * cycles of the permutation.
+     */
+    private Pivot(final int[] order) {
+
+        super();
+
+        myOrder = order;
+        mySign = 1;
+
+        final boolean[] tmpVisited = new boolean[order.length];
+        for (int i = 0; i < order.length; i++) {
+            myModified |= order[i] != i;
+            if (!tmpVisited[i]) {
+                int tmpLength = 0;
+                for (int j = i; !tmpVisited[j]; j = order[j]) {
+                    tmpVisited[j] = true;
+                    tmpLength++;
+                }
+                if ((tmpLength % 2) == 0) {
+                    mySign = -mySign;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return A pivot with one more row, last and not moved
+     */
+    public Pivot append() {
+        final int[] tmpOrder = Arrays.copyOf(myOrder, myOrder.length + 1);
+        tmpOrder[myOrder.length] = myOrder.length;
+        return new Pivot(tmpOrder);
+    }
+
     public void change(final int row1, final int row2) {
 
         if (row1 != row2) {
@@ -54,6 +92,32 @@ final class Pivot {
         }
     }
 
+    /**
+     * @param row A row of the original (unpivoted) matrix
+     * @return A pivot without that row, the rows after it renumbered
+     */
+    public Pivot delete(final int row) {
+        final int[] tmpOrder = new int[myOrder.length - 1];
+        int tmpIndex = 0;
+        for (final int tmpRow : myOrder) {
+            if (tmpRow != row) {
+                tmpOrder[tmpIndex++] = tmpRow > row ? tmpRow - 1 : tmpRow;
+            }
+        }
+        return new Pivot(tmpOrder);
+    }
+
+    /**
+     * @return The pivoted row of each original row
+     */
+    public int[] getInverseOrder() {
+        final int[] retVal = new int[myOrder.length];
+        for (int i = 0; i < myOrder.length; i++) {
+            retVal[myOrder[i]] = i;
+        }
+        return retVal;
+    }
+
     public int[] getOrder() {
         return myOrder;
     }
@@ -62,6 +126,19 @@ final class Pivot {
         return myModified;
     }
 
+    /**
+     * @param row A row of the original (unpivoted) matrix
+     * @return Where that row is in the pivoted order
+     */
+    public int indexOf(final int row) {
+        for (int i = 0; i < myOrder.length; i++) {
+            if (myOrder[i] == row) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     public int signum() {
         return mySign;
     }
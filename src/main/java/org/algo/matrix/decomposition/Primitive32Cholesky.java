@@ -0,0 +1,250 @@
+/*
+ * Copyright 1997-2017 Optimatika (www.optimatika.se)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.algo.matrix.decomposition;
+
+import static org.algo.constant.PrimitiveMath.*;
+
+import org.algo.RecoverableCondition;
+import org.algo.access.Access2D;
+import org.algo.access.Access2D.Collectable;
+import org.algo.matrix.MatrixUtils;
+import org.algo.matrix.store.MatrixStore;
+import org.algo.matrix.store.PhysicalStore;
+
+/**
+ * Cholesky decomposition in single precision, solutions refined to double precision accuracy. See
+ * {@link Primitive32Decomposition}.
+ */
+final class Primitive32Cholesky extends Primitive32Decomposition implements Cholesky<Double> {
+
+    private double myMaxDiag = ONE;
+    private double myMinDiag = ZERO;
+    private boolean mySPD = false;
+
+    /**
+     * Not recommended to use this constructor directly. Consider using the static factory method
+     * {@linkplain org.algo.matrix.decomposition.Cholesky#PRIMITIVE_32} instead.
+     */
+    Primitive32Cholesky() {
+        super();
+    }
+
+    public Double calculateDeterminant(final Access2D<?> matrix) {
+
+        this.doDecompose(this.reset(matrix));
+
+        return this.getDeterminant();
+    }
+
+    @Override
+    public boolean checkAndCompute(final MatrixStore<Double> matrix) {
+
+        mySPD = MatrixUtils.isHermitian(matrix);
+
+        if (mySPD) {
+            return this.doDecompose(this.reset(matrix));
+        } else {
+            return this.computed(false);
+        }
+    }
+
+    public boolean decompose(final Access2D.Collectable<Double, ? super PhysicalStore<Double>> matrix) {
+        return this.doDecompose(this.reset(this.collect(matrix)));
+    }
+
+    public Double getDeterminant() {
+
+        final float[] tmpData = this.getInPlaceData();
+        final int tmpDim = this.getRowDim();
+
+        double retVal = ONE;
+        double tmpVal;
+        for (int ij = 0; ij < tmpDim; ij++) {
+            tmpVal = tmpData[ij + (ij * tmpDim)];
+            retVal *= tmpVal * tmpVal;
+        }
+
+        return retVal;
+    }
+
+    public MatrixStore<Double> getInverse() {
+        final int tmpRowDim = this.getRowDim();
+        return this.getInverse(this.allocate(tmpRowDim, tmpRowDim));
+    }
+
+    public MatrixStore<Double> getInverse(final PhysicalStore<Double> preallocated) {
+        return this.refine(MatrixStore.PRIMITIVE.makeIdentity(this.getRowDim()).get(), preallocated);
+    }
+
+    public MatrixStore<Double> getL() {
+        return this.getInPlaceStore().logical().triangular(false, false).get();
+    }
+
+    public int getRank() {
+
+        final double tmpTolerance = Math.sqrt(this.getAlgorithmEpsilon());
+        int retVal = 0;
+
+        final float[] tmpData = this.getInPlaceData();
+        final int tmpDim = this.getMinDim();
+        for (int ij = 0; ij < tmpDim; ij++) {
+            if (tmpData[ij + (ij * tmpDim)] > tmpTolerance) {
+                retVal++;
+            }
+        }
+
+        return retVal;
+    }
+
+    public MatrixStore<Double> getSolution(final Collectable<Double, ? super PhysicalStore<Double>> rhs) {
+        return this.getSolution(rhs, this.allocate(this.getColDim(), rhs.countColumns()));
+    }
+
+    @Override
+    public MatrixStore<Double> getSolution(final Collectable<Double, ? super PhysicalStore<Double>> rhs, final PhysicalStore<Double> preallocated) {
+        return this.refine(this.collect(rhs), preallocated);
+    }
+
+    @Override
+    public MatrixStore<Double> invert(final Access2D<?> original, final PhysicalStore<Double> preallocated) throws RecoverableCondition {
+
+        this.doDecompose(this.reset(original));
+
+        if (this.isSolvable()) {
+            return this.getInverse(preallocated);
+        } else {
+            throw RecoverableCondition.newMatrixNotInvertible();
+        }
+    }
+
+    public boolean isFullRank() {
+        return this.isSolvable();
+    }
+
+    public boolean isSPD() {
+        return mySPD;
+    }
+
+    @Override
+    public MatrixStore<Double> solve(final Access2D<?> body, final Access2D<?> rhs, final PhysicalStore<Double> preallocated) throws RecoverableCondition {
+
+        this.doDecompose(this.reset(body));
+
+        if (this.isSolvable()) {
+            return this.refine(rhs, preallocated);
+        } else {
+            throw RecoverableCondition.newEquationSystemNotSolvable();
+        }
+    }
+
+    /**
+     * Forward substitution with [L], then backward with [L]<sup>T</sup>.
+     */
+    @Override
+    void solve(final float[] column) {
+
+        final float[] tmpData = this.getInPlaceData();
+        final int tmpDim = this.getRowDim();
+
+        for (int j = 0; j < tmpDim; j++) {
+            final int tmpBase = j * tmpDim;
+            final float tmpValue = column[j] /= tmpData[tmpBase + j];
+            for (int i = j + 1; i < tmpDim; i++) {
+                column[i] -= tmpData[tmpBase + i] * tmpValue;
+            }
+        }
+
+        for (int j = tmpDim - 1; j >= 0; j--) {
+            final int tmpBase = j * tmpDim;
+            float tmpValue = column[j];
+            for (int i = j + 1; i < tmpDim; i++) {
+                tmpValue -= tmpData[tmpBase + i] * column[i];
+            }
+            column[j] = tmpValue / tmpData[tmpBase + j];
+        }
+    }
+
+    @Override
+    protected boolean checkSolvability() {
+        return mySPD && (myMinDiag > this.getAlgorithmEpsilon());
+    }
+
+    double getAlgorithmEpsilon() {
+        return myMaxDiag * TEN * this.getDimensionalEpsilon();
+    }
+
+    /**
+     * Left-looking, column by column: each column of [L] is updated with all previous columns and then
+     * scaled. Only the lower triangle is read or written.
+     */
+    private boolean doDecompose(final float[] data) {
+
+        final int tmpDim = this.getRowDim();
+        mySPD = (this.getColDim() == tmpDim);
+        myMaxDiag = ZERO;
+        myMinDiag = POSITIVE_INFINITY;
+
+        for (int j = 0; mySPD && (j < tmpDim); j++) {
+            final int tmpBaseJ = j * tmpDim;
+
+            // Four previous columns at the time, to read and write column j a quarter as many times
+            int k = 0;
+            for (; (k + 3) < j; k += 4) {
+                final int tmpBase0 = k * tmpDim;
+                final int tmpBase1 = tmpBase0 + tmpDim;
+                final int tmpBase2 = tmpBase1 + tmpDim;
+                final int tmpBase3 = tmpBase2 + tmpDim;
+                final float tmpValue0 = data[tmpBase0 + j];
+                final float tmpValue1 = data[tmpBase1 + j];
+                final float tmpValue2 = data[tmpBase2 + j];
+                final float tmpValue3 = data[tmpBase3 + j];
+                for (int i = j; i < tmpDim; i++) {
+                    data[tmpBaseJ + i] -= (data[tmpBase0 + i] * tmpValue0) + (data[tmpBase1 + i] * tmpValue1) + (data[tmpBase2 + i] * tmpValue2)
+                            + (data[tmpBase3 + i] * tmpValue3);
+                }
+            }
+            for (; k < j; k++) {
+                final int tmpBaseK = k * tmpDim;
+                final float tmpValue = data[tmpBaseK + j];
+                if (tmpValue != 0.0F) {
+                    for (int i = j; i < tmpDim; i++) {
+                        data[tmpBaseJ + i] -= data[tmpBaseK + i] * tmpValue;
+                    }
+                }
+            }
+
+            final double tmpDiag = Math.max(data[tmpBaseJ + j], ZERO);
+            myMaxDiag = Math.max(myMaxDiag, tmpDiag);
+            myMinDiag = Math.min(myMinDiag, tmpDiag);
+            final float tmpSqrt = (float) Math.sqrt(tmpDiag);
+            data[tmpBaseJ + j] = tmpSqrt;
+            mySPD = tmpSqrt > 0.0F;
+
+            for (int i = j + 1; i < tmpDim; i++) {
+                data[tmpBaseJ + i] /= tmpSqrt;
+            }
+        }
+
+        return this.computed(true);
+    }
+
+}
@@ -0,0 +1,385 @@
+/*
+ * Copyright 1997-2017 Optimatika (www.optimatika.se)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.algo.matrix.decomposition;
+
+import static org.algo.constant.PrimitiveMath.*;
+
+import org.algo.access.Access2D;
+import org.algo.access.Structure2D;
+import org.algo.matrix.store.MatrixStore;
+import org.algo.matrix.store.PhysicalStore;
+import org.algo.matrix.store.Primitive32Store;
+import org.algo.matrix.store.PrimitiveDenseStore;
+
+/**
+ * Similar to RawDecomposition but the factors are float, in a {@link Primitive32Store}, column by column.
+ * <p>
+ * Solutions are mixed precision: the equation system is solved with the single precision factors and then
+ * refined, with residuals calculated in double precision against the original (double) matrix, until the
+ * residual is as small as that of a double precision solution. For reasonably well conditioned matrices
+ * (condition number well below 1/float epsilon, about 10<sup>7</sup>) that takes a few steps. Least squares
+ * solutions are corrected with the seminormal equations instead, which needs the condition number to be well
+ * below its square root. When the
+ * refinement stalls, diverges or runs out of steps the column is instead solved with a double precision
+ * decomposition (LU, or QR if not square) of the original matrix.
+ * <p>
+ * A double precision copy of the decomposed matrix is kept for the refinement and the fallback, so the
+ * matrix may be modified once decomposed. The factors take half the memory of double precision factors, the
+ * copy as much as them.
+ */
+abstract class Primitive32Decomposition extends AbstractDecomposition<Double> {
+
+    /**
+     * The machine epsilon of float, 2<sup>-23</sup>.
+     */
+    static final double FLOAT_EPSILON = Math.ulp(1.0F);
+
+    /**
+     * Max number of refinement steps per solution
+     */
+    static int ITERATIONS = 10;
+
+    /**
+     * The number of diagonal elements, stride apart from the first in data, that are not small relative to
+     * the largest of them. Small is a factor epsilon of the largest, epsilon should scale with float's.
+     */
+    static int countNonSmall(final float[] data, final int count, final int stride, final double epsilon) {
+
+        double tmpLargest = ZERO;
+        for (int ij = 0; ij < count; ij++) {
+            tmpLargest = Math.max(tmpLargest, Math.abs(data[ij * stride]));
+        }
+
+        final double tmpTolerance = tmpLargest * epsilon;
+
+        int retVal = 0;
+        for (int ij = 0; ij < count; ij++) {
+            if (Math.abs(data[ij * stride]) > tmpTolerance) {
+                retVal++;
+            }
+        }
+
+        return retVal;
+    }
+
+    private int myColDim;
+    /**
+     * Double precision decomposition of the original matrix, made when the refinement of a solution fails
+     */
+    private MatrixDecomposition.Solver<Double> myFallback;
+    private Primitive32Store myInPlaceStore;
+    /**
+     * A copy of the decomposed matrix, in double precision
+     */
+    private PrimitiveDenseStore myOriginal;
+    private int myRowDim;
+
+    protected Primitive32Decomposition() {
+        super();
+    }
+
+    public PhysicalStore<Double> preallocate(final Structure2D template) {
+        return this.allocate(template.countColumns(), template.countRows());
+    }
+
+    public PhysicalStore<Double> preallocate(final Structure2D templateBody, final Structure2D templateRHS) {
+        return this.allocate(templateBody.countColumns(), templateRHS.countColumns());
+    }
+
+    @Override
+    public void reset() {
+
+        super.reset();
+
+        myFallback = null;
+    }
+
+    @Override
+    protected PrimitiveDenseStore allocate(final long numberOfRows, final long numberOfColumns) {
+        return PrimitiveDenseStore.FACTORY.makeZero(numberOfRows, numberOfColumns);
+    }
+
+    @SuppressWarnings("unchecked")
+    protected final MatrixStore<Double> collect(final Access2D.Collectable<Double, ? super PhysicalStore<Double>> source) {
+        if (source instanceof MatrixStore) {
+            return (MatrixStore<Double>) source;
+        } else if (source instanceof Access2D) {
+            return PrimitiveDenseStore.FACTORY.builder().makeWrapper((Access2D<?>) source).get();
+        } else {
+            return source.collect(PrimitiveDenseStore.FACTORY);
+        }
+    }
+
+    protected int getColDim() {
+        return myColDim;
+    }
+
+    @Override
+    protected double getDimensionalEpsilon() {
+        return this.getMaxDim() * FLOAT_EPSILON;
+    }
+
+    protected float[] getInPlaceData() {
+        return myInPlaceStore.data;
+    }
+
+    protected Primitive32Store getInPlaceStore() {
+        return myInPlaceStore;
+    }
+
+    protected int getMaxDim() {
+        return Math.max(myRowDim, myColDim);
+    }
+
+    protected int getMinDim() {
+        return Math.min(myRowDim, myColDim);
+    }
+
+    protected int getRowDim() {
+        return myRowDim;
+    }
+
+    /**
+     * Solves [original][X] = [rhs], one column at the time, with the single precision factors and
+     * iterative refinement. A column is converged when the residual (of the normal equations if the system
+     * is not square) is as small as that of a double precision solution, relative to the norms of the
+     * matrix, the solution and the right hand side. Columns that do not converge are solved with the double
+     * precision fallback. The solution is written to preallocated.
+     */
+    protected final MatrixStore<Double> refine(final Access2D<?> rhs, final PhysicalStore<Double> preallocated) {
+
+        final int tmpRowDim = myRowDim;
+        final int tmpColDim = myColDim;
+        final boolean tmpSquare = tmpRowDim == tmpColDim;
+
+        final double[] tmpRHS = new double[tmpRowDim];
+        final double[] tmpResidual = new double[tmpRowDim];
+        final double[] tmpSolution = new double[tmpColDim];
+        final double[] tmpGradient = tmpSquare ? null : new double[tmpColDim];
+        final float[] tmpCorrection = new float[Math.max(tmpRowDim, tmpColDim)];
+
+        // Largest row and column sums of the original, the infinity and 1-norms
+        final double[] tmpRowSums = new double[tmpRowDim];
+        double tmpNorm1 = ZERO;
+        for (int j = 0; j < tmpColDim; j++) {
+            double tmpColSum = ZERO;
+            for (int i = 0; i < tmpRowDim; i++) {
+                final double tmpValue = Math.abs(myOriginal.doubleValue(i, j));
+                tmpRowSums[i] += tmpValue;
+                tmpColSum += tmpValue;
+            }
+            tmpNorm1 = Math.max(tmpNorm1, tmpColSum);
+        }
+        double tmpNormInf = ZERO;
+        for (int i = 0; i < tmpRowDim; i++) {
+            tmpNormInf = Math.max(tmpNormInf, tmpRowSums[i]);
+        }
+        final double tmpTolerance = MACHINE_EPSILON * Math.sqrt(this.getMaxDim());
+
+        final long tmpRHSColumns = rhs.countColumns();
+        for (long j = 0L; j < tmpRHSColumns; j++) {
+
+            double tmpLargestRHS = ZERO;
+            for (int i = 0; i < tmpRowDim; i++) {
+                tmpResidual[i] = tmpRHS[i] = rhs.doubleValue(i, j);
+                tmpLargestRHS = Math.max(tmpLargestRHS, Math.abs(tmpRHS[i]));
+            }
+            for (int i = 0; i < tmpColDim; i++) {
+                tmpSolution[i] = ZERO;
+            }
+
+            boolean tmpConverged = tmpLargestRHS == ZERO;
+            double tmpPrevious = POSITIVE_INFINITY;
+            for (int iter = 0; !tmpConverged && (iter <= ITERATIONS); iter++) {
+
+                if (tmpSquare || (iter == 0)) {
+                    for (int i = 0; i < tmpRowDim; i++) {
+                        tmpCorrection[i] = (float) tmpResidual[i];
+                    }
+                    for (int i = tmpRowDim; i < tmpCorrection.length; i++) {
+                        tmpCorrection[i] = 0.0F;
+                    }
+                    this.solve(tmpCorrection);
+                } else {
+                    // The residual of a least squares solution is not small, correct with the normal equations
+                    for (int i = 0; i < tmpColDim; i++) {
+                        tmpCorrection[i] = (float) tmpGradient[i];
+                    }
+                    if (!this.solveNormal(tmpCorrection)) {
+                        break;
+                    }
+                }
+
+                double tmpLargestCorrection = ZERO;
+                double tmpLargestElement = ZERO;
+                for (int i = 0; i < tmpColDim; i++) {
+                    tmpSolution[i] += tmpCorrection[i];
+                    tmpLargestCorrection = Math.max(tmpLargestCorrection, Math.abs(tmpCorrection[i]));
+                    tmpLargestElement = Math.max(tmpLargestElement, Math.abs(tmpSolution[i]));
+                }
+
+                if (!(tmpLargestCorrection <= (HALF * tmpPrevious))) {
+                    // No longer converging, diverging or not finite
+                    break;
+                }
+                tmpPrevious = tmpLargestCorrection;
+
+                this.residual(tmpRHS, tmpSolution, tmpResidual);
+
+                if (tmpSquare) {
+                    tmpConverged = this.largest(tmpResidual) <= (tmpTolerance * tmpNormInf * tmpLargestElement);
+                } else {
+                    this.gradient(tmpResidual, tmpGradient);
+                    tmpConverged = this.largest(tmpGradient) <= (tmpTolerance * tmpNorm1 * ((tmpNormInf * tmpLargestElement) + tmpLargestRHS));
+                }
+            }
+
+            if (tmpConverged) {
+                for (int i = 0; i < tmpColDim; i++) {
+                    preallocated.set(i, j, tmpSolution[i]);
+                }
+            } else {
+                this.fallback(rhs, j, preallocated);
+            }
+        }
+
+        return preallocated;
+    }
+
+    /**
+     * Copies matrix to the in-place store, rounding to float, and to a double precision store for the
+     * refinement of solutions.
+     */
+    float[] reset(final Access2D<?> matrix) {
+
+        this.reset();
+
+        final int tmpRowDim = (int) matrix.countRows();
+        final int tmpColDim = (int) matrix.countColumns();
+
+        if ((myInPlaceStore == null) || (myRowDim != tmpRowDim) || (myColDim != tmpColDim)) {
+
+            myInPlaceStore = Primitive32Store.FACTORY.makeZero(tmpRowDim, tmpColDim);
+            myOriginal = PrimitiveDenseStore.FACTORY.makeZero(tmpRowDim, tmpColDim);
+
+            myRowDim = tmpRowDim;
+            myColDim = tmpColDim;
+        }
+
+        myInPlaceStore.fillMatching(matrix);
+        myOriginal.accept(matrix);
+
+        this.aspectRatioNormal(tmpRowDim >= tmpColDim);
+
+        return myInPlaceStore.data;
+    }
+
+    /**
+     * Solves one column in place with the single precision factors. On input column holds the right hand
+     * side (getRowDim() elements), on output the solution (the first getColDim() elements).
+     */
+    abstract void solve(float[] column);
+
+    /**
+     * Solves [A]<sup>T</sup>[A][x] = [column] in place, with the single precision factors, on the first
+     * getColDim() elements of column.
+     *
+     * @return false if the factors can't do that, then non-square systems are solved with the fallback
+     */
+    boolean solveNormal(final float[] column) {
+        return false;
+    }
+
+    /**
+     * Solves column j of rhs with a double precision decomposition of the original matrix, decomposed the
+     * first time it is needed after a reset.
+     */
+    private void fallback(final Access2D<?> rhs, final long j, final PhysicalStore<Double> preallocated) {
+
+        if (myFallback == null) {
+            myFallback = ((myRowDim == myColDim) ? LU.PRIMITIVE : QR.PRIMITIVE).make(this.getInPlaceStore());
+            myFallback.decompose(myOriginal);
+        }
+
+        final PrimitiveDenseStore tmpColumn = PrimitiveDenseStore.FACTORY.makeZero(myRowDim, 1L);
+        for (int i = 0; i < myRowDim; i++) {
+            tmpColumn.set(i, 0L, rhs.doubleValue(i, j));
+        }
+
+        final MatrixStore<Double> tmpSolution = myFallback.getSolution(tmpColumn);
+        for (int i = 0; i < myColDim; i++) {
+            preallocated.set(i, j, tmpSolution.doubleValue(i, 0L));
+        }
+    }
+
+    /**
+     * gradient = [original]<sup>T</sup>[residual], in double precision
+     */
+    private void gradient(final double[] residual, final double[] gradient) {
+
+        final int tmpRowDim = myRowDim;
+        final int tmpColDim = myColDim;
+
+        final double[] tmpData = myOriginal.data;
+        for (int j = 0; j < tmpColDim; j++) {
+            final int tmpBase = j * tmpRowDim;
+            double tmpSum = ZERO;
+            for (int i = 0; i < tmpRowDim; i++) {
+                tmpSum += tmpData[tmpBase + i] * residual[i];
+            }
+            gradient[j] = tmpSum;
+        }
+    }
+
+    private double largest(final double[] values) {
+        double retVal = ZERO;
+        for (int i = 0; i < values.length; i++) {
+            retVal = Math.max(retVal, Math.abs(values[i]));
+        }
+        return retVal;
+    }
+
+    /**
+     * residual = rhs - [original][solution], in double precision
+     */
+    private void residual(final double[] rhs, final double[] solution, final double[] residual) {
+
+        final int tmpRowDim = myRowDim;
+        final int tmpColDim = myColDim;
+
+        for (int i = 0; i < tmpRowDim; i++) {
+            residual[i] = rhs[i];
+        }
+
+        final double[] tmpData = myOriginal.data;
+        for (int j = 0; j < tmpColDim; j++) {
+            final double tmpValue = solution[j];
+            if (tmpValue != ZERO) {
+                final int tmpBase = j * tmpRowDim;
+                for (int i = 0; i < tmpRowDim; i++) {
+                    residual[i] -= tmpData[tmpBase + i] * tmpValue;
+                }
+            }
+        }
+    }
+
+}
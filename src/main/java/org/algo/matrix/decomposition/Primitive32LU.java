@@ -0,0 +1,255 @@
+/*
+ * Copyright 1997-2017 Optimatika (www.optimatika.se)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.algo.matrix.decomposition;
+
+import org.algo.RecoverableCondition;
+import org.algo.access.Access2D;
+import org.algo.access.Access2D.Collectable;
+import org.algo.matrix.store.ElementsSupplier;
+import org.algo.matrix.store.MatrixStore;
+import org.algo.matrix.store.PhysicalStore;
+
+/**
+ * LU decomposition, with partial pivoting, in single precision, solutions refined to double precision
+ * accuracy. See {@link Primitive32Decomposition}.
+ */
+final class Primitive32LU extends Primitive32Decomposition implements LU<Double> {
+
+    private Pivot myPivot;
+
+    /**
+     * Not recommended to use this constructor directly. Consider using the static factory method
+     * {@linkplain org.algo.matrix.decomposition.LU#PRIMITIVE_32} instead.
+     */
+    Primitive32LU() {
+        super();
+    }
+
+    public Double calculateDeterminant(final Access2D<?> matrix) {
+
+        this.doDecompose(this.reset(matrix), true);
+
+        return this.getDeterminant();
+    }
+
+    public boolean computeWithoutPivoting(final ElementsSupplier<Double> matrix) {
+        return this.doDecompose(this.reset(this.collect(matrix)), false);
+    }
+
+    public boolean decompose(final Access2D.Collectable<Double, ? super PhysicalStore<Double>> matrix) {
+        return this.doDecompose(this.reset(this.collect(matrix)), true);
+    }
+
+    public Double getDeterminant() {
+
+        final int tmpDim = this.getRowDim();
+        if (tmpDim != this.getColDim()) {
+            throw new IllegalArgumentException("The matrix must be square.");
+        }
+
+        final float[] tmpData = this.getInPlaceData();
+
+        double retVal = myPivot.signum();
+        for (int ij = 0; ij < tmpDim; ij++) {
+            retVal *= tmpData[ij + (ij * tmpDim)];
+        }
+
+        return retVal;
+    }
+
+    public MatrixStore<Double> getInverse() {
+        final int tmpRowDim = this.getRowDim();
+        return this.getInverse(this.allocate(tmpRowDim, tmpRowDim));
+    }
+
+    public MatrixStore<Double> getInverse(final PhysicalStore<Double> preallocated) {
+        return this.refine(MatrixStore.PRIMITIVE.makeIdentity(this.getRowDim()).get(), preallocated);
+    }
+
+    public MatrixStore<Double> getL() {
+        return this.getInPlaceStore().logical().triangular(false, true).get();
+    }
+
+    public int[] getPivotOrder() {
+        return myPivot.getOrder();
+    }
+
+    public int getRank() {
+        return Primitive32Decomposition.countNonSmall(this.getInPlaceData(), this.getMinDim(), this.getRowDim() + 1, this.getDimensionalEpsilon());
+    }
+
+    public MatrixStore<Double> getSolution(final Collectable<Double, ? super PhysicalStore<Double>> rhs) {
+        return this.getSolution(rhs, this.allocate(this.getColDim(), rhs.countColumns()));
+    }
+
+    @Override
+    public MatrixStore<Double> getSolution(final Collectable<Double, ? super PhysicalStore<Double>> rhs, final PhysicalStore<Double> preallocated) {
+        return this.refine(this.collect(rhs), preallocated);
+    }
+
+    public MatrixStore<Double> getU() {
+        return this.getInPlaceStore().logical().triangular(true, false).get();
+    }
+
+    @Override
+    public MatrixStore<Double> invert(final Access2D<?> original, final PhysicalStore<Double> preallocated) throws RecoverableCondition {
+
+        this.doDecompose(this.reset(original), true);
+
+        if (this.isSolvable()) {
+            return this.getInverse(preallocated);
+        } else {
+            throw RecoverableCondition.newMatrixNotInvertible();
+        }
+    }
+
+    /**
+     * Is the matrix nonsingular?
+     *
+     * @return true if U, and hence A, is nonsingular - no diagonal element of U is small, relative to the
+     *         largest, in single precision.
+     */
+    public boolean isFullRank() {
+        return this.getRank() == this.getMinDim();
+    }
+
+    @Override
+    public void reset() {
+
+        super.reset();
+
+        myPivot = null;
+    }
+
+    @Override
+    public MatrixStore<Double> solve(final Access2D<?> body, final Access2D<?> rhs, final PhysicalStore<Double> preallocated) throws RecoverableCondition {
+
+        this.doDecompose(this.reset(body), true);
+
+        if (this.isSolvable()) {
+            return this.refine(rhs, preallocated);
+        } else {
+            throw RecoverableCondition.newEquationSystemNotSolvable();
+        }
+    }
+
+    /**
+     * Permutation, forward substitution with the unit lower [L], then backward with [U].
+     */
+    @Override
+    void solve(final float[] column) {
+
+        final float[] tmpData = this.getInPlaceData();
+        final int tmpDim = this.getRowDim();
+
+        if (myPivot.isModified()) {
+            final int[] tmpOrder = myPivot.getOrder();
+            final float[] tmpCopy = column.clone();
+            for (int i = 0; i < tmpDim; i++) {
+                column[i] = tmpCopy[tmpOrder[i]];
+            }
+        }
+
+        for (int j = 0; j < tmpDim; j++) {
+            final int tmpBase = j * tmpDim;
+            final float tmpValue = column[j];
+            if (tmpValue != 0.0F) {
+                for (int i = j + 1; i < tmpDim; i++) {
+                    column[i] -= tmpData[tmpBase + i] * tmpValue;
+                }
+            }
+        }
+
+        for (int j = tmpDim - 1; j >= 0; j--) {
+            final int tmpBase = j * tmpDim;
+            final float tmpValue = column[j] /= tmpData[tmpBase + j];
+            if (tmpValue != 0.0F) {
+                for (int i = 0; i < j; i++) {
+                    column[i] -= tmpData[tmpBase + i] * tmpValue;
+                }
+            }
+        }
+    }
+
+    @Override
+    protected boolean checkSolvability() {
+        return (this.getRowDim() == this.getColDim()) && this.isFullRank();
+    }
+
+    /**
+     * Right-looking, column by column: choose the pivot, scale the multipliers and update the trailing
+     * columns with them - every inner loop runs down a column.
+     */
+    private boolean doDecompose(final float[] data, final boolean pivoting) {
+
+        final int tmpRowDim = this.getRowDim();
+        final int tmpColDim = this.getColDim();
+        final int tmpMinDim = this.getMinDim();
+
+        myPivot = new Pivot(tmpRowDim);
+
+        for (int k = 0; k < tmpMinDim; k++) {
+            final int tmpBaseK = k * tmpRowDim;
+
+            if (pivoting) {
+                int p = k;
+                float tmpLargest = Math.abs(data[tmpBaseK + k]);
+                for (int i = k + 1; i < tmpRowDim; i++) {
+                    final float tmpCandidate = Math.abs(data[tmpBaseK + i]);
+                    if (tmpCandidate > tmpLargest) {
+                        tmpLargest = tmpCandidate;
+                        p = i;
+                    }
+                }
+                if (p != k) {
+                    for (int j = 0; j < tmpColDim; j++) {
+                        final int tmpBaseJ = j * tmpRowDim;
+                        final float tmpValue = data[tmpBaseJ + k];
+                        data[tmpBaseJ + k] = data[tmpBaseJ + p];
+                        data[tmpBaseJ + p] = tmpValue;
+                    }
+                    myPivot.change(k, p);
+                }
+            }
+
+            final float tmpDiag = data[tmpBaseK + k];
+            if (tmpDiag != 0.0F) {
+                for (int i = k + 1; i < tmpRowDim; i++) {
+                    data[tmpBaseK + i] /= tmpDiag;
+                }
+            }
+
+            for (int j = k + 1; j < tmpColDim; j++) {
+                final int tmpBaseJ = j * tmpRowDim;
+                final float tmpValue = data[tmpBaseJ + k];
+                if (tmpValue != 0.0F) {
+                    for (int i = k + 1; i < tmpRowDim; i++) {
+                        data[tmpBaseJ + i] -= data[tmpBaseK + i] * tmpValue;
+                    }
+                }
+            }
+        }
+
+        return this.computed(true);
+    }
+
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright 1997-2017 Optimatika (www.optimatika.se)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.algo.matrix.decomposition;
+
+import static org.algo.constant.PrimitiveMath.*;
+
+import org.algo.RecoverableCondition;
+import org.algo.access.Access2D;
+import org.algo.access.Access2D.Collectable;
+import org.algo.matrix.store.MatrixStore;
+import org.algo.matrix.store.PhysicalStore;
+import org.algo.matrix.store.Primitive32Store;
+
+/**
+ * QR decomposition, by Householder reflections, in single precision. Least squares solutions (of tall or
+ * square systems) are refined to double precision accuracy, see {@link Primitive32Decomposition}.
+ * <p>
+ * Below the diagonal the in-place store holds the Householder vectors, as in JAMA/RawQR, only column by
+ * column rather than transposed. Only the economy sized [Q] is supported.
+ */
+final class Primitive32QR extends Primitive32Decomposition implements QR<Double> {
+
+    private float[] myDiagonalR;
+    private boolean myFullSize = false;
+    private int myReflections = 0;
+
+    /**
+     * Not recommended to use this constructor directly. Consider using the static factory method
+     * {@linkplain org.algo.matrix.decomposition.QR#PRIMITIVE_32} instead.
+     */
+    Primitive32QR() {
+        super();
+    }
+
+    public Double calculateDeterminant(final Access2D<?> matrix) {
+
+        this.doDecompose(this.reset(matrix));
+
+        return this.getDeterminant();
+    }
+
+    public boolean decompose(final Access2D.Collectable<Double, ? super PhysicalStore<Double>> matrix) {
+        return this.doDecompose(this.reset(this.collect(matrix)));
+    }
+
+    /**
+     * Each reflection contributes a factor -1 to the determinant of [Q].
+     */
+    public Double getDeterminant() {
+
+        double retVal = (myReflections % 2) == 0 ? ONE : NEG;
+        for (int ij = 0; ij < myDiagonalR.length; ij++) {
+            retVal *= myDiagonalR[ij];
+        }
+
+        return retVal;
+    }
+
+    public MatrixStore<Double> getInverse() {
+        return this.getInverse(this.allocate(this.getColDim(), this.getRowDim()));
+    }
+
+    /**
+     * The pseudoinverse, if the matrix is tall.
+     */
+    public MatrixStore<Double> getInverse(final PhysicalStore<Double> preallocated) {
+        return this.refine(MatrixStore.PRIMITIVE.makeIdentity(this.getRowDim()).get(), preallocated);
+    }
+
+    /**
+     * The economy sized orthogonal factor, formed by applying the reflections backwards to the first
+     * columns of the identity.
+     */
+    public MatrixStore<Double> getQ() {
+
+        final int tmpRowDim = this.getRowDim();
+        final int tmpMinDim = this.getMinDim();
+
+        final float[] tmpData = this.getInPlaceData();
+
+        final Primitive32Store retVal = Primitive32Store.FACTORY.makeZero(tmpRowDim, tmpMinDim);
+        final float[] tmpQ = retVal.data;
+
+        for (int k = tmpMinDim - 1; k >= 0; k--) {
+            final int tmpBaseK = k * tmpRowDim;
+            tmpQ[tmpBaseK + k] = 1.0F;
+            final float tmpPivot = tmpData[tmpBaseK + k];
+            if (tmpPivot != 0.0F) {
+                for (int j = k; j < tmpMinDim; j++) {
+                    final int tmpBaseJ = j * tmpRowDim;
+                    float tmpSum = 0.0F;
+                    for (int i = k; i < tmpRowDim; i++) {
+                        tmpSum += tmpData[tmpBaseK + i] * tmpQ[tmpBaseJ + i];
+                    }
+                    tmpSum = -tmpSum / tmpPivot;
+                    for (int i = k; i < tmpRowDim; i++) {
+                        tmpQ[tmpBaseJ + i] += tmpSum * tmpData[tmpBaseK + i];
+                    }
+                }
+            }
+        }
+
+        return retVal;
+    }
+
+    public MatrixStore<Double> getR() {
+
+        final int tmpRowDim = this.getRowDim();
+        final int tmpColDim = this.getColDim();
+        final int tmpMinDim = this.getMinDim();
+
+        final float[] tmpData = this.getInPlaceData();
+
+        final Primitive32Store retVal = Primitive32Store.FACTORY.makeZero(tmpMinDim, tmpColDim);
+        final float[] tmpR = retVal.data;
+
+        for (int j = 0; j < tmpColDim; j++) {
+            final int tmpLimit = Math.min(j, tmpMinDim);
+            for (int i = 0; i < tmpLimit; i++) {
+                tmpR[i + (j * tmpMinDim)] = tmpData[i + (j * tmpRowDim)];
+            }
+            if (j < tmpMinDim) {
+                tmpR[j + (j * tmpMinDim)] = myDiagonalR[j];
+            }
+        }
+
+        return retVal;
+    }
+
+    public int getRank() {
+        return Primitive32Decomposition.countNonSmall(myDiagonalR, myDiagonalR.length, 1, this.getDimensionalEpsilon());
+    }
+
+    public MatrixStore<Double> getSolution(final Collectable<Double, ? super PhysicalStore<Double>> rhs) {
+        return this.getSolution(rhs, this.allocate(this.getColDim(), rhs.countColumns()));
+    }
+
+    @Override
+    public MatrixStore<Double> getSolution(final Collectable<Double, ? super PhysicalStore<Double>> rhs, final PhysicalStore<Double> preallocated) {
+        return this.refine(this.collect(rhs), preallocated);
+    }
+
+    @Override
+    public MatrixStore<Double> invert(final Access2D<?> original, final PhysicalStore<Double> preallocated) throws RecoverableCondition {
+
+        this.doDecompose(this.reset(original));
+
+        if (this.isSolvable()) {
+            return this.getInverse(preallocated);
+        } else {
+            throw RecoverableCondition.newMatrixNotInvertible();
+        }
+    }
+
+    /**
+     * Is the matrix full rank?
+     *
+     * @return true if R, and hence A, has full rank - no diagonal element of R is small, relative to the
+     *         largest, in single precision.
+     */
+    public boolean isFullRank() {
+        return this.getRank() == myDiagonalR.length;
+    }
+
+    public boolean isFullSize() {
+        return myFullSize;
+    }
+
+    public void setFullSize(final boolean fullSize) {
+        myFullSize = fullSize;
+    }
+
+    @Override
+    public MatrixStore<Double> solve(final Access2D<?> body, final Access2D<?> rhs, final PhysicalStore<Double> preallocated) throws RecoverableCondition {
+
+        this.doDecompose(this.reset(body));
+
+        if (this.isSolvable()) {
+            return this.refine(rhs, preallocated);
+        } else {
+            throw RecoverableCondition.newEquationSystemNotSolvable();
+        }
+    }
+
+    /**
+     * Applies the reflections, [Q]<sup>T</sup>, then backward substitution with [R].
+     */
+    @Override
+    void solve(final float[] column) {
+
+        final float[] tmpData = this.getInPlaceData();
+        final int tmpRowDim = this.getRowDim();
+        final int tmpColDim = this.getColDim();
+
+        for (int k = 0; k < tmpColDim; k++) {
+            final int tmpBaseK = k * tmpRowDim;
+            final float tmpPivot = tmpData[tmpBaseK + k];
+            if (tmpPivot != 0.0F) {
+                float tmpSum = 0.0F;
+                for (int i = k; i < tmpRowDim; i++) {
+                    tmpSum += tmpData[tmpBaseK + i] * column[i];
+                }
+                tmpSum = -tmpSum / tmpPivot;
+                for (int i = k; i < tmpRowDim; i++) {
+                    column[i] += tmpSum * tmpData[tmpBaseK + i];
+                }
+            }
+        }
+
+        for (int k = tmpColDim - 1; k >= 0; k--) {
+            final int tmpBaseK = k * tmpRowDim;
+            final float tmpValue = column[k] /= myDiagonalR[k];
+            for (int i = 0; i < k; i++) {
+                column[i] -= tmpValue * tmpData[tmpBaseK + i];
+            }
+        }
+    }
+
+    /**
+     * The seminormal equations, [R]<sup>T</sup>[R][x] = [column]: forward substitution with [R]<sup>T</sup>,
+     * then backward with [R].
+     */
+    @Override
+    boolean solveNormal(final float[] column) {
+
+        final float[] tmpData = this.getInPlaceData();
+        final int tmpRowDim = this.getRowDim();
+        final int tmpColDim = this.getColDim();
+
+        for (int k = 0; k < tmpColDim; k++) {
+            final int tmpBaseK = k * tmpRowDim;
+            float tmpValue = column[k];
+            for (int i = 0; i < k; i++) {
+                tmpValue -= tmpData[tmpBaseK + i] * column[i];
+            }
+            column[k] = tmpValue / myDiagonalR[k];
+        }
+
+        for (int k = tmpColDim - 1; k >= 0; k--) {
+            final int tmpBaseK = k * tmpRowDim;
+            final float tmpValue = column[k] /= myDiagonalR[k];
+            for (int i = 0; i < k; i++) {
+                column[i] -= tmpValue * tmpData[tmpBaseK + i];
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    protected boolean checkSolvability() {
+        return (this.getRowDim() >= this.getColDim()) && this.isFullRank();
+    }
+
+    private boolean doDecompose(final float[] data) {
+
+        final int tmpRowDim = this.getRowDim();
+        final int tmpColDim = this.getColDim();
+        final int tmpMinDim = this.getMinDim();
+
+        myDiagonalR = new float[tmpMinDim];
+        myReflections = 0;
+
+        for (int k = 0; k < tmpMinDim; k++) {
+            final int tmpBaseK = k * tmpRowDim;
+
+            // 2-norm of k-th column, accumulated in double to avoid under/overflow
+            double tmpNorm = ZERO;
+            for (int i = k; i < tmpRowDim; i++) {
+                final double tmpValue = data[tmpBaseK + i];
+                tmpNorm += tmpValue * tmpValue;
+            }
+            tmpNorm = Math.sqrt(tmpNorm);
+
+            if (tmpNorm != ZERO) {
+
+                // Form k-th Householder vector
+                if (data[tmpBaseK + k] < 0.0F) {
+                    tmpNorm = -tmpNorm;
+                }
+                final float tmpScale = (float) tmpNorm;
+                for (int i = k; i < tmpRowDim; i++) {
+                    data[tmpBaseK + i] /= tmpScale;
+                }
+                data[tmpBaseK + k] += 1.0F;
+                final float tmpPivot = data[tmpBaseK + k];
+
+                // Apply transformation to remaining columns
+                for (int j = k + 1; j < tmpColDim; j++) {
+                    final int tmpBaseJ = j * tmpRowDim;
+                    float tmpSum = 0.0F;
+                    for (int i = k; i < tmpRowDim; i++) {
+                        tmpSum += data[tmpBaseK + i] * data[tmpBaseJ + i];
+                    }
+                    tmpSum = -tmpSum / tmpPivot;
+                    for (int i = k; i < tmpRowDim; i++) {
+                        data[tmpBaseJ + i] += tmpSum * data[tmpBaseK + i];
+                    }
+                }
+
+                myReflections++;
+            }
+
+            myDiagonalR[k] = (float) -tmpNorm;
+        }
+
+        return this.computed(true);
+    }
+
+}
@@ -69,6 +69,13 @@ public interface QR<N extends Number> extends MatrixDecomposition<N>, MatrixDeco
         }
     };
 
+    /**
+     * Single precision factors, with solutions refined to double precision accuracy.
+     *
+     * @see Cholesky#PRIMITIVE_32
+     */
+    public static final Factory<Double> PRIMITIVE_32 = typical -> new Primitive32QR();
+
     @SuppressWarnings("unchecked")
     public static <N extends Number> QR<N> make(final Access2D<N> typical) {
 
@@ -25,6 +25,7 @@ import static org.algo.constant.PrimitiveMath.*;
 import static org.algo.function.PrimitiveFunction.*;
 
 import org.algo.RecoverableCondition;
+import org.algo.access.Access1D;
 import org.algo.access.Access2D;
 import org.algo.access.Structure2D;
 import org.algo.access.Access2D.Collectable;
@@ -34,7 +35,7 @@ import org.algo.matrix.store.MatrixStore;
 import org.algo.matrix.store.PhysicalStore;
 import org.algo.matrix.store.RawStore;
 
-final class RawCholesky extends RawDecomposition implements Cholesky<Double> {
+final class RawCholesky extends RawDecomposition implements Cholesky<Double>, MatrixDecomposition.Updatable<Double> {
 
     private double myMaxDiag = ONE;
     private double myMinDiag = ZERO;
@@ -48,6 +49,21 @@ final class RawCholesky extends RawDecomposition implements Cholesky<Double> {
         super();
     }
 
+    public boolean append(final Access1D<?> column) {
+
+        final RawStore tmpFactor = this.modifiable();
+        final int tmpDim = this.getRowDim() + 1;
+
+        final RawStore tmpAppended = RawStore.FACTORY.makeZero(tmpDim, tmpDim);
+        final boolean retVal = HermitianUpdate.appendCholesky(tmpFactor, column, tmpAppended);
+        if (retVal) {
+            this.reset(tmpAppended, false);
+            this.getRawInPlaceStore().fillMatching(tmpAppended);
+        }
+
+        return this.modified(retVal);
+    }
+
     public Double calculateDeterminant(final Access2D<?> matrix) {
 
         final double[][] retVal = this.reset(matrix, false);
@@ -84,6 +100,23 @@ final class RawCholesky extends RawDecomposition implements Cholesky<Double> {
         return this.doDecompose(retVal, tmpRawInPlaceStore);
     }
 
+    public boolean delete(final int index) {
+
+        final RawStore tmpFactor = this.modifiable();
+        final int tmpDim = this.getRowDim() - 1;
+
+        final RawStore tmpDeleted = RawStore.FACTORY.makeZero(tmpDim, tmpDim);
+        HermitianUpdate.deleteCholesky(tmpFactor, index, tmpDeleted);
+        this.reset(tmpDeleted, false);
+        this.getRawInPlaceStore().fillMatching(tmpDeleted);
+
+        return this.modified(true);
+    }
+
+    public boolean downdate(final Access2D<?> vectors) {
+        return this.modified(HermitianUpdate.updateCholesky(this.modifiable(), vectors, true));
+    }
+
     public Double getDeterminant() {
 
         final double[][] tmpData = this.getRawInPlaceData();
@@ -171,6 +204,10 @@ final class RawCholesky extends RawDecomposition implements Cholesky<Double> {
         return this.allocate(templateBody.countRows(), templateRHS.countColumns());
     }
 
+    public boolean update(final Access2D<?> vectors) {
+        return this.modified(HermitianUpdate.updateCholesky(this.modifiable(), vectors, false));
+    }
+
     @Override
     public MatrixStore<Double> solve(final Access2D<?> body, final Access2D<?> rhs, final PhysicalStore<Double> preallocated) throws RecoverableCondition {
 
@@ -220,6 +257,29 @@ final class RawCholesky extends RawDecomposition implements Cholesky<Double> {
         return this.computed(true);
     }
 
+    /**
+     * After the factor has been modified, or replaced, the same record of the pivots as doDecompose.
+     */
+    private boolean modified(final boolean positiveDefinite) {
+
+        final double[][] tmpData = this.getRawInPlaceData();
+
+        myMaxDiag = ZERO;
+        myMinDiag = POSITIVE_INFINITY;
+
+        if (positiveDefinite) {
+            for (int ij = 0; ij < tmpData.length; ij++) {
+                final double tmpVal = tmpData[ij][ij];
+                myMaxDiag = MAX.invoke(myMaxDiag, tmpVal * tmpVal);
+                myMinDiag = MIN.invoke(myMinDiag, tmpVal * tmpVal);
+            }
+        }
+
+        mySPD = positiveDefinite;
+
+        return this.computed(positiveDefinite);
+    }
+
     private MatrixStore<Double> doGetInverse(final PhysicalStore<Double> preallocated) {
 
         final RawStore tmpBody = this.getRawInPlaceStore();
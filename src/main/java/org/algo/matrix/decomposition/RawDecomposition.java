@@ -21,6 +21,7 @@
  */
 package org.algo.matrix.decomposition;
 
+import org.algo.ProgrammingError;
 import org.algo.access.Access2D;
 import org.algo.access.Structure2D;
 import org.algo.constant.PrimitiveMath;
@@ -102,6 +103,21 @@ abstract class RawDecomposition extends AbstractDecomposition<Double> {
         return myRowDim;
     }
 
+    /**
+     * For the {@linkplain MatrixDecomposition.Updatable} implementations: Resets the state, except for the
+     * in-place store that is returned to be modified (or replaced using {@link #reset(Structure2D, boolean)}).
+     */
+    final RawStore modifiable() {
+
+        if (!this.isComputed()) {
+            ProgrammingError.throwForIllegalInvocation();
+        }
+
+        this.reset();
+
+        return myRawInPlaceStore;
+    }
+
     double[][] reset(final Structure2D matrix, final boolean transpose) {
 
         this.reset();
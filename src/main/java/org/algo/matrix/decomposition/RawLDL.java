@@ -25,6 +25,7 @@ import static org.algo.constant.PrimitiveMath.*;
 import static org.algo.function.PrimitiveFunction.*;
 
 import org.algo.RecoverableCondition;
+import org.algo.access.Access1D;
 import org.algo.access.Access2D;
 import org.algo.access.Structure2D;
 import org.algo.access.Access2D.Collectable;
@@ -34,7 +35,7 @@ import org.algo.matrix.store.PhysicalStore;
 import org.algo.matrix.store.RawStore;
 import org.algo.matrix.store.MatrixStore.LogicalBuilder;
 
-final class RawLDL extends RawDecomposition implements LDL<Double> {
+final class RawLDL extends RawDecomposition implements LDL<Double>, MatrixDecomposition.Updatable<Double> {
 
     private boolean mySPD = false;
 
@@ -42,6 +43,21 @@ final class RawLDL extends RawDecomposition implements LDL<Double> {
         super();
     }
 
+    public boolean append(final Access1D<?> column) {
+
+        final RawStore tmpFactor = this.modifiable();
+        final int tmpDim = this.getRowDim() + 1;
+
+        final RawStore tmpAppended = RawStore.FACTORY.makeZero(tmpDim, tmpDim);
+        final boolean retVal = HermitianUpdate.appendLDL(tmpFactor, column, null, tmpAppended);
+        if (retVal) {
+            this.reset(tmpAppended, false);
+            this.getRawInPlaceStore().fillMatching(tmpAppended);
+        }
+
+        return this.modified(retVal);
+    }
+
     public Double calculateDeterminant(final Access2D<?> matrix) {
 
         final double[][] retVal = this.reset(matrix, false);
@@ -62,6 +78,23 @@ final class RawLDL extends RawDecomposition implements LDL<Double> {
         return this.doDecompose(retVal, tmpRawInPlaceStore);
     }
 
+    public boolean delete(final int index) {
+
+        final RawStore tmpFactor = this.modifiable();
+        final int tmpDim = this.getRowDim() - 1;
+
+        final RawStore tmpDeleted = RawStore.FACTORY.makeZero(tmpDim, tmpDim);
+        final boolean retVal = HermitianUpdate.deleteLDL(tmpFactor, index, tmpDeleted);
+        this.reset(tmpDeleted, false);
+        this.getRawInPlaceStore().fillMatching(tmpDeleted);
+
+        return this.modified(retVal);
+    }
+
+    public boolean downdate(final Access2D<?> vectors) {
+        return this.modified(HermitianUpdate.updateLDL(this.modifiable(), vectors, null, NEG));
+    }
+
     public MatrixStore<Double> getD() {
         return this.getRawInPlaceStore().logical().diagonal(false).get();
     }
@@ -138,6 +171,10 @@ final class RawLDL extends RawDecomposition implements LDL<Double> {
         return this.allocate(templateBody.countRows(), templateRHS.countColumns());
     }
 
+    public boolean update(final Access2D<?> vectors) {
+        return this.modified(HermitianUpdate.updateLDL(this.modifiable(), vectors, null, ONE));
+    }
+
     public MatrixStore<Double> solve(final Access2D<?> body, final Access2D<?> rhs) throws RecoverableCondition {
         return this.solve(body, rhs, this.preallocate(body, rhs));
     }
@@ -185,6 +222,21 @@ final class RawLDL extends RawDecomposition implements LDL<Double> {
         return this.computed(true);
     }
 
+    /**
+     * After the factor has been modified, or replaced.
+     */
+    private boolean modified(final boolean computed) {
+
+        final double[][] tmpData = this.getRawInPlaceData();
+
+        mySPD = computed;
+        for (int ij = 0; mySPD && (ij < tmpData.length); ij++) {
+            mySPD &= (tmpData[ij][ij] > ZERO);
+        }
+
+        return this.computed(computed);
+    }
+
     private MatrixStore<Double> doGetInverse(final PhysicalStore<Double> preallocated) {
 
         preallocated.fillAll(ZERO);
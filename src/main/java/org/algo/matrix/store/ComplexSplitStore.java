@@ -0,0 +1,1021 @@
+/*
+ * Copyright 1997-2017 Optimatika (www.optimatika.se)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.algo.matrix.store;
+
+import static org.algo.constant.PrimitiveMath.*;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.algo.access.Access1D;
+import org.algo.access.Access2D;
+import org.algo.array.ComplexArray;
+import org.algo.array.DenseArray;
+import org.algo.concurrent.DivideAndConquer;
+import org.algo.function.BinaryFunction;
+import org.algo.function.ComplexFunction;
+import org.algo.function.FunctionSet;
+import org.algo.function.NullaryFunction;
+import org.algo.function.UnaryFunction;
+import org.algo.function.aggregator.AggregatorSet;
+import org.algo.function.aggregator.ComplexAggregator;
+import org.algo.matrix.store.operation.HouseholderLeft;
+import org.algo.matrix.store.operation.HouseholderRight;
+import org.algo.matrix.store.operation.MultiplyBoth;
+import org.algo.matrix.store.operation.MultiplyNeither;
+import org.algo.matrix.store.operation.SubstituteBackwards;
+import org.algo.matrix.store.operation.SubstituteForwards;
+import org.algo.matrix.transformation.Householder;
+import org.algo.matrix.transformation.Rotation;
+import org.algo.scalar.ComplexNumber;
+import org.algo.scalar.Scalar;
+
+/**
+ * A {@linkplain ComplexNumber} implementation of {@linkplain PhysicalStore} that keeps the real and imaginary
+ * parts in two parallel double[], column-major, rather than an array of ComplexNumber instances as
+ * {@linkplain ComplexDenseStore} does.
+ * <p>
+ * Multiplication, substitution, Householder and Givens transformations, and filling/setting/exchanging
+ * elements, work directly on the two arrays and create no ComplexNumber instances. Methods that take or
+ * return ComplexNumber (get, functions, aggregators...) still create one per element, as does reading
+ * operands that are not instances of this class.
+ */
+public final class ComplexSplitStore extends FactoryStore<ComplexNumber> implements PhysicalStore<ComplexNumber> {
+
+    private static final long serialVersionUID = -93629292532376969L;
+
+    public static final PhysicalStore.Factory<ComplexNumber, ComplexSplitStore> FACTORY = new PhysicalStore.Factory<ComplexNumber, ComplexSplitStore>() {
+
+        public AggregatorSet<ComplexNumber> aggregator() {
+            return ComplexAggregator.getSet();
+        }
+
+        public MatrixStore.Factory<ComplexNumber> builder() {
+            return MatrixStore.COMPLEX;
+        }
+
+        public ComplexSplitStore columns(final Access1D<?>... source) {
+
+            final int tmpRowDim = (int) source[0].count();
+            final int tmpColDim = source.length;
+
+            final ComplexSplitStore retVal = new ComplexSplitStore(tmpRowDim, tmpColDim);
+
+            for (int j = 0; j < tmpColDim; j++) {
+                final Access1D<?> tmpColumn = source[j];
+                for (int i = 0; i < tmpRowDim; i++) {
+                    retVal.put(i + (tmpRowDim * j), tmpColumn.get(i));
+                }
+            }
+
+            return retVal;
+        }
+
+        public ComplexSplitStore columns(final double[]... source) {
+
+            final int tmpRowDim = source[0].length;
+            final int tmpColDim = source.length;
+
+            final ComplexSplitStore retVal = new ComplexSplitStore(tmpRowDim, tmpColDim);
+
+            for (int j = 0; j < tmpColDim; j++) {
+                System.arraycopy(source[j], 0, retVal.real, tmpRowDim * j, tmpRowDim);
+            }
+
+            return retVal;
+        }
+
+        @SuppressWarnings("unchecked")
+        public ComplexSplitStore columns(final List<? extends Number>... source) {
+
+            final int tmpRowDim = source[0].size();
+            final int tmpColDim = source.length;
+
+            final ComplexSplitStore retVal = new ComplexSplitStore(tmpRowDim, tmpColDim);
+
+            for (int j = 0; j < tmpColDim; j++) {
+                final List<? extends Number> tmpColumn = source[j];
+                for (int i = 0; i < tmpRowDim; i++) {
+                    retVal.put(i + (tmpRowDim * j), tmpColumn.get(i));
+                }
+            }
+
+            return retVal;
+        }
+
+        public ComplexSplitStore columns(final Number[]... source) {
+
+            final int tmpRowDim = source[0].length;
+            final int tmpColDim = source.length;
+
+            final ComplexSplitStore retVal = new ComplexSplitStore(tmpRowDim, tmpColDim);
+
+            for (int j = 0; j < tmpColDim; j++) {
+                final Number[] tmpColumn = source[j];
+                for (int i = 0; i < tmpRowDim; i++) {
+                    retVal.put(i + (tmpRowDim * j), tmpColumn[i]);
+                }
+            }
+
+            return retVal;
+        }
+
+        public ComplexSplitStore conjugate(final Access2D<?> source) {
+
+            final ComplexSplitStore retVal = this.transpose(source);
+
+            final double[] tmpImaginary = retVal.imaginary;
+            for (int i = 0; i < tmpImaginary.length; i++) {
+                tmpImaginary[i] = -tmpImaginary[i];
+            }
+
+            return retVal;
+        }
+
+        public ComplexSplitStore copy(final Access2D<?> source) {
+
+            final int tmpRowDim = (int) source.countRows();
+            final int tmpColDim = (int) source.countColumns();
+
+            if (source instanceof ComplexSplitStore) {
+                final ComplexSplitStore tmpSource = (ComplexSplitStore) source;
+                return new ComplexSplitStore(tmpRowDim, tmpColDim, tmpSource.real.clone(), tmpSource.imaginary.clone());
+            }
+
+            final ComplexSplitStore retVal = new ComplexSplitStore(tmpRowDim, tmpColDim);
+
+            for (int j = 0; j < tmpColDim; j++) {
+                for (int i = 0; i < tmpRowDim; i++) {
+                    retVal.put(i + (tmpRowDim * j), source.get(i, j));
+                }
+            }
+
+            return retVal;
+        }
+
+        public FunctionSet<ComplexNumber> function() {
+            return ComplexFunction.getSet();
+        }
+
+        public DenseArray<ComplexNumber> makeArray(final int length) {
+            return ComplexArray.make(length);
+        }
+
+        public ComplexSplitStore makeEye(final long rows, final long columns) {
+
+            final ComplexSplitStore retVal = this.makeZero(rows, columns);
+
+            final int tmpRowDim = (int) rows;
+            final int tmpMinDim = (int) Math.min(rows, columns);
+            for (int ij = 0; ij < tmpMinDim; ij++) {
+                retVal.real[ij + (ij * tmpRowDim)] = ONE;
+            }
+
+            return retVal;
+        }
+
+        public ComplexSplitStore makeFilled(final long rows, final long columns, final NullaryFunction<?> supplier) {
+
+            final ComplexSplitStore retVal = this.makeZero(rows, columns);
+
+            final int tmpLength = retVal.real.length;
+            for (int i = 0; i < tmpLength; i++) {
+                retVal.put(i, supplier.get());
+            }
+
+            return retVal;
+        }
+
+        public Householder.Complex makeHouseholder(final int length) {
+            return new Householder.Complex(length);
+        }
+
+        public Rotation.Complex makeRotation(final int low, final int high, final ComplexNumber cos, final ComplexNumber sin) {
+            return new Rotation.Complex(low, high, cos, sin);
+        }
+
+        public Rotation.Complex makeRotation(final int low, final int high, final double cos, final double sin) {
+            return this.makeRotation(low, high, ComplexNumber.valueOf(cos), ComplexNumber.valueOf(sin));
+        }
+
+        public ComplexSplitStore makeZero(final long rows, final long columns) {
+            return new ComplexSplitStore((int) rows, (int) columns);
+        }
+
+        public ComplexSplitStore rows(final Access1D<?>... source) {
+
+            final int tmpRowDim = source.length;
+            final int tmpColDim = (int) source[0].count();
+
+            final ComplexSplitStore retVal = new ComplexSplitStore(tmpRowDim, tmpColDim);
+
+            for (int i = 0; i < tmpRowDim; i++) {
+                final Access1D<?> tmpRow = source[i];
+                for (int j = 0; j < tmpColDim; j++) {
+                    retVal.put(i + (tmpRowDim * j), tmpRow.get(j));
+                }
+            }
+
+            return retVal;
+        }
+
+        public ComplexSplitStore rows(final double[]... source) {
+
+            final int tmpRowDim = source.length;
+            final int tmpColDim = source[0].length;
+
+            final ComplexSplitStore retVal = new ComplexSplitStore(tmpRowDim, tmpColDim);
+
+            for (int i = 0; i < tmpRowDim; i++) {
+                final double[] tmpRow = source[i];
+                for (int j = 0; j < tmpColDim; j++) {
+                    retVal.real[i + (tmpRowDim * j)] = tmpRow[j];
+                }
+            }
+
+            return retVal;
+        }
+
+        @SuppressWarnings("unchecked")
+        public ComplexSplitStore rows(final List<? extends Number>... source) {
+
+            final int tmpRowDim = source.length;
+            final int tmpColDim = source[0].size();
+
+            final ComplexSplitStore retVal = new ComplexSplitStore(tmpRowDim, tmpColDim);
+
+            for (int i = 0; i < tmpRowDim; i++) {
+                final List<? extends Number> tmpRow = source[i];
+                for (int j = 0; j < tmpColDim; j++) {
+                    retVal.put(i + (tmpRowDim * j), tmpRow.get(j));
+                }
+            }
+
+            return retVal;
+        }
+
+        public ComplexSplitStore rows(final Number[]... source) {
+
+            final int tmpRowDim = source.length;
+            final int tmpColDim = source[0].length;
+
+            final ComplexSplitStore retVal = new ComplexSplitStore(tmpRowDim, tmpColDim);
+
+            for (int i = 0; i < tmpRowDim; i++) {
+                final Number[] tmpRow = source[i];
+                for (int j = 0; j < tmpColDim; j++) {
+                    retVal.put(i + (tmpRowDim * j), tmpRow[j]);
+                }
+            }
+
+            return retVal;
+        }
+
+        public Scalar.Factory<ComplexNumber> scalar() {
+            return ComplexNumber.FACTORY;
+        }
+
+        public ComplexSplitStore transpose(final Access2D<?> source) {
+
+            final int tmpRowDim = (int) source.countColumns();
+            final int tmpColDim = (int) source.countRows();
+
+            final ComplexSplitStore retVal = new ComplexSplitStore(tmpRowDim, tmpColDim);
+
+            if (source instanceof ComplexSplitStore) {
+                final ComplexSplitStore tmpSource = (ComplexSplitStore) source;
+                for (int j = 0; j < tmpColDim; j++) {
+                    for (int i = 0; i < tmpRowDim; i++) {
+                        retVal.real[i + (j * tmpRowDim)] = tmpSource.real[j + (i * tmpColDim)];
+                        retVal.imaginary[i + (j * tmpRowDim)] = tmpSource.imaginary[j + (i * tmpColDim)];
+                    }
+                }
+            } else {
+                for (int j = 0; j < tmpColDim; j++) {
+                    for (int i = 0; i < tmpRowDim; i++) {
+                        retVal.put(i + (j * tmpRowDim), source.get(j, i));
+                    }
+                }
+            }
+
+            return retVal;
+        }
+
+    };
+
+    static ComplexSplitStore cast(final Access1D<?> matrix) {
+        if (matrix instanceof ComplexSplitStore) {
+            return (ComplexSplitStore) matrix;
+        } else if (matrix instanceof Access2D<?>) {
+            return FACTORY.copy((Access2D<?>) matrix);
+        } else {
+            return FACTORY.columns(matrix);
+        }
+    }
+
+    /**
+     * product = left * right, columns [firstColumn, columnLimit) of the product.
+     */
+    static void multiply(final ComplexSplitStore product, final int firstColumn, final int columnLimit, final ComplexSplitStore left, final int complexity,
+            final ComplexSplitStore right) {
+
+        final int tmpRowDim = product.getRowDim();
+
+        final double[] tmpProductRe = product.real;
+        final double[] tmpProductIm = product.imaginary;
+        final double[] tmpLeftRe = left.real;
+        final double[] tmpLeftIm = left.imaginary;
+        final double[] tmpRightRe = right.real;
+        final double[] tmpRightIm = right.imaginary;
+
+        Arrays.fill(tmpProductRe, firstColumn * tmpRowDim, columnLimit * tmpRowDim, ZERO);
+        Arrays.fill(tmpProductIm, firstColumn * tmpRowDim, columnLimit * tmpRowDim, ZERO);
+
+        for (int j = firstColumn; j < columnLimit; j++) {
+            final int tmpProductBase = j * tmpRowDim;
+            for (int c = 0; c < complexity; c++) {
+                final double tmpRe = tmpRightRe[c + (j * complexity)];
+                final double tmpIm = tmpRightIm[c + (j * complexity)];
+                if ((tmpRe != ZERO) || (tmpIm != ZERO)) {
+                    final int tmpLeftBase = c * tmpRowDim;
+                    for (int i = 0; i < tmpRowDim; i++) {
+                        final double tmpLeftValueRe = tmpLeftRe[tmpLeftBase + i];
+                        final double tmpLeftValueIm = tmpLeftIm[tmpLeftBase + i];
+                        tmpProductRe[tmpProductBase + i] += (tmpLeftValueRe * tmpRe) - (tmpLeftValueIm * tmpIm);
+                        tmpProductIm[tmpProductBase + i] += (tmpLeftValueRe * tmpIm) + (tmpLeftValueIm * tmpRe);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies elements [first, limit) of one row (or, transposed and conjugated, of one column) of body to
+     * re/im.
+     */
+    private static void copyRow(final Access2D<ComplexNumber> body, final int row, final int first, final int limit, final boolean conjugated,
+            final double[] re, final double[] im) {
+        if (body instanceof ComplexSplitStore) {
+            final ComplexSplitStore tmpBody = (ComplexSplitStore) body;
+            final int tmpRowDim = tmpBody.getRowDim();
+            for (int j = first; j < limit; j++) {
+                final int tmpIndex = conjugated ? j + (row * tmpRowDim) : row + (j * tmpRowDim);
+                re[j] = tmpBody.real[tmpIndex];
+                im[j] = conjugated ? -tmpBody.imaginary[tmpIndex] : tmpBody.imaginary[tmpIndex];
+            }
+        } else {
+            for (int j = first; j < limit; j++) {
+                final ComplexNumber tmpValue = conjugated ? body.get(j, row) : body.get(row, j);
+                re[j] = tmpValue.getReal();
+                im[j] = conjugated ? -tmpValue.i : tmpValue.i;
+            }
+        }
+    }
+
+    /**
+     * The imaginary parts of the elements, in the same order as {@link #real}.
+     */
+    public final double[] imaginary;
+
+    /**
+     * The real parts of the elements, column by column.
+     */
+    public final double[] real;
+
+    private final ComplexDenseStore.ComplexMultiplyBoth myMultiplyBoth;
+
+    ComplexSplitStore(final int rowsCount, final int columnsCount) {
+        this(rowsCount, columnsCount, new double[rowsCount * columnsCount], new double[rowsCount * columnsCount]);
+    }
+
+    ComplexSplitStore(final int rowsCount, final int columnsCount, final double[] real, final double[] imaginary) {
+
+        super(FACTORY, rowsCount, columnsCount);
+
+        this.real = real;
+        this.imaginary = imaginary;
+
+        myMultiplyBoth = MultiplyBoth.getComplex(rowsCount, columnsCount);
+    }
+
+    public void add(final long row, final long col, final double addend) {
+        real[this.index(row, col)] += addend;
+    }
+
+    public void add(final long row, final long col, final Number addend) {
+        final int tmpIndex = this.index(row, col);
+        if (addend instanceof ComplexNumber) {
+            real[tmpIndex] += ((ComplexNumber) addend).getReal();
+            imaginary[tmpIndex] += ((ComplexNumber) addend).i;
+        } else {
+            real[tmpIndex] += addend.doubleValue();
+        }
+    }
+
+    public List<ComplexNumber> asList() {
+        return new AbstractList<ComplexNumber>() {
+
+            @Override
+            public ComplexNumber get(final int index) {
+                return ComplexNumber.of(real[index], imaginary[index]);
+            }
+
+            @Override
+            public ComplexNumber set(final int index, final ComplexNumber element) {
+                final ComplexNumber retVal = this.get(index);
+                ComplexSplitStore.this.put(index, element);
+                return retVal;
+            }
+
+            @Override
+            public int size() {
+                return real.length;
+            }
+
+        };
+    }
+
+    @Override
+    public double doubleValue(final long index) {
+        return real[(int) index];
+    }
+
+    public double doubleValue(final long row, final long col) {
+        return real[this.index(row, col)];
+    }
+
+    public void exchangeColumns(final long colA, final long colB) {
+        final int tmpRowDim = this.getRowDim();
+        for (int i = 0; i < tmpRowDim; i++) {
+            this.exchange(this.index(i, colA), this.index(i, colB));
+        }
+    }
+
+    public void exchangeRows(final long rowA, final long rowB) {
+        final int tmpColDim = this.getColDim();
+        for (int j = 0; j < tmpColDim; j++) {
+            this.exchange(this.index(rowA, j), this.index(rowB, j));
+        }
+    }
+
+    @Override
+    public void fillAll(final ComplexNumber value) {
+        Arrays.fill(real, value.getReal());
+        Arrays.fill(imaginary, value.i);
+    }
+
+    public void fillByMultiplying(final Access1D<ComplexNumber> left, final Access1D<ComplexNumber> right) {
+
+        final int tmpComplexity = ((int) left.count()) / this.getRowDim();
+        final int tmpColDim = this.getColDim();
+
+        final ComplexSplitStore tmpLeft = ComplexSplitStore.cast(left);
+        final ComplexSplitStore tmpRight = ComplexSplitStore.cast(right);
+
+        if (tmpColDim > MultiplyNeither.THRESHOLD) {
+
+            final DivideAndConquer tmpConquerer = new DivideAndConquer() {
+
+                @Override
+                public void conquer(final int first, final int limit) {
+                    ComplexSplitStore.multiply(ComplexSplitStore.this, first, limit, tmpLeft, tmpComplexity, tmpRight);
+                }
+
+            };
+
+            tmpConquerer.invoke(0, tmpColDim, MultiplyNeither.THRESHOLD);
+
+        } else {
+
+            ComplexSplitStore.multiply(this, 0, tmpColDim, tmpLeft, tmpComplexity, tmpRight);
+        }
+    }
+
+    @Override
+    public void fillMatching(final Access1D<?> values) {
+        final int tmpLimit = (int) Math.min(real.length, values.count());
+        if (values instanceof ComplexSplitStore) {
+            System.arraycopy(((ComplexSplitStore) values).real, 0, real, 0, tmpLimit);
+            System.arraycopy(((ComplexSplitStore) values).imaginary, 0, imaginary, 0, tmpLimit);
+        } else {
+            for (int i = 0; i < tmpLimit; i++) {
+                this.put(i, values.get(i));
+            }
+        }
+    }
+
+    public void fillOne(final long row, final long col, final Access1D<?> values, final long valueIndex) {
+        this.put(this.index(row, col), values.get(valueIndex));
+    }
+
+    public void fillOne(final long row, final long col, final ComplexNumber value) {
+        this.put(this.index(row, col), value);
+    }
+
+    public void fillOne(final long row, final long col, final NullaryFunction<ComplexNumber> supplier) {
+        this.put(this.index(row, col), supplier.get());
+    }
+
+    public ComplexNumber get(final long row, final long col) {
+        final int tmpIndex = this.index(row, col);
+        return ComplexNumber.of(real[tmpIndex], imaginary[tmpIndex]);
+    }
+
+    public double getImaginary(final long row, final long col) {
+        return imaginary[this.index(row, col)];
+    }
+
+    public long indexOfLargestInColumn(final long row, final long col) {
+        return this.indexOfLargest(this.index(row, col), this.index(this.getRowDim(), col), 1) % this.getRowDim();
+    }
+
+    public long indexOfLargestInRange(final long first, final long limit) {
+        return this.indexOfLargest((int) first, (int) limit, 1);
+    }
+
+    public long indexOfLargestInRow(final long row, final long col) {
+        return this.indexOfLargest(this.index(row, col), this.index(row, this.getColDim()), this.getRowDim()) / this.getRowDim();
+    }
+
+    public long indexOfLargestOnDiagonal(final long first) {
+        final int tmpMinDim = this.getMinDim();
+        return this.indexOfLargest(this.index(first, first), this.index(tmpMinDim, tmpMinDim), this.getRowDim() + 1) / this.getRowDim();
+    }
+
+    public void modifyMatching(final Access1D<ComplexNumber> left, final BinaryFunction<ComplexNumber> function) {
+        final int tmpLimit = (int) Math.min(real.length, left.count());
+        for (int i = 0; i < tmpLimit; i++) {
+            this.put(i, function.invoke(left.get(i), ComplexNumber.of(real[i], imaginary[i])));
+        }
+    }
+
+    public void modifyMatching(final BinaryFunction<ComplexNumber> function, final Access1D<ComplexNumber> right) {
+        final int tmpLimit = (int) Math.min(real.length, right.count());
+        for (int i = 0; i < tmpLimit; i++) {
+            this.put(i, function.invoke(ComplexNumber.of(real[i], imaginary[i]), right.get(i)));
+        }
+    }
+
+    public void modifyOne(final long row, final long col, final UnaryFunction<ComplexNumber> modifier) {
+        final int tmpIndex = this.index(row, col);
+        this.put(tmpIndex, modifier.invoke(ComplexNumber.of(real[tmpIndex], imaginary[tmpIndex])));
+    }
+
+    public ElementsConsumer<ComplexNumber> regionByColumns(final int... columns) {
+        return new ColumnsRegion<>(this, myMultiplyBoth, columns);
+    }
+
+    public ElementsConsumer<ComplexNumber> regionByLimits(final int rowLimit, final int columnLimit) {
+        return new LimitRegion<>(this, myMultiplyBoth, rowLimit, columnLimit);
+    }
+
+    public ElementsConsumer<ComplexNumber> regionByOffsets(final int rowOffset, final int columnOffset) {
+        return new OffsetRegion<>(this, myMultiplyBoth, rowOffset, columnOffset);
+    }
+
+    public ElementsConsumer<ComplexNumber> regionByRows(final int... rows) {
+        return new RowsRegion<>(this, myMultiplyBoth, rows);
+    }
+
+    public ElementsConsumer<ComplexNumber> regionByTransposing() {
+        return new TransposedRegion<>(this, myMultiplyBoth);
+    }
+
+    public void set(final long row, final long col, final double value) {
+        final int tmpIndex = this.index(row, col);
+        real[tmpIndex] = value;
+        imaginary[tmpIndex] = ZERO;
+    }
+
+    public void set(final long row, final long col, final double realPart, final double imaginaryPart) {
+        final int tmpIndex = this.index(row, col);
+        real[tmpIndex] = realPart;
+        imaginary[tmpIndex] = imaginaryPart;
+    }
+
+    public void set(final long row, final long col, final Number value) {
+        this.put(this.index(row, col), value);
+    }
+
+    public void substituteBackwards(final Access2D<ComplexNumber> body, final boolean unitDiagonal, final boolean conjugated, final boolean hermitian) {
+
+        final int tmpColDim = this.getColDim();
+
+        if (tmpColDim > SubstituteBackwards.THRESHOLD) {
+
+            final DivideAndConquer tmpConquerer = new DivideAndConquer() {
+
+                @Override
+                public void conquer(final int first, final int limit) {
+                    ComplexSplitStore.this.substituteBackwards(first, limit, body, unitDiagonal, conjugated, hermitian);
+                }
+
+            };
+
+            tmpConquerer.invoke(0, tmpColDim, SubstituteBackwards.THRESHOLD);
+
+        } else {
+
+            this.substituteBackwards(0, tmpColDim, body, unitDiagonal, conjugated, hermitian);
+        }
+    }
+
+    public void substituteForwards(final Access2D<ComplexNumber> body, final boolean unitDiagonal, final boolean conjugated, final boolean identity) {
+
+        final int tmpColDim = this.getColDim();
+
+        if (tmpColDim > SubstituteForwards.THRESHOLD) {
+
+            final DivideAndConquer tmpConquerer = new DivideAndConquer() {
+
+                @Override
+                public void conquer(final int first, final int limit) {
+                    ComplexSplitStore.this.substituteForwards(first, limit, body, unitDiagonal, conjugated, identity);
+                }
+
+            };
+
+            tmpConquerer.invoke(0, tmpColDim, SubstituteForwards.THRESHOLD);
+
+        } else {
+
+            this.substituteForwards(0, tmpColDim, body, unitDiagonal, conjugated, identity);
+        }
+    }
+
+    public void transformLeft(final Householder<ComplexNumber> transformation, final int firstColumn) {
+
+        final Householder.Complex tmpTransf = ComplexDenseStore.cast(transformation);
+
+        final int tmpColDim = this.getColDim();
+
+        if ((tmpColDim - firstColumn) > HouseholderLeft.THRESHOLD) {
+
+            final DivideAndConquer tmpConquerer = new DivideAndConquer() {
+
+                @Override
+                public void conquer(final int first, final int limit) {
+                    ComplexSplitStore.this.transformLeft(first, limit, tmpTransf);
+                }
+
+            };
+
+            tmpConquerer.invoke(firstColumn, tmpColDim, HouseholderLeft.THRESHOLD);
+
+        } else {
+
+            this.transformLeft(firstColumn, tmpColDim, tmpTransf);
+        }
+    }
+
+    public void transformLeft(final Rotation<ComplexNumber> transformation) {
+
+        final Rotation.Complex tmpTransf = ComplexDenseStore.cast(transformation);
+
+        final int tmpLow = tmpTransf.low;
+        final int tmpHigh = tmpTransf.high;
+        final int tmpColDim = this.getColDim();
+
+        if (tmpLow != tmpHigh) {
+            if ((tmpTransf.cos != null) && (tmpTransf.sin != null)) {
+                for (int j = 0; j < tmpColDim; j++) {
+                    this.rotate(this.index(tmpLow, j), this.index(tmpHigh, j), tmpTransf.cos, tmpTransf.sin);
+                }
+            } else {
+                this.exchangeRows(tmpLow, tmpHigh);
+            }
+        } else {
+            for (int j = 0; j < tmpColDim; j++) {
+                this.scale(this.index(tmpLow, j), tmpTransf.cos, tmpTransf.sin);
+            }
+        }
+    }
+
+    public void transformRight(final Householder<ComplexNumber> transformation, final int firstRow) {
+
+        final Householder.Complex tmpTransf = ComplexDenseStore.cast(transformation);
+
+        final int tmpRowDim = this.getRowDim();
+
+        if ((tmpRowDim - firstRow) > HouseholderRight.THRESHOLD) {
+
+            final DivideAndConquer tmpConquerer = new DivideAndConquer() {
+
+                @Override
+                public void conquer(final int first, final int limit) {
+                    ComplexSplitStore.this.transformRight(first, limit, tmpTransf);
+                }
+
+            };
+
+            tmpConquerer.invoke(firstRow, tmpRowDim, HouseholderRight.THRESHOLD);
+
+        } else {
+
+            this.transformRight(firstRow, tmpRowDim, tmpTransf);
+        }
+    }
+
+    public void transformRight(final Rotation<ComplexNumber> transformation) {
+
+        final Rotation.Complex tmpTransf = ComplexDenseStore.cast(transformation);
+
+        final int tmpLow = tmpTransf.low;
+        final int tmpHigh = tmpTransf.high;
+        final int tmpRowDim = this.getRowDim();
+
+        if (tmpLow != tmpHigh) {
+            if ((tmpTransf.cos != null) && (tmpTransf.sin != null)) {
+                // The transpose of the left rotation: [low high] -> [cos*low - sin*high, cos*high + sin*low]
+                for (int i = 0; i < tmpRowDim; i++) {
+                    this.rotate(this.index(i, tmpHigh), this.index(i, tmpLow), tmpTransf.cos, tmpTransf.sin);
+                }
+            } else {
+                this.exchangeColumns(tmpLow, tmpHigh);
+            }
+        } else {
+            for (int i = 0; i < tmpRowDim; i++) {
+                this.scale(this.index(i, tmpHigh), tmpTransf.cos, tmpTransf.sin);
+            }
+        }
+    }
+
+    @Override
+    protected void addNonzerosTo(final ElementsConsumer<ComplexNumber> consumer) {
+        consumer.fillMatching(this);
+    }
+
+    private void exchange(final int indexA, final int indexB) {
+
+        final double tmpRe = real[indexA];
+        real[indexA] = real[indexB];
+        real[indexB] = tmpRe;
+
+        final double tmpIm = imaginary[indexA];
+        imaginary[indexA] = imaginary[indexB];
+        imaginary[indexB] = tmpIm;
+    }
+
+    private int index(final long row, final long col) {
+        return (int) (row + (col * this.getRowDim()));
+    }
+
+    /**
+     * The index, in steps from first, with the largest modulus. Compared squared.
+     */
+    private int indexOfLargest(final int first, final int limit, final int step) {
+        int retVal = first;
+        double tmpLargest = ZERO;
+        for (int i = first; i < limit; i += step) {
+            final double tmpValue = (real[i] * real[i]) + (imaginary[i] * imaginary[i]);
+            if (tmpValue > tmpLargest) {
+                tmpLargest = tmpValue;
+                retVal = i;
+            }
+        }
+        return retVal;
+    }
+
+    private void put(final int index, final Number value) {
+        if (value instanceof ComplexNumber) {
+            real[index] = ((ComplexNumber) value).getReal();
+            imaginary[index] = ((ComplexNumber) value).i;
+        } else {
+            real[index] = value.doubleValue();
+            imaginary[index] = ZERO;
+        }
+    }
+
+    /**
+     * [a, b] -> [cos*a + sin*b, cos*b - sin*a]
+     */
+    private void rotate(final int indexA, final int indexB, final ComplexNumber cos, final ComplexNumber sin) {
+
+        final double tmpCosRe = cos.getReal();
+        final double tmpCosIm = cos.i;
+        final double tmpSinRe = sin.getReal();
+        final double tmpSinIm = sin.i;
+
+        final double tmpARe = real[indexA];
+        final double tmpAIm = imaginary[indexA];
+        final double tmpBRe = real[indexB];
+        final double tmpBIm = imaginary[indexB];
+
+        real[indexA] = ((tmpCosRe * tmpARe) - (tmpCosIm * tmpAIm)) + ((tmpSinRe * tmpBRe) - (tmpSinIm * tmpBIm));
+        imaginary[indexA] = (tmpCosRe * tmpAIm) + (tmpCosIm * tmpARe) + (tmpSinRe * tmpBIm) + (tmpSinIm * tmpBRe);
+        real[indexB] = ((tmpCosRe * tmpBRe) - (tmpCosIm * tmpBIm)) - ((tmpSinRe * tmpARe) - (tmpSinIm * tmpAIm));
+        imaginary[indexB] = ((tmpCosRe * tmpBIm) + (tmpCosIm * tmpBRe)) - ((tmpSinRe * tmpAIm) + (tmpSinIm * tmpARe));
+    }
+
+    /**
+     * Multiplies by cos, or divides by sin, or (both null) negates, as a rotation with low == high does.
+     */
+    private void scale(final int index, final ComplexNumber cos, final ComplexNumber sin) {
+
+        final double tmpRe = real[index];
+        final double tmpIm = imaginary[index];
+
+        if (cos != null) {
+            real[index] = (tmpRe * cos.getReal()) - (tmpIm * cos.i);
+            imaginary[index] = (tmpRe * cos.i) + (tmpIm * cos.getReal());
+        } else if (sin != null) {
+            this.divide(index, tmpRe, tmpIm, sin.getReal(), sin.i);
+        } else {
+            real[index] = -tmpRe;
+            imaginary[index] = -tmpIm;
+        }
+    }
+
+    /**
+     * element[index] = (re + i*im) / (divisorRe + i*divisorIm), scaled as ComplexNumber#divide does
+     */
+    private void divide(final int index, final double re, final double im, final double divisorRe, final double divisorIm) {
+        if (Math.abs(divisorRe) > Math.abs(divisorIm)) {
+            final double r = divisorIm / divisorRe;
+            final double d = divisorRe + (r * divisorIm);
+            real[index] = (re + (r * im)) / d;
+            imaginary[index] = (im - (r * re)) / d;
+        } else {
+            final double r = divisorRe / divisorIm;
+            final double d = divisorIm + (r * divisorRe);
+            real[index] = ((r * re) + im) / d;
+            imaginary[index] = ((r * im) - re) / d;
+        }
+    }
+
+    private void substituteBackwards(final int firstColumn, final int columnLimit, final Access2D<ComplexNumber> body, final boolean unitDiagonal,
+            final boolean conjugated, final boolean hermitian) {
+
+        final int tmpRowDim = this.getRowDim();
+        final int tmpDiagDim = (int) Math.min(body.countRows(), body.countColumns());
+        final double[] tmpBodyRe = new double[tmpDiagDim];
+        final double[] tmpBodyIm = new double[tmpDiagDim];
+
+        final int tmpFirstRow = hermitian ? firstColumn : 0;
+        for (int i = tmpDiagDim - 1; i >= tmpFirstRow; i--) {
+
+            ComplexSplitStore.copyRow(body, i, i, tmpDiagDim, conjugated, tmpBodyRe, tmpBodyIm);
+
+            final int tmpColumnLimit = hermitian ? Math.min(i + 1, columnLimit) : columnLimit;
+            for (int s = firstColumn; s < tmpColumnLimit; s++) {
+                final int tmpColBase = s * tmpRowDim;
+
+                double tmpRe = ZERO;
+                double tmpIm = ZERO;
+                for (int j = i + 1; j < tmpDiagDim; j++) {
+                    final double tmpDataRe = real[j + tmpColBase];
+                    final double tmpDataIm = imaginary[j + tmpColBase];
+                    tmpRe += (tmpBodyRe[j] * tmpDataRe) - (tmpBodyIm[j] * tmpDataIm);
+                    tmpIm += (tmpBodyRe[j] * tmpDataIm) + (tmpBodyIm[j] * tmpDataRe);
+                }
+                tmpRe = real[i + tmpColBase] - tmpRe;
+                tmpIm = imaginary[i + tmpColBase] - tmpIm;
+
+                if (unitDiagonal) {
+                    real[i + tmpColBase] = tmpRe;
+                    imaginary[i + tmpColBase] = tmpIm;
+                } else {
+                    this.divide(i + tmpColBase, tmpRe, tmpIm, tmpBodyRe[i], tmpBodyIm[i]);
+                }
+            }
+        }
+    }
+
+    private void substituteForwards(final int firstColumn, final int columnLimit, final Access2D<ComplexNumber> body, final boolean unitDiagonal,
+            final boolean conjugated, final boolean identity) {
+
+        final int tmpRowDim = this.getRowDim();
+        final int tmpDiagDim = (int) Math.min(body.countRows(), body.countColumns());
+        final double[] tmpBodyRe = new double[tmpDiagDim];
+        final double[] tmpBodyIm = new double[tmpDiagDim];
+
+        for (int i = 0; i < tmpDiagDim; i++) {
+
+            ComplexSplitStore.copyRow(body, i, 0, i + 1, conjugated, tmpBodyRe, tmpBodyIm);
+
+            for (int s = firstColumn; s < columnLimit; s++) {
+                final int tmpColBase = s * tmpRowDim;
+
+                double tmpRe = ZERO;
+                double tmpIm = ZERO;
+                for (int j = identity ? s : 0; j < i; j++) {
+                    final double tmpDataRe = real[j + tmpColBase];
+                    final double tmpDataIm = imaginary[j + tmpColBase];
+                    tmpRe += (tmpBodyRe[j] * tmpDataRe) - (tmpBodyIm[j] * tmpDataIm);
+                    tmpIm += (tmpBodyRe[j] * tmpDataIm) + (tmpBodyIm[j] * tmpDataRe);
+                }
+                if (identity) {
+                    tmpRe = (i == s ? ONE : ZERO) - tmpRe;
+                    tmpIm = -tmpIm;
+                } else {
+                    tmpRe = real[i + tmpColBase] - tmpRe;
+                    tmpIm = imaginary[i + tmpColBase] - tmpIm;
+                }
+
+                if (unitDiagonal) {
+                    real[i + tmpColBase] = tmpRe;
+                    imaginary[i + tmpColBase] = tmpIm;
+                } else {
+                    this.divide(i + tmpColBase, tmpRe, tmpIm, tmpBodyRe[i], tmpBodyIm[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Columns [first, limit): x -= beta * (v<sup>H</sup>x) * v
+     */
+    private void transformLeft(final int first, final int limit, final Householder.Complex householder) {
+
+        final ComplexNumber[] tmpVector = householder.vector;
+        final int tmpFirstNonZero = householder.first;
+        final double tmpBetaRe = householder.beta.getReal();
+        final double tmpBetaIm = householder.beta.i;
+
+        final int tmpRowDim = this.getRowDim();
+
+        for (int j = first; j < limit; j++) {
+            final int tmpColBase = j * tmpRowDim;
+
+            double tmpRe = ZERO;
+            double tmpIm = ZERO;
+            for (int i = tmpFirstNonZero; i < tmpRowDim; i++) {
+                final double tmpVRe = tmpVector[i].getReal();
+                final double tmpVIm = -tmpVector[i].i;
+                final double tmpDataRe = real[i + tmpColBase];
+                final double tmpDataIm = imaginary[i + tmpColBase];
+                tmpRe += (tmpVRe * tmpDataRe) - (tmpVIm * tmpDataIm);
+                tmpIm += (tmpVRe * tmpDataIm) + (tmpVIm * tmpDataRe);
+            }
+            final double tmpScaleRe = (tmpRe * tmpBetaRe) - (tmpIm * tmpBetaIm);
+            final double tmpScaleIm = (tmpRe * tmpBetaIm) + (tmpIm * tmpBetaRe);
+
+            for (int i = tmpFirstNonZero; i < tmpRowDim; i++) {
+                final double tmpVRe = tmpVector[i].getReal();
+                final double tmpVIm = tmpVector[i].i;
+                real[i + tmpColBase] -= (tmpScaleRe * tmpVRe) - (tmpScaleIm * tmpVIm);
+                imaginary[i + tmpColBase] -= (tmpScaleRe * tmpVIm) + (tmpScaleIm * tmpVRe);
+            }
+        }
+    }
+
+    /**
+     * Rows [first, limit): x<sup>H</sup> -= beta * (v<sup>H</sup>x<sup>H</sup>) * v, as HouseholderRight
+     */
+    private void transformRight(final int first, final int limit, final Householder.Complex householder) {
+
+        final ComplexNumber[] tmpVector = householder.vector;
+        final int tmpFirstNonZero = householder.first;
+        final double tmpBetaRe = householder.beta.getReal();
+        final double tmpBetaIm = householder.beta.i;
+
+        final int tmpRowDim = this.getRowDim();
+        final int tmpColDim = this.getColDim();
+
+        for (int i = first; i < limit; i++) {
+
+            // sum of conj(v[j]) * conj(x[i,j])
+            double tmpRe = ZERO;
+            double tmpIm = ZERO;
+            for (int j = tmpFirstNonZero; j < tmpColDim; j++) {
+                final double tmpVRe = tmpVector[j].getReal();
+                final double tmpVIm = tmpVector[j].i;
+                final double tmpDataRe = real[i + (j * tmpRowDim)];
+                final double tmpDataIm = imaginary[i + (j * tmpRowDim)];
+                tmpRe += (tmpVRe * tmpDataRe) - (tmpVIm * tmpDataIm);
+                tmpIm -= (tmpVRe * tmpDataIm) + (tmpVIm * tmpDataRe);
+            }
+            final double tmpScaleRe = (tmpRe * tmpBetaRe) - (tmpIm * tmpBetaIm);
+            final double tmpScaleIm = (tmpRe * tmpBetaIm) + (tmpIm * tmpBetaRe);
+
+            // x[i,j] -= conj(scale * v[j])
+            for (int j = tmpFirstNonZero; j < tmpColDim; j++) {
+                final double tmpVRe = tmpVector[j].getReal();
+                final double tmpVIm = tmpVector[j].i;
+                real[i + (j * tmpRowDim)] -= (tmpScaleRe * tmpVRe) - (tmpScaleIm * tmpVIm);
+                imaginary[i + (j * tmpRowDim)] += (tmpScaleRe * tmpVIm) + (tmpScaleIm * tmpVRe);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,876 @@
+/*
+ * Copyright 1997-2017 Optimatika (www.optimatika.se)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.algo.matrix.store;
+
+import static org.algo.constant.PrimitiveMath.*;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.algo.access.Access1D;
+import org.algo.access.Access2D;
+import org.algo.array.DenseArray;
+import org.algo.array.Primitive32Array;
+import org.algo.array.blas.GEMM;
+import org.algo.concurrent.DivideAndConquer;
+import org.algo.function.BinaryFunction;
+import org.algo.function.FunctionSet;
+import org.algo.function.NullaryFunction;
+import org.algo.function.PrimitiveFunction;
+import org.algo.function.UnaryFunction;
+import org.algo.function.aggregator.AggregatorSet;
+import org.algo.function.aggregator.PrimitiveAggregator;
+import org.algo.matrix.store.PrimitiveDenseStore.PrimitiveMultiplyBoth;
+import org.algo.matrix.store.operation.HouseholderLeft;
+import org.algo.matrix.store.operation.HouseholderRight;
+import org.algo.matrix.store.operation.MultiplyBoth;
+import org.algo.matrix.store.operation.SubstituteBackwards;
+import org.algo.matrix.store.operation.SubstituteForwards;
+import org.algo.matrix.transformation.Householder;
+import org.algo.matrix.transformation.Rotation;
+import org.algo.scalar.PrimitiveScalar;
+import org.algo.scalar.Scalar;
+
+/**
+ * A dense, column-major, matrix of float. For computations where single precision is good enough, such as
+ * Monte Carlo correlation matrices or factor model prototypes, it needs half the memory and bandwidth of
+ * {@link PrimitiveDenseStore}.
+ * <p>
+ * Elements are read and written as double, and rounded to float when stored, so it can be mixed with any
+ * other primitive {@link MatrixStore}. Substitutions and Householder and Givens transformations accumulate in
+ * double precision. Products of two single precision stores are single precision, everything else that
+ * creates a new matrix does so with {@link #physical()} - in double precision. The single precision
+ * decompositions are {@link org.algo.matrix.decomposition.Cholesky#PRIMITIVE_32},
+ * {@link org.algo.matrix.decomposition.LU#PRIMITIVE_32} and {@link org.algo.matrix.decomposition.QR#PRIMITIVE_32}.
+ */
+public final class Primitive32Store extends FactoryStore<Double> implements PhysicalStore<Double> {
+
+    private static final long serialVersionUID = 6392362673945995330L;
+
+    /**
+     * Rounds the elements to float.
+     */
+    public static final PhysicalStore.Factory<Double, Primitive32Store> FACTORY = new PhysicalStore.Factory<Double, Primitive32Store>() {
+
+        public AggregatorSet<Double> aggregator() {
+            return PrimitiveAggregator.getSet();
+        }
+
+        public MatrixStore.Factory<Double> builder() {
+            return MatrixStore.PRIMITIVE;
+        }
+
+        public Primitive32Store columns(final Access1D<?>... source) {
+
+            final int tmpRowDim = (int) source[0].count();
+            final int tmpColDim = source.length;
+
+            final Primitive32Store retVal = new Primitive32Store(tmpRowDim, tmpColDim);
+
+            for (int j = 0; j < tmpColDim; j++) {
+                final Access1D<?> tmpColumn = source[j];
+                for (int i = 0; i < tmpRowDim; i++) {
+                    retVal.data[i + (tmpRowDim * j)] = (float) tmpColumn.doubleValue(i);
+                }
+            }
+
+            return retVal;
+        }
+
+        public Primitive32Store columns(final double[]... source) {
+
+            final int tmpRowDim = source[0].length;
+            final int tmpColDim = source.length;
+
+            final Primitive32Store retVal = new Primitive32Store(tmpRowDim, tmpColDim);
+
+            for (int j = 0; j < tmpColDim; j++) {
+                final double[] tmpColumn = source[j];
+                for (int i = 0; i < tmpRowDim; i++) {
+                    retVal.data[i + (tmpRowDim * j)] = (float) tmpColumn[i];
+                }
+            }
+
+            return retVal;
+        }
+
+        @SuppressWarnings("unchecked")
+        public Primitive32Store columns(final List<? extends Number>... source) {
+
+            final int tmpRowDim = source[0].size();
+            final int tmpColDim = source.length;
+
+            final Primitive32Store retVal = new Primitive32Store(tmpRowDim, tmpColDim);
+
+            for (int j = 0; j < tmpColDim; j++) {
+                final List<? extends Number> tmpColumn = source[j];
+                for (int i = 0; i < tmpRowDim; i++) {
+                    retVal.data[i + (tmpRowDim * j)] = tmpColumn.get(i).floatValue();
+                }
+            }
+
+            return retVal;
+        }
+
+        public Primitive32Store columns(final Number[]... source) {
+
+            final int tmpRowDim = source[0].length;
+            final int tmpColDim = source.length;
+
+            final Primitive32Store retVal = new Primitive32Store(tmpRowDim, tmpColDim);
+
+            for (int j = 0; j < tmpColDim; j++) {
+                final Number[] tmpColumn = source[j];
+                for (int i = 0; i < tmpRowDim; i++) {
+                    retVal.data[i + (tmpRowDim * j)] = tmpColumn[i].floatValue();
+                }
+            }
+
+            return retVal;
+        }
+
+        public Primitive32Store conjugate(final Access2D<?> source) {
+            return this.transpose(source);
+        }
+
+        public Primitive32Store copy(final Access2D<?> source) {
+
+            final int tmpRowDim = (int) source.countRows();
+            final int tmpColDim = (int) source.countColumns();
+
+            final Primitive32Store retVal = new Primitive32Store(tmpRowDim, tmpColDim);
+
+            if (source instanceof Primitive32Store) {
+                System.arraycopy(((Primitive32Store) source).data, 0, retVal.data, 0, retVal.data.length);
+            } else {
+                for (int j = 0; j < tmpColDim; j++) {
+                    for (int i = 0; i < tmpRowDim; i++) {
+                        retVal.data[i + (tmpRowDim * j)] = (float) source.doubleValue(i, j);
+                    }
+                }
+            }
+
+            return retVal;
+        }
+
+        public FunctionSet<Double> function() {
+            return PrimitiveFunction.getSet();
+        }
+
+        public DenseArray<Double> makeArray(final int length) {
+            return Primitive32Array.make(length);
+        }
+
+        public Primitive32Store makeEye(final long rows, final long columns) {
+
+            final Primitive32Store retVal = this.makeZero(rows, columns);
+
+            final int tmpRowDim = (int) rows;
+            final int tmpMinDim = (int) Math.min(rows, columns);
+            for (int ij = 0; ij < tmpMinDim; ij++) {
+                retVal.data[ij + (ij * tmpRowDim)] = 1.0F;
+            }
+
+            return retVal;
+        }
+
+        public Primitive32Store makeFilled(final long rows, final long columns, final NullaryFunction<?> supplier) {
+
+            final Primitive32Store retVal = this.makeZero(rows, columns);
+
+            final float[] tmpData = retVal.data;
+            for (int i = 0; i < tmpData.length; i++) {
+                tmpData[i] = (float) supplier.doubleValue();
+            }
+
+            return retVal;
+        }
+
+        public Householder.Primitive makeHouseholder(final int length) {
+            return new Householder.Primitive(length);
+        }
+
+        public Rotation.Primitive makeRotation(final int low, final int high, final double cos, final double sin) {
+            return new Rotation.Primitive(low, high, cos, sin);
+        }
+
+        public Rotation.Primitive makeRotation(final int low, final int high, final Double cos, final Double sin) {
+            return this.makeRotation(low, high, cos != null ? cos.doubleValue() : Double.NaN, sin != null ? sin.doubleValue() : Double.NaN);
+        }
+
+        public Primitive32Store makeZero(final long rows, final long columns) {
+            return new Primitive32Store((int) rows, (int) columns);
+        }
+
+        public Primitive32Store rows(final Access1D<?>... source) {
+
+            final int tmpRowDim = source.length;
+            final int tmpColDim = (int) source[0].count();
+
+            final Primitive32Store retVal = new Primitive32Store(tmpRowDim, tmpColDim);
+
+            for (int i = 0; i < tmpRowDim; i++) {
+                final Access1D<?> tmpRow = source[i];
+                for (int j = 0; j < tmpColDim; j++) {
+                    retVal.data[i + (tmpRowDim * j)] = (float) tmpRow.doubleValue(j);
+                }
+            }
+
+            return retVal;
+        }
+
+        public Primitive32Store rows(final double[]... source) {
+
+            final int tmpRowDim = source.length;
+            final int tmpColDim = source[0].length;
+
+            final Primitive32Store retVal = new Primitive32Store(tmpRowDim, tmpColDim);
+
+            for (int i = 0; i < tmpRowDim; i++) {
+                final double[] tmpRow = source[i];
+                for (int j = 0; j < tmpColDim; j++) {
+                    retVal.data[i + (tmpRowDim * j)] = (float) tmpRow[j];
+                }
+            }
+
+            return retVal;
+        }
+
+        @SuppressWarnings("unchecked")
+        public Primitive32Store rows(final List<? extends Number>... source) {
+
+            final int tmpRowDim = source.length;
+            final int tmpColDim = source[0].size();
+
+            final Primitive32Store retVal = new Primitive32Store(tmpRowDim, tmpColDim);
+
+            for (int i = 0; i < tmpRowDim; i++) {
+                final List<? extends Number> tmpRow = source[i];
+                for (int j = 0; j < tmpColDim; j++) {
+                    retVal.data[i + (tmpRowDim * j)] = tmpRow.get(j).floatValue();
+                }
+            }
+
+            return retVal;
+        }
+
+        public Primitive32Store rows(final Number[]... source) {
+
+            final int tmpRowDim = source.length;
+            final int tmpColDim = source[0].length;
+
+            final Primitive32Store retVal = new Primitive32Store(tmpRowDim, tmpColDim);
+
+            for (int i = 0; i < tmpRowDim; i++) {
+                final Number[] tmpRow = source[i];
+                for (int j = 0; j < tmpColDim; j++) {
+                    retVal.data[i + (tmpRowDim * j)] = tmpRow[j].floatValue();
+                }
+            }
+
+            return retVal;
+        }
+
+        public Scalar.Factory<Double> scalar() {
+            return PrimitiveScalar.FACTORY;
+        }
+
+        public Primitive32Store transpose(final Access2D<?> source) {
+
+            final int tmpRowDim = (int) source.countColumns();
+            final int tmpColDim = (int) source.countRows();
+
+            final Primitive32Store retVal = new Primitive32Store(tmpRowDim, tmpColDim);
+
+            for (int j = 0; j < tmpColDim; j++) {
+                for (int i = 0; i < tmpRowDim; i++) {
+                    retVal.data[i + (j * tmpRowDim)] = (float) source.doubleValue(j, i);
+                }
+            }
+
+            return retVal;
+        }
+
+    };
+
+    /**
+     * product = left * right, product.length / rowDim columns, overwriting product.
+     */
+    private static void multiply(final float[] product, final int rowDim, final float[] left, final int complexity, final float[] right) {
+
+        final int tmpColDim = complexity != 0 ? right.length / complexity : 0;
+
+        if ((complexity > GEMM.THRESHOLD) && (tmpColDim > GEMM.THRESHOLD)) {
+            GEMM.invoke(product, left, complexity, right);
+            return;
+        }
+
+        Arrays.fill(product, 0.0F);
+
+        for (int j = 0; j < tmpColDim; j++) {
+            final int tmpProductBase = j * rowDim;
+            for (int c = 0; c < complexity; c++) {
+                final float tmpRightValue = right[c + (j * complexity)];
+                if (tmpRightValue != 0.0F) {
+                    final int tmpLeftBase = c * rowDim;
+                    for (int i = 0; i < rowDim; i++) {
+                        product[tmpProductBase + i] += left[tmpLeftBase + i] * tmpRightValue;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The elements, column by column. The same array as that of {@link #asArray1D()}.
+     */
+    public final float[] data;
+
+    private final Primitive32Array myElements;
+    private final PrimitiveMultiplyBoth myMultiplyBoth;
+
+    Primitive32Store(final int rowsCount, final int columnsCount) {
+
+        super(PrimitiveDenseStore.FACTORY, rowsCount, columnsCount);
+
+        myElements = Primitive32Array.make(rowsCount * columnsCount);
+        data = myElements.data;
+
+        myMultiplyBoth = MultiplyBoth.getPrimitive(rowsCount, columnsCount);
+    }
+
+    public void add(final long row, final long col, final double addend) {
+        data[this.index(row, col)] += addend;
+    }
+
+    public void add(final long row, final long col, final Number addend) {
+        this.add(row, col, addend.doubleValue());
+    }
+
+    /**
+     * The elements as a one-dimensional array, column by column. Not a copy, modifying it modifies this
+     * store.
+     */
+    public Primitive32Array asArray1D() {
+        return myElements;
+    }
+
+    public List<Double> asList() {
+        return new AbstractList<Double>() {
+
+            @Override
+            public Double get(final int index) {
+                return (double) data[index];
+            }
+
+            @Override
+            public Double set(final int index, final Double element) {
+                final Double retVal = this.get(index);
+                data[index] = element.floatValue();
+                return retVal;
+            }
+
+            @Override
+            public int size() {
+                return data.length;
+            }
+
+        };
+    }
+
+    @Override
+    public double doubleValue(final long index) {
+        return data[(int) index];
+    }
+
+    public double doubleValue(final long row, final long col) {
+        return data[this.index(row, col)];
+    }
+
+    public void exchangeColumns(final long colA, final long colB) {
+        final int tmpRowDim = this.getRowDim();
+        for (int i = 0; i < tmpRowDim; i++) {
+            this.exchange(this.index(i, colA), this.index(i, colB));
+        }
+    }
+
+    public void exchangeRows(final long rowA, final long rowB) {
+        final int tmpColDim = this.getColDim();
+        for (int j = 0; j < tmpColDim; j++) {
+            this.exchange(this.index(rowA, j), this.index(rowB, j));
+        }
+    }
+
+    @Override
+    public void fillAll(final Double value) {
+        Arrays.fill(data, value.floatValue());
+    }
+
+    /**
+     * In single precision if both left and right are single precision stores, otherwise in double precision
+     * and then rounded.
+     */
+    public void fillByMultiplying(final Access1D<Double> left, final Access1D<Double> right) {
+
+        final int tmpComplexity = ((int) left.count()) / this.getRowDim();
+
+        if ((left instanceof Primitive32Store) && (right instanceof Primitive32Store)) {
+            Primitive32Store.multiply(data, this.getRowDim(), ((Primitive32Store) left).data, tmpComplexity, ((Primitive32Store) right).data);
+        } else {
+            myMultiplyBoth.invoke(this, left, tmpComplexity, right);
+        }
+    }
+
+    /**
+     * Rounds the elements to float, in the column-major order of this store.
+     */
+    @Override
+    public void fillMatching(final Access1D<?> values) {
+        myElements.fillMatching(values);
+    }
+
+    public void fillOne(final long row, final long col, final Access1D<?> values, final long valueIndex) {
+        data[this.index(row, col)] = (float) values.doubleValue(valueIndex);
+    }
+
+    public void fillOne(final long row, final long col, final Double value) {
+        data[this.index(row, col)] = value.floatValue();
+    }
+
+    public void fillOne(final long row, final long col, final NullaryFunction<Double> supplier) {
+        data[this.index(row, col)] = (float) supplier.doubleValue();
+    }
+
+    public Double get(final long row, final long col) {
+        return this.doubleValue(row, col);
+    }
+
+    public long indexOfLargestInColumn(final long row, final long col) {
+        return this.indexOfLargest(this.index(row, col), this.index(this.getRowDim(), col), 1) % this.getRowDim();
+    }
+
+    public long indexOfLargestInRange(final long first, final long limit) {
+        return this.indexOfLargest((int) first, (int) limit, 1);
+    }
+
+    public long indexOfLargestInRow(final long row, final long col) {
+        return this.indexOfLargest(this.index(row, col), this.index(row, this.getColDim()), this.getRowDim()) / this.getRowDim();
+    }
+
+    public long indexOfLargestOnDiagonal(final long first) {
+        final int tmpMinDim = this.getMinDim();
+        return this.indexOfLargest(this.index(first, first), this.index(tmpMinDim, tmpMinDim), this.getRowDim() + 1) / this.getRowDim();
+    }
+
+    public void modifyMatching(final Access1D<Double> left, final BinaryFunction<Double> function) {
+        final int tmpLimit = (int) Math.min(data.length, left.count());
+        for (int i = 0; i < tmpLimit; i++) {
+            data[i] = (float) function.invoke(left.doubleValue(i), data[i]);
+        }
+    }
+
+    public void modifyMatching(final BinaryFunction<Double> function, final Access1D<Double> right) {
+        final int tmpLimit = (int) Math.min(data.length, right.count());
+        for (int i = 0; i < tmpLimit; i++) {
+            data[i] = (float) function.invoke(data[i], right.doubleValue(i));
+        }
+    }
+
+    public void modifyOne(final long row, final long col, final UnaryFunction<Double> modifier) {
+        final int tmpIndex = this.index(row, col);
+        data[tmpIndex] = (float) modifier.invoke(data[tmpIndex]);
+    }
+
+    @Override
+    public MatrixStore<Double> multiply(final MatrixStore<Double> right) {
+        if (right instanceof Primitive32Store) {
+            return this.multiply((Primitive32Store) right);
+        } else {
+            return super.multiply(right);
+        }
+    }
+
+    /**
+     * The product in single precision.
+     */
+    public Primitive32Store multiply(final Primitive32Store right) {
+
+        final int tmpComplexity = this.getColDim();
+
+        if (right.getRowDim() != tmpComplexity) {
+            throw new IllegalArgumentException(this.getRowDim() + "x" + tmpComplexity + " * " + right.getRowDim() + "x" + right.getColDim());
+        }
+
+        final Primitive32Store retVal = new Primitive32Store(this.getRowDim(), right.getColDim());
+
+        Primitive32Store.multiply(retVal.data, this.getRowDim(), data, tmpComplexity, right.data);
+
+        return retVal;
+    }
+
+    public ElementsConsumer<Double> regionByColumns(final int... columns) {
+        return new ColumnsRegion<>(this, myMultiplyBoth, columns);
+    }
+
+    public ElementsConsumer<Double> regionByLimits(final int rowLimit, final int columnLimit) {
+        return new LimitRegion<>(this, myMultiplyBoth, rowLimit, columnLimit);
+    }
+
+    public ElementsConsumer<Double> regionByOffsets(final int rowOffset, final int columnOffset) {
+        return new OffsetRegion<>(this, myMultiplyBoth, rowOffset, columnOffset);
+    }
+
+    public ElementsConsumer<Double> regionByRows(final int... rows) {
+        return new RowsRegion<>(this, myMultiplyBoth, rows);
+    }
+
+    public ElementsConsumer<Double> regionByTransposing() {
+        return new TransposedRegion<>(this, myMultiplyBoth);
+    }
+
+    public void set(final long row, final long col, final double value) {
+        data[this.index(row, col)] = (float) value;
+    }
+
+    public void set(final long row, final long col, final Number value) {
+        data[this.index(row, col)] = value.floatValue();
+    }
+
+    public void substituteBackwards(final Access2D<Double> body, final boolean unitDiagonal, final boolean conjugated, final boolean hermitian) {
+
+        final int tmpColDim = this.getColDim();
+
+        if (tmpColDim > SubstituteBackwards.THRESHOLD) {
+
+            final DivideAndConquer tmpConquerer = new DivideAndConquer() {
+
+                @Override
+                public void conquer(final int first, final int limit) {
+                    Primitive32Store.this.substituteBackwards(first, limit, body, unitDiagonal, conjugated, hermitian);
+                }
+
+            };
+
+            tmpConquerer.invoke(0, tmpColDim, SubstituteBackwards.THRESHOLD);
+
+        } else {
+
+            this.substituteBackwards(0, tmpColDim, body, unitDiagonal, conjugated, hermitian);
+        }
+    }
+
+    public void substituteForwards(final Access2D<Double> body, final boolean unitDiagonal, final boolean conjugated, final boolean identity) {
+
+        final int tmpColDim = this.getColDim();
+
+        if (tmpColDim > SubstituteForwards.THRESHOLD) {
+
+            final DivideAndConquer tmpConquerer = new DivideAndConquer() {
+
+                @Override
+                public void conquer(final int first, final int limit) {
+                    Primitive32Store.this.substituteForwards(first, limit, body, unitDiagonal, conjugated, identity);
+                }
+
+            };
+
+            tmpConquerer.invoke(0, tmpColDim, SubstituteForwards.THRESHOLD);
+
+        } else {
+
+            this.substituteForwards(0, tmpColDim, body, unitDiagonal, conjugated, identity);
+        }
+    }
+
+    public void transformLeft(final Householder<Double> transformation, final int firstColumn) {
+
+        final Householder.Primitive tmpTransf = PrimitiveDenseStore.cast(transformation);
+
+        final int tmpColDim = this.getColDim();
+
+        if ((tmpColDim - firstColumn) > HouseholderLeft.THRESHOLD) {
+
+            final DivideAndConquer tmpConquerer = new DivideAndConquer() {
+
+                @Override
+                public void conquer(final int first, final int limit) {
+                    Primitive32Store.this.transformLeft(first, limit, tmpTransf);
+                }
+
+            };
+
+            tmpConquerer.invoke(firstColumn, tmpColDim, HouseholderLeft.THRESHOLD);
+
+        } else {
+
+            this.transformLeft(firstColumn, tmpColDim, tmpTransf);
+        }
+    }
+
+    public void transformLeft(final Rotation<Double> transformation) {
+
+        final Rotation.Primitive tmpTransf = PrimitiveDenseStore.cast(transformation);
+
+        final int tmpLow = tmpTransf.low;
+        final int tmpHigh = tmpTransf.high;
+        final int tmpColDim = this.getColDim();
+
+        if (tmpLow != tmpHigh) {
+            if (!Double.isNaN(tmpTransf.cos) && !Double.isNaN(tmpTransf.sin)) {
+                for (int j = 0; j < tmpColDim; j++) {
+                    this.rotate(this.index(tmpLow, j), this.index(tmpHigh, j), tmpTransf.cos, tmpTransf.sin);
+                }
+            } else {
+                this.exchangeRows(tmpLow, tmpHigh);
+            }
+        } else {
+            for (int j = 0; j < tmpColDim; j++) {
+                this.scale(this.index(tmpLow, j), tmpTransf.cos, tmpTransf.sin);
+            }
+        }
+    }
+
+    public void transformRight(final Householder<Double> transformation, final int firstRow) {
+
+        final Householder.Primitive tmpTransf = PrimitiveDenseStore.cast(transformation);
+
+        final int tmpRowDim = this.getRowDim();
+
+        if ((tmpRowDim - firstRow) > HouseholderRight.THRESHOLD) {
+
+            final DivideAndConquer tmpConquerer = new DivideAndConquer() {
+
+                @Override
+                public void conquer(final int first, final int limit) {
+                    Primitive32Store.this.transformRight(first, limit, tmpTransf);
+                }
+
+            };
+
+            tmpConquerer.invoke(firstRow, tmpRowDim, HouseholderRight.THRESHOLD);
+
+        } else {
+
+            this.transformRight(firstRow, tmpRowDim, tmpTransf);
+        }
+    }
+
+    public void transformRight(final Rotation<Double> transformation) {
+
+        final Rotation.Primitive tmpTransf = PrimitiveDenseStore.cast(transformation);
+
+        final int tmpLow = tmpTransf.low;
+        final int tmpHigh = tmpTransf.high;
+        final int tmpRowDim = this.getRowDim();
+
+        if (tmpLow != tmpHigh) {
+            if (!Double.isNaN(tmpTransf.cos) && !Double.isNaN(tmpTransf.sin)) {
+                // As RotateRight: [low high] -> [cos*low - sin*high, cos*high + sin*low]
+                for (int i = 0; i < tmpRowDim; i++) {
+                    this.rotate(this.index(i, tmpHigh), this.index(i, tmpLow), tmpTransf.cos, tmpTransf.sin);
+                }
+            } else {
+                this.exchangeColumns(tmpLow, tmpHigh);
+            }
+        } else {
+            for (int i = 0; i < tmpRowDim; i++) {
+                this.scale(this.index(i, tmpHigh), tmpTransf.cos, tmpTransf.sin);
+            }
+        }
+    }
+
+    @Override
+    protected void addNonzerosTo(final ElementsConsumer<Double> consumer) {
+        consumer.fillMatching(this);
+    }
+
+    private void exchange(final int indexA, final int indexB) {
+        final float tmpValue = data[indexA];
+        data[indexA] = data[indexB];
+        data[indexB] = tmpValue;
+    }
+
+    private int index(final long row, final long col) {
+        return (int) (row + (col * this.getRowDim()));
+    }
+
+    /**
+     * The index, in steps from first, with the largest absolute value.
+     */
+    private int indexOfLargest(final int first, final int limit, final int step) {
+        int retVal = first;
+        float tmpLargest = 0.0F;
+        for (int i = first; i < limit; i += step) {
+            final float tmpValue = Math.abs(data[i]);
+            if (tmpValue > tmpLargest) {
+                tmpLargest = tmpValue;
+                retVal = i;
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * [a, b] -> [cos*a + sin*b, cos*b - sin*a]
+     */
+    private void rotate(final int indexA, final int indexB, final double cos, final double sin) {
+
+        final double tmpA = data[indexA];
+        final double tmpB = data[indexB];
+
+        data[indexA] = (float) ((cos * tmpA) + (sin * tmpB));
+        data[indexB] = (float) ((cos * tmpB) - (sin * tmpA));
+    }
+
+    /**
+     * Multiplies by cos, or divides by sin, or (both NaN) negates, as a rotation with low == high does.
+     */
+    private void scale(final int index, final double cos, final double sin) {
+        if (!Double.isNaN(cos)) {
+            data[index] = (float) (data[index] * cos);
+        } else if (!Double.isNaN(sin)) {
+            data[index] = (float) (data[index] / sin);
+        } else {
+            data[index] = -data[index];
+        }
+    }
+
+    private void substituteBackwards(final int firstColumn, final int columnLimit, final Access2D<Double> body, final boolean unitDiagonal,
+            final boolean conjugated, final boolean hermitian) {
+
+        final int tmpRowDim = this.getRowDim();
+        final int tmpDiagDim = (int) Math.min(body.countRows(), body.countColumns());
+        final double[] tmpBodyRow = new double[tmpDiagDim];
+
+        final int tmpFirstRow = hermitian ? firstColumn : 0;
+        for (int i = tmpDiagDim - 1; i >= tmpFirstRow; i--) {
+
+            for (int j = i; j < tmpDiagDim; j++) {
+                tmpBodyRow[j] = conjugated ? body.doubleValue(j, i) : body.doubleValue(i, j);
+            }
+
+            final int tmpColumnLimit = hermitian ? Math.min(i + 1, columnLimit) : columnLimit;
+            for (int s = firstColumn; s < tmpColumnLimit; s++) {
+                final int tmpColBase = s * tmpRowDim;
+
+                double tmpVal = ZERO;
+                for (int j = i + 1; j < tmpDiagDim; j++) {
+                    tmpVal += tmpBodyRow[j] * data[j + tmpColBase];
+                }
+                tmpVal = data[i + tmpColBase] - tmpVal;
+                if (!unitDiagonal) {
+                    tmpVal /= tmpBodyRow[i];
+                }
+
+                data[i + tmpColBase] = (float) tmpVal;
+            }
+        }
+    }
+
+    private void substituteForwards(final int firstColumn, final int columnLimit, final Access2D<Double> body, final boolean unitDiagonal,
+            final boolean conjugated, final boolean identity) {
+
+        final int tmpRowDim = this.getRowDim();
+        final int tmpDiagDim = (int) Math.min(body.countRows(), body.countColumns());
+        final double[] tmpBodyRow = new double[tmpDiagDim];
+
+        for (int i = 0; i < tmpDiagDim; i++) {
+
+            for (int j = 0; j <= i; j++) {
+                tmpBodyRow[j] = conjugated ? body.doubleValue(j, i) : body.doubleValue(i, j);
+            }
+
+            for (int s = firstColumn; s < columnLimit; s++) {
+                final int tmpColBase = s * tmpRowDim;
+
+                double tmpVal = ZERO;
+                for (int j = identity ? s : 0; j < i; j++) {
+                    tmpVal += tmpBodyRow[j] * data[j + tmpColBase];
+                }
+                if (identity) {
+                    tmpVal = i == s ? ONE - tmpVal : -tmpVal;
+                } else {
+                    tmpVal = data[i + tmpColBase] - tmpVal;
+                }
+                if (!unitDiagonal) {
+                    tmpVal /= tmpBodyRow[i];
+                }
+
+                data[i + tmpColBase] = (float) tmpVal;
+            }
+        }
+    }
+
+    /**
+     * Columns [first, limit): x -= beta * (v<sup>T</sup>x) * v
+     */
+    private void transformLeft(final int first, final int limit, final Householder.Primitive householder) {
+
+        final double[] tmpVector = householder.vector;
+        final int tmpFirstNonZero = householder.first;
+        final double tmpBeta = householder.beta;
+
+        final int tmpRowDim = this.getRowDim();
+
+        for (int j = first; j < limit; j++) {
+            final int tmpColBase = j * tmpRowDim;
+
+            double tmpScale = ZERO;
+            for (int i = tmpFirstNonZero; i < tmpRowDim; i++) {
+                tmpScale += tmpVector[i] * data[i + tmpColBase];
+            }
+            tmpScale *= tmpBeta;
+
+            for (int i = tmpFirstNonZero; i < tmpRowDim; i++) {
+                data[i + tmpColBase] = (float) (data[i + tmpColBase] - (tmpScale * tmpVector[i]));
+            }
+        }
+    }
+
+    /**
+     * Rows [first, limit): x<sup>T</sup> -= beta * (v<sup>T</sup>x<sup>T</sup>) * v
+     */
+    private void transformRight(final int first, final int limit, final Householder.Primitive householder) {
+
+        final double[] tmpVector = householder.vector;
+        final int tmpFirstNonZero = householder.first;
+        final double tmpBeta = householder.beta;
+
+        final int tmpRowDim = this.getRowDim();
+        final int tmpColDim = this.getColDim();
+
+        for (int i = first; i < limit; i++) {
+
+            double tmpScale = ZERO;
+            for (int j = tmpFirstNonZero; j < tmpColDim; j++) {
+                tmpScale += tmpVector[j] * data[i + (j * tmpRowDim)];
+            }
+            tmpScale *= tmpBeta;
+
+            for (int j = tmpFirstNonZero; j < tmpColDim; j++) {
+                data[i + (j * tmpRowDim)] = (float) (data[i + (j * tmpRowDim)] - (tmpScale * tmpVector[j]));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 1997-2017 Optimatika (www.optimatika.se)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.algo.matrix.store.operation;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.algo.OjAlgoUtils;
+import org.algo.ProgrammingError;
+import org.algo.array.blas.SYRK;
+import org.algo.concurrent.DaemonPoolExecutor;
+import org.algo.concurrent.DivideAndConquer;
+
+/**
+ * Right-looking blocked Cholesky factorisation, [A] = [L][L]<sup>T</sup>, in place in the lower triangle of
+ * a square column-major array. The upper triangle is not referenced.
+ * <p>
+ * The columns are factorised in panels of THRESHOLD columns. After each panel the trailing matrix is updated
+ * with {@linkplain SYRK}, in parallel over ranges of columns with the same amount of work each. The next
+ * panel is updated first and then factorised in a separate task while the rest of the trailing matrix is
+ * updated (a look-ahead of one panel).
+ */
+public final class BlockCholesky extends MatrixOperation {
+
+    public static final BlockCholesky SETUP = new BlockCholesky();
+
+    /**
+     * The panel width. Matrices that are not larger than two panels are better factorised column by column.
+     */
+    public static int THRESHOLD = 128;
+
+    /**
+     * @param data Square, column-major, array
+     * @param structure The number of rows (and columns)
+     * @return The number of columns factorised - structure if the matrix is positive definite, otherwise the
+     *         column with the first pivot that is not positive (its diagonal element is then left updated but
+     *         not factorised).
+     */
+    public static int invoke(final double[] data, final int structure) {
+
+        final boolean tmpParallel = OjAlgoUtils.ENVIRONMENT.threads > 1;
+
+        int tmpPanel = 0;
+        int tmpWidth = Math.min(THRESHOLD, structure);
+        int retVal = BlockCholesky.panel(data, structure, tmpPanel, tmpWidth);
+
+        while ((retVal == (tmpPanel + tmpWidth)) && (retVal < structure)) {
+
+            final int tmpNext = tmpPanel + tmpWidth;
+            final int tmpNextWidth = Math.min(THRESHOLD, structure - tmpNext);
+            final int tmpRest = tmpNext + tmpNextWidth;
+
+            SYRK.invoke(data, structure, tmpPanel, tmpWidth, tmpNext, tmpRest);
+
+            if (tmpParallel && (tmpRest < structure)) {
+
+                final Future<Integer> tmpFactorised = DaemonPoolExecutor.invoke(() -> BlockCholesky.panel(data, structure, tmpNext, tmpNextWidth));
+
+                BlockCholesky.update(data, structure, tmpPanel, tmpWidth, tmpRest);
+
+                try {
+                    retVal = tmpFactorised.get();
+                } catch (final InterruptedException | ExecutionException exception) {
+                    throw new ProgrammingError(exception);
+                }
+
+            } else {
+
+                BlockCholesky.update(data, structure, tmpPanel, tmpWidth, tmpRest);
+
+                retVal = BlockCholesky.panel(data, structure, tmpNext, tmpNextWidth);
+            }
+
+            tmpPanel = tmpNext;
+            tmpWidth = tmpNextWidth;
+        }
+
+        return retVal;
+    }
+
+    /**
+     * The column of [first, limit) where the work, of updating the lower triangle of the columns to the
+     * left of it, is the given fraction of the total.
+     */
+    static int column(final int first, final int limit, final double fraction) {
+        final double tmpCount = limit - first;
+        return limit - (int) Math.round(Math.sqrt((1.0 - fraction) * tmpCount * tmpCount));
+    }
+
+    /**
+     * Factorises the columns [first, first + count), all rows below the diagonal, that must already be
+     * updated with all columns to the left of them.
+     *
+     * @return first + count or the column with the first pivot that is not positive
+     */
+    static int panel(final double[] data, final int structure, final int first, final int count) {
+
+        final int tmpLimit = first + count;
+
+        for (int j = first; j < tmpLimit; j++) {
+
+            final int tmpColumn = j * structure;
+
+            final double tmpPivot = data[j + tmpColumn];
+            if (!(tmpPivot > 0.0)) {
+                return j;
+            }
+            final double tmpDiagonal = Math.sqrt(tmpPivot);
+            data[j + tmpColumn] = tmpDiagonal;
+
+            for (int i = j + 1; i < structure; i++) {
+                data[i + tmpColumn] /= tmpDiagonal;
+            }
+
+            for (int k = j + 1; k < tmpLimit; k++) {
+                final double tmpMultiplier = data[k + tmpColumn];
+                if (tmpMultiplier != 0.0) {
+                    final int tmpOther = k * structure;
+                    for (int i = k; i < structure; i++) {
+                        data[i + tmpOther] -= data[i + tmpColumn] * tmpMultiplier;
+                    }
+                }
+            }
+        }
+
+        return tmpLimit;
+    }
+
+    /**
+     * Updates the columns [first, structure) with the panel, in parallel.
+     */
+    static void update(final double[] data, final int structure, final int panelColumn, final int panelWidth, final int first) {
+
+        final int tmpCount = structure - first;
+
+        if (tmpCount > THRESHOLD) {
+
+            // Conquered in ranges of a virtual index proportional to the work, not the columns
+            final DivideAndConquer tmpConquerer = new DivideAndConquer() {
+
+                @Override
+                public void conquer(final int firstVirtual, final int limitVirtual) {
+                    final int tmpFirst = BlockCholesky.column(first, structure, (double) firstVirtual / tmpCount);
+                    final int tmpLimit = BlockCholesky.column(first, structure, (double) limitVirtual / tmpCount);
+                    SYRK.invoke(data, structure, panelColumn, panelWidth, tmpFirst, tmpLimit);
+                }
+
+            };
+
+            tmpConquerer.invoke(0, tmpCount, THRESHOLD);
+
+        } else {
+
+            SYRK.invoke(data, structure, panelColumn, panelWidth, first, structure);
+        }
+    }
+
+    private BlockCholesky() {
+        super();
+    }
+
+    @Override
+    public int threshold() {
+        return THRESHOLD;
+    }
+
+}
@@ -24,12 +24,14 @@ package org.algo.matrix.store.operation;
 import java.math.BigDecimal;
 
 import org.algo.access.Access1D;
+import org.algo.array.blas.GEMM;
 import org.algo.concurrent.DivideAndConquer;
 import org.algo.constant.BigMath;
 import org.algo.constant.PrimitiveMath;
 import org.algo.function.BigFunction;
 import org.algo.matrix.MatrixUtils;
 import org.algo.matrix.store.ElementsConsumer;
+import org.algo.matrix.store.PrimitiveDenseStore;
 import org.algo.matrix.store.BigDenseStore.BigMultiplyBoth;
 import org.algo.matrix.store.ComplexDenseStore.ComplexMultiplyBoth;
 import org.algo.matrix.store.PrimitiveDenseStore.PrimitiveMultiplyBoth;
@@ -577,6 +579,11 @@ public final class MultiplyBoth extends MatrixOperation {
 
     static final PrimitiveMultiplyBoth PRIMITIVE_MT = (product, left, complexity, right) -> {
 
+        if ((complexity > GEMM.THRESHOLD) && ((right.count() / complexity) > GEMM.THRESHOLD)) {
+            MultiplyBoth.invokeBlocked(product, left, complexity, right);
+            return;
+        }
+
         final DivideAndConquer tmpConquerer = new DivideAndConquer() {
 
             @Override
@@ -704,6 +711,32 @@ public final class MultiplyBoth extends MatrixOperation {
         }
     }
 
+    /**
+     * Dense products are computed in place, anything else (regions) via a temporary array.
+     */
+    static void invokeBlocked(final ElementsConsumer<Double> product, final Access1D<Double> left, final int complexity, final Access1D<Double> right) {
+
+        if (product instanceof PrimitiveDenseStore) {
+
+            GEMM.invoke(((PrimitiveDenseStore) product).data, left, complexity, right);
+
+        } else {
+
+            final int tmpRowDim = (int) product.countRows();
+            final int tmpColDim = (int) product.countColumns();
+
+            final double[] tmpProduct = new double[tmpRowDim * tmpColDim];
+            GEMM.invoke(tmpProduct, left, complexity, right);
+
+            int tmpIndex = 0;
+            for (int j = 0; j < tmpColDim; j++) {
+                for (int i = 0; i < tmpRowDim; i++) {
+                    product.set(i, j, tmpProduct[tmpIndex++]);
+                }
+            }
+        }
+    }
+
     static void invokePrimitive(final ElementsConsumer<Double> product, final int firstRow, final int rowLimit, final Access1D<Double> left,
             final int complexity, final Access1D<Double> right) {
 
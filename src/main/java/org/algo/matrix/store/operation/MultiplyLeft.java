@@ -25,6 +25,7 @@ import java.math.BigDecimal;
 
 import org.algo.access.Access1D;
 import org.algo.array.blas.DOT;
+import org.algo.array.blas.GEMM;
 import org.algo.concurrent.DivideAndConquer;
 import org.algo.constant.PrimitiveMath;
 import org.algo.matrix.MatrixUtils;
@@ -568,6 +569,11 @@ public final class MultiplyLeft extends MatrixOperation {
 
     static final PrimitiveMultiplyLeft PRIMITIVE_MT = (product, left, complexity, right) -> {
 
+        if ((complexity > GEMM.THRESHOLD) && ((right.length / complexity) > GEMM.THRESHOLD)) {
+            GEMM.invoke(product, left, complexity, right);
+            return;
+        }
+
         final DivideAndConquer tmpConquerer = new DivideAndConquer() {
 
             @Override
@@ -24,6 +24,7 @@ package org.algo.matrix.store.operation;
 import java.math.BigDecimal;
 
 import org.algo.array.blas.DOT;
+import org.algo.array.blas.GEMM;
 import org.algo.concurrent.DivideAndConquer;
 import org.algo.constant.PrimitiveMath;
 import org.algo.matrix.store.BigDenseStore.BigMultiplyNeither;
@@ -566,6 +567,11 @@ public final class MultiplyNeither extends MatrixOperation {
 
     static final PrimitiveMultiplyNeither PRIMITIVE_MT = (product, left, complexity, right) -> {
 
+        if ((complexity > GEMM.THRESHOLD) && ((right.length / complexity) > GEMM.THRESHOLD)) {
+            GEMM.invoke(product, left, complexity, right);
+            return;
+        }
+
         final DivideAndConquer tmpConquerer = new DivideAndConquer() {
 
             @Override
@@ -25,6 +25,7 @@ import java.math.BigDecimal;
 
 import org.algo.access.Access1D;
 import org.algo.array.blas.AXPY;
+import org.algo.array.blas.GEMM;
 import org.algo.concurrent.DivideAndConquer;
 import org.algo.constant.BigMath;
 import org.algo.constant.PrimitiveMath;
@@ -569,6 +570,11 @@ public final class MultiplyRight extends MatrixOperation {
 
     static final PrimitiveMultiplyRight PRIMITIVE_MT = (product, left, complexity, right) -> {
 
+        if ((complexity > GEMM.THRESHOLD) && ((right.count() / complexity) > GEMM.THRESHOLD)) {
+            GEMM.invoke(product, left, complexity, right);
+            return;
+        }
+
         final DivideAndConquer tmpConquerer = new DivideAndConquer() {
 
             @Override
@@ -57,6 +57,22 @@ public final class ResourceLocator {
         return myQueryParameters.put(aKey, aValue);
     }
 
+    /**
+     * A new locator with the same scheme, host, port, path and (a copy of the) query parameters.
+     */
+    public ResourceLocator copy() {
+
+        final ResourceLocator retVal = new ResourceLocator();
+
+        retVal.setScheme(myScheme);
+        retVal.setHost(myHost);
+        retVal.setPort(myPort);
+        retVal.setPath(myPath);
+        retVal.setQueryParameters(new TreeMap<>(myQueryParameters));
+
+        return retVal;
+    }
+
     /**
      * Open connection and return a buffered input stream reader.
      */
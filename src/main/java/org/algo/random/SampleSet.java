@@ -32,6 +32,48 @@ import org.algo.array.Primitive64Array;
 
 public final class SampleSet implements Access1D<Double> {
 
+    /**
+     * All descriptive statistics of a sample set, see {@link SampleSet#getSummary()}.
+     */
+    public static final class Summary {
+
+        public final long count;
+        public final double maximum;
+        public final double mean;
+        public final double median;
+        public final double minimum;
+        public final double quartile1;
+        public final double quartile3;
+        public final double standardDeviation;
+        public final double variance;
+
+        Summary(final SampleSet sampleSet) {
+
+            super();
+
+            count = sampleSet.count();
+            mean = sampleSet.getMean();
+            variance = sampleSet.getVariance();
+            standardDeviation = sampleSet.getStandardDeviation();
+            minimum = sampleSet.getMinimum();
+            quartile1 = sampleSet.getQuartile1();
+            median = sampleSet.getQuartile2();
+            quartile3 = sampleSet.getQuartile3();
+            maximum = sampleSet.getMaximum();
+        }
+
+        @Override
+        public String toString() {
+            return "Size=" + count + ", Mean=" + mean + ", Var=" + variance + ", StdDev=" + standardDeviation + ", Min=" + minimum + ", Q1=" + quartile1
+                    + ", Median=" + median + ", Q3=" + quartile3 + ", Max=" + maximum;
+        }
+
+    }
+
+    private static final int COPIED = 1;
+    private static final int SORTED = 2;
+    private static final int STALE = 0;
+
     public static SampleSet make() {
         return new SampleSet(Primitive64Array.make(4));
     }
@@ -52,14 +94,83 @@ public final class SampleSet implements Access1D<Double> {
         return new SampleSet(someSamples);
     }
 
+    /**
+     * Quickselect (Hoare partitioning around a median of three) of the k:th smallest of the first count values.
+     * Afterwards nothing before k is larger and nothing after k is smaller. Falls back to sorting if the
+     * partitioning degenerates.
+     */
+    static double select(final double[] values, final int count, final int k) {
+
+        int tmpFirst = 0;
+        int tmpLast = count - 1;
+        int tmpBudget = (2 * (32 - Integer.numberOfLeadingZeros(count))) + 8;
+
+        while (tmpFirst < tmpLast) {
+
+            if (tmpBudget-- == 0) {
+                Arrays.sort(values, tmpFirst, tmpLast + 1);
+                return values[k];
+            }
+
+            final int tmpMiddle = (tmpFirst + tmpLast) >>> 1;
+            if (values[tmpMiddle] < values[tmpFirst]) {
+                SampleSet.exchange(values, tmpMiddle, tmpFirst);
+            }
+            if (values[tmpLast] < values[tmpFirst]) {
+                SampleSet.exchange(values, tmpLast, tmpFirst);
+            }
+            if (values[tmpLast] < values[tmpMiddle]) {
+                SampleSet.exchange(values, tmpLast, tmpMiddle);
+            }
+            final double tmpPivot = values[tmpMiddle];
+
+            int i = tmpFirst;
+            int j = tmpLast;
+            while (i <= j) {
+                while (values[i] < tmpPivot) {
+                    i++;
+                }
+                while (values[j] > tmpPivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    SampleSet.exchange(values, i, j);
+                    i++;
+                    j--;
+                }
+            }
+
+            if (k <= j) {
+                tmpLast = j;
+            } else if (k >= i) {
+                tmpFirst = i;
+            } else {
+                return values[k];
+            }
+        }
+
+        return values[k];
+    }
+
+    private static void exchange(final double[] values, final int i, final int j) {
+        final double tmpValue = values[i];
+        values[i] = values[j];
+        values[j] = tmpValue;
+    }
+
+    private transient double myLargest = NaN;
     private transient double myMax = NaN;
     private transient double myMean = NaN;
     private transient double myMin = NaN;
+    private transient boolean myMoments = false;
     private transient double myQuartile1 = NaN;
     private transient double myQuartile2 = NaN;
     private transient double myQuartile3 = NaN;
     private Access1D<?> mySamples;
+    private transient double mySmallest = NaN;
     private transient double[] mySortedCopy = null;
+    private transient int mySortedState = STALE;
+    private transient double mySumOfSquares = NaN;
     private transient double myVariance = NaN;
 
     @SuppressWarnings("unused")
@@ -109,19 +220,43 @@ public final class SampleSet implements Access1D<Double> {
         return retVal;
     }
 
+    /**
+     * When both sets have the same number of samples, and their means are not already known, the means and the
+     * co-moment are accumulated in the same single pass.
+     */
     public double getCovariance(final SampleSet anotherSampleSet) {
 
-        double retVal = ZERO;
+        if (anotherSampleSet == this) {
+            return this.getVariance();
+        }
 
-        final double tmpThisMean = this.getMean();
-        final double tmpThatMean = anotherSampleSet.getMean();
+        double retVal = ZERO;
 
         final long tmpLimit = Math.min(mySamples.count(), anotherSampleSet.count());
 
         final Access1D<?> tmpValues = anotherSampleSet.getSamples();
 
-        for (long i = 0L; i < tmpLimit; i++) {
-            retVal += (mySamples.doubleValue(i) - tmpThisMean) * (tmpValues.doubleValue(i) - tmpThatMean);
+        if ((mySamples.count() == anotherSampleSet.count()) && !(myMoments && anotherSampleSet.myMoments)) {
+
+            double tmpThisMean = ZERO;
+            double tmpThatMean = ZERO;
+
+            for (long i = 0L; i < tmpLimit; i++) {
+                final double tmpThisDelta = mySamples.doubleValue(i) - tmpThisMean;
+                tmpThisMean += tmpThisDelta / (i + 1L);
+                final double tmpThatValue = tmpValues.doubleValue(i);
+                tmpThatMean += (tmpThatValue - tmpThatMean) / (i + 1L);
+                retVal += tmpThisDelta * (tmpThatValue - tmpThatMean);
+            }
+
+        } else {
+
+            final double tmpThisMean = this.getMean();
+            final double tmpThatMean = anotherSampleSet.getMean();
+
+            for (long i = 0L; i < tmpLimit; i++) {
+                retVal += (mySamples.doubleValue(i) - tmpThisMean) * (tmpValues.doubleValue(i) - tmpThatMean);
+            }
         }
 
         retVal /= (tmpLimit - 1L);
@@ -146,14 +281,11 @@ public final class SampleSet implements Access1D<Double> {
      */
     public double getLargest() {
 
-        double retVal = ZERO;
-
-        final long tmpLimit = mySamples.count();
-        for (long i = 0L; i < tmpLimit; i++) {
-            retVal = MAX.invoke(retVal, ABS.invoke(mySamples.doubleValue(i)));
+        if (!myMoments) {
+            this.calculateMoments();
         }
 
-        return retVal;
+        return myLargest;
     }
 
     public double getLast() {
@@ -169,14 +301,8 @@ public final class SampleSet implements Access1D<Double> {
      */
     public double getMaximum() {
 
-        if (Double.isNaN(myMax)) {
-
-            myMax = NEGATIVE_INFINITY;
-
-            final long tmpLimit = mySamples.count();
-            for (long i = 0L; i < tmpLimit; i++) {
-                myMax = MAX.invoke(myMax, mySamples.doubleValue(i));
-            }
+        if (!myMoments) {
+            this.calculateMoments();
         }
 
         return myMax;
@@ -184,16 +310,8 @@ public final class SampleSet implements Access1D<Double> {
 
     public double getMean() {
 
-        if (Double.isNaN(myMean)) {
-
-            myMean = ZERO;
-
-            final long tmpLimit = mySamples.count();
-            for (long i = 0L; i < tmpLimit; i++) {
-                myMean += mySamples.doubleValue(i);
-            }
-
-            myMean /= mySamples.count();
+        if (!myMoments) {
+            this.calculateMoments();
         }
 
         return myMean;
@@ -211,17 +329,65 @@ public final class SampleSet implements Access1D<Double> {
      */
     public double getMinimum() {
 
-        if (Double.isNaN(myMin)) {
+        if (!myMoments) {
+            this.calculateMoments();
+        }
 
-            myMin = POSITIVE_INFINITY;
+        return myMin;
+    }
 
-            final long tmpLimit = mySamples.count();
-            for (long i = 0L; i < tmpLimit; i++) {
-                myMin = MIN.invoke(myMin, mySamples.doubleValue(i));
+    /**
+     * The same definition as the quartiles: linear interpolation between the sorted samples either side of the
+     * (0-based) position n * probability - 1/2, limited to the first and last sample. Uses the sorted copy if
+     * it is already there, otherwise selects the sample in expected linear time without sorting.
+     *
+     * @param probability [0, 1]
+     */
+    public double getQuantile(final double probability) {
+
+        if ((probability < ZERO) || (probability > ONE)) {
+            throw new IllegalArgumentException("The probability must be in [0, 1]!");
+        }
+
+        final int tmpSize = (int) mySamples.count();
+
+        if (tmpSize == 0) {
+            return ZERO;
+        }
+
+        final double tmpPosition = MIN.invoke(MAX.invoke((tmpSize * probability) - HALF, ZERO), tmpSize - 1);
+        final int tmpIndex = (int) tmpPosition;
+        final double tmpFraction = tmpPosition - tmpIndex;
+
+        double tmpLower;
+        double tmpUpper;
+
+        if (mySortedState == SORTED) {
+
+            tmpLower = mySortedCopy[tmpIndex];
+            tmpUpper = tmpFraction > ZERO ? mySortedCopy[tmpIndex + 1] : tmpLower;
+
+        } else {
+
+            final double[] tmpCopy = this.getCopy();
+
+            tmpLower = SampleSet.select(tmpCopy, tmpSize, tmpIndex);
+
+            // Everything after the selected index is at least as large, the next order statistic is the smallest of those
+            tmpUpper = tmpLower;
+            if (tmpFraction > ZERO) {
+                tmpUpper = POSITIVE_INFINITY;
+                for (int i = tmpIndex + 1; i < tmpSize; i++) {
+                    tmpUpper = MIN.invoke(tmpUpper, tmpCopy[i]);
+                }
             }
         }
 
-        return myMin;
+        if (tmpFraction > ZERO) {
+            return ((ONE - tmpFraction) * tmpLower) + (tmpFraction * tmpUpper);
+        } else {
+            return tmpLower;
+        }
     }
 
     /**
@@ -265,14 +431,11 @@ public final class SampleSet implements Access1D<Double> {
      */
     public double getSmallest() {
 
-        double retVal = POSITIVE_INFINITY;
-
-        final long tmpLimit = mySamples.count();
-        for (long i = 0L; i < tmpLimit; i++) {
-            retVal = MIN.invoke(retVal, ABS.invoke(mySamples.doubleValue(i)));
+        if (!myMoments) {
+            this.calculateMoments();
         }
 
-        return retVal;
+        return mySmallest;
     }
 
     public double getStandardDeviation() {
@@ -302,17 +465,20 @@ public final class SampleSet implements Access1D<Double> {
      */
     public double getSumOfSquares() {
 
-        double retVal = ZERO;
-
-        final double tmpMean = this.getMean();
-        double tmpVal;
-        final long tmpLimit = mySamples.count();
-        for (long i = 0L; i < tmpLimit; i++) {
-            tmpVal = mySamples.doubleValue(i) - tmpMean;
-            retVal += (tmpVal * tmpVal);
+        if (!myMoments) {
+            this.calculateMoments();
         }
 
-        return retVal;
+        return mySumOfSquares;
+    }
+
+    /**
+     * All descriptive statistics at once: one pass for the moments and (at most) one sort for the quartiles.
+     * To summarise many series, {@link #swap(Access1D)} the samples of a single instance and its sort buffer is
+     * reused.
+     */
+    public Summary getSummary() {
+        return new Summary(this);
     }
 
     /**
@@ -324,8 +490,8 @@ public final class SampleSet implements Access1D<Double> {
 
     public double getVariance() {
 
-        if (Double.isNaN(myVariance)) {
-            myVariance = this.getCovariance(this);
+        if (!myMoments) {
+            this.calculateMoments();
         }
 
         return myVariance;
@@ -336,19 +502,22 @@ public final class SampleSet implements Access1D<Double> {
      */
     public void reset() {
 
+        myMoments = false;
+
         myMin = NaN;
         myMax = NaN;
+        myLargest = NaN;
+        mySmallest = NaN;
 
         myMean = NaN;
         myVariance = NaN;
+        mySumOfSquares = NaN;
 
         myQuartile1 = NaN;
         myQuartile2 = NaN;
         myQuartile3 = NaN;
 
-        if (mySortedCopy != null) {
-            Arrays.fill(mySortedCopy, Double.POSITIVE_INFINITY);
-        }
+        mySortedState = STALE;
     }
 
     public int size() {
@@ -370,6 +539,49 @@ public final class SampleSet implements Access1D<Double> {
                 + ", Min=" + this.getMinimum() + ", Max=" + this.getMaximum();
     }
 
+    /**
+     * Mean, variance, min, max, largest and smallest in a single pass. The mean and the sum of squared
+     * deviations are accumulated with Welford's update, which does not lose precision the way the sum of
+     * squares minus the squared sum does.
+     */
+    private void calculateMoments() {
+
+        final long tmpLimit = mySamples.count();
+
+        double tmpMean = ZERO;
+        double tmpSumOfSquares = ZERO;
+        double tmpMin = POSITIVE_INFINITY;
+        double tmpMax = NEGATIVE_INFINITY;
+        double tmpSmallest = POSITIVE_INFINITY;
+        double tmpLargest = ZERO;
+
+        for (long i = 0L; i < tmpLimit; i++) {
+
+            final double tmpValue = mySamples.doubleValue(i);
+
+            final double tmpDelta = tmpValue - tmpMean;
+            tmpMean += tmpDelta / (i + 1L);
+            tmpSumOfSquares += tmpDelta * (tmpValue - tmpMean);
+
+            tmpMin = MIN.invoke(tmpMin, tmpValue);
+            tmpMax = MAX.invoke(tmpMax, tmpValue);
+
+            final double tmpAbs = ABS.invoke(tmpValue);
+            tmpSmallest = MIN.invoke(tmpSmallest, tmpAbs);
+            tmpLargest = MAX.invoke(tmpLargest, tmpAbs);
+        }
+
+        myMean = tmpLimit > 0L ? tmpMean : NaN;
+        mySumOfSquares = tmpSumOfSquares;
+        myVariance = tmpSumOfSquares / (tmpLimit - 1L);
+        myMin = tmpMin;
+        myMax = tmpMax;
+        mySmallest = tmpSmallest;
+        myLargest = tmpLargest;
+
+        myMoments = true;
+    }
+
     private void calculateQuartiles() {
 
         final int tmpSize = (int) this.getSamples().count();
@@ -379,9 +591,6 @@ public final class SampleSet implements Access1D<Double> {
 
         case 0:
 
-            myMin = ZERO;
-            myMax = ZERO;
-
             myQuartile1 = ZERO;
             myQuartile2 = ZERO;
             myQuartile3 = ZERO;
@@ -390,9 +599,6 @@ public final class SampleSet implements Access1D<Double> {
 
         case 1:
 
-            myMin = tmpSortedCopy[0];
-            myMax = tmpSortedCopy[0];
-
             myQuartile1 = tmpSortedCopy[0];
             myQuartile2 = tmpSortedCopy[0];
             myQuartile3 = tmpSortedCopy[0];
@@ -401,9 +607,6 @@ public final class SampleSet implements Access1D<Double> {
 
         default:
 
-            myMin = tmpSortedCopy[0];
-            myMax = tmpSortedCopy[tmpSize - 1];
-
             final int n = tmpSize / 4;
             final int r = tmpSize % 4;
 
@@ -446,23 +649,42 @@ public final class SampleSet implements Access1D<Double> {
         }
     }
 
+    /**
+     * The samples are copied to a buffer that is kept, and reused after {@link #reset()} and
+     * {@link #swap(Access1D)}. Quantile selection only reorders the buffer, so sorting it later does not copy
+     * again.
+     */
+    private double[] getCopy() {
+
+        final int tmpSamplesCount = (int) mySamples.count();
+
+        if ((mySortedCopy == null) || (mySortedCopy.length < tmpSamplesCount)) {
+            mySortedCopy = new double[tmpSamplesCount];
+            mySortedState = STALE;
+        }
+
+        if (mySortedState == STALE) {
+            for (int i = 0; i < tmpSamplesCount; i++) {
+                mySortedCopy[i] = mySamples.doubleValue(i);
+            }
+            mySortedState = COPIED;
+        }
+
+        return mySortedCopy;
+    }
+
     Access1D<?> getSamples() {
         return mySamples;
     }
 
+    /**
+     * The first count elements are the sorted samples, the array may be longer.
+     */
     double[] getSortedCopy() {
 
-        final Access1D<?> tmpSamples = this.getSamples();
-        final int tmpSamplesCount = (int) tmpSamples.count();
-
-        if ((mySortedCopy == null) || (mySortedCopy.length < tmpSamplesCount) || (mySortedCopy.length == 0)) {
-            mySortedCopy = tmpSamples.toRawCopy1D();
-            Arrays.parallelSort(mySortedCopy);
-        } else if (mySortedCopy[0] == Double.POSITIVE_INFINITY) {
-            for (int i = 0; i < tmpSamplesCount; i++) {
-                mySortedCopy[i] = tmpSamples.doubleValue(i);
-            }
-            Arrays.parallelSort(mySortedCopy, 0, tmpSamplesCount);
+        if (mySortedState != SORTED) {
+            Arrays.parallelSort(this.getCopy(), 0, (int) mySamples.count());
+            mySortedState = SORTED;
         }
 
         return mySortedCopy;
@@ -127,6 +127,13 @@ public final class GeometricBrownianMotion extends AbstractProcess<LogNormal> {
         return new GeometricBrownianMotion(tmpDrift, tmpDiff);
     }
 
+    /**
+     * The volatility, &sigma; in dX = &mu;Xdt + &sigma;XdW
+     */
+    public double getDiffusionFunction() {
+        return myDiffusionFunction;
+    }
+
     public LogNormal getDistribution(final double evaluationPoint) {
 
         final double tmpVar = this.getDistributionVariance(evaluationPoint);
@@ -138,6 +145,13 @@ public final class GeometricBrownianMotion extends AbstractProcess<LogNormal> {
         return new LogNormal(tmpLocation, tmpScale);
     }
 
+    /**
+     * The drift, &mu; in dX = &mu;Xdt + &sigma;XdW
+     */
+    public double getLocalDrift() {
+        return myLocalDrift;
+    }
+
     private final double getDistributionLocation(final double stepSize, final double variance) {
         return (PrimitiveFunction.LOG.invoke(this.getValue()) + (myLocalDrift * stepSize)) - (HALF * variance);
     }
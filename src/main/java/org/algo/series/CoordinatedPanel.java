@@ -0,0 +1,358 @@
+/*
+ * Copyright 1997-2017 Optimatika (www.optimatika.se)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.algo.series;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.algo.access.Access2D;
+import org.algo.type.CalendarDate;
+import org.algo.type.CalendarDateUnit;
+
+/**
+ * A set of calendar date series aligned on common keys, stored as one T x N panel of primitive values (one row
+ * per key, one column per series, column-major). The keys of all series are merge-joined in a single pass
+ * over their sorted key arrays, so the cost is linear in the total number of points plus the size of the
+ * panel.
+ *
+ * @see CoordinationSet#align(CoordinatedPanel.Mode)
+ */
+public final class CoordinatedPanel implements Access2D<Double> {
+
+    public static enum Mode {
+
+        /**
+         * Every key between the latest first key and the earliest last key, a series without a value for a
+         * key repeats its previous value (the same range as {@link CoordinationSet#prune()}). With a
+         * resolution that includes every step of it in the range, the keys of
+         * {@link CalendarDateSeries#complete()}.
+         */
+        FORWARD_FILL,
+        /**
+         * Only the keys that all series have.
+         */
+        INTERSECTION,
+        /**
+         * Every key of any series, NaN where a series has no value.
+         */
+        UNION;
+
+    }
+
+    /**
+     * @param series The series, in column order
+     * @param resolution Keys are filtered to this resolution, several keys that fall in the same period keep
+     *        the last value. Null to use the keys as they are.
+     * @param mode How to handle keys that not all series have
+     */
+    public static CoordinatedPanel align(final List<? extends BasicSeries<CalendarDate, ?>> series, final CalendarDateUnit resolution, final Mode mode) {
+
+        final int tmpCount = series.size();
+
+        final String[] tmpNames = new String[tmpCount];
+        final long[][] tmpKeys = new long[tmpCount][];
+        final double[][] tmpValues = new double[tmpCount][];
+
+        for (int s = 0; s < tmpCount; s++) {
+            final BasicSeries<CalendarDate, ?> tmpSeries = series.get(s);
+            tmpNames[s] = tmpSeries.getName();
+            CoordinatedPanel.extract(tmpSeries, resolution, tmpKeys, tmpValues, s);
+        }
+
+        return CoordinatedPanel.align(tmpNames, tmpKeys, tmpValues, resolution, mode);
+    }
+
+    /**
+     * The merge-join itself.
+     *
+     * @param keys Strictly increasing keys (epoch millis) per series
+     * @param values Values per series, the same lengths as the keys
+     */
+    public static CoordinatedPanel align(final String[] names, final long[][] keys, final double[][] values, final CalendarDateUnit resolution,
+            final Mode mode) {
+
+        final int tmpCount = keys.length;
+
+        final int[] tmpFirst = new int[tmpCount];
+        final int[] tmpLimit = new int[tmpCount];
+        final int[] tmpPosition = new int[tmpCount];
+
+        long tmpLower = Long.MIN_VALUE;
+        long tmpUpper = Long.MAX_VALUE;
+
+        if (mode == Mode.UNION) {
+            for (int s = 0; s < tmpCount; s++) {
+                tmpLimit[s] = keys[s].length;
+            }
+        } else {
+            for (int s = 0; s < tmpCount; s++) {
+                final int tmpLength = keys[s].length;
+                if (tmpLength == 0) {
+                    tmpLower = Long.MAX_VALUE;
+                    tmpUpper = Long.MIN_VALUE;
+                } else {
+                    tmpLower = Math.max(tmpLower, keys[s][0]);
+                    tmpUpper = Math.min(tmpUpper, keys[s][tmpLength - 1]);
+                }
+            }
+            for (int s = 0; s < tmpCount; s++) {
+                if (tmpLower <= tmpUpper) {
+                    tmpFirst[s] = CoordinatedPanel.lowerBound(keys[s], tmpLower);
+                    tmpLimit[s] = CoordinatedPanel.lowerBound(keys[s], tmpUpper + 1L);
+                }
+            }
+        }
+
+        // With a resolution, forward filling also adds the keys that no series has: every step from the lower
+        // to the upper bound, as CalendarDateSeries#complete() would
+        final boolean tmpGrid = (mode == Mode.FORWARD_FILL) && (resolution != null) && (tmpCount > 0) && (tmpLower <= tmpUpper);
+
+        // First pass counts the rows, second pass fills the panel
+        System.arraycopy(tmpFirst, 0, tmpPosition, 0, tmpCount);
+        int tmpRowDim = 0;
+        long tmpKey;
+        long tmpGridKey = tmpGrid ? tmpLower : Long.MAX_VALUE;
+        while ((tmpKey = Math.min(CoordinatedPanel.nextKey(keys, tmpPosition, tmpLimit), tmpGridKey)) != Long.MAX_VALUE) {
+            if (tmpKey == tmpGridKey) {
+                tmpGridKey = CoordinatedPanel.nextGridKey(tmpKey, tmpUpper, resolution);
+            }
+            int tmpHits = 0;
+            for (int s = 0; s < tmpCount; s++) {
+                if ((tmpPosition[s] < tmpLimit[s]) && (keys[s][tmpPosition[s]] == tmpKey)) {
+                    tmpPosition[s]++;
+                    tmpHits++;
+                }
+            }
+            if ((mode != Mode.INTERSECTION) || (tmpHits == tmpCount)) {
+                tmpRowDim++;
+            }
+        }
+
+        final long[] tmpRowKeys = new long[tmpRowDim];
+        final double[] tmpData = new double[tmpRowDim * tmpCount];
+        final double[] tmpPrevious = new double[tmpCount];
+        for (int s = 0; s < tmpCount; s++) {
+            tmpPrevious[s] = tmpFirst[s] > 0 ? values[s][tmpFirst[s] - 1] : Double.NaN;
+        }
+
+        System.arraycopy(tmpFirst, 0, tmpPosition, 0, tmpCount);
+        int i = 0;
+        tmpGridKey = tmpGrid ? tmpLower : Long.MAX_VALUE;
+        while ((tmpKey = Math.min(CoordinatedPanel.nextKey(keys, tmpPosition, tmpLimit), tmpGridKey)) != Long.MAX_VALUE) {
+            if (tmpKey == tmpGridKey) {
+                tmpGridKey = CoordinatedPanel.nextGridKey(tmpKey, tmpUpper, resolution);
+            }
+
+            boolean tmpAll = true;
+            for (int s = 0; s < tmpCount; s++) {
+                tmpAll &= (tmpPosition[s] < tmpLimit[s]) && (keys[s][tmpPosition[s]] == tmpKey);
+            }
+
+            if ((mode == Mode.INTERSECTION) && !tmpAll) {
+                for (int s = 0; s < tmpCount; s++) {
+                    if ((tmpPosition[s] < tmpLimit[s]) && (keys[s][tmpPosition[s]] == tmpKey)) {
+                        tmpPosition[s]++;
+                    }
+                }
+                continue;
+            }
+
+            tmpRowKeys[i] = tmpKey;
+            for (int s = 0; s < tmpCount; s++) {
+                double tmpValue;
+                if ((tmpPosition[s] < tmpLimit[s]) && (keys[s][tmpPosition[s]] == tmpKey)) {
+                    tmpValue = values[s][tmpPosition[s]++];
+                    tmpPrevious[s] = tmpValue;
+                } else if (mode == Mode.FORWARD_FILL) {
+                    tmpValue = tmpPrevious[s];
+                } else {
+                    tmpValue = Double.NaN;
+                }
+                tmpData[i + (s * tmpRowDim)] = tmpValue;
+            }
+            i++;
+        }
+
+        return new CoordinatedPanel(names, tmpRowKeys, tmpData, resolution);
+    }
+
+    /**
+     * Keys and values of one series, keys filtered to the resolution unless the series already has it.
+     */
+    private static void extract(final BasicSeries<CalendarDate, ?> series, final CalendarDateUnit resolution, final long[][] keys,
+            final double[][] values, final int index) {
+
+        CalendarDateUnit tmpSeriesResolution = null;
+        if (series instanceof DenseCalendarDateSeries) {
+            final DenseCalendarDateSeries tmpDense = (DenseCalendarDateSeries) series;
+            if ((resolution == null) || (resolution == tmpDense.getResolution())) {
+                keys[index] = tmpDense.getPrimitiveKeys();
+                values[index] = tmpDense.asPrimitive().toRawCopy1D();
+                return;
+            }
+            tmpSeriesResolution = tmpDense.getResolution();
+        } else if (series instanceof CalendarDateSeries<?>) {
+            tmpSeriesResolution = ((CalendarDateSeries<?>) series).getResolution();
+        }
+
+        final boolean tmpFilter = (resolution != null) && (resolution != tmpSeriesResolution);
+
+        final long[] tmpKeys = new long[series.size()];
+        final double[] tmpValues = new double[series.size()];
+
+        int tmpSize = 0;
+        for (final Map.Entry<CalendarDate, ? extends Number> tmpEntry : series.entrySet()) {
+            final long tmpKey = tmpFilter ? tmpEntry.getKey().toTimeInMillis(resolution) : tmpEntry.getKey().millis;
+            if ((tmpSize > 0) && (tmpKeys[tmpSize - 1] == tmpKey)) {
+                tmpSize--;
+            }
+            tmpKeys[tmpSize] = tmpKey;
+            tmpValues[tmpSize] = tmpEntry.getValue().doubleValue();
+            tmpSize++;
+        }
+
+        keys[index] = tmpSize == tmpKeys.length ? tmpKeys : Arrays.copyOf(tmpKeys, tmpSize);
+        values[index] = tmpSize == tmpValues.length ? tmpValues : Arrays.copyOf(tmpValues, tmpSize);
+    }
+
+    private static int lowerBound(final long[] keys, final long key) {
+        int tmpLow = 0;
+        int tmpHigh = keys.length;
+        while (tmpLow < tmpHigh) {
+            final int tmpMid = (tmpLow + tmpHigh) >>> 1;
+            if (keys[tmpMid] < key) {
+                tmpLow = tmpMid + 1;
+            } else {
+                tmpHigh = tmpMid;
+            }
+        }
+        return tmpLow;
+    }
+
+    /**
+     * @return The key one resolution step after key, Long.MAX_VALUE when that is past upper
+     */
+    private static long nextGridKey(final long key, final long upper, final CalendarDateUnit resolution) {
+        final long retVal = new CalendarDate(key).step(1, resolution).millis;
+        return retVal <= upper ? retVal : Long.MAX_VALUE;
+    }
+
+    /**
+     * @return The smallest key at the current positions, Long.MAX_VALUE when all series are exhausted
+     */
+    private static long nextKey(final long[][] keys, final int[] positions, final int[] limits) {
+        long retVal = Long.MAX_VALUE;
+        for (int s = 0; s < positions.length; s++) {
+            if ((positions[s] < limits[s]) && (keys[s][positions[s]] < retVal)) {
+                retVal = keys[s][positions[s]];
+            }
+        }
+        return retVal;
+    }
+
+    private final double[] myData;
+    private final long[] myKeys;
+    private final String[] myNames;
+    private final CalendarDateUnit myResolution;
+
+    private CoordinatedPanel(final String[] names, final long[] keys, final double[] data, final CalendarDateUnit resolution) {
+
+        super();
+
+        myNames = names;
+        myKeys = keys;
+        myData = data;
+        myResolution = resolution;
+    }
+
+    public long count() {
+        return myData.length;
+    }
+
+    public long countColumns() {
+        return myNames.length;
+    }
+
+    public long countRows() {
+        return myKeys.length;
+    }
+
+    public double doubleValue(final long index) {
+        return myData[(int) index];
+    }
+
+    public double doubleValue(final long row, final long col) {
+        return myData[(int) (row + (col * myKeys.length))];
+    }
+
+    public Double get(final long index) {
+        return this.doubleValue(index);
+    }
+
+    public Double get(final long row, final long col) {
+        return this.doubleValue(row, col);
+    }
+
+    /**
+     * @return The column of the named series, or -1
+     */
+    public int getColumn(final String name) {
+        for (int j = 0; j < myNames.length; j++) {
+            if (myNames[j].equals(name)) {
+                return j;
+            }
+        }
+        return -1;
+    }
+
+    public CalendarDate getKey(final int row) {
+        return new CalendarDate(myKeys[row]);
+    }
+
+    /**
+     * @return The row keys (epoch millis), not a copy
+     */
+    public long[] getKeys() {
+        return myKeys;
+    }
+
+    public String getName(final int col) {
+        return myNames[col];
+    }
+
+    public CalendarDateUnit getResolution() {
+        return myResolution;
+    }
+
+    /**
+     * A copy of the column as a series.
+     */
+    public DenseCalendarDateSeries getSeries(final int col) {
+        final int tmpRowDim = myKeys.length;
+        final DenseCalendarDateSeries retVal = DenseCalendarDateSeries.wrap(myKeys.clone(), Arrays.copyOfRange(myData, col * tmpRowDim, (col + 1) * tmpRowDim),
+                myResolution != null ? myResolution : CalendarDateUnit.MILLIS);
+        retVal.setName(myNames[col]);
+        return retVal;
+    }
+
+}
@@ -85,6 +85,16 @@ public class CoordinationSet<N extends Number> extends HashMap<String, CalendarD
         super(members);
     }
 
+    /**
+     * Merge-joins the keys of all series in one pass, the columns are in the order of
+     * {@link #getAllSeriesNames()}.
+     *
+     * @see CoordinatedPanel#align(List, CalendarDateUnit, CoordinatedPanel.Mode)
+     */
+    public CoordinatedPanel align(final CoordinatedPanel.Mode mode) {
+        return CoordinatedPanel.align(new ArrayList<>(this.values()), this.getResolution(), mode);
+    }
+
     /**
      * Will call {@link CalendarDateSeries#complete()} on each of the instances in this set.
      */
@@ -0,0 +1,603 @@
+/*
+ * Copyright 1997-2017 Optimatika (www.optimatika.se)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.algo.series;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.UUID;
+
+import org.algo.access.IndexMapper;
+import org.algo.netio.ASCII;
+import org.algo.series.primitive.DataSeries;
+import org.algo.series.primitive.ExplicitTimeSeries;
+import org.algo.series.primitive.PrimitiveSeries;
+import org.algo.type.CalendarDate;
+import org.algo.type.CalendarDateUnit;
+import org.algo.type.ColourData;
+import org.algo.type.TypeUtils;
+
+/**
+ * A {@link CalendarDateSeries} alternative backed by a sorted long[] of keys (epoch millis, filtered to the
+ * resolution) and a parallel double[] of values. Appending a key later than the last one is amortised O(1),
+ * any other new key is inserted with an array copy. Lookup by date is a binary search and access by position
+ * is O(1).
+ * <p>
+ * {@link #headMap(CalendarDate)}, {@link #subMap(CalendarDate, CalendarDate)} and
+ * {@link #tailMap(CalendarDate)} return views that share the arrays with this series, defined by a key range
+ * the same way as the {@link java.util.TreeMap} views. The {@link org.algo.access.Access1D} methods (count,
+ * doubleValue(long), get(long)) are positional within the series or view, while {@link #put(long, double)}
+ * takes the mapped key index (epoch millis) as {@link CalendarDateSeries} does.
+ * <p>
+ * Not thread safe.
+ */
+public final class DenseCalendarDateSeries extends AbstractMap<CalendarDate, Double> implements BasicSeries.NaturallySequenced<CalendarDate, Double> {
+
+    static final class Storage {
+
+        long[] keys;
+        int size;
+        double[] values;
+
+        Storage(final int capacity) {
+            super();
+            keys = new long[capacity];
+            values = new double[capacity];
+            size = 0;
+        }
+
+        Storage(final long[] keys, final double[] values, final int size) {
+            super();
+            this.keys = keys;
+            this.values = values;
+            this.size = size;
+        }
+
+        /**
+         * @return The position of the first key >= key
+         */
+        int lowerBound(final long key) {
+            int tmpLow = 0;
+            int tmpHigh = size;
+            while (tmpLow < tmpHigh) {
+                final int tmpMid = (tmpLow + tmpHigh) >>> 1;
+                if (keys[tmpMid] < key) {
+                    tmpLow = tmpMid + 1;
+                } else {
+                    tmpHigh = tmpMid;
+                }
+            }
+            return tmpLow;
+        }
+
+        double put(final long key, final double value) {
+
+            if ((size == 0) || (key > keys[size - 1])) {
+                this.insert(size, key, value);
+                return Double.NaN;
+            }
+
+            final int tmpPosition = this.lowerBound(key);
+
+            if (keys[tmpPosition] == key) {
+                final double retVal = values[tmpPosition];
+                values[tmpPosition] = value;
+                return retVal;
+            } else {
+                this.insert(tmpPosition, key, value);
+                return Double.NaN;
+            }
+        }
+
+        void insert(final int position, final long key, final double value) {
+            if (size == keys.length) {
+                final int tmpCapacity = Math.max(16, size + (size >> 1));
+                keys = Arrays.copyOf(keys, tmpCapacity);
+                values = Arrays.copyOf(values, tmpCapacity);
+            }
+            if (position < size) {
+                System.arraycopy(keys, position, keys, position + 1, size - position);
+                System.arraycopy(values, position, values, position + 1, size - position);
+            }
+            keys[position] = key;
+            values[position] = value;
+            size++;
+        }
+
+        void remove(final int first, final int limit) {
+            System.arraycopy(keys, limit, keys, first, size - limit);
+            System.arraycopy(values, limit, values, first, size - limit);
+            size -= limit - first;
+        }
+
+    }
+
+    /**
+     * Copies any calendar date series in one pass, keys are filtered to the resolution.
+     */
+    public static DenseCalendarDateSeries copy(final BasicSeries<CalendarDate, ?> series, final CalendarDateUnit resolution) {
+
+        final DenseCalendarDateSeries retVal = DenseCalendarDateSeries.make(resolution, series.size());
+        retVal.setColour(series.getColour());
+        retVal.setName(series.getName());
+
+        for (final Map.Entry<CalendarDate, ? extends Number> tmpEntry : series.entrySet()) {
+            retVal.put(tmpEntry.getKey(), tmpEntry.getValue().doubleValue());
+        }
+
+        return retVal;
+    }
+
+    public static DenseCalendarDateSeries copy(final CalendarDateSeries<?> series) {
+        return DenseCalendarDateSeries.copy(series, series.getResolution());
+    }
+
+    public static DenseCalendarDateSeries make(final CalendarDateUnit resolution) {
+        return DenseCalendarDateSeries.make(resolution, 16);
+    }
+
+    public static DenseCalendarDateSeries make(final CalendarDateUnit resolution, final int capacity) {
+        return new DenseCalendarDateSeries(new Storage(Math.max(capacity, 1)), resolution, Long.MIN_VALUE, Long.MAX_VALUE, null);
+    }
+
+    /**
+     * Uses the arrays as they are, no copy. The keys must be epoch millis at the given resolution and strictly
+     * increasing, keys and values must have the same length.
+     */
+    public static DenseCalendarDateSeries wrap(final long[] keys, final double[] values, final CalendarDateUnit resolution) {
+
+        if (keys.length != values.length) {
+            throw new IllegalArgumentException("Keys and values must have the same length!");
+        }
+        for (int i = 1; i < keys.length; i++) {
+            if (keys[i] <= keys[i - 1]) {
+                throw new IllegalArgumentException("Keys must be strictly increasing!");
+            }
+        }
+
+        return new DenseCalendarDateSeries(new Storage(keys, values, keys.length), resolution, Long.MIN_VALUE, Long.MAX_VALUE, null);
+    }
+
+    private ColourData myColour = null;
+    private final long myLower;
+    private final IndexMapper<CalendarDate> myMapper;
+    private String myName = null;
+    private final CalendarDateUnit myResolution;
+    private final Storage myStorage;
+    private final long myUpper;
+
+    private DenseCalendarDateSeries(final Storage storage, final CalendarDateUnit resolution, final long lower, final long upper,
+            final IndexMapper<CalendarDate> mapper) {
+
+        super();
+
+        myStorage = storage;
+        myResolution = resolution;
+        myLower = lower;
+        myUpper = upper;
+
+        if (mapper != null) {
+            myMapper = mapper;
+        } else {
+            myMapper = new IndexMapper<CalendarDate>() {
+
+                public long toIndex(final CalendarDate key) {
+                    return key.toTimeInMillis(myResolution);
+                }
+
+                public CalendarDate toKey(final long index) {
+                    return new CalendarDate(index);
+                }
+
+            };
+        }
+    }
+
+    /**
+     * A view of the values, not a copy.
+     */
+    public PrimitiveSeries asPrimitive() {
+        if ((myLower == Long.MIN_VALUE) && (myUpper == Long.MAX_VALUE) && (myStorage.size == myStorage.values.length)) {
+            return DataSeries.wrap(myStorage.values);
+        } else {
+            return PrimitiveSeries.wrap(this);
+        }
+    }
+
+    @Override
+    public void clear() {
+        myStorage.remove(this.first(), this.limit());
+    }
+
+    public DenseCalendarDateSeries colour(final ColourData colour) {
+        this.setColour(colour);
+        return this;
+    }
+
+    public Comparator<? super CalendarDate> comparator() {
+        return null;
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return (key instanceof CalendarDate) && (this.indexOf((CalendarDate) key) >= 0);
+    }
+
+    public double doubleValue(final CalendarDate key) {
+        final int tmpIndex = this.indexOf(key);
+        if (tmpIndex >= 0) {
+            return myStorage.values[this.first() + tmpIndex];
+        } else {
+            throw new NoSuchElementException();
+        }
+    }
+
+    public double doubleValue(final long index) {
+        return myStorage.values[this.first() + (int) index];
+    }
+
+    @Override
+    public Set<Map.Entry<CalendarDate, Double>> entrySet() {
+        return new AbstractSet<Map.Entry<CalendarDate, Double>>() {
+
+            @Override
+            public Iterator<Map.Entry<CalendarDate, Double>> iterator() {
+
+                return new Iterator<Map.Entry<CalendarDate, Double>>() {
+
+                    private int myLimit = DenseCalendarDateSeries.this.limit();
+                    private int myNext = DenseCalendarDateSeries.this.first();
+
+                    public boolean hasNext() {
+                        return myNext < myLimit;
+                    }
+
+                    public Map.Entry<CalendarDate, Double> next() {
+
+                        if (myNext >= myLimit) {
+                            throw new NoSuchElementException();
+                        }
+
+                        final int tmpPosition = myNext++;
+
+                        return new Map.Entry<CalendarDate, Double>() {
+
+                            public CalendarDate getKey() {
+                                return new CalendarDate(myStorage.keys[tmpPosition]);
+                            }
+
+                            public Double getValue() {
+                                return myStorage.values[tmpPosition];
+                            }
+
+                            public Double setValue(final Double value) {
+                                final double retVal = myStorage.values[tmpPosition];
+                                myStorage.values[tmpPosition] = value;
+                                return retVal;
+                            }
+
+                        };
+                    }
+
+                    public void remove() {
+                        myNext--;
+                        myLimit--;
+                        myStorage.remove(myNext, myNext + 1);
+                    }
+
+                };
+            }
+
+            @Override
+            public int size() {
+                return DenseCalendarDateSeries.this.size();
+            }
+        };
+    }
+
+    public CalendarDate firstKey() {
+        final int tmpFirst = this.first();
+        if (tmpFirst < this.limit()) {
+            return new CalendarDate(myStorage.keys[tmpFirst]);
+        } else {
+            throw new NoSuchElementException();
+        }
+    }
+
+    public Double firstValue() {
+        return this.get(this.firstKey());
+    }
+
+    public Double get(final CalendarDate key) {
+        final int tmpIndex = this.indexOf(key);
+        return tmpIndex >= 0 ? myStorage.values[this.first() + tmpIndex] : null;
+    }
+
+    public Double get(final long index) {
+        return this.doubleValue(index);
+    }
+
+    @Override
+    public Double get(final Object key) {
+        if (key instanceof CalendarDate) {
+            return this.get((CalendarDate) key);
+        } else {
+            return null;
+        }
+    }
+
+    public long getAverageStepSize() {
+        return (this.key(this.size() - 1) - this.key(0L)) / (this.size() - 1);
+    }
+
+    public ColourData getColour() {
+        return myColour;
+    }
+
+    public String getName() {
+        if (myName == null) {
+            myName = UUID.randomUUID().toString();
+        }
+        return myName;
+    }
+
+    public long[] getPrimitiveKeys() {
+        return Arrays.copyOfRange(myStorage.keys, this.first(), this.limit());
+    }
+
+    /**
+     * Shares the arrays when this is a full series with no spare capacity, copies otherwise.
+     */
+    public ExplicitTimeSeries getPrimitiveTimeSeries() {
+        if ((myLower == Long.MIN_VALUE) && (myUpper == Long.MAX_VALUE) && (myStorage.size == myStorage.keys.length)) {
+            return new ExplicitTimeSeries(myStorage.keys, DataSeries.wrap(myStorage.values));
+        } else {
+            return new ExplicitTimeSeries(this.getPrimitiveKeys(), DataSeries.wrap(Arrays.copyOfRange(myStorage.values, this.first(), this.limit())));
+        }
+    }
+
+    public CalendarDateUnit getResolution() {
+        return myResolution;
+    }
+
+    @Override
+    public DenseCalendarDateSeries headMap(final CalendarDate toKey) {
+        return this.view(myLower, toKey.millis);
+    }
+
+    public DenseCalendarDateSeries headMap(final CalendarDate toKey, final boolean inclusive) {
+        return this.view(myLower, inclusive ? toKey.millis + 1L : toKey.millis);
+    }
+
+    /**
+     * @return The position of the key (filtered to the resolution) in this series, or (-(insertion point) - 1)
+     *         when it is not there, as {@link Arrays#binarySearch(long[], long)}
+     */
+    public int indexOf(final CalendarDate key) {
+
+        final long tmpKey = key.toTimeInMillis(myResolution);
+        final int tmpFirst = this.first();
+
+        if ((tmpKey < myLower) || (tmpKey >= myUpper)) {
+            return tmpKey < myLower ? -1 : -(this.limit() - tmpFirst) - 1;
+        }
+
+        final int tmpPosition = myStorage.lowerBound(tmpKey);
+
+        if ((tmpPosition < myStorage.size) && (myStorage.keys[tmpPosition] == tmpKey)) {
+            return tmpPosition - tmpFirst;
+        } else {
+            return -(tmpPosition - tmpFirst) - 1;
+        }
+    }
+
+    /**
+     * @return The key (epoch millis) at the position
+     */
+    public long key(final long index) {
+        return myStorage.keys[this.first() + (int) index];
+    }
+
+    public CalendarDate lastKey() {
+        final int tmpLimit = this.limit();
+        if (this.first() < tmpLimit) {
+            return new CalendarDate(myStorage.keys[tmpLimit - 1]);
+        } else {
+            throw new NoSuchElementException();
+        }
+    }
+
+    public Double lastValue() {
+        return this.get(this.lastKey());
+    }
+
+    public IndexMapper<CalendarDate> mapper() {
+        return myMapper;
+    }
+
+    public DenseCalendarDateSeries name(final String name) {
+        this.setName(name);
+        return this;
+    }
+
+    public CalendarDate nextKey() {
+        return this.lastKey().step(1, myResolution);
+    }
+
+    public double put(final CalendarDate key, final double value) {
+        return this.doPut(key.toTimeInMillis(myResolution), value);
+    }
+
+    @Override
+    public Double put(final CalendarDate key, final Double value) {
+        final double retVal = this.put(key, value.doubleValue());
+        return Double.isNaN(retVal) ? null : retVal;
+    }
+
+    public double put(final long index, final double value) {
+        if (myResolution.isCalendarUnit()) {
+            return this.doPut(new CalendarDate(index).toTimeInMillis(myResolution), value);
+        } else {
+            return this.doPut(myResolution.toTimeInMillis(index), value);
+        }
+    }
+
+    public Double put(final long index, final Double value) {
+        final double retVal = this.put(index, value.doubleValue());
+        return Double.isNaN(retVal) ? null : retVal;
+    }
+
+    @Override
+    public Double remove(final Object key) {
+        if (key instanceof CalendarDate) {
+            final int tmpIndex = this.indexOf((CalendarDate) key);
+            if (tmpIndex >= 0) {
+                final int tmpPosition = this.first() + tmpIndex;
+                final double retVal = myStorage.values[tmpPosition];
+                myStorage.remove(tmpPosition, tmpPosition + 1);
+                return retVal;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int size() {
+        return this.limit() - this.first();
+    }
+
+    public CalendarDate step(final CalendarDate key) {
+        return key.step(1, myResolution);
+    }
+
+    public DenseCalendarDateSeries subMap(final CalendarDate fromKey, final boolean inclusiveFromKey, final CalendarDate toKey, final boolean inclusiveToKey) {
+        return this.view(inclusiveFromKey ? fromKey.millis : fromKey.millis + 1L, inclusiveToKey ? toKey.millis + 1L : toKey.millis);
+    }
+
+    @Override
+    public DenseCalendarDateSeries subMap(final CalendarDate fromKey, final CalendarDate toKey) {
+        return this.view(fromKey.millis, toKey.millis);
+    }
+
+    @Override
+    public DenseCalendarDateSeries tailMap(final CalendarDate fromKey) {
+        return this.view(fromKey.millis, myUpper);
+    }
+
+    public DenseCalendarDateSeries tailMap(final CalendarDate fromKey, final boolean inclusive) {
+        return this.view(inclusive ? fromKey.millis : fromKey.millis + 1L, myUpper);
+    }
+
+    /**
+     * Builds the TreeMap based equivalent in linear time (the keys are already sorted).
+     */
+    public CalendarDateSeries<Double> toCalendarDateSeries() {
+
+        final CalendarDateSeries<Double> retVal = new CalendarDateSeries<>(this, myResolution, myMapper);
+        retVal.setColour(myColour);
+        retVal.setName(this.getName());
+
+        return retVal;
+    }
+
+    @Override
+    public String toString() {
+
+        final StringBuilder retVal = new StringBuilder();
+
+        if (myName != null) {
+            retVal.append(myName);
+            retVal.append(ASCII.NBSP);
+        }
+
+        retVal.append(myResolution);
+        retVal.append(ASCII.NBSP);
+
+        if (myColour != null) {
+            retVal.append(TypeUtils.toHexString(myColour.getRGB()));
+            retVal.append(ASCII.NBSP);
+        }
+
+        if (this.size() <= 30) {
+            retVal.append(super.toString());
+        } else {
+            retVal.append("First:");
+            retVal.append(this.firstKey());
+            retVal.append(ASCII.EQUALS);
+            retVal.append(this.firstValue());
+            retVal.append(ASCII.NBSP);
+            retVal.append("Last:");
+            retVal.append(this.lastKey());
+            retVal.append(ASCII.EQUALS);
+            retVal.append(this.lastValue());
+            retVal.append(ASCII.NBSP);
+            retVal.append("Size:");
+            retVal.append(this.size());
+        }
+
+        return retVal.toString();
+    }
+
+    private double doPut(final long key, final double value) {
+        if ((key < myLower) || (key >= myUpper)) {
+            throw new IllegalArgumentException("Key out of range!");
+        }
+        return myStorage.put(key, value);
+    }
+
+    private int first() {
+        return myLower == Long.MIN_VALUE ? 0 : myStorage.lowerBound(myLower);
+    }
+
+    private int limit() {
+        return myUpper == Long.MAX_VALUE ? myStorage.size : myStorage.lowerBound(myUpper);
+    }
+
+    /**
+     * A view sharing the storage, the range is clamped to the range of this series.
+     */
+    private DenseCalendarDateSeries view(final long lower, final long upper) {
+
+        final long tmpLower = Math.max(lower, myLower);
+        final long tmpUpper = Math.max(tmpLower, Math.min(upper, myUpper));
+
+        final DenseCalendarDateSeries retVal = new DenseCalendarDateSeries(myStorage, myResolution, tmpLower, tmpUpper, myMapper);
+        retVal.setColour(myColour);
+        retVal.setName(this.getName());
+
+        return retVal;
+    }
+
+    void setColour(final ColourData colour) {
+        myColour = colour;
+    }
+
+    void setName(final String name) {
+        myName = name;
+    }
+
+}
@@ -0,0 +1,70 @@
+package com.hackovation.hybo.Controllers;
+
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import com.hackovation.hybo.bean.ProfileJobResponse;
+import com.hackovation.hybo.bean.ProfileRequest;
+import com.hackovation.hybo.services.ProfileCreationService;
+
+/*
+ * Status codes of the asynchronous profile endpoints.
+ */
+public class BlackLittermanControllerTest {
+
+	private static final String REQUEST = "{\"userId\":\"user1\",\"risk\":\"HIGH\",\"amount\":10000,\"time\":5}";
+
+	private ProfileCreationService profileCreationService;
+	private BlackLittermanController controller;
+
+	@Before
+	public void setUp(){
+		profileCreationService = mock(ProfileCreationService.class);
+		controller = new BlackLittermanController();
+		controller.profileCreationService = profileCreationService;
+	}
+
+	@Test
+	public void testAcceptedJobReturnsItsId() throws IOException{
+		ProfileJobResponse job = new ProfileJobResponse();
+		job.setJobId("job1");
+		job.setStatus("QUEUED");
+		when(profileCreationService.submit(any(ProfileRequest.class))).thenReturn("job1");
+		when(profileCreationService.getJob("job1")).thenReturn(job);
+		ResponseEntity<String> response = controller.createProfileAsync(new HttpEntity<>(REQUEST));
+		Assert.assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+		Assert.assertTrue(response.getBody().contains("job1"));
+	}
+
+	@Test
+	public void testFullQueueIsServiceUnavailable() throws IOException{
+		when(profileCreationService.submit(any(ProfileRequest.class))).thenThrow(new RejectedExecutionException());
+		ResponseEntity<String> response = controller.createProfileAsync(new HttpEntity<>(REQUEST));
+		Assert.assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+		Assert.assertTrue(response.getBody().contains("REJECTED"));
+	}
+
+	@Test
+	public void testPendingJobOfTheUserIsConflict() throws IOException{
+		when(profileCreationService.submit(any(ProfileRequest.class))).thenThrow(new IllegalStateException("A profile for user1 is already in progress"));
+		ResponseEntity<String> response = controller.createProfileAsync(new HttpEntity<>(REQUEST));
+		Assert.assertEquals(HttpStatus.CONFLICT, response.getStatusCode());
+		Assert.assertTrue(response.getBody().contains("already in progress"));
+	}
+
+	@Test
+	public void testUnknownOrExpiredJobIsNotFound() throws IOException{
+		Assert.assertEquals(HttpStatus.NOT_FOUND, controller.getCreateProfileStatus("expired").getStatusCode());
+	}
+}
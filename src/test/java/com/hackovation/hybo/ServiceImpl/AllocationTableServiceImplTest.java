@@ -0,0 +1,147 @@
+package com.hackovation.hybo.ServiceImpl;
+
+import static org.mockito.Mockito.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+import org.algo.matrix.BasicMatrix;
+import org.algo.matrix.PrimitiveMatrix;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.hack17.hybo.domain.MarketWeight;
+import com.hack17.hybo.domain.RiskTolerance;
+import com.hack17.hybo.repository.PortfolioRepository;
+import com.hackovation.hybo.services.CovarianceService;
+
+/*
+ * Every solve reads the market weights once, so the number of getMarketWeight calls is the number of rows
+ * that were solved rather than looked up.
+ */
+public class AllocationTableServiceImplTest {
+
+	private static final double[] MARKET_CAPS = {40,20,10,10,10,10};
+
+	private PortfolioRepository portfolioRepository;
+	private CovarianceService covarianceService;
+	private BasicMatrix covarianceMatrix;
+
+	@Before
+	public void setUp(){
+		portfolioRepository = mock(PortfolioRepository.class);
+		List<MarketWeight> marketWeights = new ArrayList<>();
+		for(int i=0;i<MARKET_CAPS.length;i++){
+			MarketWeight marketWeight = mock(MarketWeight.class);
+			when(marketWeight.getEtf()).thenReturn(AllocationTableServiceImpl.MARKET_WEIGHT_ETFS[i]);
+			when(marketWeight.getWeight()).thenReturn(MARKET_CAPS[i]);
+			marketWeights.add(marketWeight);
+		}
+		when(portfolioRepository.getMarketWeight(anyInt())).thenReturn(marketWeights);
+		covarianceMatrix = makeCovarianceMatrix(1.0);
+		covarianceService = mock(CovarianceService.class);
+		when(covarianceService.getCovarianceMatrix(AllocationTableServiceImpl.ASSET_TICKERS, day(1))).thenReturn(covarianceMatrix);
+		when(covarianceService.getCovarianceMatrix(AllocationTableServiceImpl.ASSET_TICKERS, day(2))).thenReturn(covarianceMatrix);
+		when(covarianceService.getCovarianceMatrix(AllocationTableServiceImpl.ASSET_TICKERS, day(3))).thenReturn(covarianceMatrix);
+	}
+
+	private AllocationTableServiceImpl makeService(int cacheSize){
+		AllocationTableServiceImpl service = new AllocationTableServiceImpl(0.26, cacheSize);
+		service.portfolioRepository = portfolioRepository;
+		service.covarianceService = covarianceService;
+		return service;
+	}
+
+	private static Date day(int day){
+		Calendar cal = Calendar.getInstance();
+		cal.clear();
+		cal.set(2017, Calendar.JUNE, day);
+		return cal.getTime();
+	}
+
+	private static BasicMatrix makeCovarianceMatrix(double scale){
+		int size = AllocationTableServiceImpl.ASSET_TICKERS.length;
+		double[][] covariances = new double[size][size];
+		for(int i=0;i<size;i++){
+			for(int j=0;j<size;j++) covariances[i][j] = scale*(i==j ? 0.04+0.01*i : 0.005);
+		}
+		return PrimitiveMatrix.FACTORY.rows(covariances);
+	}
+
+	@Test
+	public void testSecondRequestIsALookup(){
+		AllocationTableServiceImpl service = makeService(16);
+		double[] first = service.getAssetWeights(day(1), RiskTolerance.HIGH);
+		double[] second = service.getAssetWeights(day(1), RiskTolerance.HIGH);
+		Assert.assertArrayEquals(first, second, 0.0);
+		verify(portfolioRepository, times(1)).getMarketWeight(anyInt());
+	}
+
+	@Test
+	public void testPrecomputedRowsAreLookups(){
+		AllocationTableServiceImpl service = makeService(16);
+		service.precompute(day(1));
+		verify(portfolioRepository, times(1)).getMarketWeight(anyInt());
+		for(RiskTolerance riskTolerance:RiskTolerance.values()) service.getAssetWeights(day(1), riskTolerance);
+		verify(portfolioRepository, times(1)).getMarketWeight(anyInt());
+	}
+
+	@Test
+	public void testNewCovarianceMatrixSolvesAgain(){
+		AllocationTableServiceImpl service = makeService(16);
+		double[] before = service.getAssetWeights(day(1), RiskTolerance.HIGH);
+		// Prices were reloaded, the covariance cache hands out a new matrix for the same day
+		when(covarianceService.getCovarianceMatrix(AllocationTableServiceImpl.ASSET_TICKERS, day(1))).thenReturn(makeCovarianceMatrix(2.0));
+		double[] after = service.getAssetWeights(day(1), RiskTolerance.HIGH);
+		verify(portfolioRepository, times(2)).getMarketWeight(anyInt());
+		boolean changed = false;
+		for(int i=0;i<before.length;i++) changed |= Math.abs(before[i]-after[i])>1e-9;
+		Assert.assertTrue("The view is balanced against the new covariances", changed);
+		// An equal but different matrix is not taken for the cached one either
+		when(covarianceService.getCovarianceMatrix(AllocationTableServiceImpl.ASSET_TICKERS, day(1))).thenReturn(makeCovarianceMatrix(2.0));
+		service.getAssetWeights(day(1), RiskTolerance.HIGH);
+		verify(portfolioRepository, times(3)).getMarketWeight(anyInt());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedRowIsEvicted(){
+		AllocationTableServiceImpl service = makeService(2);
+		service.getAssetWeights(day(1), RiskTolerance.HIGH);
+		service.getAssetWeights(day(2), RiskTolerance.HIGH);
+		// Day 1 is now the most recently used, day 3 evicts day 2
+		service.getAssetWeights(day(1), RiskTolerance.HIGH);
+		service.getAssetWeights(day(3), RiskTolerance.HIGH);
+		verify(portfolioRepository, times(3)).getMarketWeight(anyInt());
+		service.getAssetWeights(day(1), RiskTolerance.HIGH);
+		verify(portfolioRepository, times(3)).getMarketWeight(anyInt());
+		service.getAssetWeights(day(2), RiskTolerance.HIGH);
+		verify(portfolioRepository, times(4)).getMarketWeight(anyInt());
+	}
+
+	@Test
+	public void testInvalidateDropsAllRows(){
+		AllocationTableServiceImpl service = makeService(16);
+		service.getAssetWeights(day(1), RiskTolerance.HIGH);
+		service.invalidate();
+		service.getAssetWeights(day(1), RiskTolerance.HIGH);
+		verify(portfolioRepository, times(2)).getMarketWeight(anyInt());
+	}
+
+	@Test
+	public void testWithoutViewTheWeightsAreTheMarketPortfolio(){
+		AllocationTableServiceImpl service = makeService(16);
+		double total = 0;
+		for(double cap:MARKET_CAPS) total += cap;
+		for(RiskTolerance riskTolerance:new RiskTolerance[]{RiskTolerance.LOW,RiskTolerance.VERY_LOW,RiskTolerance.VERY_HIGH}){
+			double[] weights = service.getAssetWeights(day(1), riskTolerance);
+			for(int i=0;i<weights.length;i++) Assert.assertEquals(riskTolerance+"["+i+"]", MARKET_CAPS[i]/total, weights[i], 1e-12);
+		}
+	}
+}
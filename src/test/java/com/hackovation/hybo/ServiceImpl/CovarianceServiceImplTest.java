@@ -0,0 +1,230 @@
+package com.hackovation.hybo.ServiceImpl;
+
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.algo.finance.FinanceUtils;
+import org.algo.matrix.BasicMatrix;
+import org.algo.series.CalendarDateSeries;
+import org.algo.type.CalendarDate;
+import org.algo.type.CalendarDateUnit;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.hack17.hybo.domain.IndexPrice;
+import com.hack17.hybo.repository.PortfolioRepository;
+import com.hackovation.hybo.Util.HyboUtil;
+import com.hackovation.hybo.Util.PriceHistory;
+import com.hackovation.hybo.services.PriceCacheService;
+
+/*
+ * Three tickers with a month of daily prices, the last one without a price on one day. The same prices are in
+ * the price cache for TICKERS and only in the database for DB_TICKERS, so the cached path can be checked
+ * against FinanceUtils on the series from the database.
+ */
+public class CovarianceServiceImplTest {
+
+	private static final String[] TICKERS = {"VTI","IWN","VCIT"};
+	private static final String[] DB_TICKERS = {"DB1","DB2","DB3"};
+	private static final long FIRST_DAY = 17318; // 2017-06-01
+	private static final int DAYS = 30;
+	private static final int MISSING_DAY = 10;
+
+	private PriceCacheService priceCacheService;
+	private PortfolioRepository portfolioRepository;
+
+	@Before
+	public void setUp(){
+		priceCacheService = mock(PriceCacheService.class);
+		for(int a=0;a<TICKERS.length;a++) when(priceCacheService.getPriceHistory(TICKERS[a])).thenReturn(makeHistory(a));
+		portfolioRepository = mock(PortfolioRepository.class);
+		for(int a=0;a<DB_TICKERS.length;a++){
+			List<IndexPrice> indexPrices = makeIndexPrices(a);
+			// The prices up to the date, like the repository query
+			when(portfolioRepository.getIndexPrice(eq(DB_TICKERS[a]), any(Date.class))).thenAnswer(invocation->{
+				Date date = (Date)invocation.getArguments()[1];
+				List<IndexPrice> upToDate = new ArrayList<>();
+				for(IndexPrice indexPrice:indexPrices) if(!indexPrice.getDate().after(date)) upToDate.add(indexPrice);
+				return upToDate;
+			});
+		}
+	}
+
+	private CovarianceServiceImpl makeService(int cacheSize){
+		CovarianceServiceImpl service = new CovarianceServiceImpl(cacheSize);
+		service.priceCacheService = priceCacheService;
+		service.portfolioRepository = portfolioRepository;
+		return service;
+	}
+
+	private static double close(int day,int ticker){
+		return (100-20*ticker)*(1+0.002*day*(ticker-1)+0.03*Math.sin(day*(ticker+1)));
+	}
+
+	private static boolean hasPrice(int day,int ticker){
+		return !(ticker==TICKERS.length-1 && day==MISSING_DAY);
+	}
+
+	private static PriceHistory makeHistory(int ticker){
+		int size = 0;
+		for(int t=0;t<DAYS;t++) if(hasPrice(t, ticker)) size++;
+		long[] epochDays = new long[size];
+		double[] closes = new double[size];
+		int k = 0;
+		for(int t=0;t<DAYS;t++){
+			if(!hasPrice(t, ticker)) continue;
+			epochDays[k] = FIRST_DAY+t;
+			closes[k] = close(t, ticker);
+			k++;
+		}
+		return new PriceHistory(epochDays, closes);
+	}
+
+	private static List<IndexPrice> makeIndexPrices(int ticker){
+		List<IndexPrice> indexPrices = new ArrayList<>();
+		for(int t=0;t<DAYS;t++){
+			if(!hasPrice(t, ticker)) continue;
+			IndexPrice indexPrice = mock(IndexPrice.class);
+			when(indexPrice.getDate()).thenReturn(HyboUtil.fromEpochDay(FIRST_DAY+t));
+			when(indexPrice.getPrice()).thenReturn(close(t, ticker));
+			indexPrices.add(indexPrice);
+		}
+		return indexPrices;
+	}
+
+	// FinanceUtils on the prices up to and including the day
+	private static BasicMatrix makeExpected(int day){
+		Collection<CalendarDateSeries<Double>> col = new ArrayList<>();
+		for(int a=0;a<TICKERS.length;a++){
+			CalendarDateSeries<Double> series = new CalendarDateSeries<Double>(CalendarDateUnit.DAY).name(TICKERS[a]);
+			for(int t=0;t<=day;t++) if(hasPrice(t, a)) series.put(new CalendarDate(HyboUtil.fromEpochDay(FIRST_DAY+t)), close(t, a));
+			col.add(series);
+		}
+		return FinanceUtils.makeCovarianceMatrix(col);
+	}
+
+	private static void assertMatrixEquals(BasicMatrix expected,BasicMatrix actual){
+		Assert.assertEquals(expected.countRows(), actual.countRows());
+		Assert.assertEquals(expected.countColumns(), actual.countColumns());
+		for(int i=0;i<expected.countRows();i++){
+			for(int j=0;j<expected.countColumns();j++) Assert.assertEquals(expected.doubleValue(i, j), actual.doubleValue(i, j), 1e-10);
+		}
+	}
+
+	private static Date day(int day){
+		return HyboUtil.fromEpochDay(FIRST_DAY+day);
+	}
+
+	@Test
+	public void testCachedPricesMatchFinanceUtils(){
+		CovarianceServiceImpl service = makeService(16);
+		assertMatrixEquals(makeExpected(20), service.getCovarianceMatrix(TICKERS, day(20)));
+		assertMatrixEquals(makeExpected(20), service.getCovarianceMatrix(DB_TICKERS, day(20)));
+	}
+
+	@Test
+	public void testSecondRequestIsAHit(){
+		CovarianceServiceImpl service = makeService(16);
+		BasicMatrix first = service.getCovarianceMatrix(TICKERS, day(20));
+		BasicMatrix second = service.getCovarianceMatrix(TICKERS, day(20));
+		Assert.assertSame(first, second);
+		Assert.assertEquals(1, service.getMissCount());
+		Assert.assertEquals(1, service.getHitCount());
+		// Another day or other tickers are other keys
+		service.getCovarianceMatrix(TICKERS, day(25));
+		service.getCovarianceMatrix(new String[]{"VTI","IWN"}, day(20));
+		Assert.assertEquals(3, service.getMissCount());
+	}
+
+	@Test
+	public void testNextDayExtendsPreviousDay(){
+		CovarianceServiceImpl service = makeService(16);
+		service.getCovarianceMatrix(TICKERS, day(MISSING_DAY-1));
+		// Over the day without a common price and the one after it
+		BasicMatrix extended = service.getCovarianceMatrix(TICKERS, day(MISSING_DAY));
+		BasicMatrix next = service.getCovarianceMatrix(TICKERS, day(MISSING_DAY+1));
+		Assert.assertEquals(2, service.getIncrementalCount());
+		assertMatrixEquals(makeExpected(MISSING_DAY), extended);
+		assertMatrixEquals(makeExpected(MISSING_DAY+1), next);
+		assertMatrixEquals(makeService(16).getCovarianceMatrix(TICKERS, day(MISSING_DAY+1)), next);
+	}
+
+	@Test
+	public void testReloadedPricesAreComputedAgain(){
+		CovarianceServiceImpl service = makeService(16);
+		BasicMatrix before = service.getCovarianceMatrix(TICKERS, day(20));
+		when(priceCacheService.getPriceHistory(TICKERS[0])).thenReturn(makeHistory(0));
+		BasicMatrix after = service.getCovarianceMatrix(TICKERS, day(20));
+		Assert.assertNotSame(before, after);
+		Assert.assertEquals(2, service.getMissCount());
+		assertMatrixEquals(before, after);
+	}
+
+	@Test
+	public void testInvalidateDropsAllEntries(){
+		CovarianceServiceImpl service = makeService(16);
+		service.getCovarianceMatrix(TICKERS, day(20));
+		service.invalidate();
+		service.getCovarianceMatrix(TICKERS, day(20));
+		Assert.assertEquals(2, service.getMissCount());
+		Assert.assertEquals(0, service.getHitCount());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEntryIsEvicted(){
+		CovarianceServiceImpl service = makeService(2);
+		service.getCovarianceMatrix(DB_TICKERS, day(20));
+		service.getCovarianceMatrix(DB_TICKERS, day(22));
+		service.getCovarianceMatrix(DB_TICKERS, day(20));
+		service.getCovarianceMatrix(DB_TICKERS, day(24));
+		Assert.assertEquals(3, service.getMissCount());
+		service.getCovarianceMatrix(DB_TICKERS, day(22));
+		Assert.assertEquals(4, service.getMissCount());
+	}
+
+	@Test
+	public void testConcurrentRequestsComputeOnce() throws Exception{
+		int threads = 8;
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		List<IndexPrice> indexPrices = makeIndexPrices(0);
+		// The first database read holds the computation until every request was made
+		when(portfolioRepository.getIndexPrice(anyString(), any(Date.class))).thenAnswer(invocation->{
+			started.countDown();
+			release.await(10, TimeUnit.SECONDS);
+			return indexPrices;
+		});
+		CovarianceServiceImpl service = makeService(16);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try{
+			List<Future<BasicMatrix>> results = new ArrayList<>();
+			for(int i=0;i<threads;i++) results.add(executor.submit(()->service.getCovarianceMatrix(DB_TICKERS, day(20))));
+			Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+			Thread.sleep(100);
+			release.countDown();
+			BasicMatrix first = results.get(0).get(10, TimeUnit.SECONDS);
+			for(Future<BasicMatrix> result:results) Assert.assertSame(first, result.get(10, TimeUnit.SECONDS));
+		}finally{
+			executor.shutdownNow();
+		}
+		Assert.assertEquals(1, service.getMissCount());
+		Assert.assertEquals(threads-1, service.getHitCount());
+		for(String ticker:DB_TICKERS) verify(portfolioRepository, times(1)).getIndexPrice(ticker, day(20));
+	}
+}
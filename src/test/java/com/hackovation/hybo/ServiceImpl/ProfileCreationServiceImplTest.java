@@ -0,0 +1,158 @@
+package com.hackovation.hybo.ServiceImpl;
+
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.hack17.hybo.repository.PortfolioRepository;
+import com.hackovation.hybo.bean.ProfileJobResponse;
+import com.hackovation.hybo.bean.ProfileRequest;
+import com.hackovation.hybo.services.PortfolioService;
+
+/*
+ * The portfolio service is a mock that builds no portfolios, the jobs only go through the motions.
+ */
+public class ProfileCreationServiceImplTest {
+
+	private PortfolioService portfolioService;
+	private ProfileCreationServiceImpl service;
+	private final CountDownLatch started = new CountDownLatch(1);
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	@Before
+	public void setUp(){
+		portfolioService = mock(PortfolioService.class);
+	}
+
+	@After
+	public void tearDown(){
+		release.countDown();
+		if(service!=null) service.shutdown();
+	}
+
+	private ProfileCreationServiceImpl makeService(int workers,int queueCapacity,int retentionMinutes){
+		service = new ProfileCreationServiceImpl(workers, queueCapacity, retentionMinutes);
+		service.portfolioService = portfolioService;
+		service.portfolioRepository = mock(PortfolioRepository.class);
+		return service;
+	}
+
+	private static ProfileRequest makeRequest(String userId){
+		ProfileRequest request = new ProfileRequest();
+		request.setUserId(userId);
+		request.setRisk("HIGH");
+		request.setAmount(10000);
+		request.setTime(5);
+		request.setDate("20170601");
+		return request;
+	}
+
+	// Jobs block in createProfile until released
+	private void blockJobs(){
+		when(portfolioService.createProfile(any(ProfileRequest.class))).thenAnswer(invocation->{
+			started.countDown();
+			release.await();
+			return null;
+		});
+	}
+
+	private ProfileJobResponse awaitFinished(String jobId) throws InterruptedException{
+		long timeout = System.currentTimeMillis()+TimeUnit.SECONDS.toMillis(10);
+		while(System.currentTimeMillis()<timeout){
+			ProfileJobResponse job = service.getJob(jobId);
+			if(ProfileCreationServiceImpl.DONE.equals(job.getStatus()) || ProfileCreationServiceImpl.FAILED.equals(job.getStatus())) return job;
+			Thread.sleep(5);
+		}
+		throw new AssertionError("Job "+jobId+" did not finish");
+	}
+
+	@Test
+	public void testPollingReturnsThePortfolio() throws InterruptedException{
+		makeService(1, 4, 30);
+		blockJobs();
+		String jobId = service.submit(makeRequest("user1"));
+		Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+		ProfileJobResponse running = service.getJob(jobId);
+		Assert.assertEquals(jobId, running.getJobId());
+		Assert.assertEquals(ProfileCreationServiceImpl.RUNNING, running.getStatus());
+		Assert.assertNull(running.getPortfolio());
+		release.countDown();
+		ProfileJobResponse done = awaitFinished(jobId);
+		Assert.assertEquals(ProfileCreationServiceImpl.DONE, done.getStatus());
+		Assert.assertNotNull(done.getPortfolio());
+		Assert.assertNull(done.getError());
+	}
+
+	@Test
+	public void testFailureIsRecordedOnTheJob() throws InterruptedException{
+		makeService(1, 4, 30);
+		when(portfolioService.createProfile(any(ProfileRequest.class))).thenThrow(new IllegalStateException("No prices"));
+		ProfileJobResponse job = awaitFinished(service.submit(makeRequest("user1")));
+		Assert.assertEquals(ProfileCreationServiceImpl.FAILED, job.getStatus());
+		Assert.assertEquals("IllegalStateException: No prices", job.getError());
+	}
+
+	@Test
+	public void testFullQueueRejects() throws InterruptedException{
+		makeService(1, 1, 30);
+		blockJobs();
+		service.submit(makeRequest("user1"));
+		Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+		String queued = service.submit(makeRequest("user2"));
+		Assert.assertEquals(ProfileCreationServiceImpl.QUEUED, service.getJob(queued).getStatus());
+		try{
+			service.submit(makeRequest("user3"));
+			Assert.fail("The queue is full");
+		}catch(RejectedExecutionException e){
+			// expected
+		}
+		// A rejected submission leaves nothing pending for its user
+		release.countDown();
+		awaitFinished(queued);
+		awaitFinished(service.submit(makeRequest("user3")));
+	}
+
+	@Test
+	public void testOneJobPerUser() throws InterruptedException{
+		makeService(2, 4, 30);
+		blockJobs();
+		String first = service.submit(makeRequest("user1"));
+		try{
+			service.submit(makeRequest("user1"));
+			Assert.fail("user1 already has a job");
+		}catch(IllegalStateException e){
+			Assert.assertTrue(e.getMessage().contains(first));
+		}
+		release.countDown();
+		awaitFinished(first);
+		String second = service.submit(makeRequest("user1"));
+		Assert.assertNotEquals(first, second);
+		awaitFinished(second);
+	}
+
+	@Test
+	public void testFinishedJobExpires() throws InterruptedException{
+		// No retention, a job is gone as soon as it has finished
+		makeService(1, 4, 0);
+		blockJobs();
+		String jobId = service.submit(makeRequest("user1"));
+		Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+		Assert.assertNotNull("A running job never expires", service.getJob(jobId));
+		release.countDown();
+		long timeout = System.currentTimeMillis()+TimeUnit.SECONDS.toMillis(10);
+		while(service.getJob(jobId)!=null){
+			Assert.assertTrue("Job "+jobId+" did not expire", System.currentTimeMillis()<timeout);
+			Thread.sleep(5);
+		}
+		Assert.assertNull(service.getJob("unknown"));
+	}
+}
@@ -0,0 +1,160 @@
+package com.hackovation.hybo.Util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.hackovation.hybo.Util.PriceColumnFile.Column;
+import com.hackovation.hybo.Util.PriceCsvParser.Format;
+import com.hackovation.hybo.Util.PriceCsvParser.PriceColumns;
+
+/*
+ * Writes parsed CSV prices and reads them back through the mapping.
+ */
+public class PriceColumnFileTest {
+
+	// Newest first as the downloaded files are, 2-Aug-17 occurs twice and the later row has the right close
+	private static final String VTI = "Date,Open,High,Low,Close,Volume\n"
+			+"4-Aug-17,127.1,127.9,126.8,127.5,2100\n"
+			+"3-Aug-17,126.9,127.3,126.5,127.0,1900\n"
+			+"2-Aug-17,126.0,126.9,125.9,100.0,1\n"
+			+"2-Aug-17,126.0,126.9,125.9,126.7,1800\n"
+			+"1-Aug-17,125.5,126.2,125.1,126.1,1700\n";
+	private static final String LQD = "Date,Open,High,Low,Close,Volume\n"
+			+"1-Aug-17,119.1,119.4,118.9,119.2,500\n"
+			+"31-Jul-17,118.8,119.2,118.7,119.0,600\n";
+
+	private File file;
+
+	@Before
+	public void setUp() throws IOException{
+		file = File.createTempFile("prices", ".hpcf");
+	}
+
+	@After
+	public void tearDown(){
+		file.delete();
+	}
+
+	private static PriceColumns parse(String csv,String index){
+		return PriceCsvParser.parse(csv.getBytes(StandardCharsets.US_ASCII), index, Format.ETF);
+	}
+
+	private static long day(int year,int month,int dayOfMonth){
+		return LocalDate.of(year, month, dayOfMonth).toEpochDay();
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException{
+		PriceColumnFile.write(file, Arrays.asList(parse(VTI, "VTI"), parse(LQD, "LQD")));
+		PriceColumnFile prices = PriceColumnFile.open(file);
+		Assert.assertEquals(Arrays.asList("VTI", "LQD"), prices.getTickers());
+		Assert.assertTrue(prices.contains("LQD"));
+		Assert.assertFalse(prices.contains("VTV"));
+		Assert.assertEquals(0, prices.size("VTV"));
+		Assert.assertNull(prices.getPriceHistory("VTV"));
+		Assert.assertNull(prices.getColumn("VTV", Column.CLOSE));
+
+		// Ascending days, the duplicate day keeps the later row
+		Assert.assertEquals(4, prices.size("VTI"));
+		PriceHistory history = prices.getPriceHistory("VTI");
+		long[] days = {day(2017, 8, 1),day(2017, 8, 2),day(2017, 8, 3),day(2017, 8, 4)};
+		double[] closes = {126.1,126.7,127.0,127.5};
+		for(int i=0;i<days.length;i++){
+			Assert.assertEquals(days[i], history.getEpochDay(i));
+			Assert.assertEquals(days[i], prices.getEpochDays("VTI").get(i));
+			Assert.assertEquals(closes[i], history.getClose(i), 0.0);
+			Assert.assertEquals(closes[i], prices.getColumn("VTI", Column.CLOSE).doubleValue(i), 0.0);
+		}
+		Assert.assertEquals(1800.0, prices.getColumn("VTI", Column.VOLUME).doubleValue(1), 0.0);
+		Assert.assertEquals(126.9, prices.getColumn("VTI", Column.HIGH).doubleValue(1), 0.0);
+
+		PriceHistory lqd = prices.getPriceHistory("LQD");
+		Assert.assertEquals(2, lqd.size());
+		Assert.assertEquals(day(2017, 7, 31), lqd.getEpochDay(0));
+		Assert.assertEquals(119.2, lqd.getClose(1), 0.0);
+	}
+
+	@Test
+	public void testRewriteFromColumns() throws IOException{
+		PriceColumnFile.write(file, Collections.singletonList(parse(VTI, "VTI")));
+		PriceColumns columns = PriceColumnFile.open(file).getPriceColumns("VTI");
+		File copy = File.createTempFile("prices", ".hpcf");
+		try{
+			PriceColumnFile.write(copy, Collections.singletonList(columns));
+			PriceColumnFile prices = PriceColumnFile.open(file);
+			PriceColumnFile copied = PriceColumnFile.open(copy);
+			Assert.assertEquals(prices.size("VTI"), copied.size("VTI"));
+			for(int i=0;i<prices.size("VTI");i++){
+				Assert.assertEquals(prices.getEpochDays("VTI").get(i), copied.getEpochDays("VTI").get(i));
+				for(Column column:Column.values())
+					Assert.assertEquals(prices.getColumn("VTI", column).doubleValue(i), copied.getColumn("VTI", column).doubleValue(i), 0.0);
+			}
+		}finally{
+			copy.delete();
+		}
+	}
+
+	@Test
+	public void testReplaceWhileMapped() throws IOException{
+		File directory = Files.createTempDirectory("prices").toFile();
+		File base = new File(directory, "prices.hpcf");
+		try{
+			Assert.assertNull(PriceColumnFile.current(base));
+			PriceColumnFile.write(base, Collections.singletonList(parse(LQD, "LQD")));
+			Assert.assertEquals(base, PriceColumnFile.current(base));
+
+			File first = PriceColumnFile.replace(base, Collections.singletonList(parse(VTI, "VTI")));
+			Assert.assertEquals(new File(directory, "prices.hpcf.1"), first);
+			Assert.assertEquals(first, PriceColumnFile.current(base));
+			Assert.assertFalse(base.exists());
+			PriceColumnFile mapped = PriceColumnFile.open(first);
+
+			File second = PriceColumnFile.replace(base, Arrays.asList(parse(VTI, "VTI"), parse(LQD, "LQD")));
+			Assert.assertEquals(new File(directory, "prices.hpcf.2"), second);
+			Assert.assertEquals(second, PriceColumnFile.current(base));
+			Assert.assertEquals(Arrays.asList("VTI", "LQD"), PriceColumnFile.open(second).getTickers());
+			// The replaced file was not written over
+			Assert.assertEquals(Collections.singletonList("VTI"), mapped.getTickers());
+			Assert.assertEquals(127.5, mapped.getPriceHistory("VTI").getClose(3), 0.0);
+			Assert.assertFalse(new File(directory, "prices.hpcf.tmp").exists());
+		}finally{
+			for(File file:directory.listFiles()) file.delete();
+			directory.delete();
+		}
+	}
+
+	@Test
+	public void testTooManyRowsForOneTicker() throws IOException{
+		// Only the row count is checked before anything is read, no need for 2^24 actual rows
+		PriceColumns columns = new PriceColumns("BIG", 1);
+		columns.size = 1<<24;
+		try{
+			PriceColumnFile.write(file, Collections.singletonList(columns));
+			Assert.fail("2^24 rows");
+		}catch(IllegalArgumentException e){
+			Assert.assertEquals(0, file.length());
+		}
+		columns.size = (1<<24)-1;
+		try{
+			PriceColumnFile.write(file, Arrays.asList(columns, columns, columns));
+			Assert.fail("Over 2 GB");
+		}catch(IllegalArgumentException e){
+			Assert.assertEquals(0, file.length());
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testNotAPriceColumnFile() throws IOException{
+		PriceColumnFile.open(file);
+	}
+}
@@ -0,0 +1,148 @@
+package com.hackovation.hybo.rebalance;
+
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.hack17.hybo.domain.Allocation;
+import com.hack17.hybo.domain.Fund;
+import com.hack17.hybo.domain.Portfolio;
+import com.hackovation.hybo.services.PriceCacheService;
+
+/*
+ * Every holding costs 100 and the price cache answers from a fixed map, so the weight at cost of a ticker is
+ * its share of the quantities and the band of 10% is easy to check by hand.
+ */
+public class DriftScreenTest {
+
+	private Map<String,Double> prices;
+	private PriceCacheService priceCacheService;
+
+	@Before
+	public void setUp(){
+		prices = new HashMap<>();
+		priceCacheService = mock(PriceCacheService.class);
+		when(priceCacheService.getIndexPriceForGivenDate(anyString(), any(Date.class)))
+				.thenAnswer(invocation->prices.get(invocation.getArguments()[0]));
+	}
+
+	private static Date date(int month,int hour){
+		Calendar cal = Calendar.getInstance();
+		cal.clear();
+		cal.set(2017, month, 14, hour, 30);
+		return cal.getTime();
+	}
+
+	private static Allocation allocation(String ticker,int quantity,String isActive){
+		Allocation allocation = new Allocation();
+		allocation.setFund(new Fund(ticker));
+		allocation.setQuantity(quantity);
+		allocation.setCostPrice(100.0);
+		allocation.setIsActive(isActive);
+		return allocation;
+	}
+
+	private static Portfolio portfolio(Allocation... allocations){
+		Portfolio portfolio = new Portfolio();
+		portfolio.setAllocations(new ArrayList<>(Arrays.asList(allocations)));
+		return portfolio;
+	}
+
+	@Test
+	public void testSelectsOnlyDriftedPortfolios(){
+		prices.put("VTI", 130.0);
+		prices.put("IWN", 102.0);
+		prices.put("VCIT", 100.0);
+		// 0.5 at cost, 130/230 = 0.565 now
+		Portfolio drifted = portfolio(allocation("VTI", 10, "Y"), allocation("VCIT", 10, "Y"));
+		// 0.5 at cost, 102/202 = 0.505 now
+		Portfolio inBand = portfolio(allocation("IWN", 10, "Y"), allocation("VCIT", 10, "Y"));
+
+		boolean[] selected = new DriftScreen(date(Calendar.JUNE, 0), RebalanceRules.DRIFT_BAND, priceCacheService)
+				.select(Arrays.asList(drifted, inBand, drifted));
+
+		Assert.assertArrayEquals(new boolean[]{true,false,true}, selected);
+	}
+
+	@Test
+	public void testIgnoresInactiveAllocations(){
+		prices.put("VTI", 102.0);
+		prices.put("IWN", 10.0);
+		prices.put("VCIT", 100.0);
+		Portfolio portfolio = portfolio(allocation("VTI", 10, "Y"), allocation("IWN", 100, "N"), allocation("VCIT", 10, "Y"));
+
+		boolean[] selected = new DriftScreen(date(Calendar.JUNE, 0), RebalanceRules.DRIFT_BAND, priceCacheService)
+				.select(Arrays.asList(portfolio));
+
+		Assert.assertFalse(selected[0]);
+		verify(priceCacheService, never()).getIndexPriceForGivenDate(eq("IWN"), any(Date.class));
+	}
+
+	@Test
+	public void testSelectsNothingInBlackoutMonth(){
+		prices.put("VTI", 130.0);
+		prices.put("VCIT", 100.0);
+		Portfolio drifted = portfolio(allocation("VTI", 10, "Y"), allocation("VCIT", 10, "Y"));
+
+		boolean[] december = new DriftScreen(date(Calendar.DECEMBER, 0), RebalanceRules.DRIFT_BAND, priceCacheService)
+				.select(Arrays.asList(drifted));
+		boolean[] march = new DriftScreen(date(Calendar.MARCH, 0), RebalanceRules.DRIFT_BAND, priceCacheService)
+				.select(Arrays.asList(drifted));
+
+		Assert.assertArrayEquals(new boolean[]{false}, december);
+		Assert.assertArrayEquals(new boolean[]{false}, march);
+		verifyZeroInteractions(priceCacheService);
+	}
+
+	@Test
+	public void testLooksUpEachPriceOnceOnTrimmedDate(){
+		prices.put("VTI", 100.0);
+		prices.put("VCIT", 100.0);
+		Portfolio portfolio = portfolio(allocation("VTI", 10, "Y"), allocation("VCIT", 10, "Y"));
+		DriftScreen screen = new DriftScreen(date(Calendar.JUNE, 15), RebalanceRules.DRIFT_BAND, priceCacheService);
+
+		screen.select(Arrays.asList(portfolio, portfolio));
+		screen.select(Arrays.asList(portfolio));
+
+		Calendar trimmed = Calendar.getInstance();
+		trimmed.clear();
+		trimmed.set(2017, Calendar.JUNE, 14);
+		verify(priceCacheService, times(1)).getIndexPriceForGivenDate("VTI", trimmed.getTime());
+		verify(priceCacheService, times(1)).getIndexPriceForGivenDate("VCIT", trimmed.getTime());
+	}
+
+	@Test
+	public void testManyTickers(){
+		// More tickers than the initial price vector holds, only the last one drifts
+		List<Allocation> allocations = new ArrayList<>();
+		for(int i=0;i<40;i++){
+			prices.put("T"+i, i==39?150.0:100.0);
+			allocations.add(allocation("T"+i, 10, "Y"));
+		}
+		Portfolio drifted = portfolio(allocations.toArray(new Allocation[0]));
+		Portfolio inBand = portfolio(allocations.subList(0, 39).toArray(new Allocation[0]));
+
+		boolean[] selected = new DriftScreen(date(Calendar.JUNE, 0), RebalanceRules.DRIFT_BAND, priceCacheService)
+				.select(Arrays.asList(inBand, drifted, inBand));
+
+		Assert.assertArrayEquals(new boolean[]{false,true,false}, selected);
+	}
+}
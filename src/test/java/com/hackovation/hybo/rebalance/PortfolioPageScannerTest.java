@@ -0,0 +1,119 @@
+package com.hackovation.hybo.rebalance;
+
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyInt;
+import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.hack17.hybo.domain.Portfolio;
+
+/*
+ * The query returns the pages it is given in turn, whatever its parameters, so the lastId parameters that
+ * were set show how the scanner walked the keys.
+ */
+public class PortfolioPageScannerTest {
+
+	private EntityManager entityManager;
+	private TypedQuery<Portfolio> query;
+	private List<List<Portfolio>> consumed;
+
+	@SuppressWarnings("unchecked")
+	@Before
+	public void setUp(){
+		entityManager = mock(EntityManager.class);
+		query = mock(TypedQuery.class);
+		when(entityManager.createQuery(anyString(), eq(Portfolio.class))).thenReturn(query);
+		when(query.setParameter(anyString(), any())).thenReturn(query);
+		when(query.setMaxResults(anyInt())).thenReturn(query);
+		consumed = new ArrayList<>();
+	}
+
+	private PortfolioPageScanner makeScanner(int pageSize){
+		PortfolioPageScanner scanner = new PortfolioPageScanner(mock(PlatformTransactionManager.class), pageSize);
+		scanner.entityManager = entityManager;
+		return scanner;
+	}
+
+	private static List<Portfolio> page(int... ids){
+		List<Portfolio> page = new ArrayList<>();
+		for(int id:ids){
+			Portfolio portfolio = mock(Portfolio.class);
+			when(portfolio.getId()).thenReturn(id);
+			page.add(portfolio);
+		}
+		return page;
+	}
+
+	@Test
+	public void testScanStartsEachPageAfterLastId(){
+		Date date = new Date();
+		List<Portfolio> first = page(1,2);
+		List<Portfolio> second = page(5,7);
+		List<Portfolio> last = page(9);
+		when(query.getResultList()).thenReturn(first, second, last);
+
+		makeScanner(2).scan(date, consumed::add);
+
+		Assert.assertEquals(3, consumed.size());
+		Assert.assertSame(first, consumed.get(0));
+		Assert.assertSame(second, consumed.get(1));
+		Assert.assertSame(last, consumed.get(2));
+		verify(query).setParameter("lastId", Integer.MIN_VALUE);
+		verify(query).setParameter("lastId", 2);
+		verify(query).setParameter("lastId", 7);
+		verify(query, times(3)).setParameter("date", date);
+		verify(query, times(3)).setMaxResults(2);
+		verify(entityManager, times(3)).clear();
+	}
+
+	@Test
+	public void testScanStopsOnShortPage(){
+		when(query.getResultList()).thenReturn(page(1,2,3), page(4));
+
+		makeScanner(3).scan(new Date(), consumed::add);
+
+		Assert.assertEquals(2, consumed.size());
+		verify(query, times(2)).getResultList();
+		verify(entityManager, times(2)).clear();
+	}
+
+	@Test
+	public void testScanStopsOnEmptyPage(){
+		when(query.getResultList()).thenReturn(page(1,2), page());
+
+		makeScanner(2).scan(new Date(), consumed::add);
+
+		Assert.assertEquals(1, consumed.size());
+		verify(query, times(2)).getResultList();
+		verify(entityManager, times(1)).clear();
+	}
+
+	@Test
+	public void testScanAfterIgnoresDate(){
+		when(query.getResultList()).thenReturn(page(5,6), page(8));
+
+		makeScanner(2).scanAfter(4, consumed::add);
+
+		Assert.assertEquals(2, consumed.size());
+		verify(query).setParameter("lastId", 4);
+		verify(query).setParameter("lastId", 6);
+		verify(query, never()).setParameter(eq("date"), any());
+	}
+}
@@ -0,0 +1,240 @@
+package com.hackovation.hybo.scheduled;
+
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyListOf;
+import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.hack17.hybo.domain.Allocation;
+import com.hack17.hybo.domain.Fund;
+import com.hack17.hybo.domain.InvestorProfile;
+import com.hack17.hybo.domain.MarketStatus;
+import com.hack17.hybo.domain.Portfolio;
+import com.hack17.hybo.domain.RiskTolerance;
+import com.hack17.hybo.repository.PortfolioRepository;
+import com.hackovation.hybo.AllocationType;
+import com.hackovation.hybo.Util.HyboUtil;
+import com.hackovation.hybo.Util.PriceHistory;
+import com.hackovation.hybo.Util.PricePanel;
+import com.hackovation.hybo.rebalance.PartitionedRebalancingEngine;
+import com.hackovation.hybo.rebalance.PartitionedRebalancingEngine.PortfolioScreen;
+import com.hackovation.hybo.rebalance.PartitionedRebalancingEngine.PortfolioTask;
+import com.hackovation.hybo.rebalance.RuleBacktester;
+import com.hackovation.hybo.services.PriceCacheService;
+
+/*
+ * The live rebalancer and the RuleBacktester decide on the same day to rebalance a portfolio, over a fixed
+ * daily price panel of a year that runs through both blackout months. The live rebalancer runs its full
+ * rebalance(date) pass day by day, with the engine and the price cache replaced by the panel, and stops at
+ * persistAllocationInDatabase: a portfolio's decision day is the first day it would have persisted. The
+ * backtester's decision day is the first day it rebalanced, found on growing prefixes of the panel.
+ *
+ * The time zone is UTC so that the day differences of the live rebalancer do not lose an hour to daylight
+ * saving time.
+ */
+public class RuleBacktesterParityTest {
+
+	private static final String[] TICKERS = {"VTI","IWN","VCIT"};
+	private static final long FIRST_DAY = 17168; // 2017-01-02
+	private static final int DAYS = 365;
+	private static final RiskTolerance[] TOLERANCES = RiskTolerance.values();
+	private static final int[] HORIZONS = {36,48,120};
+	private static final double[][] WEIGHTS = {{0.4,0.3,0.3},{0.2,0.3,0.5}};
+	private static final double INVESTMENT = 100000;
+
+	private TimeZone timeZone;
+	private MarketStatus marketStatus;
+	private RuleBacktester backtester;
+	private BasedOnThresholdRebalcing rebalancer;
+
+	@Before
+	public void setUp(){
+		timeZone = TimeZone.getDefault();
+		TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+		marketStatus = new MarketStatus();
+		marketStatus.setGoingDown(false);
+		marketStatus.setFluctuating(true);
+		marketStatus.setGoingUp(true);
+		backtester = new RuleBacktester(2);
+	}
+
+	@After
+	public void tearDown(){
+		backtester.shutdown();
+		if(rebalancer!=null) rebalancer.shutdown();
+		TimeZone.setDefault(timeZone);
+	}
+
+	private static double close(int day,int ticker){
+		switch(ticker){
+		case 0:
+			return 100*(1+0.004*day);
+		case 1:
+			return 80*(1+0.15*Math.sin(2*Math.PI*day/90));
+		default:
+			return 50*(1+0.0002*day);
+		}
+	}
+
+	// The first days of the panel
+	private static PricePanel makePanel(int days){
+		List<PriceHistory> histories = new ArrayList<>();
+		for(int a=0;a<TICKERS.length;a++){
+			long[] epochDays = new long[days];
+			double[] closes = new double[days];
+			for(int t=0;t<days;t++){
+				epochDays[t] = FIRST_DAY+t;
+				closes[t] = close(t, a);
+			}
+			histories.add(new PriceHistory(epochDays, closes));
+		}
+		List<String> tickers = new ArrayList<>();
+		for(String ticker:TICKERS) tickers.add(ticker);
+		return PricePanel.align(tickers, histories);
+	}
+
+	// Every risk tolerance, horizon and weights, bought on the first day
+	private static List<Portfolio> makePortfolios(){
+		Map<String,AllocationType> types = HyboUtil.getAllocationTypeMap();
+		Date buyDate = HyboUtil.fromEpochDay(FIRST_DAY);
+		List<Portfolio> portfolios = new ArrayList<>();
+		int clientId = 0;
+		for(RiskTolerance riskTolerance:TOLERANCES){
+			for(int horizon:HORIZONS){
+				for(double[] weights:WEIGHTS){
+					InvestorProfile profile = new InvestorProfile();
+					profile.setRiskTolerance(riskTolerance);
+					profile.setInvestmentHorizonInMonths(horizon);
+					Portfolio portfolio = new Portfolio();
+					portfolio.setClientId(++clientId);
+					portfolio.setInvestorProfile(profile);
+					List<Allocation> allocations = new ArrayList<>();
+					for(int a=0;a<TICKERS.length;a++){
+						Allocation allocation = new Allocation();
+						allocation.setFund(new Fund(TICKERS[a]));
+						allocation.setCostPrice(close(0, a));
+						allocation.setQuantity((int)(INVESTMENT*weights[a]/close(0, a)));
+						allocation.setInvestment(INVESTMENT);
+						allocation.setPercentage(weights[a]*100);
+						allocation.setType(types.get(TICKERS[a]).name());
+						allocation.setTransactionDate(buyDate);
+						allocation.setBuyDate(buyDate);
+						allocation.setIsActive("Y");
+						allocations.add(allocation);
+					}
+					portfolio.setAllocations(allocations);
+					portfolios.add(portfolio);
+				}
+			}
+		}
+		return portfolios;
+	}
+
+	/*
+	 * Decision day of every portfolio with the live rebalancer, -1 when it never rebalances.
+	 */
+	private Map<Portfolio,Integer> runLive(List<Portfolio> portfolios){
+		PriceCacheService priceCacheService = mock(PriceCacheService.class);
+		when(priceCacheService.getIndexPriceForGivenDate(anyString(), any(Date.class))).thenAnswer(invocation->{
+			String ticker = (String)invocation.getArguments()[0];
+			int day = (int)(HyboUtil.toEpochDay((Date)invocation.getArguments()[1])-FIRST_DAY);
+			for(int a=0;a<TICKERS.length;a++) if(TICKERS[a].equals(ticker)) return close(day, a);
+			throw new IllegalArgumentException(ticker);
+		});
+		PortfolioRepository portfolioRepository = mock(PortfolioRepository.class);
+		when(portfolioRepository.getEntity(1, MarketStatus.class)).thenReturn(marketStatus);
+
+		// Decided portfolios leave the book, the tiered rule deactivates their allocations in place
+		Map<Portfolio,Integer> decisions = new IdentityHashMap<>();
+		List<Portfolio> open = new ArrayList<>(portfolios);
+		PartitionedRebalancingEngine engine = mock(PartitionedRebalancingEngine.class);
+		doAnswer(invocation->{
+			PortfolioScreen screen = (PortfolioScreen)invocation.getArguments()[1];
+			PortfolioTask task = (PortfolioTask)invocation.getArguments()[2];
+			boolean[] selected = screen.select(open);
+			List<Portfolio> page = new ArrayList<>(open);
+			for(int p=0;p<page.size();p++) if(selected[p]) task.process(page.get(p));
+			return null;
+		}).when(engine).run(any(Date.class), any(PortfolioScreen.class), any(PortfolioTask.class));
+
+		rebalancer = spy(new BasedOnThresholdRebalcing("poll", 0.02));
+		rebalancer.priceCacheService = priceCacheService;
+		rebalancer.portfolioRepository = portfolioRepository;
+		rebalancer.rebalancingEngine = engine;
+		doAnswer(invocation->{
+			Portfolio portfolio = (Portfolio)invocation.getArguments()[0];
+			Date date = (Date)invocation.getArguments()[3];
+			decisions.put(portfolio, (int)(HyboUtil.toEpochDay(date)-FIRST_DAY));
+			open.removeIf(candidate->candidate==portfolio);
+			return null;
+		}).when(rebalancer).persistAllocationInDatabase(any(Portfolio.class), anyListOf(Allocation.class), anyListOf(Allocation.class),
+				any(Date.class));
+
+		for(int t=0;t<DAYS && !open.isEmpty();t++) rebalancer.rebalance(HyboUtil.fromEpochDay(FIRST_DAY+t));
+		for(Portfolio portfolio:open) decisions.put(portfolio, -1);
+		return decisions;
+	}
+
+	/*
+	 * Decision day of every portfolio with the backtester, -1 when it never rebalances.
+	 */
+	private int[] runBacktest(List<Portfolio> portfolios){
+		int[] decisions = new int[portfolios.size()];
+		Arrays.fill(decisions, -1);
+		int open = portfolios.size();
+		for(int days=1;days<=DAYS && open>0;days++){
+			RuleBacktester.Book book = new RuleBacktester.Book(makePanel(days), HyboUtil.getAllocationTypeMap());
+			for(Portfolio portfolio:portfolios) book.add(portfolio);
+			RuleBacktester.Result result = backtester.run(book, marketStatus);
+			for(int p=0;p<decisions.length;p++){
+				if(decisions[p]<0 && result.getRebalances(p)>0){
+					decisions[p] = days-1;
+					open--;
+				}
+			}
+		}
+		return decisions;
+	}
+
+	@Test
+	public void testSameDecisionDays(){
+		// The live rebalancer deactivates allocations, the backtester reads its own copy first
+		int[] backtested = runBacktest(makePortfolios());
+		List<Portfolio> portfolios = makePortfolios();
+		Map<Portfolio,Integer> live = runLive(portfolios);
+
+		PricePanel panel = makePanel(DAYS);
+		int rebalanced = 0;
+		for(int p=0;p<portfolios.size();p++){
+			Portfolio portfolio = portfolios.get(p);
+			String name = portfolio.getInvestorProfile().getRiskTolerance()+"/"+portfolio.getInvestorProfile().getInvestmentHorizonInMonths()
+					+"/"+(p%WEIGHTS.length);
+			Assert.assertEquals(name, live.get(portfolio).intValue(), backtested[p]);
+			if(backtested[p]>=0){
+				rebalanced++;
+				int month = panel.getMonth(backtested[p]);
+				Assert.assertTrue(name+" rebalanced in a blackout month", month!=Calendar.MARCH && month!=Calendar.DECEMBER);
+			}
+		}
+		// Neither all nor none, the horizons of 36 months and some risk tolerances have no rule in this market
+		Assert.assertTrue(rebalanced>0);
+		Assert.assertTrue(rebalanced<portfolios.size());
+	}
+}
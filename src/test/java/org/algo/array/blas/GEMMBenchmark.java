@@ -0,0 +1,93 @@
+/*
+ * Copyright 1997-2017 Optimatika (www.optimatika.se)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.algo.array.blas;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.algo.matrix.store.PrimitiveDenseStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Square n x n products through {@link PrimitiveDenseStore#fillByMultiplying(org.algo.access.Access1D, org.algo.access.Access1D)},
+ * with the packed kernel and, by raising {@link GEMM#THRESHOLD} out of reach, with the previous row by row path
+ * of the multiply strategies. GFLOP/s = 2n<sup>3</sup> / time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class GEMMBenchmark {
+
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(GEMMBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    @Param({ "256", "1024", "4096" })
+    public int dim;
+
+    @Param({ "true", "false" })
+    public boolean packed;
+
+    private PrimitiveDenseStore myLeft;
+    private PrimitiveDenseStore myProduct;
+    private PrimitiveDenseStore myRight;
+
+    @Benchmark
+    public PrimitiveDenseStore multiply() {
+        myProduct.fillByMultiplying(myLeft, myRight);
+        return myProduct;
+    }
+
+    @Setup
+    public void setup() {
+
+        // Each parameter combination runs in its own fork
+        GEMM.THRESHOLD = packed ? 32 : Integer.MAX_VALUE;
+
+        final Random tmpRandom = new Random(1L);
+
+        myLeft = PrimitiveDenseStore.FACTORY.makeZero(dim, dim);
+        myRight = PrimitiveDenseStore.FACTORY.makeZero(dim, dim);
+        for (int ij = 0; ij < myLeft.data.length; ij++) {
+            myLeft.data[ij] = tmpRandom.nextDouble();
+            myRight.data[ij] = tmpRandom.nextDouble();
+        }
+        myProduct = PrimitiveDenseStore.FACTORY.makeZero(dim, dim);
+    }
+
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 1997-2017 Optimatika (www.optimatika.se)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.algo.array.blas;
+
+import java.util.Random;
+
+import org.algo.access.Access2D;
+import org.algo.matrix.store.MatrixStore;
+import org.algo.matrix.store.PrimitiveDenseStore;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The packed kernel, directly and behind the multithreaded multiply strategies, against the naive triple loop.
+ * The shapes are not multiples of the register (MR x NR) or cache (MC x KC) blocks, so the edge handling of
+ * the packing is covered.
+ */
+public class GEMMTest {
+
+    /**
+     * rows, complexity, columns
+     */
+    private static final int[][] SHAPES = { { 1, 1, 1 }, { 5, 3, 7 }, { 33, 33, 33 }, { 67, 45, 71 }, { 130, 257, 131 }, { 129, 300, 5 },
+            { 5, 300, 129 }, { 257, 513, 35 } };
+
+    private static void assertProduct(final Access2D<?> left, final Access2D<?> right, final Access2D<?> product) {
+
+        final int tmpRowDim = (int) left.countRows();
+        final int tmpComplexity = (int) left.countColumns();
+        final int tmpColDim = (int) right.countColumns();
+
+        Assert.assertEquals(tmpRowDim, product.countRows());
+        Assert.assertEquals(tmpColDim, product.countColumns());
+
+        for (int j = 0; j < tmpColDim; j++) {
+            for (int i = 0; i < tmpRowDim; i++) {
+                double tmpExpected = 0.0;
+                for (int c = 0; c < tmpComplexity; c++) {
+                    tmpExpected += left.doubleValue(i, c) * right.doubleValue(c, j);
+                }
+                Assert.assertEquals(tmpRowDim + "x" + tmpComplexity + "x" + tmpColDim + " [" + i + "," + j + "]", tmpExpected,
+                        product.doubleValue(i, j), 1E-14 * tmpComplexity);
+            }
+        }
+    }
+
+    private static PrimitiveDenseStore makeRandom(final Random random, final int rows, final int columns) {
+        final PrimitiveDenseStore retVal = PrimitiveDenseStore.FACTORY.makeZero(rows, columns);
+        for (int ij = 0; ij < retVal.data.length; ij++) {
+            retVal.data[ij] = random.nextDouble() - 0.5;
+        }
+        return retVal;
+    }
+
+    @Test
+    public void testDoubleKernel() {
+
+        final Random tmpRandom = new Random(1L);
+
+        for (final int[] tmpShape : SHAPES) {
+
+            final PrimitiveDenseStore tmpLeft = GEMMTest.makeRandom(tmpRandom, tmpShape[0], tmpShape[1]);
+            final PrimitiveDenseStore tmpRight = GEMMTest.makeRandom(tmpRandom, tmpShape[1], tmpShape[2]);
+
+            final PrimitiveDenseStore tmpProduct = PrimitiveDenseStore.FACTORY.makeZero(tmpShape[0], tmpShape[2]);
+            GEMM.invoke(tmpProduct.data, tmpLeft.data, tmpShape[1], tmpRight.data);
+            GEMMTest.assertProduct(tmpLeft, tmpRight, tmpProduct);
+
+            // Via Access1D, packed element by element
+            tmpProduct.fillAll(Double.NaN);
+            GEMM.invoke(tmpProduct.data, (MatrixStore<Double>) tmpLeft, tmpShape[1], (MatrixStore<Double>) tmpRight);
+            GEMMTest.assertProduct(tmpLeft, tmpRight, tmpProduct);
+        }
+    }
+
+    @Test
+    public void testFloatKernel() {
+
+        final Random tmpRandom = new Random(2L);
+
+        for (final int[] tmpShape : SHAPES) {
+
+            final int tmpComplexity = tmpShape[1];
+            final float[] tmpLeft = new float[tmpShape[0] * tmpComplexity];
+            final float[] tmpRight = new float[tmpComplexity * tmpShape[2]];
+            for (int i = 0; i < tmpLeft.length; i++) {
+                tmpLeft[i] = tmpRandom.nextFloat() - 0.5F;
+            }
+            for (int i = 0; i < tmpRight.length; i++) {
+                tmpRight[i] = tmpRandom.nextFloat() - 0.5F;
+            }
+
+            final float[] tmpProduct = new float[tmpShape[0] * tmpShape[2]];
+            GEMM.invoke(tmpProduct, tmpLeft, tmpComplexity, tmpRight);
+
+            for (int j = 0; j < tmpShape[2]; j++) {
+                for (int i = 0; i < tmpShape[0]; i++) {
+                    double tmpExpected = 0.0;
+                    for (int c = 0; c < tmpComplexity; c++) {
+                        tmpExpected += (double) tmpLeft[i + (c * tmpShape[0])] * tmpRight[c + (j * tmpComplexity)];
+                    }
+                    Assert.assertEquals(tmpExpected, tmpProduct[i + (j * tmpShape[0])], 1E-6 * tmpComplexity);
+                }
+            }
+        }
+    }
+
+    /**
+     * PrimitiveDenseStore picks MultiplyNeither, MultiplyLeft, MultiplyRight or MultiplyBoth depending on which
+     * of the factors are dense, transposed factors are not.
+     */
+    @Test
+    public void testMultiplyStrategies() {
+
+        final Random tmpRandom = new Random(3L);
+
+        for (final int[] tmpShape : SHAPES) {
+
+            final PrimitiveDenseStore tmpLeft = GEMMTest.makeRandom(tmpRandom, tmpShape[0], tmpShape[1]);
+            final PrimitiveDenseStore tmpRight = GEMMTest.makeRandom(tmpRandom, tmpShape[1], tmpShape[2]);
+            final MatrixStore<Double> tmpLeftTransposed = GEMMTest.makeRandom(tmpRandom, tmpShape[1], tmpShape[0]).transpose();
+            final MatrixStore<Double> tmpRightTransposed = GEMMTest.makeRandom(tmpRandom, tmpShape[2], tmpShape[1]).transpose();
+
+            final PrimitiveDenseStore tmpProduct = PrimitiveDenseStore.FACTORY.makeZero(tmpShape[0], tmpShape[2]);
+
+            tmpProduct.fillByMultiplying(tmpLeft, tmpRight);
+            GEMMTest.assertProduct(tmpLeft, tmpRight, tmpProduct);
+
+            tmpProduct.fillByMultiplying(tmpLeftTransposed, tmpRight);
+            GEMMTest.assertProduct(tmpLeftTransposed, tmpRight, tmpProduct);
+
+            tmpProduct.fillByMultiplying(tmpLeft, tmpRightTransposed);
+            GEMMTest.assertProduct(tmpLeft, tmpRightTransposed, tmpProduct);
+
+            tmpProduct.fillByMultiplying(tmpLeftTransposed, tmpRightTransposed);
+            GEMMTest.assertProduct(tmpLeftTransposed, tmpRightTransposed, tmpProduct);
+        }
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 1997-2017 Optimatika (www.optimatika.se)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.algo.finance;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.algo.access.Access1D;
+import org.algo.matrix.PrimitiveMatrix;
+import org.algo.matrix.store.PrimitiveDenseStore;
+import org.algo.random.SampleSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * {@link FinanceUtils#makeCovarianceMatrix(org.algo.access.Access2D, boolean)}, with and without the
+ * multithreaded kernels, against pairwise {@link SampleSet#getCovariance(SampleSet)} on T=500 returns.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CovarianceBenchmark {
+
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CovarianceBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    @Param({ "10", "500", "3000" })
+    public int dim;
+
+    private double[][] myColumns;
+    private PrimitiveDenseStore mySamples;
+
+    @Benchmark
+    public PrimitiveMatrix kernel() {
+        return FinanceUtils.makeCovarianceMatrix(mySamples, true);
+    }
+
+    @Benchmark
+    public double[][] pairwise() {
+
+        final SampleSet[] tmpSets = new SampleSet[dim];
+        for (int j = 0; j < dim; j++) {
+            tmpSets[j] = SampleSet.wrap(Access1D.wrapAccess1D(myColumns[j]));
+        }
+
+        final double[][] retVal = new double[dim][dim];
+        for (int j = 0; j < dim; j++) {
+            for (int i = 0; i < dim; i++) {
+                retVal[i][j] = tmpSets[i].getCovariance(tmpSets[j]);
+            }
+        }
+        return retVal;
+    }
+
+    @Setup
+    public void setup() {
+
+        final Random tmpRandom = new Random(1L);
+
+        myColumns = new double[dim][500];
+        for (int j = 0; j < dim; j++) {
+            for (int i = 0; i < 500; i++) {
+                myColumns[j][i] = 0.01 * tmpRandom.nextGaussian();
+            }
+        }
+        mySamples = PrimitiveDenseStore.FACTORY.columns(myColumns);
+    }
+
+    @Benchmark
+    public PrimitiveMatrix triangle() {
+        return FinanceUtils.makeCovarianceMatrix(mySamples, false);
+    }
+
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 1997-2017 Optimatika (www.optimatika.se)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.algo.finance;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.algo.access.Access1D;
+import org.algo.matrix.BasicMatrix;
+import org.algo.matrix.store.PrimitiveDenseStore;
+import org.algo.random.SampleSet;
+import org.algo.series.CalendarDateSeries;
+import org.algo.series.CoordinatedPanel;
+import org.algo.type.CalendarDate;
+import org.algo.type.CalendarDateUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The covariance builders against pairwise {@link SampleSet#getCovariance(SampleSet)}, the way they were
+ * computed before.
+ */
+public class FinanceUtilsTest {
+
+    private static final long DAY = CalendarDateUnit.DAY.size();
+    private static final double TO_YEAR = (double) CalendarDateUnit.YEAR.size() / (double) DAY;
+
+    private static void assertCovariances(final double[][] columns, final BasicMatrix actual, final double factor) {
+        final int tmpSize = columns.length;
+        Assert.assertEquals(tmpSize, actual.countRows());
+        Assert.assertEquals(tmpSize, actual.countColumns());
+        for (int j = 0; j < tmpSize; j++) {
+            final SampleSet tmpColSet = SampleSet.wrap(Access1D.wrapAccess1D(columns[j]));
+            for (int i = 0; i < tmpSize; i++) {
+                final double tmpExpected = factor * SampleSet.wrap(Access1D.wrapAccess1D(columns[i])).getCovariance(tmpColSet);
+                Assert.assertEquals("[" + i + "," + j + "]", tmpExpected, actual.doubleValue(i, j), 1E-14 * Math.abs(tmpExpected) + 1E-18);
+            }
+        }
+    }
+
+    private static CalendarDateSeries<Double> makeSeries(final String name, final long firstDay, final double[] prices, final boolean[] missing) {
+        final CalendarDateSeries<Double> retVal = new CalendarDateSeries<Double>(CalendarDateUnit.DAY).name(name);
+        for (int d = 0; d < prices.length; d++) {
+            if (!missing[d]) {
+                retVal.put(new CalendarDate((firstDay + d) * DAY), prices[d]);
+            }
+        }
+        return retVal;
+    }
+
+    private static double[] makePrices(final Random random, final int count) {
+        final double[] retVal = new double[count];
+        double tmpPrice = 100.0;
+        for (int d = 0; d < count; d++) {
+            tmpPrice *= Math.exp(0.01 * random.nextGaussian());
+            retVal[d] = tmpPrice;
+        }
+        return retVal;
+    }
+
+    @Test
+    public void testCovariancesOfSamples() {
+
+        final Random tmpRandom = new Random(1L);
+        final int tmpRowDim = 200;
+        final int tmpColDim = 7;
+
+        final double[][] tmpColumns = new double[tmpColDim][tmpRowDim];
+        for (int j = 0; j < tmpColDim; j++) {
+            for (int i = 0; i < tmpRowDim; i++) {
+                tmpColumns[j][i] = (0.01 * tmpRandom.nextGaussian()) + (0.001 * j);
+            }
+        }
+        final PrimitiveDenseStore tmpSamples = PrimitiveDenseStore.FACTORY.columns(tmpColumns);
+
+        FinanceUtilsTest.assertCovariances(tmpColumns, FinanceUtils.makeCovarianceMatrix(tmpSamples, true), 1.0);
+        FinanceUtilsTest.assertCovariances(tmpColumns, FinanceUtils.makeCovarianceMatrix(tmpSamples, false), 1.0);
+    }
+
+    /**
+     * Series that start and end on different days and miss different days are completed and aligned before
+     * their returns are paired, rather than paired by position. Day 150 is missing from all of them. The series
+     * themselves are left as they are.
+     */
+    @Test
+    public void testCovariancesOfIncompleteSeries() {
+
+        final Random tmpRandom = new Random(2L);
+        final int tmpDays = 300;
+        final long tmpFirstDay = 17000L;
+        final int[] tmpStart = { 0, 11, 4 };
+        final int[] tmpEnd = { 290, 300, 275 };
+
+        final List<CalendarDateSeries<Double>> tmpSeries = new ArrayList<>();
+        final double[][] tmpFilled = new double[tmpStart.length][];
+        for (int s = 0; s < tmpStart.length; s++) {
+            final double[] tmpPrices = FinanceUtilsTest.makePrices(tmpRandom, tmpDays);
+            final boolean[] tmpMissing = new boolean[tmpDays];
+            for (int d = 0; d < tmpDays; d++) {
+                tmpMissing[d] = (d < tmpStart[s]) || (d >= tmpEnd[s]) || ((d > tmpStart[s]) && (tmpRandom.nextDouble() < 0.2)) || (d == 150);
+            }
+            tmpSeries.add(FinanceUtilsTest.makeSeries("S" + s, tmpFirstDay, tmpPrices, tmpMissing));
+
+            // Forward filled by hand over the days all series cover
+            tmpFilled[s] = new double[tmpDays];
+            double tmpLast = Double.NaN;
+            for (int d = 0; d < tmpDays; d++) {
+                if (!tmpMissing[d]) {
+                    tmpLast = tmpPrices[d];
+                }
+                tmpFilled[s][d] = tmpLast;
+            }
+        }
+
+        final int tmpFrom = Arrays.stream(tmpStart).max().getAsInt();
+        final int tmpTo = Arrays.stream(tmpEnd).min().getAsInt();
+        final double[][] tmpReturns = new double[tmpStart.length][tmpTo - tmpFrom - 1];
+        for (int s = 0; s < tmpStart.length; s++) {
+            for (int d = tmpFrom; d < (tmpTo - 1); d++) {
+                tmpReturns[s][d - tmpFrom] = Math.log(tmpFilled[s][d + 1] / tmpFilled[s][d]);
+            }
+        }
+
+        final int[] tmpSizes = tmpSeries.stream().mapToInt(CalendarDateSeries::size).toArray();
+        FinanceUtilsTest.assertCovariances(tmpReturns, FinanceUtils.makeCovarianceMatrix(tmpSeries, true), TO_YEAR);
+        Assert.assertArrayEquals(tmpSizes, tmpSeries.stream().mapToInt(CalendarDateSeries::size).toArray());
+    }
+
+    /**
+     * Without completing, only the days that all series have are used.
+     */
+    @Test
+    public void testCovariancesOfSeriesWithGaps() {
+
+        final Random tmpRandom = new Random(4L);
+        final int tmpDays = 250;
+        final int tmpCount = 4;
+
+        final List<CalendarDateSeries<Double>> tmpSeries = new ArrayList<>();
+        final double[][] tmpPrices = new double[tmpCount][];
+        final boolean[] tmpCommon = new boolean[tmpDays];
+        Arrays.fill(tmpCommon, true);
+        for (int s = 0; s < tmpCount; s++) {
+            tmpPrices[s] = FinanceUtilsTest.makePrices(tmpRandom, tmpDays);
+            final boolean[] tmpMissing = new boolean[tmpDays];
+            for (int d = 0; d < tmpDays; d++) {
+                tmpMissing[d] = tmpRandom.nextDouble() < 0.1;
+                tmpCommon[d] &= !tmpMissing[d];
+            }
+            tmpSeries.add(FinanceUtilsTest.makeSeries("S" + s, 17000L, tmpPrices[s], tmpMissing));
+        }
+
+        final int[] tmpDaysInCommon = new int[tmpDays];
+        int tmpRows = 0;
+        for (int d = 0; d < tmpDays; d++) {
+            if (tmpCommon[d]) {
+                tmpDaysInCommon[tmpRows++] = d;
+            }
+        }
+        final double[][] tmpReturns = new double[tmpCount][tmpRows - 1];
+        for (int s = 0; s < tmpCount; s++) {
+            for (int r = 1; r < tmpRows; r++) {
+                tmpReturns[s][r - 1] = Math.log(tmpPrices[s][tmpDaysInCommon[r]] / tmpPrices[s][tmpDaysInCommon[r - 1]]);
+            }
+        }
+
+        FinanceUtilsTest.assertCovariances(tmpReturns, FinanceUtils.makeCovarianceMatrix(tmpSeries, false), TO_YEAR);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCovariancesOfPanelWithoutResolution() {
+
+        final Random tmpRandom = new Random(5L);
+        final boolean[] tmpMissing = new boolean[10];
+
+        final List<CalendarDateSeries<Double>> tmpSeries = new ArrayList<>();
+        tmpSeries.add(FinanceUtilsTest.makeSeries("A", 17000L, FinanceUtilsTest.makePrices(tmpRandom, 10), tmpMissing));
+        tmpSeries.add(FinanceUtilsTest.makeSeries("B", 17000L, FinanceUtilsTest.makePrices(tmpRandom, 10), tmpMissing));
+
+        FinanceUtils.makeCovarianceMatrix(CoordinatedPanel.align(tmpSeries, null, CoordinatedPanel.Mode.INTERSECTION));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCovariancesOfSeriesWithoutCommonKeys() {
+
+        final Random tmpRandom = new Random(3L);
+        final boolean[] tmpMissing = new boolean[10];
+
+        final List<CalendarDateSeries<Double>> tmpSeries = new ArrayList<>();
+        tmpSeries.add(FinanceUtilsTest.makeSeries("A", 17000L, FinanceUtilsTest.makePrices(tmpRandom, 10), tmpMissing));
+        tmpSeries.add(FinanceUtilsTest.makeSeries("B", 17100L, FinanceUtilsTest.makePrices(tmpRandom, 10), tmpMissing));
+
+        FinanceUtils.makeCovarianceMatrix(tmpSeries, false);
+    }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 1997-2017 Optimatika (www.optimatika.se)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.algo.finance;
+
+import java.util.Random;
+
+import org.algo.access.Access1D;
+import org.algo.matrix.PrimitiveMatrix;
+import org.algo.random.SampleSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The rolling estimators against {@link SampleSet#getCovariance(SampleSet)} of the observations they should
+ * currently hold, after every observation.
+ */
+public class RollingCovarianceTest {
+
+    private static final int DIMENSION = 4;
+
+    private static void assertCovariances(final double[][] observations, final int from, final int to, final RollingCovariance estimator) {
+
+        final int tmpCount = to - from;
+        Assert.assertEquals(tmpCount, estimator.count());
+
+        final double[][] tmpColumns = new double[DIMENSION][tmpCount];
+        for (int j = 0; j < DIMENSION; j++) {
+            for (int t = from; t < to; t++) {
+                tmpColumns[j][t - from] = observations[t][j];
+            }
+            Assert.assertEquals("mean " + j, SampleSet.wrap(Access1D.wrapAccess1D(tmpColumns[j])).getMean(), estimator.getMean(j), 1E-14);
+        }
+
+        final PrimitiveMatrix tmpActual = estimator.getCovariances();
+        for (int i = 0; i < DIMENSION; i++) {
+            for (int j = 0; j < DIMENSION; j++) {
+                if (tmpCount < 2) {
+                    Assert.assertTrue("[" + i + "," + j + "] of a single observation", Double.isNaN(tmpActual.doubleValue(i, j)));
+                } else {
+                    final SampleSet tmpSetI = SampleSet.wrap(Access1D.wrapAccess1D(tmpColumns[i]));
+                    final double tmpExpected = tmpSetI.getCovariance(SampleSet.wrap(Access1D.wrapAccess1D(tmpColumns[j])));
+                    Assert.assertEquals("[" + i + "," + j + "] of " + from + ".." + to, tmpExpected, tmpActual.doubleValue(i, j),
+                            1E-12 * Math.abs(tmpExpected) + 1E-17);
+                }
+            }
+        }
+    }
+
+    private static double[][] makeObservations(final long seed, final int count) {
+        final Random tmpRandom = new Random(seed);
+        final double[][] retVal = new double[count][DIMENSION];
+        for (int t = 0; t < count; t++) {
+            final double tmpMarket = 0.01 * tmpRandom.nextGaussian();
+            for (int j = 0; j < DIMENSION; j++) {
+                retVal[t][j] = 0.0005 * (j + 1) + ((0.5 + (0.25 * j)) * tmpMarket) + (0.005 * tmpRandom.nextGaussian());
+            }
+        }
+        return retVal;
+    }
+
+    private static void testWindow(final int window) {
+        final double[][] tmpObservations = RollingCovarianceTest.makeObservations(window, 300);
+        final RollingCovariance tmpEstimator = RollingCovariance.makeWindowed(DIMENSION, window);
+        for (int t = 0; t < tmpObservations.length; t++) {
+            tmpEstimator.add(tmpObservations[t]);
+            RollingCovarianceTest.assertCovariances(tmpObservations, Math.max(0, (t + 1) - window), t + 1, tmpEstimator);
+        }
+    }
+
+    @Test
+    public void testAllObservations() {
+        final double[][] tmpObservations = RollingCovarianceTest.makeObservations(1L, 300);
+        final RollingCovariance tmpEstimator = RollingCovariance.make(DIMENSION);
+        for (int t = 0; t < tmpObservations.length; t++) {
+            tmpEstimator.add(tmpObservations[t]);
+            RollingCovarianceTest.assertCovariances(tmpObservations, 0, t + 1, tmpEstimator);
+        }
+    }
+
+    @Test
+    public void testWindowOfOne() {
+        RollingCovarianceTest.testWindow(1);
+    }
+
+    @Test
+    public void testWindowOfTwo() {
+        RollingCovarianceTest.testWindow(2);
+    }
+
+    @Test
+    public void testWindowOfTwenty() {
+        RollingCovarianceTest.testWindow(20);
+    }
+
+    @Test
+    public void testExponential() {
+        final double tmpLambda = 0.94;
+        final double[][] tmpObservations = RollingCovarianceTest.makeObservations(3L, 100);
+        final RollingCovariance tmpEstimator = RollingCovariance.makeExponential(DIMENSION, tmpLambda);
+        final double[][] tmpExpected = new double[DIMENSION][DIMENSION];
+        for (final double[] tmpObservation : tmpObservations) {
+            tmpEstimator.add(tmpObservation);
+            final PrimitiveMatrix tmpActual = tmpEstimator.getCovariances();
+            for (int i = 0; i < DIMENSION; i++) {
+                for (int j = 0; j < DIMENSION; j++) {
+                    tmpExpected[i][j] = (tmpLambda * tmpExpected[i][j]) + ((1.0 - tmpLambda) * tmpObservation[i] * tmpObservation[j]);
+                    Assert.assertEquals(tmpExpected[i][j], tmpActual.doubleValue(i, j), 1E-15 * Math.abs(tmpExpected[i][j]) + 1E-20);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testResetStartsOver() {
+        final double[][] tmpObservations = RollingCovarianceTest.makeObservations(4L, 30);
+        final RollingCovariance tmpEstimator = RollingCovariance.makeWindowed(DIMENSION, 7);
+        for (int t = 0; t < 20; t++) {
+            tmpEstimator.add(tmpObservations[t]);
+        }
+        tmpEstimator.reset();
+        for (int t = 20; t < 30; t++) {
+            tmpEstimator.add(tmpObservations[t]);
+        }
+        RollingCovarianceTest.assertCovariances(tmpObservations, 23, 30, tmpEstimator);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyWindow() {
+        RollingCovariance.makeWindowed(DIMENSION, 0);
+    }
+
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright 1997-2017 Optimatika (www.optimatika.se)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.algo.finance.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.algo.series.CalendarDateSeries;
+import org.algo.type.CalendarDate;
+import org.algo.type.CalendarDateUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * SourceCache with a source that counts its full loads and refreshes, and can hold a load until released.
+ */
+public class SourceCacheTest {
+
+    static final class CountingSource extends DataSource<DatePrice> {
+
+        final AtomicInteger fullLoads = new AtomicInteger();
+        final List<CalendarDate> refreshKeys = new ArrayList<>();
+        volatile int days;
+        volatile boolean fail = false;
+        volatile CountDownLatch release = null;
+        final CountDownLatch started = new CountDownLatch(1);
+
+        CountingSource(final String symbol, final int days) {
+            super(symbol, CalendarDateUnit.DAY);
+            this.days = days;
+        }
+
+        @Override
+        public CalendarDateSeries<Double> getPriceSeries() {
+            fullLoads.incrementAndGet();
+            started.countDown();
+            if (release != null) {
+                try {
+                    release.await(10L, TimeUnit.SECONDS);
+                } catch (final InterruptedException exception) {
+                    throw new IllegalStateException(exception);
+                }
+            }
+            if (fail) {
+                throw new IllegalStateException("No connection");
+            }
+            return this.makeSeries(0);
+        }
+
+        @Override
+        public CalendarDateSeries<Double> getPriceSeries(final CalendarDate firstKey) {
+            synchronized (refreshKeys) {
+                refreshKeys.add(firstKey);
+            }
+            return this.makeSeries((int) (firstKey.millis / DAY));
+        }
+
+        public DatePrice parse(final String line) {
+            return null;
+        }
+
+        private CalendarDateSeries<Double> makeSeries(final int firstDay) {
+            final CalendarDateSeries<Double> retVal = new CalendarDateSeries<Double>(CalendarDateUnit.DAY).name(this.getSymbol());
+            for (int d = firstDay; d < days; d++) {
+                retVal.put(new CalendarDate(d * DAY), 100.0 + d);
+            }
+            return retVal;
+        }
+
+    }
+
+    static final long DAY = CalendarDateUnit.DAY.size();
+
+    @Test
+    public void testConcurrentMissesLoadOnce() throws Exception {
+
+        final SourceCache tmpCache = new SourceCache(CalendarDateUnit.DAY);
+        final CountingSource tmpSource = new CountingSource("A", 10);
+        tmpSource.release = new CountDownLatch(1);
+
+        final int tmpThreads = 8;
+        final ExecutorService tmpExecutor = Executors.newFixedThreadPool(tmpThreads);
+        try {
+
+            final List<Future<CalendarDateSeries<Double>>> tmpResults = new ArrayList<>();
+            for (int t = 0; t < tmpThreads; t++) {
+                tmpResults.add(tmpExecutor.submit((Callable<CalendarDateSeries<Double>>) () -> tmpCache.get(tmpSource)));
+            }
+
+            // The other threads pile up behind the first load
+            Assert.assertTrue(tmpSource.started.await(10L, TimeUnit.SECONDS));
+            Thread.sleep(50L);
+            tmpSource.release.countDown();
+
+            final CalendarDateSeries<Double> tmpFirst = tmpResults.get(0).get(10L, TimeUnit.SECONDS);
+            for (final Future<CalendarDateSeries<Double>> tmpResult : tmpResults) {
+                Assert.assertSame(tmpFirst, tmpResult.get(10L, TimeUnit.SECONDS));
+            }
+
+        } finally {
+            tmpExecutor.shutdownNow();
+        }
+
+        Assert.assertEquals(1, tmpSource.fullLoads.get());
+        Assert.assertEquals(1L, tmpCache.countLoads());
+        Assert.assertEquals(10, tmpCache.get(tmpSource).size());
+        Assert.assertEquals(tmpThreads + 1L, tmpCache.countHits() + tmpCache.countMisses());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws InterruptedException {
+
+        final SourceCache tmpCache = new SourceCache(CalendarDateUnit.DAY, 2);
+        final CountingSource tmpA = new CountingSource("A", 5);
+        final CountingSource tmpB = new CountingSource("B", 5);
+        final CountingSource tmpC = new CountingSource("C", 5);
+
+        tmpCache.get(tmpA);
+        Thread.sleep(5L);
+        tmpCache.get(tmpB);
+        Thread.sleep(5L);
+        tmpCache.get(tmpC);
+
+        // Going over the maximum schedules a clean up on the timer, run one here as well
+        tmpCache.cleanUp(System.currentTimeMillis());
+        Assert.assertEquals(2, tmpCache.size());
+        Assert.assertEquals(1L, tmpCache.countEvictions());
+
+        tmpCache.get(tmpB);
+        tmpCache.get(tmpC);
+        Assert.assertEquals(1, tmpB.fullLoads.get());
+        Assert.assertEquals(1, tmpC.fullLoads.get());
+        tmpCache.get(tmpA);
+        Assert.assertEquals(2, tmpA.fullLoads.get());
+
+        // Nothing used for more than a period
+        tmpCache.cleanUp(System.currentTimeMillis() + (3L * DAY));
+        Assert.assertEquals(0, tmpCache.size());
+    }
+
+    @Test
+    public void testFailedLoadIsNotCached() {
+
+        final SourceCache tmpCache = new SourceCache(CalendarDateUnit.DAY);
+        final CountingSource tmpSource = new CountingSource("A", 5);
+        tmpSource.fail = true;
+
+        try {
+            tmpCache.get(tmpSource);
+            Assert.fail("The load failed");
+        } catch (final IllegalStateException exception) {
+            // expected
+        }
+        Assert.assertEquals(0, tmpCache.size());
+
+        tmpSource.fail = false;
+        Assert.assertEquals(5, tmpCache.get(tmpSource).size());
+        Assert.assertEquals(2, tmpSource.fullLoads.get());
+    }
+
+    @Test
+    public void testOtherSourcesDoNotWait() throws Exception {
+
+        final SourceCache tmpCache = new SourceCache(CalendarDateUnit.DAY);
+        final CountingSource tmpSlow = new CountingSource("A", 5);
+        tmpSlow.release = new CountDownLatch(1);
+        final CountingSource tmpFast = new CountingSource("B", 5);
+
+        final ExecutorService tmpExecutor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<CalendarDateSeries<Double>> tmpPending = tmpExecutor.submit((Callable<CalendarDateSeries<Double>>) () -> tmpCache.get(tmpSlow));
+            Assert.assertTrue(tmpSlow.started.await(10L, TimeUnit.SECONDS));
+
+            Assert.assertEquals(5, tmpCache.get(tmpFast).size());
+            Assert.assertFalse(tmpPending.isDone());
+
+            tmpSlow.release.countDown();
+            Assert.assertEquals(5, tmpPending.get(10L, TimeUnit.SECONDS).size());
+        } finally {
+            tmpExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRefreshFetchesOnlyNewBars() throws InterruptedException {
+
+        // Stale after a millisecond
+        final SourceCache tmpCache = new SourceCache(CalendarDateUnit.MILLIS);
+        final CountingSource tmpSource = new CountingSource("A", 10);
+
+        final CalendarDateSeries<Double> tmpBefore = tmpCache.get(tmpSource);
+        Assert.assertEquals(10, tmpBefore.size());
+
+        // Nothing new, the cached series is kept
+        Thread.sleep(5L);
+        Assert.assertSame(tmpBefore, tmpCache.get(tmpSource));
+
+        tmpSource.days = 12;
+        Thread.sleep(5L);
+        final CalendarDateSeries<Double> tmpAfter = tmpCache.get(tmpSource);
+
+        Assert.assertEquals(1, tmpSource.fullLoads.get());
+        Assert.assertEquals(2, tmpSource.refreshKeys.size());
+        Assert.assertEquals(tmpBefore.lastKey(), tmpSource.refreshKeys.get(1));
+
+        Assert.assertEquals(12, tmpAfter.size());
+        Assert.assertEquals(111.0, tmpAfter.lastValue(), 0.0);
+        Assert.assertEquals(100.0, tmpAfter.firstValue(), 0.0);
+        // A snapshot that was handed out does not change
+        Assert.assertEquals(10, tmpBefore.size());
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 1997-2017 Optimatika (www.optimatika.se)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.algo.finance.portfolio;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.algo.matrix.BasicMatrix;
+import org.algo.matrix.BigMatrix;
+import org.algo.matrix.PrimitiveMatrix;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * One 6-asset model with the allocation table's view, from covariances to asset weights:
+ * {@link BlackLittermanModel} with a {@link BigMatrix} market portfolio and BigDecimal view weights, as
+ * PortfolioServiceImpl built it, against {@link PrimitiveBlackLittermanModel}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BlackLittermanBenchmark {
+
+    private static final double[] VIEW = { 0.9, 0.9, 0.9, 0.9, 0.0, 0.0 };
+    private static final double VIEW_RETURN = 0.26;
+
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(BlackLittermanBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    private PrimitiveMatrix myCovariances;
+
+    @Benchmark
+    public BasicMatrix big() {
+
+        final double[][] tmpMarketWeights = new double[PrimitiveBlackLittermanModelTest.MARKET_WEIGHTS.length][1];
+        for (int i = 0; i < tmpMarketWeights.length; i++) {
+            tmpMarketWeights[i][0] = PrimitiveBlackLittermanModelTest.MARKET_WEIGHTS[i];
+        }
+        final MarketEquilibrium tmpEquilibrium = new MarketEquilibrium(PrimitiveBlackLittermanModelTest.KEYS, myCovariances,
+                PrimitiveBlackLittermanModelTest.RISK_AVERSION);
+        final BlackLittermanModel tmpModel = new BlackLittermanModel(tmpEquilibrium, BigMatrix.FACTORY.rows(tmpMarketWeights));
+
+        final List<BigDecimal> tmpView = PrimitiveBlackLittermanModelTest.toBig(VIEW);
+        tmpModel.addViewWithBalancedConfidence(tmpView, VIEW_RETURN);
+
+        return tmpModel.getAssetWeights();
+    }
+
+    @Benchmark
+    public double[] primitive() {
+
+        final PrimitiveBlackLittermanModel tmpModel = new PrimitiveBlackLittermanModel(PrimitiveBlackLittermanModelTest.KEYS, myCovariances,
+                PrimitiveBlackLittermanModelTest.RISK_AVERSION, PrimitiveBlackLittermanModelTest.MARKET_WEIGHTS);
+
+        tmpModel.addViewWithBalancedConfidence(VIEW, VIEW_RETURN);
+
+        return tmpModel.getAssetWeights();
+    }
+
+    @Setup
+    public void setup() {
+        myCovariances = PrimitiveBlackLittermanModelTest.makeCovariances(1L);
+    }
+
+}
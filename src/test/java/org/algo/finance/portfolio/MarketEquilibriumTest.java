@@ -0,0 +1,137 @@
+/*
+ * Copyright 1997-2017 Optimatika (www.optimatika.se)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.algo.finance.portfolio;
+
+import java.util.Random;
+
+import org.algo.finance.FactorCovariance;
+import org.algo.matrix.BasicMatrix;
+import org.algo.matrix.BigMatrix;
+import org.algo.matrix.PrimitiveMatrix;
+import org.algo.matrix.store.PrimitiveDenseStore;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * {@link MarketEquilibrium} and {@link BlackLittermanModel} given a {@link FactorCovariance} against the same
+ * given the dense covariance matrix it describes.
+ */
+public class MarketEquilibriumTest {
+
+    private static final String[] KEYS = PrimitiveBlackLittermanModelTest.KEYS;
+    private static final double TOLERANCE = 1E-12;
+
+    private static void assertSame(final BasicMatrix expected, final BasicMatrix actual) {
+        Assert.assertEquals(expected.count(), actual.count());
+        double tmpLargest = 0.0;
+        for (int i = 0; i < expected.count(); i++) {
+            tmpLargest = Math.max(tmpLargest, Math.abs(expected.doubleValue(i)));
+        }
+        for (int i = 0; i < expected.count(); i++) {
+            Assert.assertEquals(expected.doubleValue(i), actual.doubleValue(i), TOLERANCE * tmpLargest);
+        }
+    }
+
+    private MarketEquilibrium myDense;
+    private MarketEquilibrium myFactors;
+    private BasicMatrix myMarketWeights;
+
+    @Before
+    public void setUp() {
+
+        final Random tmpRandom = new Random(1L);
+        final int tmpSize = KEYS.length;
+        final int tmpFactors = 2;
+
+        final PrimitiveDenseStore tmpLoadings = PrimitiveDenseStore.FACTORY.makeZero(tmpSize, tmpFactors);
+        for (int j = 0; j < tmpFactors; j++) {
+            for (int i = 0; i < tmpSize; i++) {
+                tmpLoadings.set(i, j, tmpRandom.nextGaussian());
+            }
+        }
+        final double[] tmpSpecificVariances = new double[tmpSize];
+        for (int i = 0; i < tmpSize; i++) {
+            tmpSpecificVariances[i] = 0.01 + (0.01 * tmpRandom.nextDouble());
+        }
+
+        final FactorCovariance tmpCovariances = new FactorCovariance(tmpLoadings, PrimitiveMatrix.FACTORY.columns(new double[] { 0.04, 0.01 }),
+                PrimitiveMatrix.FACTORY.columns(tmpSpecificVariances));
+
+        myFactors = new MarketEquilibrium(KEYS, tmpCovariances, PrimitiveBlackLittermanModelTest.RISK_AVERSION);
+        myDense = new MarketEquilibrium(KEYS, tmpCovariances.toCovariances(), PrimitiveBlackLittermanModelTest.RISK_AVERSION);
+        myMarketWeights = BigMatrix.FACTORY.columns(PrimitiveBlackLittermanModelTest.MARKET_WEIGHTS);
+    }
+
+    @Test
+    public void testBlackLittermanModel() {
+
+        final BlackLittermanModel tmpDense = new BlackLittermanModel(myDense, myMarketWeights);
+        final BlackLittermanModel tmpFactors = new BlackLittermanModel(myFactors, myMarketWeights);
+
+        final double[] tmpBalanced = { 0.9, 0.9, 0.9, 0.9, 0.0, 0.0 };
+        final double[] tmpScaled = { 0.0, 1.0, -1.0, 0.0, 0.0, 0.0 };
+        for (final BlackLittermanModel tmpModel : new BlackLittermanModel[] { tmpDense, tmpFactors }) {
+            tmpModel.addViewWithBalancedConfidence(PrimitiveBlackLittermanModelTest.toBig(tmpBalanced), 0.26);
+            tmpModel.addViewWithScaledConfidence(PrimitiveBlackLittermanModelTest.toBig(tmpScaled), 0.02, 0.5);
+        }
+
+        MarketEquilibriumTest.assertSame(tmpDense.getAssetWeights(), tmpFactors.getAssetWeights());
+        MarketEquilibriumTest.assertSame(tmpDense.getAssetReturns(), tmpFactors.getAssetReturns());
+        Assert.assertEquals(tmpDense.calculateVariance(myMarketWeights).doubleValue(), tmpFactors.calculateVariance(myMarketWeights).doubleValue(),
+                TOLERANCE);
+    }
+
+    @Test
+    public void testCovariancesAreBuiltOnce() {
+        final BasicMatrix tmpCovariances = myFactors.getCovariances();
+        Assert.assertSame(tmpCovariances, myFactors.getCovariances());
+        Assert.assertSame(tmpCovariances, myFactors.copy().getCovariances());
+        MarketEquilibriumTest.assertSame(myDense.getCovariances(), tmpCovariances);
+    }
+
+    @Test
+    public void testImpliedRiskAversion() {
+        final BasicMatrix tmpReturns = myDense.calculateAssetReturns(myMarketWeights);
+        Assert.assertEquals(myDense.calculateImpliedRiskAversion(myMarketWeights, tmpReturns).doubleValue(),
+                myFactors.calculateImpliedRiskAversion(myMarketWeights, tmpReturns).doubleValue(), TOLERANCE);
+    }
+
+    @Test
+    public void testReturnsAndWeights() {
+
+        final BasicMatrix tmpReturns = myDense.calculateAssetReturns(myMarketWeights);
+        MarketEquilibriumTest.assertSame(tmpReturns, myFactors.calculateAssetReturns(myMarketWeights));
+
+        MarketEquilibriumTest.assertSame(myDense.calculateAssetWeights(tmpReturns), myFactors.calculateAssetWeights(tmpReturns));
+        MarketEquilibriumTest.assertSame(myMarketWeights, myFactors.calculateAssetWeights(tmpReturns));
+    }
+
+    @Test
+    public void testVariance() {
+        Assert.assertEquals(myDense.calculatePortfolioVariance(myMarketWeights).doubleValue(),
+                myFactors.calculatePortfolioVariance(myMarketWeights).doubleValue(), TOLERANCE);
+        Assert.assertEquals(myDense.calculatePortfolioVariance(myMarketWeights.transpose()).doubleValue(),
+                myFactors.calculatePortfolioVariance(myMarketWeights).doubleValue(), TOLERANCE);
+    }
+
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 1997-2017 Optimatika (www.optimatika.se)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.algo.finance.portfolio;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.algo.matrix.BasicMatrix;
+import org.algo.matrix.BigMatrix;
+import org.algo.matrix.PrimitiveMatrix;
+import org.algo.matrix.store.PrimitiveDenseStore;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * {@link PrimitiveBlackLittermanModel} against {@link BlackLittermanModel} with the same covariances, risk
+ * aversion, market portfolio and views.
+ */
+public class PrimitiveBlackLittermanModelTest {
+
+    static final String[] KEYS = { "CRSPTM1", "CRSPLC1", "CRSPMI1", "CRSPSC1", "LQD", "MUB" };
+    static final double RISK_AVERSION = 2.5;
+    static final double[] MARKET_WEIGHTS = { 0.3, 0.2, 0.1, 0.1, 0.2, 0.1 };
+
+    private static final double TOLERANCE = 1E-12;
+
+    /**
+     * Annualised covariances of correlated random returns, like the ones of the asset classes.
+     */
+    static PrimitiveMatrix makeCovariances(final long seed) {
+        final Random tmpRandom = new Random(seed);
+        final int tmpSize = KEYS.length;
+        final PrimitiveDenseStore tmpFactors = PrimitiveDenseStore.FACTORY.makeZero(tmpSize, tmpSize);
+        for (int j = 0; j < tmpSize; j++) {
+            for (int i = 0; i < tmpSize; i++) {
+                tmpFactors.set(i, j, 0.1 * tmpRandom.nextGaussian());
+            }
+        }
+        final PrimitiveDenseStore retVal = PrimitiveDenseStore.FACTORY.makeZero(tmpSize, tmpSize);
+        retVal.fillByMultiplying(tmpFactors, tmpFactors.transpose());
+        for (int ij = 0; ij < tmpSize; ij++) {
+            retVal.add(ij, ij, 0.01);
+        }
+        return PrimitiveMatrix.FACTORY.copy(retVal);
+    }
+
+    static List<BigDecimal> toBig(final double[] weights) {
+        final List<BigDecimal> retVal = new ArrayList<>(weights.length);
+        for (final double tmpWeight : weights) {
+            retVal.add(new BigDecimal(tmpWeight));
+        }
+        return retVal;
+    }
+
+    private BlackLittermanModel myBig;
+    private PrimitiveBlackLittermanModel myPrimitive;
+
+    @Before
+    public void setUp() {
+        final PrimitiveMatrix tmpCovariances = PrimitiveBlackLittermanModelTest.makeCovariances(1L);
+        myBig = new BlackLittermanModel(new MarketEquilibrium(KEYS, tmpCovariances, RISK_AVERSION), BigMatrix.FACTORY.columns(MARKET_WEIGHTS));
+        myPrimitive = new PrimitiveBlackLittermanModel(KEYS, tmpCovariances, RISK_AVERSION, MARKET_WEIGHTS);
+    }
+
+    @Test
+    public void testBalancedConfidence() {
+
+        // The view the allocation table adds for HIGH and MODERATE risk tolerance
+        final double[] tmpView = { 0.9, 0.9, 0.9, 0.9, 0.0, 0.0 };
+        myBig.addViewWithBalancedConfidence(PrimitiveBlackLittermanModelTest.toBig(tmpView), 0.26);
+        myPrimitive.addViewWithBalancedConfidence(tmpView, 0.26);
+
+        this.assertSameModel();
+    }
+
+    @Test
+    public void testConfidence() {
+
+        final double[] tmpView = { 0.0, 0.0, 0.0, 0.0, 0.9, 0.9 };
+        myBig.addViewWithBalancedConfidence(PrimitiveBlackLittermanModelTest.toBig(tmpView), 0.05);
+        myPrimitive.addViewWithBalancedConfidence(tmpView, 0.05);
+        myBig.setConfidence(0.25);
+        myPrimitive.setConfidence(0.25);
+
+        this.assertSameModel();
+    }
+
+    /**
+     * {@link BlackLittermanModel} needs at least one view.
+     */
+    @Test
+    public void testMarketPortfolioWithoutViews() {
+
+        final double[] tmpWeights = myPrimitive.getAssetWeights();
+        for (int i = 0; i < MARKET_WEIGHTS.length; i++) {
+            Assert.assertEquals(MARKET_WEIGHTS[i], tmpWeights[i], 0.0);
+        }
+    }
+
+    @Test
+    public void testSeveralViews() {
+
+        final double[] tmpBalanced = { 0.5, 0.5, 0.0, 0.0, 0.0, 0.0 };
+        final double[] tmpScaled = { 0.0, 1.0, -1.0, 0.0, 0.0, 0.0 };
+        final double[] tmpDeviation = { 0.0, 0.0, 0.0, 0.2, 0.4, 0.4 };
+
+        myBig.addViewWithBalancedConfidence(PrimitiveBlackLittermanModelTest.toBig(tmpBalanced), 0.12);
+        myBig.addViewWithScaledConfidence(PrimitiveBlackLittermanModelTest.toBig(tmpScaled), 0.02, 0.5);
+        myBig.addViewWithStandardDeviation(PrimitiveBlackLittermanModelTest.toBig(tmpDeviation), new BigDecimal("0.04"), new BigDecimal("0.03"));
+
+        myPrimitive.addViewWithBalancedConfidence(tmpBalanced, 0.12);
+        myPrimitive.addViewWithScaledConfidence(tmpScaled, 0.02, 0.5);
+        myPrimitive.addViewWithStandardDeviation(tmpDeviation, 0.04, 0.03);
+
+        this.assertSameModel();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testViewsThatCannotBeCombined() {
+
+        final double[] tmpView = { 1.0, 0.0, 0.0, 0.0, 0.0, 0.0 };
+        myPrimitive.addViewWithStandardDeviation(tmpView, 0.1, 0.0);
+        myPrimitive.addViewWithStandardDeviation(tmpView, 0.2, 0.0);
+
+        myPrimitive.getAssetWeights();
+    }
+
+    private void assertSameModel() {
+        PrimitiveBlackLittermanModelTest.assertSame(myBig.getAssetWeights(), myPrimitive.getAssetWeights());
+        PrimitiveBlackLittermanModelTest.assertSame(myBig.getAssetReturns(), myPrimitive.getAssetReturns());
+    }
+
+    private static void assertSame(final BasicMatrix expected, final double[] actual) {
+        Assert.assertEquals(expected.count(), actual.length);
+        double tmpLargest = 0.0;
+        for (int i = 0; i < actual.length; i++) {
+            tmpLargest = Math.max(tmpLargest, Math.abs(expected.doubleValue(i)));
+        }
+        for (int i = 0; i < actual.length; i++) {
+            Assert.assertEquals(KEYS[i], expected.doubleValue(i), actual[i], TOLERANCE * tmpLargest);
+        }
+    }
+
+}
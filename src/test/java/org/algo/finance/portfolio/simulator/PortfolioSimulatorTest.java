@@ -0,0 +1,146 @@
+/*
+ * Copyright 1997-2017 Optimatika (www.optimatika.se)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.algo.finance.portfolio.simulator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.algo.OjAlgoUtils;
+import org.algo.machine.Hardware;
+import org.algo.machine.VirtualMachine;
+import org.algo.matrix.store.PrimitiveDenseStore;
+import org.algo.random.SampleSet;
+import org.algo.random.process.GeometricBrownianMotion;
+import org.algo.random.process.RandomProcess.SimulationResults;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Reproducibility over thread counts, and the expected terminal value.
+ */
+public class PortfolioSimulatorTest {
+
+    private static final double[] DRIFTS = { 0.08, 0.05, 0.02 };
+    private static final double[] INITIAL_VALUES = { 50.0, 30.0, 20.0 };
+    /**
+     * Not a multiple of the block size, so the last block is partial
+     */
+    private static final int REALISATIONS = 1000;
+    private static final long SEED = 20171016L;
+    private static final double[] VOLATILITIES = { 0.2, 0.1, 0.05 };
+
+    private static void assertIdentical(final SimulationResults expected, final SimulationResults actual) {
+        Assert.assertEquals(expected.countSampleSets(), actual.countSampleSets());
+        Assert.assertEquals(expected.countScenarios(), actual.countScenarios());
+        for (int s = 0; s < expected.countSampleSets(); s++) {
+            final SampleSet tmpExpected = expected.getSampleSet(s);
+            final SampleSet tmpActual = actual.getSampleSet(s);
+            for (int r = 0; r < expected.countScenarios(); r++) {
+                Assert.assertEquals(tmpExpected.doubleValue(r), tmpActual.doubleValue(r), 0.0);
+            }
+        }
+    }
+
+    private static VirtualMachine withThreads(final int threads) {
+        return Hardware.makeSimple(VirtualMachine.getArchitecture(), VirtualMachine.getMemory(), threads).virtualise();
+    }
+
+    private VirtualMachine myEnvironment;
+    private PortfolioSimulator mySimulator;
+
+    @Before
+    public void setUp() {
+
+        myEnvironment = OjAlgoUtils.ENVIRONMENT;
+
+        final List<GeometricBrownianMotion> tmpProcesses = new ArrayList<>();
+        for (int p = 0; p < DRIFTS.length; p++) {
+            final GeometricBrownianMotion tmpProcess = new GeometricBrownianMotion(DRIFTS[p], VOLATILITIES[p]);
+            tmpProcess.setValue(INITIAL_VALUES[p]);
+            tmpProcesses.add(tmpProcess);
+        }
+
+        final PrimitiveDenseStore tmpCorrelations = PrimitiveDenseStore.FACTORY.rows(new double[][] { { 1.0, 0.5, -0.2 }, { 0.5, 1.0, 0.3 }, { -0.2, 0.3, 1.0 } });
+
+        mySimulator = new PortfolioSimulator(tmpCorrelations, tmpProcesses);
+    }
+
+    @After
+    public void tearDown() {
+        OjAlgoUtils.ENVIRONMENT = myEnvironment;
+    }
+
+    @Test
+    public void testMeanTerminalValue() {
+
+        final int tmpSteps = 4;
+        final double tmpStepSize = 0.25;
+
+        // Without rebalancing every asset grows at its own drift
+        double tmpExpected = 0.0;
+        for (int p = 0; p < DRIFTS.length; p++) {
+            tmpExpected += INITIAL_VALUES[p] * Math.exp(DRIFTS[p] * tmpSteps * tmpStepSize);
+        }
+        this.assertMeanTerminalValue(tmpExpected, mySimulator.simulate(20 * REALISATIONS, tmpSteps, tmpStepSize, null, SEED));
+
+        // Rebalanced every step, the portfolio grows by the weighted average growth each step
+        double tmpTotal = 0.0;
+        for (final double tmpValue : INITIAL_VALUES) {
+            tmpTotal += tmpValue;
+        }
+        double tmpGrowth = 0.0;
+        for (int p = 0; p < DRIFTS.length; p++) {
+            tmpGrowth += (INITIAL_VALUES[p] / tmpTotal) * Math.exp(DRIFTS[p] * tmpStepSize);
+        }
+        this.assertMeanTerminalValue(tmpTotal * Math.pow(tmpGrowth, tmpSteps), mySimulator.simulate(20 * REALISATIONS, tmpSteps, tmpStepSize, 1, SEED));
+    }
+
+    @Test
+    public void testOtherSeedOtherResults() {
+        final SampleSet tmpFirst = mySimulator.simulate(REALISATIONS, 12, 1.0 / 12.0, null, SEED).getSampleSet(11);
+        final SampleSet tmpSecond = mySimulator.simulate(REALISATIONS, 12, 1.0 / 12.0, null, SEED + 1L).getSampleSet(11);
+        Assert.assertTrue(tmpFirst.getMean() != tmpSecond.getMean());
+    }
+
+    @Test
+    public void testSameSeedWhateverTheThreads() {
+
+        OjAlgoUtils.ENVIRONMENT = PortfolioSimulatorTest.withThreads(1);
+        final SimulationResults tmpSerial = mySimulator.simulate(REALISATIONS, 12, 1.0 / 12.0, null, SEED);
+        final SimulationResults tmpSerialRebalanced = mySimulator.simulate(REALISATIONS, 12, 1.0 / 12.0, 3, SEED);
+
+        for (final int tmpThreads : new int[] { 2, 3, 4, 8 }) {
+            OjAlgoUtils.ENVIRONMENT = PortfolioSimulatorTest.withThreads(tmpThreads);
+            PortfolioSimulatorTest.assertIdentical(tmpSerial, mySimulator.simulate(REALISATIONS, 12, 1.0 / 12.0, null, SEED));
+            PortfolioSimulatorTest.assertIdentical(tmpSerialRebalanced, mySimulator.simulate(REALISATIONS, 12, 1.0 / 12.0, 3, SEED));
+        }
+    }
+
+    private void assertMeanTerminalValue(final double expected, final SimulationResults results) {
+        final SampleSet tmpTerminal = results.getSampleSet(results.countSampleSets() - 1);
+        final double tmpStandardError = tmpTerminal.getStandardDeviation() / Math.sqrt(tmpTerminal.count());
+        Assert.assertEquals(expected, tmpTerminal.getMean(), 4.0 * tmpStandardError);
+    }
+
+}
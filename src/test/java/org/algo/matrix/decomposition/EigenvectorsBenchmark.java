@@ -0,0 +1,106 @@
+/*
+ * Copyright 1997-2017 Optimatika (www.optimatika.se)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.algo.matrix.decomposition;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.algo.matrix.store.ComplexDenseStore;
+import org.algo.matrix.store.MatrixStore;
+import org.algo.matrix.store.PrimitiveDenseStore;
+import org.algo.scalar.ComplexNumber;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * The eigenvalue path of a real non-symmetric n x n matrix: the decomposition itself (hqr2) and the complex
+ * eigenvectors. With split=false the eigenvectors are copied column by column to a ComplexDenseStore, the way
+ * {@link Eigenvalue#getEigenvectors()} did before it wrote to a ComplexSplitStore. Run with -prof gc for the
+ * allocation per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class EigenvectorsBenchmark {
+
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(EigenvectorsBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    @Param({ "200", "500", "1000" })
+    public int dim;
+
+    @Param({ "true", "false" })
+    public boolean split;
+
+    private Eigenvalue<Double> myDecomposition;
+    private PrimitiveDenseStore myMatrix;
+
+    @Benchmark
+    public boolean decompose() {
+        return myDecomposition.decompose(myMatrix);
+    }
+
+    @Benchmark
+    @SuppressWarnings("deprecation")
+    public MatrixStore<ComplexNumber> eigenvectors() {
+        if (split) {
+            return myDecomposition.getEigenvectors();
+        } else {
+            final ComplexDenseStore retVal = ComplexDenseStore.FACTORY.makeZero(dim, dim);
+            for (int j = 0; j < dim; j++) {
+                myDecomposition.copyEigenvector(j, retVal.sliceColumn(0, j));
+            }
+            return retVal;
+        }
+    }
+
+    @Setup
+    public void setup() {
+
+        final Random tmpRandom = new Random(1L);
+
+        myMatrix = PrimitiveDenseStore.FACTORY.makeZero(dim, dim);
+        for (int ij = 0; ij < myMatrix.data.length; ij++) {
+            myMatrix.data[ij] = tmpRandom.nextGaussian();
+        }
+
+        myDecomposition = Eigenvalue.PRIMITIVE.make(myMatrix, false);
+        myDecomposition.decompose(myMatrix);
+    }
+
+}
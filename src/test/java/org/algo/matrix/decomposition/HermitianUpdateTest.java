@@ -0,0 +1,258 @@
+/*
+ * Copyright 1997-2017 Optimatika (www.optimatika.se)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.algo.matrix.decomposition;
+
+import java.util.Random;
+
+import org.algo.matrix.store.MatrixStore;
+import org.algo.matrix.store.PrimitiveDenseStore;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The modified factors solve the modified matrix as well as a fresh factorization of it does. Each test runs
+ * with the dense store implementations (Cholesky above 32 and LDL above 256 columns) and the raw ones.
+ */
+public class HermitianUpdateTest {
+
+    private static final int[] CHOLESKY_DIMS = { 10, 40 };
+    private static final int[] LDL_DIMS = { 10, 300 };
+
+    private static void assertSameSolution(final MatrixStore<Double> matrix, final LDU<Double> modified, final LDU<Double> fresh) {
+
+        final int tmpDim = (int) matrix.countRows();
+        final PrimitiveDenseStore tmpRHS = HermitianUpdateTest.makeRandom(new Random(tmpDim), tmpDim, 1);
+
+        Assert.assertTrue(fresh.decompose(matrix));
+        final MatrixStore<Double> tmpExpected = fresh.getSolution(tmpRHS);
+        final MatrixStore<Double> tmpActual = modified.getSolution(tmpRHS);
+
+        double tmpLargest = 0.0;
+        for (int i = 0; i < tmpDim; i++) {
+            tmpLargest = Math.max(tmpLargest, Math.abs(tmpExpected.doubleValue(i)));
+        }
+        for (int i = 0; i < tmpDim; i++) {
+            Assert.assertEquals(tmpExpected.doubleValue(i), tmpActual.doubleValue(i), 1E-10 * tmpLargest);
+        }
+
+        // The residual of the modified factors
+        for (int i = 0; i < tmpDim; i++) {
+            double tmpResidual = tmpRHS.doubleValue(i);
+            for (int j = 0; j < tmpDim; j++) {
+                tmpResidual -= matrix.doubleValue(i, j) * tmpActual.doubleValue(j);
+            }
+            Assert.assertEquals(0.0, tmpResidual, 1E-10 * tmpDim * tmpLargest);
+        }
+    }
+
+    private static PrimitiveDenseStore makeRandom(final Random random, final int rows, final int columns) {
+        final PrimitiveDenseStore retVal = PrimitiveDenseStore.FACTORY.makeZero(rows, columns);
+        for (int j = 0; j < columns; j++) {
+            for (int i = 0; i < rows; i++) {
+                retVal.set(i, j, random.nextGaussian());
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * [G][G]<sup>T</sup> + n[I], well conditioned
+     */
+    private static PrimitiveDenseStore makeSPD(final Random random, final int dim) {
+        final PrimitiveDenseStore tmpFactor = HermitianUpdateTest.makeRandom(random, dim, dim);
+        final PrimitiveDenseStore retVal = HermitianUpdateTest.rankUpdate(null, tmpFactor, 1.0);
+        for (int ij = 0; ij < dim; ij++) {
+            retVal.add(ij, ij, dim);
+        }
+        return retVal;
+    }
+
+    /**
+     * [A] + weight [X][X]<sup>T</sup>, [A] zero when matrix is null
+     */
+    private static PrimitiveDenseStore rankUpdate(final MatrixStore<Double> matrix, final MatrixStore<Double> vectors, final double weight) {
+        final int tmpDim = (int) vectors.countRows();
+        final PrimitiveDenseStore retVal = PrimitiveDenseStore.FACTORY.makeZero(tmpDim, tmpDim);
+        for (int j = 0; j < tmpDim; j++) {
+            for (int i = 0; i < tmpDim; i++) {
+                double tmpValue = matrix != null ? matrix.doubleValue(i, j) : 0.0;
+                for (int c = 0; c < vectors.countColumns(); c++) {
+                    tmpValue += weight * vectors.doubleValue(i, c) * vectors.doubleValue(j, c);
+                }
+                retVal.set(i, j, tmpValue);
+            }
+        }
+        return retVal;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static MatrixDecomposition.Updatable<Double> updatable(final LDU<Double> decomposition) {
+        return (MatrixDecomposition.Updatable<Double>) decomposition;
+    }
+
+    @Test
+    public void testAppend() {
+
+        for (final int tmpDim : CHOLESKY_DIMS) {
+            this.doTestAppend(tmpDim, Cholesky.PRIMITIVE.make(PrimitiveDenseStore.FACTORY.makeZero(tmpDim, tmpDim)),
+                    Cholesky.PRIMITIVE.make(PrimitiveDenseStore.FACTORY.makeZero(tmpDim + 1, tmpDim + 1)));
+        }
+        for (final int tmpDim : LDL_DIMS) {
+            this.doTestAppend(tmpDim, LDL.PRIMITIVE.make(PrimitiveDenseStore.FACTORY.makeZero(tmpDim, tmpDim)),
+                    LDL.PRIMITIVE.make(PrimitiveDenseStore.FACTORY.makeZero(tmpDim + 1, tmpDim + 1)));
+        }
+    }
+
+    @Test
+    public void testDelete() {
+
+        for (final int tmpDim : CHOLESKY_DIMS) {
+            this.doTestDelete(tmpDim, Cholesky.PRIMITIVE.make(PrimitiveDenseStore.FACTORY.makeZero(tmpDim, tmpDim)),
+                    Cholesky.PRIMITIVE.make(PrimitiveDenseStore.FACTORY.makeZero(tmpDim - 1, tmpDim - 1)));
+        }
+        for (final int tmpDim : LDL_DIMS) {
+            this.doTestDelete(tmpDim, LDL.PRIMITIVE.make(PrimitiveDenseStore.FACTORY.makeZero(tmpDim, tmpDim)),
+                    LDL.PRIMITIVE.make(PrimitiveDenseStore.FACTORY.makeZero(tmpDim - 1, tmpDim - 1)));
+        }
+    }
+
+    @Test
+    public void testDowndateNotPositiveDefinite() {
+
+        for (final int tmpDim : CHOLESKY_DIMS) {
+
+            final PrimitiveDenseStore tmpMatrix = HermitianUpdateTest.makeSPD(new Random(tmpDim), tmpDim);
+            final Cholesky<Double> tmpCholesky = Cholesky.PRIMITIVE.make(tmpMatrix);
+            Assert.assertTrue(tmpCholesky.decompose(tmpMatrix));
+
+            // Larger than the diagonal element, [A] - [x][x]<sup>T</sup> has a negative one
+            final PrimitiveDenseStore tmpVector = PrimitiveDenseStore.FACTORY.makeZero(tmpDim, 1);
+            tmpVector.set(tmpDim / 2, 0, 1.5 * Math.sqrt(tmpMatrix.doubleValue(tmpDim / 2, tmpDim / 2)));
+
+            Assert.assertFalse(HermitianUpdateTest.updatable(tmpCholesky).downdate(tmpVector));
+            Assert.assertFalse(tmpCholesky.isSolvable());
+            Assert.assertFalse(tmpCholesky.isSPD());
+        }
+
+        // LDL takes the indefinite matrix in its stride
+        for (final int tmpDim : LDL_DIMS) {
+
+            final PrimitiveDenseStore tmpMatrix = HermitianUpdateTest.makeSPD(new Random(tmpDim), tmpDim);
+            final LDL<Double> tmpLDL = LDL.PRIMITIVE.make(tmpMatrix);
+            Assert.assertTrue(tmpLDL.decompose(tmpMatrix));
+
+            final PrimitiveDenseStore tmpVector = PrimitiveDenseStore.FACTORY.makeZero(tmpDim, 1);
+            tmpVector.set(tmpDim / 2, 0, 1.5 * Math.sqrt(tmpMatrix.doubleValue(tmpDim / 2, tmpDim / 2)));
+
+            Assert.assertTrue(HermitianUpdateTest.updatable(tmpLDL).downdate(tmpVector));
+            HermitianUpdateTest.assertSameSolution(HermitianUpdateTest.rankUpdate(tmpMatrix, tmpVector, -1.0), tmpLDL,
+                    LDL.PRIMITIVE.make(tmpMatrix));
+        }
+    }
+
+    @Test
+    public void testFailedAppendKeepsThePivot() {
+
+        // The identity, a new column [e<sub>k</sub>] with 1 on the diagonal makes a zero element of [D]
+        final int tmpDim = LDL_DIMS[1];
+        final PrimitiveDenseStore tmpMatrix = PrimitiveDenseStore.FACTORY.makeZero(tmpDim, tmpDim);
+        for (int ij = 0; ij < tmpDim; ij++) {
+            tmpMatrix.set(ij, ij, 1.0);
+        }
+        final LDLDecomposition<Double> tmpLDL = (LDLDecomposition<Double>) LDL.PRIMITIVE.make(tmpMatrix);
+        Assert.assertTrue(tmpLDL.decompose(tmpMatrix));
+
+        final PrimitiveDenseStore tmpColumn = PrimitiveDenseStore.FACTORY.makeZero(tmpDim + 1, 1);
+        tmpColumn.set(7, 0, 1.0);
+        tmpColumn.set(tmpDim, 0, 1.0);
+
+        Assert.assertFalse(HermitianUpdateTest.updatable(tmpLDL).append(tmpColumn));
+        Assert.assertEquals(tmpDim, tmpLDL.getRowDim());
+        Assert.assertEquals(tmpDim, tmpLDL.getPivot().getOrder().length);
+    }
+
+    @Test
+    public void testUpdateAndDowndate() {
+
+        for (final int tmpDim : CHOLESKY_DIMS) {
+            this.doTestUpdateAndDowndate(tmpDim, Cholesky.PRIMITIVE.make(PrimitiveDenseStore.FACTORY.makeZero(tmpDim, tmpDim)),
+                    Cholesky.PRIMITIVE.make(PrimitiveDenseStore.FACTORY.makeZero(tmpDim, tmpDim)));
+        }
+        for (final int tmpDim : LDL_DIMS) {
+            this.doTestUpdateAndDowndate(tmpDim, LDL.PRIMITIVE.make(PrimitiveDenseStore.FACTORY.makeZero(tmpDim, tmpDim)),
+                    LDL.PRIMITIVE.make(PrimitiveDenseStore.FACTORY.makeZero(tmpDim, tmpDim)));
+        }
+    }
+
+    private void doTestAppend(final int dim, final LDU<Double> modified, final LDU<Double> fresh) {
+
+        final Random tmpRandom = new Random(dim);
+        final PrimitiveDenseStore tmpExtended = HermitianUpdateTest.makeSPD(tmpRandom, dim + 1);
+        final MatrixStore<Double> tmpMatrix = tmpExtended.logical().limits(dim, dim).get();
+        Assert.assertTrue(modified.decompose(tmpMatrix));
+
+        Assert.assertTrue(HermitianUpdateTest.updatable(modified).append(tmpExtended.sliceColumn(0, dim)));
+        HermitianUpdateTest.assertSameSolution(tmpExtended, modified, fresh);
+    }
+
+    private void doTestDelete(final int dim, final LDU<Double> modified, final LDU<Double> fresh) {
+
+        final Random tmpRandom = new Random(dim);
+        final PrimitiveDenseStore tmpMatrix = HermitianUpdateTest.makeSPD(tmpRandom, dim);
+        Assert.assertTrue(modified.decompose(tmpMatrix));
+
+        final int tmpIndex = dim / 3;
+        final PrimitiveDenseStore tmpReduced = PrimitiveDenseStore.FACTORY.makeZero(dim - 1, dim - 1);
+        for (int j = 0; j < (dim - 1); j++) {
+            for (int i = 0; i < (dim - 1); i++) {
+                tmpReduced.set(i, j, tmpMatrix.doubleValue(i < tmpIndex ? i : i + 1, j < tmpIndex ? j : j + 1));
+            }
+        }
+
+        Assert.assertTrue(HermitianUpdateTest.updatable(modified).delete(tmpIndex));
+        HermitianUpdateTest.assertSameSolution(tmpReduced, modified, fresh);
+    }
+
+    private void doTestUpdateAndDowndate(final int dim, final LDU<Double> modified, final LDU<Double> fresh) {
+
+        final Random tmpRandom = new Random(dim);
+        final PrimitiveDenseStore tmpMatrix = HermitianUpdateTest.makeSPD(tmpRandom, dim);
+        final PrimitiveDenseStore tmpVectors = HermitianUpdateTest.makeRandom(tmpRandom, dim, 3);
+        Assert.assertTrue(modified.decompose(tmpMatrix));
+
+        Assert.assertTrue(HermitianUpdateTest.updatable(modified).update(tmpVectors));
+        HermitianUpdateTest.assertSameSolution(HermitianUpdateTest.rankUpdate(tmpMatrix, tmpVectors, 1.0), modified, fresh);
+
+        // Back again, [A] stays positive definite
+        Assert.assertTrue(HermitianUpdateTest.updatable(modified).downdate(tmpVectors));
+        HermitianUpdateTest.assertSameSolution(tmpMatrix, modified, fresh);
+
+        // Small compared to the n[I] of [A], what's left is still positive definite
+        final PrimitiveDenseStore tmpSmall = PrimitiveDenseStore.FACTORY.makeZero(dim, 1);
+        for (int i = 0; i < dim; i++) {
+            tmpSmall.set(i, 0, 0.1 * tmpVectors.doubleValue(i, 0));
+        }
+        Assert.assertTrue(HermitianUpdateTest.updatable(modified).downdate(tmpSmall));
+        HermitianUpdateTest.assertSameSolution(HermitianUpdateTest.rankUpdate(tmpMatrix, tmpSmall, -1.0), modified, fresh);
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 1997-2017 Optimatika (www.optimatika.se)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.algo.matrix.decomposition;
+
+import java.util.Random;
+
+import org.algo.RecoverableCondition;
+import org.algo.matrix.store.MatrixStore;
+import org.algo.matrix.store.PrimitiveDenseStore;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The single precision LU against the double precision one: rank of singular matrices, refined solutions
+ * and the double precision fallback when the refinement fails.
+ */
+public class Primitive32LUTest {
+
+    private static PrimitiveDenseStore makeRandom(final Random random, final int rows, final int columns) {
+        final PrimitiveDenseStore retVal = PrimitiveDenseStore.FACTORY.makeZero(rows, columns);
+        for (int j = 0; j < columns; j++) {
+            for (int i = 0; i < rows; i++) {
+                retVal.set(i, j, random.nextGaussian());
+            }
+        }
+        return retVal;
+    }
+
+    private static void assertSolution(final MatrixStore<Double> expected, final MatrixStore<Double> actual, final double relative) {
+        double tmpLargest = 0.0;
+        for (long i = 0L; i < expected.count(); i++) {
+            tmpLargest = Math.max(tmpLargest, Math.abs(expected.doubleValue(i)));
+        }
+        for (long i = 0L; i < expected.count(); i++) {
+            Assert.assertEquals(expected.doubleValue(i), actual.doubleValue(i), relative * tmpLargest);
+        }
+    }
+
+    @Test
+    public void testFallbackWhenRefinementFails() {
+
+        // Hilbert, condition number about 10^10 - beyond what the float factors can refine
+        final int tmpDim = 8;
+        final PrimitiveDenseStore tmpHilbert = PrimitiveDenseStore.FACTORY.makeZero(tmpDim, tmpDim);
+        for (int j = 0; j < tmpDim; j++) {
+            for (int i = 0; i < tmpDim; i++) {
+                tmpHilbert.set(i, j, 1.0 / (i + j + 1));
+            }
+        }
+        final PrimitiveDenseStore tmpRHS = makeRandom(new Random(3L), tmpDim, 2);
+
+        final LU<Double> tmpDouble = LU.PRIMITIVE.make(tmpHilbert);
+        tmpDouble.decompose(tmpHilbert);
+        final LU<Double> tmpSingle = LU.PRIMITIVE_32.make(tmpHilbert);
+        tmpSingle.decompose(tmpHilbert);
+
+        assertSolution(tmpDouble.getSolution(tmpRHS), tmpSingle.getSolution(tmpRHS), 1E-12);
+    }
+
+    @Test
+    public void testLeastSquaresSameAsDouble() {
+
+        final Random tmpRandom = new Random(2L);
+        final PrimitiveDenseStore tmpBody = makeRandom(tmpRandom, 60, 20);
+        final PrimitiveDenseStore tmpRHS = makeRandom(tmpRandom, 60, 3);
+
+        final QR<Double> tmpDouble = QR.PRIMITIVE.make(tmpBody);
+        tmpDouble.decompose(tmpBody);
+        final QR<Double> tmpSingle = QR.PRIMITIVE_32.make(tmpBody);
+        tmpSingle.decompose(tmpBody);
+
+        Assert.assertTrue(tmpSingle.isFullRank());
+        assertSolution(tmpDouble.getSolution(tmpRHS), tmpSingle.getSolution(tmpRHS), 1E-12);
+    }
+
+    @Test
+    public void testMatrixModifiedAfterDecomposition() {
+
+        final Random tmpRandom = new Random(4L);
+        final PrimitiveDenseStore tmpBody = makeRandom(tmpRandom, 40, 40);
+        final PrimitiveDenseStore tmpRHS = makeRandom(tmpRandom, 40, 2);
+
+        final LU<Double> tmpDouble = LU.PRIMITIVE.make(tmpBody);
+        tmpDouble.decompose(tmpBody);
+        final LU<Double> tmpSingle = LU.PRIMITIVE_32.make(tmpBody);
+        tmpSingle.decompose(tmpBody);
+
+        // The refinement works with its own copy
+        tmpBody.fillAll(1.0);
+
+        assertSolution(tmpDouble.getSolution(tmpRHS), tmpSingle.getSolution(tmpRHS), 1E-12);
+    }
+
+    @Test
+    public void testSingularIsNotFullRank() throws RecoverableCondition {
+
+        // The last row is the sum of the first two, rounding to float leaves a tiny nonzero pivot
+        final PrimitiveDenseStore tmpSingular = PrimitiveDenseStore.FACTORY
+                .rows(new double[][] { { 0.1, 0.7, 1.0 / 3.0 }, { 0.3, 0.2, 0.9 }, { 0.4, 0.9, (1.0 / 3.0) + 0.9 } });
+
+        final LU<Double> tmpDouble = LU.PRIMITIVE.make(tmpSingular);
+        tmpDouble.decompose(tmpSingular);
+        final LU<Double> tmpSingle = LU.PRIMITIVE_32.make(tmpSingular);
+        tmpSingle.decompose(tmpSingular);
+
+        Assert.assertEquals(2, tmpDouble.getRank());
+        Assert.assertEquals(2, tmpSingle.getRank());
+        Assert.assertFalse(tmpSingle.isFullRank());
+        Assert.assertFalse(tmpSingle.isSolvable());
+
+        try {
+            LU.PRIMITIVE_32.make(tmpSingular).solve(tmpSingular, makeRandom(new Random(1L), 3, 1));
+            Assert.fail("The matrix is singular");
+        } catch (final RecoverableCondition expected) {
+            // expected
+        }
+
+        final QR<Double> tmpQR = QR.PRIMITIVE_32.make(tmpSingular);
+        tmpQR.decompose(tmpSingular);
+        Assert.assertEquals(2, tmpQR.getRank());
+        Assert.assertFalse(tmpQR.isFullRank());
+    }
+
+    @Test
+    public void testSolutionSameAsDouble() throws RecoverableCondition {
+
+        final Random tmpRandom = new Random(1L);
+        final PrimitiveDenseStore tmpBody = makeRandom(tmpRandom, 50, 50);
+        final PrimitiveDenseStore tmpRHS = makeRandom(tmpRandom, 50, 3);
+
+        final LU<Double> tmpDouble = LU.PRIMITIVE.make(tmpBody);
+        tmpDouble.decompose(tmpBody);
+        final LU<Double> tmpSingle = LU.PRIMITIVE_32.make(tmpBody);
+
+        Assert.assertTrue(tmpSingle.decompose(tmpBody));
+        Assert.assertTrue(tmpSingle.isFullRank());
+        Assert.assertEquals(50, tmpSingle.getRank());
+
+        assertSolution(tmpDouble.getSolution(tmpRHS), tmpSingle.solve(tmpBody, tmpRHS), 1E-12);
+    }
+
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright 1997-2017 Optimatika (www.optimatika.se)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.algo.matrix.store;
+
+import java.util.Random;
+
+import org.algo.matrix.decomposition.Eigenvalue;
+import org.algo.matrix.transformation.Householder;
+import org.algo.matrix.transformation.Rotation;
+import org.algo.scalar.ComplexNumber;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Every operation ComplexSplitStore implements on its two arrays against the same operation on a
+ * ComplexDenseStore with the same elements. Some dimensions are above the thresholds where the operations
+ * divide the work.
+ */
+public class ComplexSplitStoreTest {
+
+    private static final double TOLERANCE = 1E-12;
+
+    private static void assertSame(final ComplexDenseStore expected, final ComplexSplitStore actual) {
+        Assert.assertEquals(expected.countRows(), actual.countRows());
+        Assert.assertEquals(expected.countColumns(), actual.countColumns());
+        double tmpLargest = 1.0;
+        for (long i = 0L; i < expected.count(); i++) {
+            tmpLargest = Math.max(tmpLargest, expected.get(i).norm());
+        }
+        for (long j = 0L; j < expected.countColumns(); j++) {
+            for (long i = 0L; i < expected.countRows(); i++) {
+                final ComplexNumber tmpExpected = expected.get(i, j);
+                Assert.assertEquals("real " + i + "," + j, tmpExpected.getReal(), actual.get(i, j).getReal(), TOLERANCE * tmpLargest);
+                Assert.assertEquals("imaginary " + i + "," + j, tmpExpected.getImaginary(), actual.getImaginary(i, j), TOLERANCE * tmpLargest);
+            }
+        }
+    }
+
+    private static ComplexNumber makeRandom(final Random random) {
+        return ComplexNumber.of(random.nextGaussian(), random.nextGaussian());
+    }
+
+    private static ComplexDenseStore makeRandom(final Random random, final int rows, final int columns) {
+        final ComplexDenseStore retVal = ComplexDenseStore.FACTORY.makeZero(rows, columns);
+        for (int j = 0; j < columns; j++) {
+            for (int i = 0; i < rows; i++) {
+                retVal.set(i, j, ComplexSplitStoreTest.makeRandom(random));
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * Random, with a diagonal that keeps the substitutions well conditioned
+     */
+    private static ComplexDenseStore makeTriangularBody(final Random random, final int dim) {
+        final ComplexDenseStore retVal = ComplexSplitStoreTest.makeRandom(random, dim, dim);
+        for (int ij = 0; ij < dim; ij++) {
+            retVal.set(ij, ij, ComplexNumber.of(dim + random.nextDouble(), random.nextGaussian()));
+        }
+        return retVal;
+    }
+
+    @Test
+    public void testElements() {
+
+        final Random tmpRandom = new Random(1L);
+        final ComplexDenseStore tmpDense = ComplexSplitStoreTest.makeRandom(tmpRandom, 9, 7);
+        final ComplexSplitStore tmpSplit = ComplexSplitStore.FACTORY.copy(tmpDense);
+        ComplexSplitStoreTest.assertSame(tmpDense, tmpSplit);
+
+        tmpDense.set(2, 3, ComplexNumber.of(1.5, -2.5));
+        tmpSplit.set(2, 3, 1.5, -2.5);
+        tmpDense.set(4, 1, 3.0);
+        tmpSplit.set(4, 1, 3.0);
+        tmpDense.add(5, 6, ComplexNumber.of(0.5, 0.25));
+        tmpSplit.add(5, 6, ComplexNumber.of(0.5, 0.25));
+        tmpDense.add(0, 0, 2.0);
+        tmpSplit.add(0, 0, 2.0);
+        tmpDense.fillOne(8, 6, ComplexNumber.I);
+        tmpSplit.fillOne(8, 6, ComplexNumber.I);
+        ComplexSplitStoreTest.assertSame(tmpDense, tmpSplit);
+
+        tmpDense.exchangeRows(1, 7);
+        tmpSplit.exchangeRows(1, 7);
+        tmpDense.exchangeColumns(0, 5);
+        tmpSplit.exchangeColumns(0, 5);
+        ComplexSplitStoreTest.assertSame(tmpDense, tmpSplit);
+
+        Assert.assertEquals(tmpDense.indexOfLargestInColumn(2, 3), tmpSplit.indexOfLargestInColumn(2, 3));
+        Assert.assertEquals(tmpDense.indexOfLargestInRow(4, 1), tmpSplit.indexOfLargestInRow(4, 1));
+        Assert.assertEquals(tmpDense.indexOfLargestOnDiagonal(1), tmpSplit.indexOfLargestOnDiagonal(1));
+        Assert.assertEquals(tmpDense.indexOfLargestInRange(5, 50), tmpSplit.indexOfLargestInRange(5, 50));
+
+        final ComplexDenseStore tmpOther = ComplexSplitStoreTest.makeRandom(tmpRandom, 9, 7);
+        tmpDense.fillMatching(tmpOther);
+        tmpSplit.fillMatching(tmpOther);
+        ComplexSplitStoreTest.assertSame(tmpDense, tmpSplit);
+        tmpSplit.fillMatching(ComplexSplitStore.FACTORY.copy(tmpOther));
+        ComplexSplitStoreTest.assertSame(tmpDense, tmpSplit);
+
+        tmpDense.fillAll(ComplexNumber.of(2.0, 1.0));
+        tmpSplit.fillAll(ComplexNumber.of(2.0, 1.0));
+        ComplexSplitStoreTest.assertSame(tmpDense, tmpSplit);
+    }
+
+    /**
+     * The eigenvectors of a real non-symmetric matrix, mostly complex conjugate pairs, against the ones
+     * {@link Eigenvalue#copyEigenvector(int, org.algo.array.Array1D)} copies to a ComplexDenseStore.
+     */
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testEigenvectors() {
+
+        final Random tmpRandom = new Random(6L);
+        final int tmpDim = 60;
+
+        final PrimitiveDenseStore tmpMatrix = PrimitiveDenseStore.FACTORY.makeZero(tmpDim, tmpDim);
+        for (int j = 0; j < tmpDim; j++) {
+            for (int i = 0; i < tmpDim; i++) {
+                tmpMatrix.set(i, j, tmpRandom.nextGaussian());
+            }
+        }
+
+        final Eigenvalue<Double> tmpEvD = Eigenvalue.PRIMITIVE.make(tmpMatrix, false);
+        Assert.assertTrue(tmpEvD.decompose(tmpMatrix));
+
+        final ComplexDenseStore tmpExpected = ComplexDenseStore.FACTORY.makeZero(tmpDim, tmpDim);
+        for (int j = 0; j < tmpDim; j++) {
+            tmpEvD.copyEigenvector(j, tmpExpected.sliceColumn(0, j));
+        }
+
+        ComplexSplitStoreTest.assertSame(tmpExpected, (ComplexSplitStore) tmpEvD.getEigenvectors());
+    }
+
+    @Test
+    public void testMultiply() {
+
+        final Random tmpRandom = new Random(2L);
+
+        for (final int[] tmpDims : new int[][] { { 7, 5, 9 }, { 40, 30, 70 }, { 1, 20, 1 } }) {
+
+            final ComplexDenseStore tmpLeft = ComplexSplitStoreTest.makeRandom(tmpRandom, tmpDims[0], tmpDims[1]);
+            final ComplexDenseStore tmpRight = ComplexSplitStoreTest.makeRandom(tmpRandom, tmpDims[1], tmpDims[2]);
+
+            final ComplexDenseStore tmpExpected = ComplexDenseStore.FACTORY.makeZero(tmpDims[0], tmpDims[2]);
+            tmpExpected.fillByMultiplying(tmpLeft, tmpRight);
+
+            final ComplexSplitStore tmpActual = ComplexSplitStore.FACTORY.makeZero(tmpDims[0], tmpDims[2]);
+            tmpActual.fillByMultiplying(ComplexSplitStore.FACTORY.copy(tmpLeft), ComplexSplitStore.FACTORY.copy(tmpRight));
+            ComplexSplitStoreTest.assertSame(tmpExpected, tmpActual);
+
+            // Operands that are not split stores
+            tmpActual.fillAll(ComplexNumber.ZERO);
+            tmpActual.fillByMultiplying(tmpLeft, tmpRight);
+            ComplexSplitStoreTest.assertSame(tmpExpected, tmpActual);
+        }
+    }
+
+    @Test
+    public void testSubstitute() {
+
+        final Random tmpRandom = new Random(3L);
+        final int tmpDim = 12;
+        final ComplexDenseStore tmpBody = ComplexSplitStoreTest.makeTriangularBody(tmpRandom, tmpDim);
+        final ComplexDenseStore tmpRHS = ComplexSplitStoreTest.makeRandom(tmpRandom, tmpDim, 80);
+
+        for (final boolean tmpUnitDiagonal : new boolean[] { false, true }) {
+            for (final boolean tmpConjugated : new boolean[] { false, true }) {
+                for (final boolean tmpFlag : new boolean[] { false, true }) {
+
+                    final ComplexDenseStore tmpBackwards = ComplexDenseStore.FACTORY.copy(tmpRHS);
+                    tmpBackwards.substituteBackwards(tmpBody, tmpUnitDiagonal, tmpConjugated, tmpFlag);
+                    final ComplexSplitStore tmpSplitBackwards = ComplexSplitStore.FACTORY.copy(tmpRHS);
+                    tmpSplitBackwards.substituteBackwards(tmpBody, tmpUnitDiagonal, tmpConjugated, tmpFlag);
+                    ComplexSplitStoreTest.assertSame(tmpBackwards, tmpSplitBackwards);
+
+                    final ComplexDenseStore tmpForwards = ComplexDenseStore.FACTORY.copy(tmpRHS);
+                    tmpForwards.substituteForwards(tmpBody, tmpUnitDiagonal, tmpConjugated, tmpFlag);
+                    final ComplexSplitStore tmpSplitForwards = ComplexSplitStore.FACTORY.copy(tmpRHS);
+                    tmpSplitForwards.substituteForwards(tmpBody, tmpUnitDiagonal, tmpConjugated, tmpFlag);
+                    ComplexSplitStoreTest.assertSame(tmpForwards, tmpSplitForwards);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testTransformHouseholder() {
+
+        final Random tmpRandom = new Random(4L);
+
+        for (final int[] tmpDims : new int[][] { { 6, 9 }, { 20, 150 }, { 150, 20 } }) {
+
+            final ComplexDenseStore tmpDense = ComplexSplitStoreTest.makeRandom(tmpRandom, tmpDims[0], tmpDims[1]);
+
+            for (final boolean tmpLeft : new boolean[] { true, false }) {
+
+                final int tmpSize = tmpLeft ? tmpDims[0] : tmpDims[1];
+                final Householder.Complex tmpTransformation = new Householder.Complex(tmpSize);
+                tmpTransformation.first = 1;
+                tmpTransformation.vector[0] = ComplexNumber.ZERO;
+                double tmpNorm2 = 0.0;
+                for (int i = 1; i < tmpSize; i++) {
+                    tmpTransformation.vector[i] = ComplexSplitStoreTest.makeRandom(tmpRandom);
+                    tmpNorm2 += tmpTransformation.vector[i].norm() * tmpTransformation.vector[i].norm();
+                }
+                tmpTransformation.beta = ComplexNumber.valueOf(2.0 / tmpNorm2);
+
+                final ComplexDenseStore tmpExpected = ComplexDenseStore.FACTORY.copy(tmpDense);
+                final ComplexSplitStore tmpActual = ComplexSplitStore.FACTORY.copy(tmpDense);
+                if (tmpLeft) {
+                    tmpExpected.transformLeft(tmpTransformation, 2);
+                    tmpActual.transformLeft(tmpTransformation, 2);
+                } else {
+                    tmpExpected.transformRight(tmpTransformation, 2);
+                    tmpActual.transformRight(tmpTransformation, 2);
+                }
+                ComplexSplitStoreTest.assertSame(tmpExpected, tmpActual);
+            }
+        }
+    }
+
+    @Test
+    public void testTransformRotation() {
+
+        final Random tmpRandom = new Random(5L);
+        final ComplexDenseStore tmpDense = ComplexSplitStoreTest.makeRandom(tmpRandom, 10, 8);
+
+        final double tmpAngle = 0.7;
+        final ComplexNumber tmpCos = ComplexNumber.valueOf(Math.cos(tmpAngle));
+        final ComplexNumber tmpSin = ComplexNumber.makePolar(Math.sin(tmpAngle), 0.3);
+
+        final Rotation.Complex[] tmpRotations = { new Rotation.Complex(1, 6, tmpCos, tmpSin), new Rotation.Complex(5, 2, tmpCos, tmpSin),
+                new Rotation.Complex(3, 3, tmpCos, tmpSin), new Rotation.Complex(4, 7, null, null) };
+
+        for (final Rotation.Complex tmpRotation : tmpRotations) {
+
+            final ComplexDenseStore tmpExpectedLeft = ComplexDenseStore.FACTORY.copy(tmpDense);
+            tmpExpectedLeft.transformLeft(tmpRotation);
+            final ComplexSplitStore tmpActualLeft = ComplexSplitStore.FACTORY.copy(tmpDense);
+            tmpActualLeft.transformLeft(tmpRotation);
+            ComplexSplitStoreTest.assertSame(tmpExpectedLeft, tmpActualLeft);
+
+            final ComplexDenseStore tmpExpectedRight = ComplexDenseStore.FACTORY.copy(tmpDense);
+            tmpExpectedRight.transformRight(tmpRotation);
+            final ComplexSplitStore tmpActualRight = ComplexSplitStore.FACTORY.copy(tmpDense);
+            tmpActualRight.transformRight(tmpRotation);
+            ComplexSplitStoreTest.assertSame(tmpExpectedRight, tmpActualRight);
+        }
+    }
+
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright 1997-2017 Optimatika (www.optimatika.se)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.algo.matrix.store;
+
+import java.util.Random;
+
+import org.algo.matrix.transformation.Householder;
+import org.algo.matrix.transformation.Rotation;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Primitive32Store as a PhysicalStore, against the same operations on a PrimitiveDenseStore with the same
+ * (float) elements. The results may only differ by the rounding to float. Some dimensions are above the
+ * thresholds where the operations divide the work.
+ */
+public class Primitive32StoreTest {
+
+    private static final double TOLERANCE = 1E-5;
+
+    private static void assertSame(final PrimitiveDenseStore expected, final Primitive32Store actual) {
+        Assert.assertEquals(expected.countRows(), actual.countRows());
+        Assert.assertEquals(expected.countColumns(), actual.countColumns());
+        double tmpLargest = 1.0;
+        for (long i = 0L; i < expected.count(); i++) {
+            tmpLargest = Math.max(tmpLargest, Math.abs(expected.doubleValue(i)));
+        }
+        for (long j = 0L; j < expected.countColumns(); j++) {
+            for (long i = 0L; i < expected.countRows(); i++) {
+                Assert.assertEquals(i + "," + j, expected.doubleValue(i, j), actual.doubleValue(i, j), TOLERANCE * tmpLargest);
+            }
+        }
+    }
+
+    /**
+     * Elements that are exactly representable as float
+     */
+    private static PrimitiveDenseStore makeRandom(final Random random, final int rows, final int columns) {
+        final PrimitiveDenseStore retVal = PrimitiveDenseStore.FACTORY.makeZero(rows, columns);
+        for (int j = 0; j < columns; j++) {
+            for (int i = 0; i < rows; i++) {
+                retVal.set(i, j, (float) random.nextGaussian());
+            }
+        }
+        return retVal;
+    }
+
+    @Test
+    public void testElements() {
+
+        final Random tmpRandom = new Random(1L);
+        final PrimitiveDenseStore tmpDense = Primitive32StoreTest.makeRandom(tmpRandom, 9, 7);
+        final Primitive32Store tmpSingle = Primitive32Store.FACTORY.copy(tmpDense);
+        Primitive32StoreTest.assertSame(tmpDense, tmpSingle);
+
+        tmpDense.set(2, 3, 1.5);
+        tmpSingle.set(2, 3, 1.5);
+        tmpDense.add(5, 6, 0.25);
+        tmpSingle.add(5, 6, 0.25);
+        tmpDense.fillOne(8, 6, -3.0);
+        tmpSingle.fillOne(8, 6, -3.0);
+        Primitive32StoreTest.assertSame(tmpDense, tmpSingle);
+
+        tmpDense.exchangeRows(1, 7);
+        tmpSingle.exchangeRows(1, 7);
+        tmpDense.exchangeColumns(0, 5);
+        tmpSingle.exchangeColumns(0, 5);
+        Primitive32StoreTest.assertSame(tmpDense, tmpSingle);
+
+        Assert.assertEquals(tmpDense.indexOfLargestInColumn(2, 3), tmpSingle.indexOfLargestInColumn(2, 3));
+        Assert.assertEquals(tmpDense.indexOfLargestInRow(4, 1), tmpSingle.indexOfLargestInRow(4, 1));
+        Assert.assertEquals(tmpDense.indexOfLargestOnDiagonal(1), tmpSingle.indexOfLargestOnDiagonal(1));
+        Assert.assertEquals(tmpDense.indexOfLargestInRange(5, 50), tmpSingle.indexOfLargestInRange(5, 50));
+
+        tmpDense.modifyOne(3, 3, PrimitiveDenseStore.FACTORY.function().negate());
+        tmpSingle.modifyOne(3, 3, Primitive32Store.FACTORY.function().negate());
+        Primitive32StoreTest.assertSame(tmpDense, tmpSingle);
+
+        // Rounded to float when stored
+        tmpSingle.set(0, 0, 0.1);
+        Assert.assertEquals(0.1F, tmpSingle.doubleValue(0, 0), 0.0);
+    }
+
+    @Test
+    public void testMultiply() {
+
+        final Random tmpRandom = new Random(2L);
+
+        for (final int[] tmpDims : new int[][] { { 7, 5, 9 }, { 40, 30, 70 }, { 1, 20, 1 } }) {
+
+            final PrimitiveDenseStore tmpLeft = Primitive32StoreTest.makeRandom(tmpRandom, tmpDims[0], tmpDims[1]);
+            final PrimitiveDenseStore tmpRight = Primitive32StoreTest.makeRandom(tmpRandom, tmpDims[1], tmpDims[2]);
+
+            final PrimitiveDenseStore tmpExpected = PrimitiveDenseStore.FACTORY.makeZero(tmpDims[0], tmpDims[2]);
+            tmpExpected.fillByMultiplying(tmpLeft, tmpRight);
+
+            final Primitive32Store tmpActual = Primitive32Store.FACTORY.makeZero(tmpDims[0], tmpDims[2]);
+            tmpActual.fillByMultiplying(Primitive32Store.FACTORY.copy(tmpLeft), Primitive32Store.FACTORY.copy(tmpRight));
+            Primitive32StoreTest.assertSame(tmpExpected, tmpActual);
+
+            // Operands that are not single precision stores
+            tmpActual.fillAll(0.0);
+            tmpActual.fillByMultiplying(tmpLeft, tmpRight);
+            Primitive32StoreTest.assertSame(tmpExpected, tmpActual);
+
+            // Through a region, as the decompositions do
+            final Primitive32Store tmpRegion = Primitive32Store.FACTORY.makeZero(tmpDims[0] + 2, tmpDims[2] + 1);
+            tmpRegion.regionByOffsets(2, 1).fillByMultiplying(tmpLeft, tmpRight);
+            for (int j = 0; j < tmpDims[2]; j++) {
+                for (int i = 0; i < tmpDims[0]; i++) {
+                    Assert.assertEquals(tmpExpected.doubleValue(i, j), tmpRegion.doubleValue(i + 2, j + 1), TOLERANCE * tmpDims[1]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSubstitute() {
+
+        final Random tmpRandom = new Random(3L);
+        final int tmpDim = 12;
+        final PrimitiveDenseStore tmpBody = Primitive32StoreTest.makeRandom(tmpRandom, tmpDim, tmpDim);
+        for (int ij = 0; ij < tmpDim; ij++) {
+            tmpBody.set(ij, ij, tmpDim + tmpRandom.nextInt(4));
+        }
+        final PrimitiveDenseStore tmpRHS = Primitive32StoreTest.makeRandom(tmpRandom, tmpDim, 80);
+
+        for (final boolean tmpUnitDiagonal : new boolean[] { false, true }) {
+            for (final boolean tmpConjugated : new boolean[] { false, true }) {
+                for (final boolean tmpFlag : new boolean[] { false, true }) {
+
+                    final PrimitiveDenseStore tmpBackwards = PrimitiveDenseStore.FACTORY.copy(tmpRHS);
+                    tmpBackwards.substituteBackwards(tmpBody, tmpUnitDiagonal, tmpConjugated, tmpFlag);
+                    final Primitive32Store tmpSingleBackwards = Primitive32Store.FACTORY.copy(tmpRHS);
+                    tmpSingleBackwards.substituteBackwards(tmpBody, tmpUnitDiagonal, tmpConjugated, tmpFlag);
+                    Primitive32StoreTest.assertSame(tmpBackwards, tmpSingleBackwards);
+
+                    final PrimitiveDenseStore tmpForwards = PrimitiveDenseStore.FACTORY.copy(tmpRHS);
+                    tmpForwards.substituteForwards(tmpBody, tmpUnitDiagonal, tmpConjugated, tmpFlag);
+                    final Primitive32Store tmpSingleForwards = Primitive32Store.FACTORY.copy(tmpRHS);
+                    tmpSingleForwards.substituteForwards(tmpBody, tmpUnitDiagonal, tmpConjugated, tmpFlag);
+                    Primitive32StoreTest.assertSame(tmpForwards, tmpSingleForwards);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testTransformHouseholder() {
+
+        final Random tmpRandom = new Random(4L);
+
+        for (final int[] tmpDims : new int[][] { { 6, 9 }, { 20, 150 }, { 150, 20 } }) {
+
+            final PrimitiveDenseStore tmpDense = Primitive32StoreTest.makeRandom(tmpRandom, tmpDims[0], tmpDims[1]);
+
+            for (final boolean tmpLeft : new boolean[] { true, false }) {
+
+                final int tmpSize = tmpLeft ? tmpDims[0] : tmpDims[1];
+                final Householder.Primitive tmpTransformation = new Householder.Primitive(tmpSize);
+                tmpTransformation.first = 1;
+                double tmpNorm2 = 0.0;
+                for (int i = 1; i < tmpSize; i++) {
+                    tmpTransformation.vector[i] = tmpRandom.nextGaussian();
+                    tmpNorm2 += tmpTransformation.vector[i] * tmpTransformation.vector[i];
+                }
+                tmpTransformation.beta = 2.0 / tmpNorm2;
+
+                final PrimitiveDenseStore tmpExpected = PrimitiveDenseStore.FACTORY.copy(tmpDense);
+                final Primitive32Store tmpActual = Primitive32Store.FACTORY.copy(tmpDense);
+                if (tmpLeft) {
+                    tmpExpected.transformLeft(tmpTransformation, 2);
+                    tmpActual.transformLeft(tmpTransformation, 2);
+                } else {
+                    tmpExpected.transformRight(tmpTransformation, 2);
+                    tmpActual.transformRight(tmpTransformation, 2);
+                }
+                Primitive32StoreTest.assertSame(tmpExpected, tmpActual);
+            }
+        }
+    }
+
+    @Test
+    public void testTransformRotation() {
+
+        final Random tmpRandom = new Random(5L);
+        final PrimitiveDenseStore tmpDense = Primitive32StoreTest.makeRandom(tmpRandom, 10, 8);
+
+        final double tmpAngle = 0.7;
+        final double tmpCos = Math.cos(tmpAngle);
+        final double tmpSin = Math.sin(tmpAngle);
+
+        final Rotation.Primitive[] tmpRotations = { new Rotation.Primitive(1, 6, tmpCos, tmpSin), new Rotation.Primitive(5, 2, tmpCos, tmpSin),
+                new Rotation.Primitive(3, 3, tmpCos, Double.NaN), new Rotation.Primitive(3, 3, Double.NaN, tmpSin),
+                new Rotation.Primitive(4, 7, Double.NaN, Double.NaN) };
+
+        for (final Rotation.Primitive tmpRotation : tmpRotations) {
+
+            final PrimitiveDenseStore tmpExpectedLeft = PrimitiveDenseStore.FACTORY.copy(tmpDense);
+            tmpExpectedLeft.transformLeft(tmpRotation);
+            final Primitive32Store tmpActualLeft = Primitive32Store.FACTORY.copy(tmpDense);
+            tmpActualLeft.transformLeft(tmpRotation);
+            Primitive32StoreTest.assertSame(tmpExpectedLeft, tmpActualLeft);
+
+            final PrimitiveDenseStore tmpExpectedRight = PrimitiveDenseStore.FACTORY.copy(tmpDense);
+            tmpExpectedRight.transformRight(tmpRotation);
+            final Primitive32Store tmpActualRight = Primitive32Store.FACTORY.copy(tmpDense);
+            tmpActualRight.transformRight(tmpRotation);
+            Primitive32StoreTest.assertSame(tmpExpectedRight, tmpActualRight);
+        }
+    }
+
+}
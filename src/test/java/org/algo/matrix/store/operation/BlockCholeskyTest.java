@@ -0,0 +1,186 @@
+/*
+ * Copyright 1997-2017 Optimatika (www.optimatika.se)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.algo.matrix.store.operation;
+
+import java.util.Random;
+
+import org.algo.OjAlgoUtils;
+import org.algo.array.blas.SYRK;
+import org.algo.machine.Hardware;
+import org.algo.machine.VirtualMachine;
+import org.algo.matrix.decomposition.Cholesky;
+import org.algo.matrix.store.MatrixStore;
+import org.algo.matrix.store.PrimitiveDenseStore;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The blocked factorisation of CholeskyDecomposition, with several threads so that the trailing updates are
+ * divided and the look-ahead panel is factorised in a separate task, against its column by column loop. The
+ * dimensions are not multiples of the panel width.
+ */
+public class BlockCholeskyTest {
+
+    private static PrimitiveDenseStore makeRandom(final Random random, final int rows, final int columns) {
+        final PrimitiveDenseStore retVal = PrimitiveDenseStore.FACTORY.makeZero(rows, columns);
+        for (int ij = 0; ij < retVal.data.length; ij++) {
+            retVal.data[ij] = random.nextDouble() - 0.5;
+        }
+        return retVal;
+    }
+
+    /**
+     * [B][B]<sup>T</sup> plus the identity, well conditioned
+     */
+    private static PrimitiveDenseStore makeSPD(final Random random, final int dim) {
+        final PrimitiveDenseStore tmpB = BlockCholeskyTest.makeRandom(random, dim, dim);
+        final PrimitiveDenseStore retVal = PrimitiveDenseStore.FACTORY.makeZero(dim, dim);
+        retVal.fillByMultiplying(tmpB, tmpB.transpose());
+        for (int ij = 0; ij < dim; ij++) {
+            retVal.add(ij, ij, 1.0);
+        }
+        return retVal;
+    }
+
+    private static VirtualMachine withThreads(final int threads) {
+        return Hardware.makeSimple(VirtualMachine.getArchitecture(), VirtualMachine.getMemory(), threads).virtualise();
+    }
+
+    private VirtualMachine myEnvironment;
+    private int myThreshold;
+
+    @Before
+    public void setUp() {
+        myEnvironment = OjAlgoUtils.ENVIRONMENT;
+        myThreshold = BlockCholesky.THRESHOLD;
+    }
+
+    @After
+    public void tearDown() {
+        OjAlgoUtils.ENVIRONMENT = myEnvironment;
+        BlockCholesky.THRESHOLD = myThreshold;
+    }
+
+    @Test
+    public void testNotPositiveDefinite() {
+
+        final int tmpDim = 257;
+        final PrimitiveDenseStore tmpMatrix = BlockCholeskyTest.makeSPD(new Random(3L), tmpDim);
+        // Indefinite, the leading 200x200 block is still positive definite
+        tmpMatrix.set(200, 200, -tmpMatrix.doubleValue(200, 200));
+
+        BlockCholesky.THRESHOLD = tmpDim;
+        final Cholesky<Double> tmpColumnByColumn = Cholesky.PRIMITIVE.make(tmpMatrix);
+        tmpColumnByColumn.decompose(tmpMatrix);
+        Assert.assertFalse(tmpColumnByColumn.isSPD());
+
+        BlockCholesky.THRESHOLD = 32;
+        OjAlgoUtils.ENVIRONMENT = BlockCholeskyTest.withThreads(4);
+        final Cholesky<Double> tmpBlocked = Cholesky.PRIMITIVE.make(tmpMatrix);
+        tmpBlocked.decompose(tmpMatrix);
+        Assert.assertFalse(tmpBlocked.isSPD());
+        Assert.assertFalse(tmpBlocked.isSolvable());
+
+        final double[] tmpData = tmpMatrix.copy().data;
+        Assert.assertEquals(200, BlockCholesky.invoke(tmpData, tmpDim));
+    }
+
+    @Test
+    public void testSameAsColumnByColumn1111() {
+        this.doTestSameAsColumnByColumn(1111, BlockCholesky.THRESHOLD, 4);
+    }
+
+    @Test
+    public void testSameAsColumnByColumn257() {
+        this.doTestSameAsColumnByColumn(257, BlockCholesky.THRESHOLD, 4);
+        this.doTestSameAsColumnByColumn(257, 32, 4);
+        this.doTestSameAsColumnByColumn(257, 32, 1);
+    }
+
+    @Test
+    public void testSYRK() {
+
+        final int tmpDim = 257;
+        final Random tmpRandom = new Random(2L);
+
+        for (final int[] tmpRanges : new int[][] { { 0, 1, 1, 257 }, { 3, 70, 73, 257 }, { 10, 128, 140, 141 }, { 0, 300, 0, 0 } }) {
+
+            final int tmpPanel = tmpRanges[0];
+            final int tmpWidth = Math.min(tmpRanges[1], tmpDim - tmpPanel);
+            final int tmpFirst = tmpRanges[2];
+            final int tmpLimit = tmpRanges[3];
+
+            final double[] tmpData = BlockCholeskyTest.makeRandom(tmpRandom, tmpDim, tmpDim).data;
+            final double[] tmpExpected = tmpData.clone();
+            for (int j = tmpFirst; j < tmpLimit; j++) {
+                for (int i = j; i < tmpDim; i++) {
+                    double tmpSum = 0.0;
+                    for (int k = tmpPanel; k < (tmpPanel + tmpWidth); k++) {
+                        tmpSum += tmpData[i + (k * tmpDim)] * tmpData[j + (k * tmpDim)];
+                    }
+                    tmpExpected[i + (j * tmpDim)] -= tmpSum;
+                }
+            }
+
+            SYRK.invoke(tmpData, tmpDim, tmpPanel, tmpWidth, tmpFirst, tmpLimit);
+
+            // The upper triangle and the other columns are not touched
+            for (int ij = 0; ij < tmpData.length; ij++) {
+                Assert.assertEquals(tmpPanel + "/" + tmpWidth + "/" + tmpFirst + "/" + tmpLimit + " [" + ij + "]", tmpExpected[ij], tmpData[ij],
+                        1E-14 * tmpWidth);
+            }
+        }
+    }
+
+    private void doTestSameAsColumnByColumn(final int dim, final int threshold, final int threads) {
+
+        final PrimitiveDenseStore tmpMatrix = BlockCholeskyTest.makeSPD(new Random(dim), dim);
+
+        // The column by column loop is used for matrices that are not larger than two panels
+        BlockCholesky.THRESHOLD = dim;
+        OjAlgoUtils.ENVIRONMENT = BlockCholeskyTest.withThreads(1);
+        final Cholesky<Double> tmpColumnByColumn = Cholesky.PRIMITIVE.make(tmpMatrix);
+        Assert.assertTrue(tmpColumnByColumn.decompose(tmpMatrix));
+        final MatrixStore<Double> tmpExpected = tmpColumnByColumn.getL();
+
+        BlockCholesky.THRESHOLD = threshold;
+        OjAlgoUtils.ENVIRONMENT = BlockCholeskyTest.withThreads(threads);
+        final Cholesky<Double> tmpBlocked = Cholesky.PRIMITIVE.make(tmpMatrix);
+        Assert.assertTrue(tmpBlocked.decompose(tmpMatrix));
+        Assert.assertTrue(tmpBlocked.isSPD());
+        final MatrixStore<Double> tmpActual = tmpBlocked.getL();
+
+        double tmpLargest = 0.0;
+        for (long ij = 0L; ij < tmpExpected.count(); ij++) {
+            tmpLargest = Math.max(tmpLargest, Math.abs(tmpExpected.doubleValue(ij)));
+        }
+        for (int j = 0; j < dim; j++) {
+            for (int i = 0; i < dim; i++) {
+                Assert.assertEquals(dim + "/" + threshold + "/" + threads + " [" + i + "," + j + "]", tmpExpected.doubleValue(i, j), tmpActual.doubleValue(i, j),
+                        1E-12 * tmpLargest);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 1997-2017 Optimatika (www.optimatika.se)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.algo.random;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.algo.array.Primitive64Array;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The selected quantiles against the quartiles, which are still taken from the sorted copy, and against
+ * interpolating in a sorted array.
+ */
+public class SampleSetTest {
+
+    private static final double[] PROBABILITIES = { 0.0, 0.01, 0.1, 0.25, 0.3, 0.5, 0.6, 0.75, 0.9, 0.99, 1.0 };
+
+    /**
+     * Small integers, so there are lots of duplicates
+     */
+    private static double[] makeSamples(final Random random, final int size, final int range) {
+        final double[] retVal = new double[size];
+        for (int i = 0; i < size; i++) {
+            retVal[i] = random.nextInt(range) - (range / 2);
+        }
+        return retVal;
+    }
+
+    private static double sortedQuantile(final double[] samples, final double probability) {
+        final double[] tmpSorted = samples.clone();
+        Arrays.sort(tmpSorted);
+        final double tmpPosition = Math.min(Math.max((tmpSorted.length * probability) - 0.5, 0.0), tmpSorted.length - 1);
+        final int tmpIndex = (int) tmpPosition;
+        final double tmpFraction = tmpPosition - tmpIndex;
+        if (tmpFraction > 0.0) {
+            return ((1.0 - tmpFraction) * tmpSorted[tmpIndex]) + (tmpFraction * tmpSorted[tmpIndex + 1]);
+        } else {
+            return tmpSorted[tmpIndex];
+        }
+    }
+
+    private static SampleSet wrap(final double[] samples) {
+        return SampleSet.wrap(Primitive64Array.wrap(samples.clone()));
+    }
+
+    @Test
+    public void testMinimumAndMaximum() {
+        final Random tmpRandom = new Random(1L);
+        for (int tmpSize = 1; tmpSize <= 20; tmpSize++) {
+            final double[] tmpSamples = SampleSetTest.makeSamples(tmpRandom, tmpSize, 1000);
+            Assert.assertEquals(SampleSetTest.wrap(tmpSamples).getMinimum(), SampleSetTest.wrap(tmpSamples).getQuantile(0.0), 0.0);
+            Assert.assertEquals(SampleSetTest.wrap(tmpSamples).getMaximum(), SampleSetTest.wrap(tmpSamples).getQuantile(1.0), 0.0);
+        }
+    }
+
+    @Test
+    public void testQuantiles() {
+        final Random tmpRandom = new Random(2L);
+        for (int tmpSize = 1; tmpSize <= 40; tmpSize++) {
+            for (final int tmpRange : new int[] { 3, 1000 }) {
+                final double[] tmpSamples = SampleSetTest.makeSamples(tmpRandom, tmpSize, tmpRange);
+                for (final double tmpProbability : PROBABILITIES) {
+                    final double tmpExpected = SampleSetTest.sortedQuantile(tmpSamples, tmpProbability);
+                    // Selected in a new set, and read from the sorted copy of one that already has its quartiles
+                    Assert.assertEquals(tmpExpected, SampleSetTest.wrap(tmpSamples).getQuantile(tmpProbability), 0.0);
+                    final SampleSet tmpSorted = SampleSetTest.wrap(tmpSamples);
+                    tmpSorted.getQuartile1();
+                    Assert.assertEquals(tmpExpected, tmpSorted.getQuantile(tmpProbability), 0.0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testQuartiles() {
+        final Random tmpRandom = new Random(3L);
+        for (int tmpSize = 1; tmpSize <= 41; tmpSize++) {
+            for (final int tmpRange : new int[] { 1, 3, 1000 }) {
+                final double[] tmpSamples = SampleSetTest.makeSamples(tmpRandom, tmpSize, tmpRange);
+                final SampleSet tmpSortBased = SampleSetTest.wrap(tmpSamples);
+                final String tmpMessage = Arrays.toString(tmpSamples);
+                Assert.assertEquals(tmpMessage, tmpSortBased.getQuartile1(), SampleSetTest.wrap(tmpSamples).getQuantile(0.25), 0.0);
+                Assert.assertEquals(tmpMessage, tmpSortBased.getQuartile2(), SampleSetTest.wrap(tmpSamples).getQuantile(0.5), 0.0);
+                Assert.assertEquals(tmpMessage, tmpSortBased.getQuartile3(), SampleSetTest.wrap(tmpSamples).getQuantile(0.75), 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void testSelect() {
+        final Random tmpRandom = new Random(4L);
+        for (int tmpSize = 1; tmpSize <= 64; tmpSize++) {
+            final double[] tmpSamples = SampleSetTest.makeSamples(tmpRandom, tmpSize, tmpSize % 2 == 0 ? 4 : 1000);
+            final double[] tmpSorted = tmpSamples.clone();
+            Arrays.sort(tmpSorted);
+            for (int k = 0; k < tmpSize; k++) {
+                final double[] tmpValues = tmpSamples.clone();
+                Assert.assertEquals(tmpSorted[k], SampleSet.select(tmpValues, tmpSize, k), 0.0);
+                for (int i = 0; i < tmpSize; i++) {
+                    Assert.assertTrue(i < k ? tmpValues[i] <= tmpSorted[k] : tmpValues[i] >= tmpSorted[k]);
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testProbabilityOutOfRange() {
+        SampleSetTest.wrap(new double[] { 1.0, 2.0 }).getQuantile(1.5);
+    }
+
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 1997-2017 Optimatika (www.optimatika.se)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.algo.series;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.algo.type.CalendarDate;
+import org.algo.type.CalendarDateUnit;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * {@link DenseCalendarDateSeries} against the {@link CalendarDateSeries} given the same puts.
+ */
+public class DenseCalendarDateSeriesTest {
+
+    private static final CalendarDate START = new CalendarDate(17000L * CalendarDateUnit.DAY.size());
+
+    private static CalendarDate day(final int day) {
+        return START.step(day, CalendarDateUnit.DAY);
+    }
+
+    private static void assertSame(final CalendarDateSeries<Double> expected, final DenseCalendarDateSeries actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        Assert.assertEquals(expected, actual);
+        Assert.assertArrayEquals(expected.getPrimitiveKeys(), actual.getPrimitiveKeys());
+        int i = 0;
+        for (final CalendarDate tmpKey : expected.keySet()) {
+            Assert.assertEquals(tmpKey.millis, actual.key(i));
+            Assert.assertEquals(expected.get(tmpKey), actual.get(i));
+            Assert.assertEquals(i, actual.indexOf(tmpKey));
+            i++;
+        }
+        if (expected.size() > 0) {
+            Assert.assertEquals(expected.firstKey(), actual.firstKey());
+            Assert.assertEquals(expected.lastKey(), actual.lastKey());
+        }
+    }
+
+    private DenseCalendarDateSeries myDense;
+    private CalendarDateSeries<Double> myTree;
+
+    @Before
+    public void setUp() {
+
+        myDense = DenseCalendarDateSeries.make(CalendarDateUnit.DAY, 4);
+        myTree = new CalendarDateSeries<>(CalendarDateUnit.DAY);
+
+        // Every other day, so there are gaps, put in random order
+        final List<Integer> tmpDays = new ArrayList<>();
+        for (int d = 0; d < 100; d += 2) {
+            tmpDays.add(d);
+        }
+        Collections.shuffle(tmpDays, new Random(1L));
+
+        for (final int tmpDay : tmpDays) {
+            myDense.put(DenseCalendarDateSeriesTest.day(tmpDay), (double) tmpDay);
+            myTree.put(DenseCalendarDateSeriesTest.day(tmpDay), (double) tmpDay);
+        }
+    }
+
+    @Test
+    public void testCopy() {
+        DenseCalendarDateSeriesTest.assertSame(myTree, DenseCalendarDateSeries.copy(myTree));
+        Assert.assertEquals(myTree, myDense.toCalendarDateSeries());
+        Assert.assertEquals(CalendarDateUnit.DAY, myDense.toCalendarDateSeries().getResolution());
+    }
+
+    @Test
+    public void testGaps() {
+
+        Assert.assertNull(myDense.get(DenseCalendarDateSeriesTest.day(1)));
+        Assert.assertFalse(myDense.containsKey(DenseCalendarDateSeriesTest.day(1)));
+        Assert.assertEquals(-2, myDense.indexOf(DenseCalendarDateSeriesTest.day(1)));
+        Assert.assertEquals(-1, myDense.indexOf(DenseCalendarDateSeriesTest.day(-1)));
+        Assert.assertEquals(-51, myDense.indexOf(DenseCalendarDateSeriesTest.day(100)));
+
+        // Filling a gap keeps the order
+        myDense.put(DenseCalendarDateSeriesTest.day(1), 1.0);
+        myTree.put(DenseCalendarDateSeriesTest.day(1), 1.0);
+        DenseCalendarDateSeriesTest.assertSame(myTree, myDense);
+        Assert.assertEquals(1, myDense.indexOf(DenseCalendarDateSeriesTest.day(1)));
+    }
+
+    @Test
+    public void testPutAndGet() {
+
+        DenseCalendarDateSeriesTest.assertSame(myTree, myDense);
+
+        // A time of day is filtered away, the same day is replaced
+        final CalendarDate tmpLater = new CalendarDate(DenseCalendarDateSeriesTest.day(10).millis + 3600000L);
+        Assert.assertEquals(Double.valueOf(10.0), myDense.get(tmpLater));
+        Assert.assertEquals(Double.valueOf(10.0), myDense.put(tmpLater, Double.valueOf(-1.0)));
+        myTree.put(tmpLater, -1.0);
+        Assert.assertEquals(myTree.put(tmpLater, -10.0), myDense.put(tmpLater, -10.0), 0.0);
+        Assert.assertNull(myDense.put(DenseCalendarDateSeriesTest.day(101), Double.valueOf(101.0)));
+        myTree.put(DenseCalendarDateSeriesTest.day(101), 101.0);
+
+        DenseCalendarDateSeriesTest.assertSame(myTree, myDense);
+        Assert.assertEquals(-10.0, myDense.doubleValue(DenseCalendarDateSeriesTest.day(10)), 0.0);
+    }
+
+    @Test
+    public void testRemove() {
+
+        Assert.assertEquals(myTree.remove(DenseCalendarDateSeriesTest.day(20)), myDense.remove(DenseCalendarDateSeriesTest.day(20)));
+        Assert.assertNull(myDense.remove(DenseCalendarDateSeriesTest.day(21)));
+        DenseCalendarDateSeriesTest.assertSame(myTree, myDense);
+
+        // The views share the arrays, clearing one removes from the series (the tree views are copies)
+        myDense.headMap(DenseCalendarDateSeriesTest.day(50)).clear();
+        myTree.keySet().removeAll(myTree.headMap(DenseCalendarDateSeriesTest.day(50)).keySet());
+        DenseCalendarDateSeriesTest.assertSame(myTree, myDense);
+    }
+
+    @Test
+    public void testViews() {
+
+        final CalendarDate tmpFrom = DenseCalendarDateSeriesTest.day(20);
+        final CalendarDate tmpTo = DenseCalendarDateSeriesTest.day(61);
+
+        Assert.assertEquals(myTree.headMap(tmpTo), myDense.headMap(tmpTo));
+        Assert.assertEquals(myTree.headMap(tmpFrom, true), myDense.headMap(tmpFrom, true));
+        Assert.assertEquals(myTree.tailMap(tmpFrom), myDense.tailMap(tmpFrom));
+        Assert.assertEquals(myTree.tailMap(tmpFrom, false), myDense.tailMap(tmpFrom, false));
+        Assert.assertEquals(myTree.subMap(tmpFrom, tmpTo), myDense.subMap(tmpFrom, tmpTo));
+        Assert.assertEquals(myTree.subMap(tmpFrom, false, tmpTo, true), myDense.subMap(tmpFrom, false, tmpTo, true));
+
+        // Positional within the view, and writes go through to the series
+        final DenseCalendarDateSeries tmpView = myDense.subMap(tmpFrom, tmpTo);
+        Assert.assertEquals(21, tmpView.size());
+        Assert.assertEquals(20.0, tmpView.doubleValue(0L), 0.0);
+        tmpView.put(DenseCalendarDateSeriesTest.day(21), 21.0);
+        Assert.assertEquals(Double.valueOf(21.0), myDense.get(DenseCalendarDateSeriesTest.day(21)));
+        Assert.assertEquals(22, tmpView.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testViewRejectsKeysOutOfRange() {
+        myDense.subMap(DenseCalendarDateSeriesTest.day(20), DenseCalendarDateSeriesTest.day(60)).put(DenseCalendarDateSeriesTest.day(60), 60.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrapRejectsUnsortedKeys() {
+        DenseCalendarDateSeries.wrap(new long[] { 2L, 1L }, new double[] { 0.0, 0.0 }, CalendarDateUnit.MILLIS);
+    }
+
+}